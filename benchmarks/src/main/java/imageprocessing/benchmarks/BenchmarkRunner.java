@@ -0,0 +1,33 @@
+package imageprocessing.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so every result reports the
+ * allocation rate next to the time. Takes the usual JMH command line, for
+ * example after mvn -B package:
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar Stipple -p megapixels=1
+ * java -jar benchmarks/target/benchmarks.jar Blur -p mode=BOX -p radius=25
+ * </pre>
+ *
+ * The compute benchmarks run with the Vector API loops. Append
+ * -jvmArgsAppend -Dimageprocessing.vector=false to measure the scalar loops.
+ */
+public class BenchmarkRunner {
+
+   public static void main(String[] args)
+           throws CommandLineOptionException, RunnerException
+   {
+      new Runner(new OptionsBuilder()
+              .parent(new CommandLineOptions(args))
+              .addProfiler(GCProfiler.class)
+              .build()).run();
+   }
+}
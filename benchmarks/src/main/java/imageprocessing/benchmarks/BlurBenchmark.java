@@ -0,0 +1,58 @@
+package imageprocessing.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The compute cost of gaussianBlur() on pixels already in memory, for each
+ * radius and BlurMode. The source is left unchanged, so every call does the
+ * same work.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g",
+        "--add-modules=jdk.incubator.vector"})
+public class BlurBenchmark {
+
+   @Param({"1", "12", "50"})
+   public int megapixels;
+
+   @Param({"RGB"})
+   public String pixelType;
+
+   @Param({"3", "10", "25"})
+   public int radius;
+
+   @Param({"SEPARABLE", "FIXED_POINT", "BOX"})
+   public String mode;
+
+   private Object pixels;
+   private Object blurMode;
+
+   @Setup
+   public void setUp() throws Throwable
+   {
+      pixels = Filters.pixels(Images.synthetic(megapixels, pixelType));
+      blurMode = Filters.blurMode(mode);
+   }
+
+   @Benchmark
+   public Object gaussianBlur() throws Throwable
+   {
+      return Filters.gaussianBlur(radius, pixels, blurMode);
+   }
+}
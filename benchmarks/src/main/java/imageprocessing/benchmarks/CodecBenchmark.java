@@ -0,0 +1,111 @@
+package imageprocessing.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost around the filters: decoding and encoding PNG in memory, and
+ * the bulk copies between a BufferedImage and a PixelBuffer. Together with
+ * the compute benchmarks this splits a file based filter call into codec
+ * and compute cost. encodePngFast writes with the compression quality of
+ * ImageOutput.FAST_PNG, deflate level 1.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class CodecBenchmark {
+
+   @Param({"1", "12", "50"})
+   public int megapixels;
+
+   @Param({"RGB", "ARGB", "GREY"})
+   public String pixelType;
+
+   private BufferedImage image;
+   private byte[] png;
+   private Object pixels;
+
+   @Setup
+   public void setUp() throws Throwable
+   {
+      ImageIO.setUseCache(false);
+
+      image = Images.synthetic(megapixels, pixelType);
+      pixels = Filters.pixels(image);
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ImageIO.write(image, "png", out);
+      png = out.toByteArray();
+   }
+
+   @Benchmark
+   public BufferedImage decodePng() throws IOException
+   {
+      return ImageIO.read(new ByteArrayInputStream(png));
+   }
+
+   @Benchmark
+   public int encodePng() throws IOException
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(png.length);
+      ImageIO.write(image, "png", out);
+      return out.size();
+   }
+
+   @Benchmark
+   public int encodePngFast() throws IOException
+   {
+      ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(0.9f);
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream(png.length);
+      try (ImageOutputStream stream = ImageIO.createImageOutputStream(out))
+      {
+         writer.setOutput(stream);
+         writer.write(null, new IIOImage(image, null, null), param);
+      }
+      finally
+      {
+         writer.dispose();
+      }
+      return out.size();
+   }
+
+   @Benchmark
+   public Object readPixels() throws Throwable
+   {
+      return Filters.pixels(image);
+   }
+
+   @Benchmark
+   public BufferedImage writePixels() throws Throwable
+   {
+      Filters.writeTo(pixels, image);
+      return image;
+   }
+}
@@ -0,0 +1,63 @@
+package imageprocessing.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The compute cost of invertColors(), convertToGreyScale() and
+ * convertToLuminance() on pixels already in memory. The first two work in
+ * place, so each call filters the result of the last one, which costs the
+ * same. convertToLuminance() writes a new plane a quarter of the size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g",
+        "--add-modules=jdk.incubator.vector"})
+public class FilterBenchmark {
+
+   @Param({"1", "12", "50"})
+   public int megapixels;
+
+   @Param({"RGB", "ARGB", "GREY"})
+   public String pixelType;
+
+   private Object pixels;
+
+   @Setup
+   public void setUp() throws Throwable
+   {
+      pixels = Filters.pixels(Images.synthetic(megapixels, pixelType));
+   }
+
+   @Benchmark
+   public Object invertColors() throws Throwable
+   {
+      return Filters.invertColors(pixels);
+   }
+
+   @Benchmark
+   public Object convertToGreyScale() throws Throwable
+   {
+      return Filters.convertToGreyScale(pixels);
+   }
+
+   @Benchmark
+   public Object convertToLuminance() throws Throwable
+   {
+      return Filters.convertToLuminance(pixels);
+   }
+}
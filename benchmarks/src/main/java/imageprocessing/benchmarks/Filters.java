@@ -0,0 +1,169 @@
+package imageprocessing.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * A class of static methods. Calls the filters and the PixelBuffer methods.
+ * They are in the default package, which can't be imported from a named
+ * package, and JMH only runs benchmarks in a named package. So each method
+ * is looked up once as a constant MethodHandle, which the JIT inlines like
+ * a direct call. PixelBuffers, LumaPlanes and BlurModes are passed around
+ * as Objects.
+ */
+final class Filters {
+
+   private final static Class<?> PIXEL_BUFFER = load("PixelBuffer");
+   private final static Class<?> BLUR_MODE = load("BlurMode");
+   private final static Class<?> LUMA_PLANE = load("LumaPlane");
+
+   private final static MethodHandle PIXELS = find("PixelBuffer", "of",
+           PIXEL_BUFFER, BufferedImage.class);
+   private final static MethodHandle WRITE_TO = findWriteTo();
+   private final static MethodHandle INVERT_COLORS = find("ImageFilters",
+           "invertColors", PIXEL_BUFFER, PIXEL_BUFFER);
+   private final static MethodHandle CONVERT_TO_GREY_SCALE = find(
+           "ImageFilters", "convertToGreyScale", PIXEL_BUFFER, PIXEL_BUFFER);
+   private final static MethodHandle CONVERT_TO_LUMINANCE = find(
+           "ImageFilters", "convertToLuminance", LUMA_PLANE, PIXEL_BUFFER);
+   private final static MethodHandle GAUSSIAN_BLUR = find("ImageFilters",
+           "gaussianBlur", PIXEL_BUFFER, int.class, PIXEL_BUFFER, BLUR_MODE);
+   private final static MethodHandle BLACK_FIGURE_ON_WHITE = findStipple(
+           "blackFigureOnWhite");
+   private final static MethodHandle BLACK_FIGURE_ON_YELLOWISH_WHITE =
+           findStipple("blackFigureOnYellowishWhite");
+   private final static MethodHandle WHITE_FIGURE = findStipple(
+           "whiteFigure");
+
+   private Filters() {}
+
+   /**
+    * Reads the pixels of an image into a new PixelBuffer.
+    *
+    * @param image          The image to be read.
+    * @return               Returns the PixelBuffer.
+    */
+   static Object pixels(BufferedImage image) throws Throwable
+   {
+      return PIXELS.invoke(image);
+   }
+
+   /**
+    * Writes the pixels of a PixelBuffer to an image.
+    *
+    * @param pixels         The PixelBuffer.
+    * @param image          The image to be written to.
+    */
+   static void writeTo(Object pixels, BufferedImage image) throws Throwable
+   {
+      WRITE_TO.invoke(pixels, image);
+   }
+
+   static Object invertColors(Object pixels) throws Throwable
+   {
+      return INVERT_COLORS.invoke(pixels);
+   }
+
+   static Object convertToGreyScale(Object pixels) throws Throwable
+   {
+      return CONVERT_TO_GREY_SCALE.invoke(pixels);
+   }
+
+   static Object convertToLuminance(Object pixels) throws Throwable
+   {
+      return CONVERT_TO_LUMINANCE.invoke(pixels);
+   }
+
+   static Object gaussianBlur(int radius, Object pixels, Object mode)
+           throws Throwable
+   {
+      return GAUSSIAN_BLUR.invoke(radius, pixels, mode);
+   }
+
+   /**
+    * Runs one of the ConvertToStipple styles.
+    *
+    * @param style          The name of the ConvertToStipple method.
+    * @param pixels         The PixelBuffer.
+    * @param clean          The clean value.
+    * @param mode           The BlurMode.
+    * @return               Returns the converted PixelBuffer.
+    */
+   static Object stipple(String style, Object pixels, int clean, Object mode)
+           throws Throwable
+   {
+      switch (style)
+      {
+         case "blackFigureOnWhite":
+            return BLACK_FIGURE_ON_WHITE.invoke(pixels, clean, mode);
+         case "blackFigureOnYellowishWhite":
+            return BLACK_FIGURE_ON_YELLOWISH_WHITE.invoke(pixels, clean, mode);
+         case "whiteFigure":
+            return WHITE_FIGURE.invoke(pixels, clean, mode);
+         default:
+            throw new IllegalArgumentException("unknown style " + style);
+      }
+   }
+
+   /**
+    * Finds a BlurMode by name.
+    *
+    * @param name           The name of the mode.
+    * @return               Returns the BlurMode.
+    */
+   @SuppressWarnings({"unchecked", "rawtypes"})
+   static Object blurMode(String name)
+   {
+      return Enum.valueOf((Class) BLUR_MODE, name);
+   }
+
+   private static Class<?> load(String name)
+   {
+      try
+      {
+         return Class.forName(name);
+      }
+      catch (ClassNotFoundException e)
+      {
+         throw new IllegalStateException(name + " is not on the classpath",
+                 e);
+      }
+   }
+
+   private static MethodHandle find(String className, String name,
+                                    Class<?> returnType,
+                                    Class<?>... parameterTypes)
+   {
+      try
+      {
+         return MethodHandles.publicLookup().findStatic(load(className), name,
+                 MethodType.methodType(returnType, parameterTypes));
+      }
+      catch (ReflectiveOperationException e)
+      {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   private static MethodHandle findStipple(String name)
+   {
+      return find("ConvertToStipple", name, PIXEL_BUFFER, PIXEL_BUFFER,
+              int.class, BLUR_MODE);
+   }
+
+   private static MethodHandle findWriteTo()
+   {
+      try
+      {
+         return MethodHandles.publicLookup().findVirtual(PIXEL_BUFFER,
+                 "writeTo", MethodType.methodType(void.class,
+                         BufferedImage.class));
+      }
+      catch (ReflectiveOperationException e)
+      {
+         throw new IllegalStateException(e);
+      }
+   }
+}
@@ -0,0 +1,69 @@
+package imageprocessing.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * A class of static methods. Creates the synthetic images the benchmarks
+ * run on, the same for every run.
+ */
+final class Images {
+
+   private Images() {}
+
+   /**
+    * Creates a 3:2 image with smooth gradients, edges and noise, so the
+    * codecs and the stipple styles have realistic work to do.
+    *
+    * @param megapixels     The size of the image in millions of pixels.
+    * @param pixelType      RGB, ARGB or GREY.
+    * @return               Returns the image.
+    */
+   static BufferedImage synthetic(int megapixels, String pixelType)
+   {
+      int width = (int) Math.round(Math.sqrt(megapixels * 1e6 * 3 / 2));
+      int height = (int) Math.round(megapixels * 1e6 / width);
+
+      BufferedImage image = new BufferedImage(width, height, type(pixelType));
+      Random random = new Random(megapixels);
+      int[] row = new int[width];
+
+      for (int y = 0; y < height; y++)
+      {
+         for (int x = 0; x < width; x++)
+         {
+            // A gradient with circles and some noise.
+            int dx = (x % 512) - 256;
+            int dy = (y % 512) - 256;
+            int ring = ((dx * dx + dy * dy) >> 10) % 2 == 0 ? 48 : 0;
+            int noise = random.nextInt(24);
+
+            int red = Math.min(255, (x * 255 / width) + noise);
+            int green = Math.min(255, (y * 255 / height) + ring);
+            int blue = Math.min(255, 128 + ring - noise);
+            int alpha = 192 + (x % 64);
+
+            row[x] = (alpha << 24) | (red << 16) | (green << 8) | blue;
+         }
+         image.setRGB(0, y, width, 1, row, 0, width);
+      }
+
+      return image;
+   }
+
+   private static int type(String pixelType)
+   {
+      switch (pixelType)
+      {
+         case "RGB":
+            return BufferedImage.TYPE_INT_RGB;
+         case "ARGB":
+            return BufferedImage.TYPE_INT_ARGB;
+         case "GREY":
+            return BufferedImage.TYPE_BYTE_GRAY;
+         default:
+            throw new IllegalArgumentException("unknown pixel type " +
+                    pixelType + ", choose RGB, ARGB or GREY");
+      }
+   }
+}
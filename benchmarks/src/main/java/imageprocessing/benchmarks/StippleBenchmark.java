@@ -0,0 +1,62 @@
+package imageprocessing.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The compute cost of each ConvertToStipple style on pixels already in
+ * memory. The styles leave their input unchanged and return a new buffer,
+ * so every call starts from the same pixels and does the same work.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g",
+        "--add-modules=jdk.incubator.vector"})
+public class StippleBenchmark {
+
+   @Param({"1", "12", "50"})
+   public int megapixels;
+
+   @Param({"RGB", "ARGB", "GREY"})
+   public String pixelType;
+
+   @Param({"blackFigureOnWhite", "blackFigureOnYellowishWhite",
+           "whiteFigure"})
+   public String style;
+
+   @Param({"SEPARABLE"})
+   public String mode;
+
+   @Param({"6"})
+   public int clean;
+
+   private Object pixels;
+   private Object blurMode;
+
+   @Setup
+   public void setUp() throws Throwable
+   {
+      pixels = Filters.pixels(Images.synthetic(megapixels, pixelType));
+      blurMode = Filters.blurMode(mode);
+   }
+
+   @Benchmark
+   public Object stipple() throws Throwable
+   {
+      return Filters.stipple(style, pixels, clean, blurMode);
+   }
+}
@@ -0,0 +1,552 @@
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+
+/**
+ * Applies a filter to many images at once. Decoding, filtering and encoding
+ * are separate stages, so one image is read while another is filtered and a
+ * third is written. Decoded images wait in a bounded queue and filtered ones
+ * in a WriteBehindQueue. Decoding and encoding run on I/O threads (virtual
+ * threads when the JVM has them) and filtering on a pool the size of the
+ * processor count. The images are written by an ImageOutput, each one
+ * replacing its target only once it's complete. An image that can't be
+ * read, filtered or written is recorded in the summary and the rest carry
+ * on. With a ResultCache, images whose output is already current are
+ * skipped. The size of each image is read from its header first and the
+ * biggest images are processed first, so a huge image found last doesn't
+ * hold up the end of the run. With a MemoryBudget, an image is only read
+ * once the memory it needs is free, and keeps it until it's written.
+ */
+public final class BatchProcessor {
+
+   // Marks the end of the images in a queue.
+   private final static Job END = new Job(null, null, null, 0, 0);
+
+   private final UnaryOperator<BufferedImage> filter;
+   private final ImageOutput output;
+   private final int computeThreads;
+   private final int ioThreads;
+
+   // The results of earlier runs, and the operation they're stored under.
+   private ResultCache cache;
+   private String operation;
+
+   // Limits the images in memory at once, or null for no limit.
+   private MemoryBudget budget;
+
+   // Told about each image once it's written, or null.
+   private Consumer<File> written;
+
+   /**
+    * Creates a batch processor using every processor, writing each image
+    * over its source.
+    *
+    * @param filter           The filter applied to each image.
+    * @param fileType         The type the images are written as.
+    */
+   public BatchProcessor(UnaryOperator<BufferedImage> filter, String fileType)
+   {
+      this(filter, new ImageOutput(fileType));
+   }
+
+   /**
+    * Creates a batch processor writing each image over its source.
+    *
+    * @param filter           The filter applied to each image.
+    * @param fileType         The type the images are written as.
+    * @param computeThreads   How many images are filtered at once.
+    */
+   public BatchProcessor(UnaryOperator<BufferedImage> filter, String fileType,
+                         int computeThreads)
+   {
+      this(filter, new ImageOutput(fileType), computeThreads);
+   }
+
+   /**
+    * Creates a batch processor using every processor.
+    *
+    * @param filter           The filter applied to each image.
+    * @param output           Where and how the images are written.
+    */
+   public BatchProcessor(UnaryOperator<BufferedImage> filter,
+                         ImageOutput output)
+   {
+      this(filter, output, Runtime.getRuntime().availableProcessors());
+   }
+
+   /**
+    * Creates a batch processor.
+    *
+    * @param filter           The filter applied to each image.
+    * @param output           Where and how the images are written.
+    * @param computeThreads   How many images are filtered at once.
+    */
+   public BatchProcessor(UnaryOperator<BufferedImage> filter,
+                         ImageOutput output, int computeThreads)
+   {
+      // Check if the number of threads is valid.
+      if (computeThreads < 1)
+         throw new IllegalArgumentException("input value for computeThreads" +
+                 " is invalid, choose a value of 1 or more");
+
+      this.filter = filter;
+      this.output = output;
+      this.computeThreads = computeThreads;
+      this.ioThreads = Math.max(4, computeThreads);
+   }
+
+   /**
+    * Remembers the result of each image in a cache, so later runs skip the
+    * images whose output is already current. An image is filtered again
+    * when its file changes, or when the operation or the output format
+    * does.
+    *
+    * @param cache            The cache, or null to filter every image.
+    * @param operation        Names the filter and its parameters, like
+    *                         "blackFigureOnWhite clean=4". Different
+    *                         filters must have different names.
+    */
+   public void setCache(ResultCache cache, String operation)
+   {
+      this.cache = cache;
+      this.operation = operation + " " + output.encoding();
+   }
+
+   /**
+    * Limits the memory of the images being read, filtered and written at
+    * once. The budget can be shared with other batch runs.
+    *
+    * @param budget           The budget, or null for no limit.
+    */
+   public void setMemoryBudget(MemoryBudget budget)
+   {
+      this.budget = budget;
+   }
+
+   /**
+    * Where and how the images are written.
+    *
+    * @return                 Returns the output.
+    */
+   public ImageOutput getOutput()
+   {
+      return output;
+   }
+
+   /**
+    * Tells a listener about each image once its output is written, on the
+    * thread which wrote it.
+    *
+    * @param written          Takes the file the image was read from, or
+    *                         null for no listener.
+    */
+   void setWrittenListener(Consumer<File> written)
+   {
+      this.written = written;
+   }
+
+   /**
+    * Applies the filter to every file in a directory, writing each one to
+    * the output. Subdirectories are skipped.
+    *
+    * @param directory        The directory holding the images.
+    * @return                 Returns the summary of the run.
+    */
+   public BatchSummary run(File directory)
+   {
+      File[] fileArray = directory.listFiles(File::isFile);
+
+      // Check if the directory can be listed.
+      if (fileArray == null)
+         throw new IllegalArgumentException(directory + " is not a directory");
+
+      Arrays.sort(fileArray);
+      return run(Arrays.asList(fileArray));
+   }
+
+   /**
+    * Applies the filter to every file, writing each one to the output.
+    *
+    * @param files            The image files.
+    * @return                 Returns the summary of the run.
+    */
+   public BatchSummary run(List<File> files)
+   {
+      BatchSummary summary = new BatchSummary();
+      long start = System.nanoTime();
+
+      AtomicInteger nextFile = new AtomicInteger();
+
+      // The queue between decoding and filtering, big enough to keep each
+      // filter thread busy.
+      BlockingQueue<Job> decoded = new ArrayBlockingQueue<>(computeThreads);
+
+      // The decoders left, the last one to finish ends the filter stage.
+      AtomicInteger decoders = new AtomicInteger(ioThreads);
+      CountDownLatch filterers = new CountDownLatch(computeThreads);
+
+      ExecutorService io = VirtualThreads.newThreadPerTaskExecutor();
+      ExecutorService compute = Executors.newFixedThreadPool(computeThreads);
+
+      try (WriteBehindQueue writes = new WriteBehindQueue(output, ioThreads))
+      {
+         List<Source> sources = largestFirst(files, io);
+         for (int i = 0; i < ioThreads; i++)
+         {
+            io.execute(() -> decode(sources, nextFile, decoded, summary,
+                    decoders));
+         }
+         for (int i = 0; i < computeThreads; i++)
+            compute.execute(() -> filter(decoded, writes, summary, filterers));
+
+         // Closing the queue waits for the last images to be written.
+         filterers.await();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+      finally
+      {
+         io.shutdownNow();
+         compute.shutdownNow();
+      }
+
+      summary.finished(System.nanoTime() - start);
+      return summary;
+   }
+
+   /**
+    * The decode stage, reads images until there are no files left.
+    */
+   private void decode(List<Source> sources, AtomicInteger nextFile,
+                       BlockingQueue<Job> decoded, BatchSummary summary,
+                       AtomicInteger decoders)
+   {
+      try
+      {
+         for (int i = nextFile.getAndIncrement(); i < sources.size();
+              i = nextFile.getAndIncrement())
+         {
+            Source source = sources.get(i);
+            File file = source.file;
+
+            // Wait for the memory the image needs.
+            long cost = source.cost(budget);
+            acquire(cost);
+            long started = System.nanoTime();
+
+            // Read the image, skipping files which aren't images.
+            boolean queued = false;
+            try
+            {
+               BufferedImage img;
+               String key = null;
+               if (cache == null)
+               {
+                  img = ImageInput.read(file);
+               }
+               else
+               {
+                  // Hash the file, then decode the same bytes.
+                  byte[] bytes = Files.readAllBytes(file.toPath());
+                  key = ResultCache.key(bytes, operation);
+                  if (isCurrent(file, key))
+                  {
+                     summary.unchanged();
+                     continue;
+                  }
+                  img = ImageInput.read(bytes, file);
+               }
+               if (img == null)
+                  throw new IOException("not a readable image");
+
+               decoded.put(new Job(file, img, key, started, cost));
+               queued = true;
+            }
+            catch (IOException | RuntimeException | OutOfMemoryError e)
+            {
+               summary.failed(file, e);
+            }
+            finally
+            {
+               if (!queued)
+                  release(cost);
+            }
+         }
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+      finally
+      {
+         // The last decoder tells each filter thread to stop.
+         finish(decoders, decoded, computeThreads);
+      }
+   }
+
+   /**
+    * The filter stage, filters images until the decoders are done and hands
+    * each one to the write behind queue.
+    */
+   private void filter(BlockingQueue<Job> decoded, WriteBehindQueue writes,
+                       BatchSummary summary, CountDownLatch filterers)
+   {
+      try
+      {
+         for (Job job = decoded.take(); job != END; job = decoded.take())
+         {
+            boolean submitted = false;
+            try
+            {
+               File source = job.file;
+               String key = job.key;
+               long started = job.started;
+               long cost = job.cost;
+               BufferedImage img = filter.apply(job.image);
+
+               // Record the image once it's written.
+               writes.submit(img, source).whenComplete((file, e) -> {
+                  release(cost);
+                  if (e != null)
+                  {
+                     summary.failed(source, e);
+                     return;
+                  }
+                  summary.succeeded(source, img.getWidth(), img.getHeight(),
+                          System.nanoTime() - started);
+                  if (written != null)
+                     written.accept(source);
+                  if (key != null)
+                     store(key, file);
+               });
+               submitted = true;
+            }
+            catch (RuntimeException | OutOfMemoryError e)
+            {
+               summary.failed(job.file, e);
+            }
+            finally
+            {
+               if (!submitted)
+                  release(job.cost);
+            }
+         }
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+      finally
+      {
+         filterers.countDown();
+      }
+   }
+
+   /**
+    * Checks if the output of an image is already current, copying it back
+    * from the cache if it was removed or changed.
+    */
+   private boolean isCurrent(File file, String key) throws IOException
+   {
+      // The file is a result itself, written over its source.
+      if (cache.isResult(key))
+         return true;
+
+      String result = cache.resultOf(key);
+      if (result == null)
+         return false;
+
+      File target = output.target(file);
+      if (target.isFile() && result.equals(ResultCache.key(
+              Files.readAllBytes(target.toPath()), operation)))
+         return true;
+
+      File stored = cache.storedResult(key);
+      if (stored == null)
+         return false;
+
+      output.copy(stored, file);
+      return true;
+   }
+
+   /**
+    * Stores the output of an image in the cache.
+    */
+   private void store(String key, File written)
+   {
+      try
+      {
+         byte[] encoded = Files.readAllBytes(written.toPath());
+         cache.put(key, ResultCache.key(encoded, operation), encoded);
+      }
+      catch (IOException e)
+      {
+         e.printStackTrace();
+      }
+   }
+
+   /**
+    * Reads the size of each image from its header, on the I/O threads, and
+    * orders the images biggest first. Files whose header can't be read go
+    * last, in their order.
+    */
+   private static List<Source> largestFirst(List<File> files,
+                                            ExecutorService io)
+           throws InterruptedException
+   {
+      List<Future<Source>> probes = new ArrayList<>();
+      for (File file : files)
+         probes.add(io.submit(() -> Source.of(file)));
+
+      List<Source> sources = new ArrayList<>();
+      for (Future<Source> probe : probes)
+      {
+         try
+         {
+            sources.add(probe.get());
+         }
+         catch (ExecutionException e)
+         {
+            throw new IllegalStateException(e.getCause());
+         }
+      }
+
+      // The sort is stable, so images of the same size keep their order.
+      sources.sort(Comparator.comparingLong(
+              (Source source) -> source.pixels()).reversed());
+      return sources;
+   }
+
+   /**
+    * Takes memory from the budget, if there is one.
+    */
+   private void acquire(long cost) throws InterruptedException
+   {
+      if (budget != null)
+         budget.acquire(cost);
+   }
+
+   /**
+    * Gives memory back to the budget, if there is one.
+    */
+   private void release(long cost)
+   {
+      if (budget != null)
+         budget.release(cost);
+   }
+
+   /**
+    * Called by each worker of a stage when it stops. The last one puts an
+    * end marker for every worker of the next stage.
+    */
+   private static void finish(AtomicInteger workers, BlockingQueue<Job> next,
+                              int nextWorkers)
+   {
+      if (workers.decrementAndGet() != 0)
+         return;
+
+      try
+      {
+         for (int i = 0; i < nextWorkers; i++)
+            next.put(END);
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * An image moving through the stages, with the file it came from, its
+    * key in the cache, when it started being read and the memory it holds.
+    */
+   private static final class Job {
+
+      private final File file;
+      private final BufferedImage image;
+      private final String key;
+      private final long started;
+      private final long cost;
+
+      Job(File file, BufferedImage image, String key, long started,
+          long cost)
+      {
+         this.file = file;
+         this.image = image;
+         this.key = key;
+         this.started = started;
+         this.cost = cost;
+      }
+   }
+
+   /**
+    * A file waiting to be read, with the size of its image from the header.
+    */
+   private static final class Source {
+
+      private final File file;
+
+      // The size of the image, or null if the header can't be read.
+      private final Dimension size;
+
+      private Source(File file, Dimension size)
+      {
+         this.file = file;
+         this.size = size;
+      }
+
+      /**
+       * Reads the header of a file. A file which can't be read is left for
+       * the decode stage to report.
+       */
+      static Source of(File file)
+      {
+         try
+         {
+            return new Source(file, ImageInput.dimensions(file));
+         }
+         catch (IOException | RuntimeException e)
+         {
+            return new Source(file, null);
+         }
+      }
+
+      /**
+       * The number of pixels in the image, or -1 if it's not known.
+       */
+      long pixels()
+      {
+         return size == null ? -1 : (long) size.width * size.height;
+      }
+
+      /**
+       * The memory the image needs from a budget, or 0 if there is no
+       * budget or the size is not known.
+       */
+      long cost(MemoryBudget budget)
+      {
+         if (budget == null || size == null)
+            return 0;
+         return budget.cost(size.width, size.height);
+      }
+   }
+}
@@ -0,0 +1,194 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The results of a batch run: how many images were processed, how many
+ * were skipped because their output was current, how many failed and why,
+ * the throughput in images and megapixels per second, the slowest images
+ * and the StageStats of the run. toJson() gives it all in a machine
+ * readable form. Safe to update from several threads.
+ */
+public final class BatchSummary {
+
+   // The number of slowest images kept.
+   private final static int SLOWEST = 5;
+
+   private final StageStats startStages = StageStats.snapshot();
+
+   private int processed;
+   private int unchanged;
+   private long pixels;
+   private long elapsedNanos;
+   private StageStats stages;
+   private final List<String> failures = new ArrayList<>();
+
+   // The slowest images, slowest first.
+   private final List<String> slowestFiles = new ArrayList<>();
+   private final List<Long> slowestNanos = new ArrayList<>();
+
+   /**
+    * Records an image that was processed.
+    *
+    * @param file           The file of the image.
+    * @param width          The width of the image.
+    * @param height         The height of the image.
+    * @param nanos          How long it took from reading to writing it.
+    */
+   synchronized void succeeded(File file, int width, int height, long nanos)
+   {
+      processed++;
+      pixels += (long) width * height;
+
+      // Keep it if it's one of the slowest.
+      int rank = 0;
+      while (rank < slowestNanos.size() && slowestNanos.get(rank) >= nanos)
+         rank++;
+      if (rank < SLOWEST)
+      {
+         slowestFiles.add(rank, file.getName());
+         slowestNanos.add(rank, nanos);
+         if (slowestNanos.size() > SLOWEST)
+         {
+            slowestFiles.remove(SLOWEST);
+            slowestNanos.remove(SLOWEST);
+         }
+      }
+   }
+
+   /**
+    * Records an image that was skipped because its output was current.
+    */
+   synchronized void unchanged()
+   {
+      unchanged++;
+   }
+
+   /**
+    * Records an image that couldn't be processed.
+    *
+    * @param file           The file of the image.
+    * @param cause          Why it failed.
+    */
+   synchronized void failed(File file, Throwable cause)
+   {
+      failures.add(file.getName() + ": " + cause);
+   }
+
+   /**
+    * Records how long the whole run took.
+    *
+    * @param nanos          The wall clock time in nanoseconds.
+    */
+   synchronized void finished(long nanos)
+   {
+      elapsedNanos = nanos;
+      stages = StageStats.snapshot().since(startStages);
+   }
+
+   public synchronized int getProcessed()
+   {
+      return processed;
+   }
+
+   public synchronized int getUnchanged()
+   {
+      return unchanged;
+   }
+
+   public synchronized int getFailed()
+   {
+      return failures.size();
+   }
+
+   /**
+    * The reason each failed image failed, as "file name: exception".
+    *
+    * @return               Returns a copy of the failures.
+    */
+   public synchronized List<String> getFailures()
+   {
+      return Collections.unmodifiableList(new ArrayList<>(failures));
+   }
+
+   /**
+    * The time of each stage during the run. Anything else the process did
+    * at the same time is included.
+    *
+    * @return               Returns the stats, or null before the run ends.
+    */
+   public synchronized StageStats getStages()
+   {
+      return stages;
+   }
+
+   public synchronized double getSeconds()
+   {
+      return elapsedNanos / 1e9;
+   }
+
+   public synchronized double getMegapixels()
+   {
+      return pixels / 1e6;
+   }
+
+   public synchronized double imagesPerSecond()
+   {
+      return elapsedNanos == 0 ? 0 : processed / getSeconds();
+   }
+
+   public synchronized double megapixelsPerSecond()
+   {
+      return elapsedNanos == 0 ? 0 : getMegapixels() / getSeconds();
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      StringBuilder summary = new StringBuilder(String.format(
+              "%d images (%.1f MP) in %.2f s, %.2f images/s, %.2f MP/s, " +
+                      "%d failed", processed, getMegapixels(), getSeconds(),
+              imagesPerSecond(), megapixelsPerSecond(), failures.size()));
+
+      if (unchanged > 0)
+         summary.append(", ").append(unchanged).append(" unchanged");
+
+      for (String failure : failures)
+         summary.append(System.lineSeparator()).append("  ").append(failure);
+
+      return summary.toString();
+   }
+
+   /**
+    * The summary as one JSON object, for scripts and dashboards.
+    *
+    * @return               Returns the JSON text.
+    */
+   public synchronized String toJson()
+   {
+      StringBuilder json = new StringBuilder(String.format(Locale.ROOT,
+              "{\"processed\":%d,\"unchanged\":%d,\"failed\":%d," +
+                      "\"seconds\":%.6f,\"megapixels\":%.3f," +
+                      "\"imagesPerSecond\":%.3f," +
+                      "\"megapixelsPerSecond\":%.3f,\"failures\":[",
+              processed, unchanged, failures.size(), getSeconds(),
+              getMegapixels(), imagesPerSecond(), megapixelsPerSecond()));
+
+      for (int i = 0; i < failures.size(); i++)
+         json.append(i > 0 ? "," : "").append(Json.quote(failures.get(i)));
+
+      json.append("],\"slowest\":[");
+      for (int i = 0; i < slowestFiles.size(); i++)
+      {
+         json.append(i > 0 ? "," : "").append(String.format(Locale.ROOT,
+                 "{\"file\":%s,\"seconds\":%.6f}",
+                 Json.quote(slowestFiles.get(i)), slowestNanos.get(i) / 1e9));
+      }
+
+      json.append("],\"stages\":")
+              .append(stages == null ? "{}" : stages.toJson());
+      return json.append('}').toString();
+   }
+}
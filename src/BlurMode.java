@@ -0,0 +1,28 @@
+/**
+ * The ways the Gaussian blur can be computed. Every mode leaves the pixels
+ * within the radius of the border unchanged, the same as the original 2D
+ * kernel did.
+ */
+public enum BlurMode {
+
+   /**
+    * A horizontal pass followed by a vertical pass of the 1D Gaussian kernel.
+    * Gives the same result as the full 2D kernel (within rounding) at
+    * (4 * radius + 2) multiply-adds per pixel instead of (2 * radius + 1)^2.
+    */
+   SEPARABLE,
+
+   /**
+    * The separable passes with fixed point integer weights and sums, rounded
+    * to the nearest value. Faster than SEPARABLE and within one level of it
+    * on each channel.
+    */
+   FIXED_POINT,
+
+   /**
+    * Three stacked box blurs in each direction using running sums. Close to a
+    * true Gaussian and costs the same per pixel regardless of the radius,
+    * recommended for large radii.
+    */
+   BOX
+}
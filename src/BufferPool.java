@@ -0,0 +1,173 @@
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class of static methods. Recycles the big pixel arrays the filters only
+ * need while they run, so a batch of images doesn't allocate, and the GC
+ * doesn't clear, several new arrays for every image. The arrays are kept in
+ * buckets by size, a quarter of a power of two apart, so an array handed
+ * out is at most a quarter bigger than asked for and images of about the
+ * same size share their arrays. The arrays aren't cleared, and only up to
+ * the most bytes set are kept, the rest are left to the GC.
+ */
+public final class BufferPool {
+
+   // Smaller arrays are cheap to allocate, so they aren't kept.
+   private final static int MIN_LENGTH = 1 << 12;
+
+   // Bigger arrays can't be rounded up to a bucket.
+   private final static int MAX_LENGTH = 1 << 30;
+
+   private final static Map<Integer, Deque<int[]>> INTS =
+           new ConcurrentHashMap<>();
+   private final static Map<Integer, Deque<byte[]>> BYTES =
+           new ConcurrentHashMap<>();
+   private final static AtomicLong retainedBytes = new AtomicLong();
+
+   private static volatile long maxBytes =
+           Runtime.getRuntime().maxMemory() / 8;
+
+   private BufferPool() {}
+
+   /**
+    * Takes an int array from the pool, or allocates one.
+    *
+    * @param length           The fewest ints needed.
+    * @return                 Returns an array of at least length ints,
+    *                         holding whatever it last held.
+    */
+   public static int[] ints(int length)
+   {
+      int capacity = capacity(length);
+      Deque<int[]> bucket = INTS.get(capacity);
+      int[] array = bucket == null ? null : bucket.poll();
+      if (array == null)
+         return new int[capacity];
+
+      retainedBytes.addAndGet(-4L * capacity);
+      return array;
+   }
+
+   /**
+    * Takes a byte array from the pool, or allocates one.
+    *
+    * @param length           The fewest bytes needed.
+    * @return                 Returns an array of at least length bytes,
+    *                         holding whatever it last held.
+    */
+   public static byte[] bytes(int length)
+   {
+      int capacity = capacity(length);
+      Deque<byte[]> bucket = BYTES.get(capacity);
+      byte[] array = bucket == null ? null : bucket.poll();
+      if (array == null)
+         return new byte[capacity];
+
+      retainedBytes.addAndGet(-capacity);
+      return array;
+   }
+
+   /**
+    * Gives an array back to the pool. It mustn't be used afterwards.
+    *
+    * @param array            An array from ints().
+    */
+   public static void release(int[] array)
+   {
+      if (keep(array.length, 4L * array.length))
+         INTS.computeIfAbsent(array.length,
+                 capacity -> new ConcurrentLinkedDeque<>()).push(array);
+   }
+
+   /**
+    * Gives an array back to the pool. It mustn't be used afterwards.
+    *
+    * @param array            An array from bytes().
+    */
+   public static void release(byte[] array)
+   {
+      if (keep(array.length, array.length))
+         BYTES.computeIfAbsent(array.length,
+                 capacity -> new ConcurrentLinkedDeque<>()).push(array);
+   }
+
+   /**
+    * Sets the most bytes of arrays kept in the pool. Defaults to an eighth
+    * of the heap. 0 keeps no arrays.
+    *
+    * @param bytes            The most bytes kept.
+    */
+   public static void setMaxBytes(long bytes)
+   {
+      // Check if the size is valid.
+      if (bytes < 0)
+         throw new IllegalArgumentException("input value for bytes is " +
+                 "invalid, choose a value of 0 or more");
+
+      maxBytes = bytes;
+      if (bytes == 0)
+         clear();
+   }
+
+   /**
+    * The bytes of the arrays kept in the pool.
+    *
+    * @return                 Returns the size of the pool.
+    */
+   public static long getRetainedBytes()
+   {
+      return retainedBytes.get();
+   }
+
+   /**
+    * Empties the pool, leaving its arrays to the GC.
+    */
+   public static void clear()
+   {
+      for (Deque<int[]> bucket : INTS.values())
+      {
+         for (int[] array = bucket.poll(); array != null;
+              array = bucket.poll())
+            retainedBytes.addAndGet(-4L * array.length);
+      }
+      for (Deque<byte[]> bucket : BYTES.values())
+      {
+         for (byte[] array = bucket.poll(); array != null;
+              array = bucket.poll())
+            retainedBytes.addAndGet(-array.length);
+      }
+   }
+
+   /**
+    * Checks if an array given back belongs in a bucket and fits in the
+    * pool, counting it if it does.
+    */
+   private static boolean keep(int length, long size)
+   {
+      if (length < MIN_LENGTH || length > MAX_LENGTH ||
+              length != capacity(length))
+         return false;
+
+      if (retainedBytes.addAndGet(size) <= maxBytes)
+         return true;
+
+      retainedBytes.addAndGet(-size);
+      return false;
+   }
+
+   /**
+    * The size of the bucket an array of a length comes from, the length
+    * rounded up to a quarter of the power of two below it.
+    */
+   private static int capacity(int length)
+   {
+      if (length <= MIN_LENGTH || length > MAX_LENGTH)
+         return length;
+
+      int step = Integer.highestOneBit(length - 1) >> 2;
+      return (length + step - 1) / step * step;
+   }
+}
@@ -1,5 +1,3 @@
-import javax.imageio.ImageIO;
-import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -8,17 +6,30 @@ import java.security.InvalidParameterException;
 /**
  * A class of static methods.
  * Convert image on the machine into a "drawn" stipple art version of it. The
- * methods choose the images based on a file path.  Includes
+ * methods choose the images based on a file path, or take a BufferedImage or
+ * PixelBuffer in memory.  Includes
  * blackFigureOnWhite() which converts to stipple art with black outlined
  * figures, fully black and white. blackFigureAged() which converts to stipple
  * art with black outlined figures, has a slight yellow hue.  whiteFigure()
  * converts to stipple art with white outlined figures. The clean value, cleans
  * up the background, the higher the values the more clean, but less detail on
- * the figures.  Each method has its recommended value.
+ * the figures.  Each method has its recommended value. When trying several
+ * clean values or styles on one image, PlaneCache keeps the GreyScale and
+ * blurred planes so only the last step is redone. The black and white
+ * styles can also be written as 8-bit grey images, see greyStipple().
+ * The file methods taking a width read a large photo at a fraction of its
+ * size when it's wanted smaller, and write it to an output.
+ * The work is done on a LumaPlane, one byte of grey a pixel. The grey
+ * values are blurred before any of them change. The first version blurred
+ * them in place, reading neighbours which were already blurred, which
+ * smeared the outlines towards the bottom right, so its images differ.
  * (WARNING: will ruin non-image files if applied).
  */
 public class ConvertToStipple {
 
+   // The radius of the blur the figures are outlined with.
+   final static int BLUR_RADIUS = 10;
+
    /**
     * Mutates the image input into a black figured image. Named "black
     * figure" based on outline color of the image figures. Clean value > 2
@@ -30,69 +41,114 @@ public class ConvertToStipple {
    public static void blackFigureOnWhite
    (File imageFile, String fileType, int clean) throws IllegalArgumentException
    {
-      // Check if the clean value is valid
-      if (clean < 1 || clean > 10)
-         throw new IllegalArgumentException("input value for clean is " +
-                 "invalid, choose a value between 1 to 10. " +
-                 "Values > 2 recommended");
-
+      blackFigureOnWhite(imageFile, fileType, clean, BlurMode.SEPARABLE);
+   }
 
+   /**
+    * Mutates the image input into a black figured image, blurring with the
+    * given mode. Clean value > 2 recommended.
+    *
+    * @param imageFile        A file path for the image.
+    * @param fileType         The type of image file.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    */
+   public static void blackFigureOnWhite
+   (File imageFile, String fileType, int clean, BlurMode mode)
+   {
       // Initialize the img variable
       BufferedImage img = null;
 
       // Read the image.
       try
       {
-         img = ImageIO.read(imageFile);
+         img = ImageInput.read(imageFile);
       }
       catch (IOException e)
       {
          e.printStackTrace();
       }
 
-      // convert the image data to greyScale, and create one that is G-blurred.
-      img = convertToGreyScale(img);
-      BufferedImage GreyGBlur =
-              gaussianBlur(10, convertToGreyScale(imageFile));
-
-      // Change the image data pixel by pixel.
-      for (int y = 0; y < img.getHeight(); y++)
-      {
-         for (int x = 0; x < img.getWidth(); x++)
-         {
-            // Retrieve the RGB values of the two images.
-            Color greyRGB = new Color(img.getRGB(x, y));
-            Color GreyGBlurRGB = new Color(GreyGBlur.getRGB(x, y));
-
-            // Subtract the pixels add a value to the right side to clean up the
-            // image and convert to black figure.
-            int alpha = (GreyGBlurRGB.getAlpha()) - (greyRGB.getAlpha() + clean);
-            int red = (GreyGBlurRGB.getRed()) - (greyRGB.getRed() + clean);
-            int green = (GreyGBlurRGB.getGreen()) - (greyRGB.getGreen() + clean);
-            int blue = (GreyGBlurRGB.getBlue()) - (greyRGB.getBlue() + clean);
-
-            // Convert the values into a single RBG value.
-            int RGB = (alpha << 24) | (red << 16) | (green << 8) | blue;
-
-            // Set the RGB data of the pixel.
-            img.setRGB(x, y, RGB);
-         }
-      }
-
-      // Remove the Yellow in the image "clean"
-      img = convertToGreyScale(img);
+      // Convert the image.
+      img = blackFigureOnWhite(img, clean, mode);
 
       // Change the image file data.
       try
       {
-         File file = new File(imageFile.getAbsolutePath());
-         ImageIO.write(img, fileType, file);
-      } catch (IOException e)
+         new ImageOutput(fileType).write(img, imageFile);
+      }
+      catch (IOException e)
       {
          e.printStackTrace();
       }
    }
 
+   /**
+    * Converts the image input into a black figured image, written at a
+    * width to an output. A file wider than the width is decoded at a
+    * fraction of its size and the blur radius is scaled down to match.
+    * Clean value > 2 recommended.
+    *
+    * @param imageFile        A file path for the image.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    * @param width            The width of the image written, the height
+    *                         keeps the aspect ratio.
+    * @param output           Where and how the image is written, to a file
+    *                         other than the image file.
+    */
+   public static void blackFigureOnWhite
+   (File imageFile, int clean, BlurMode mode, int width,
+    ImageOutput output)
+   {
+      stipple(imageFile, StippleMode.BLACK_FIGURE_ON_WHITE, clean, mode,
+              width, output);
+   }
+
+   /**
+    * Converts an image in memory into a black figured image. Clean value > 2
+    * recommended.
+    *
+    * @param img              The image, its pixels are replaced.
+    * @param clean            How much of the background is cleaned up.
+    * @return                 Returns the converted image.
+    */
+   public static BufferedImage blackFigureOnWhite(BufferedImage img, int clean)
+   {
+      return blackFigureOnWhite(img, clean, BlurMode.SEPARABLE);
+   }
+
+   /**
+    * Converts an image in memory into a black figured image, blurring with
+    * the given mode. Clean value > 2 recommended.
+    *
+    * @param img              The image, its pixels are replaced.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    * @return                 Returns the converted image.
+    */
+   public static BufferedImage blackFigureOnWhite
+   (BufferedImage img, int clean, BlurMode mode)
+   {
+      return stipple(img, StippleMode.BLACK_FIGURE_ON_WHITE, clean, mode,
+              BLUR_RADIUS);
+   }
+
+   /**
+    * Converts the pixels in a PixelBuffer into a black figured image,
+    * blurring with the given mode. Clean value > 2 recommended.
+    *
+    * @param buffer           The pixels, they are left unchanged.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    * @return                 Returns a new buffer of the converted pixels.
+    */
+   public static PixelBuffer blackFigureOnWhite
+   (PixelBuffer buffer, int clean, BlurMode mode)
+   {
+      return stipple(buffer, StippleMode.BLACK_FIGURE_ON_WHITE, clean, mode);
+   }
+
    /**
     * Mutates the image input into a black figured image. Named "black
     * figure" based on outline color of the image figures. Has a yellowish white
@@ -104,65 +160,120 @@ public class ConvertToStipple {
    public static void blackFigureOnYellowishWhite
    (File imageFile, String fileType, int clean)
    {
-      // Check if the clean value is valid.
-      if (clean < 1 || clean > 10)
-         throw new IllegalArgumentException("input value for clean is " +
-                 "invalid, choose a value between 1 to 10. " +
-                 "Values > 6 recommended");
+      blackFigureOnYellowishWhite(imageFile, fileType, clean,
+              BlurMode.SEPARABLE);
+   }
 
+   /**
+    * Mutates the image input into a black figured image with a yellowish
+    * white background, blurring with the given mode. Clean value > 6
+    * recommended.
+    *
+    * @param imageFile        A file path for the image.
+    * @param fileType         The type of image file.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    */
+   public static void blackFigureOnYellowishWhite
+   (File imageFile, String fileType, int clean, BlurMode mode)
+   {
       // Initialize the img variable
       BufferedImage img = null;
 
       // Read the image.
       try
       {
-         img = ImageIO.read(imageFile);
+         img = ImageInput.read(imageFile);
       }
       catch (IOException e)
       {
          e.printStackTrace();
       }
 
-      // convert the image data to greyScale, and create one that is G-blurred.
-      img = convertToGreyScale(img);
-      BufferedImage GreyGBlur =
-              gaussianBlur(10, convertToGreyScale(imageFile));
-
-      // Change the image data pixel by pixel.
-      for (int y = 0; y < img.getHeight(); y++)
-      {
-         for (int x = 0; x < img.getWidth(); x++)
-         {
-            // Retrieve the RGB values of the two images.
-            Color greyRGB = new Color(img.getRGB(x, y));
-            Color GreyGBlurRGB = new Color(GreyGBlur.getRGB(x, y));
-
-            // Subtract the pixels add an int to the right side to clean up the
-            // image and convert to black figure.
-            int alpha = (GreyGBlurRGB.getAlpha()) - (greyRGB.getAlpha() + clean);
-            int red = (GreyGBlurRGB.getRed()) - (greyRGB.getRed() + clean);
-            int green = (GreyGBlurRGB.getGreen()) - (greyRGB.getGreen() + clean);
-            int blue = (GreyGBlurRGB.getBlue()) - (greyRGB.getBlue() + clean);
-
-            // Convert the values into a single RBG value.
-            int RGB = (alpha << 24) | (red << 16) | (green << 8) | blue;
-
-            // Set the RGB data of the pixel.
-            img.setRGB(x, y, RGB);
-         }
-      }
+      // Convert the image.
+      img = blackFigureOnYellowishWhite(img, clean, mode);
 
       // Change the image file data.
       try
       {
-         File file = new File(imageFile.getAbsolutePath());
-         ImageIO.write(img, fileType, file);
-      } catch (IOException e)
+         new ImageOutput(fileType).write(img, imageFile);
+      }
+      catch (IOException e)
       {
          e.printStackTrace();
       }
    }
 
+   /**
+    * Converts the image input into a black figured image with a yellowish
+    * white background, written at a width to an output. A file wider than
+    * the width is decoded at a fraction of its size and the blur radius is
+    * scaled down to match. Clean value > 6 recommended.
+    *
+    * @param imageFile        A file path for the image.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    * @param width            The width of the image written, the height
+    *                         keeps the aspect ratio.
+    * @param output           Where and how the image is written, to a file
+    *                         other than the image file.
+    */
+   public static void blackFigureOnYellowishWhite
+   (File imageFile, int clean, BlurMode mode, int width,
+    ImageOutput output)
+   {
+      stipple(imageFile, StippleMode.BLACK_FIGURE_ON_YELLOWISH_WHITE, clean,
+              mode, width, output);
+   }
+
+   /**
+    * Converts an image in memory into a black figured image with a yellowish
+    * white background. Clean value > 6 recommended.
+    *
+    * @param img              The image, its pixels are replaced.
+    * @param clean            How much of the background is cleaned up.
+    * @return                 Returns the converted image.
+    */
+   public static BufferedImage blackFigureOnYellowishWhite
+   (BufferedImage img, int clean)
+   {
+      return blackFigureOnYellowishWhite(img, clean, BlurMode.SEPARABLE);
+   }
+
+   /**
+    * Converts an image in memory into a black figured image with a yellowish
+    * white background, blurring with the given mode. Clean value > 6
+    * recommended.
+    *
+    * @param img              The image, its pixels are replaced.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    * @return                 Returns the converted image.
+    */
+   public static BufferedImage blackFigureOnYellowishWhite
+   (BufferedImage img, int clean, BlurMode mode)
+   {
+      return stipple(img, StippleMode.BLACK_FIGURE_ON_YELLOWISH_WHITE, clean,
+              mode, BLUR_RADIUS);
+   }
+
+   /**
+    * Converts the pixels in a PixelBuffer into a black figured image with a
+    * yellowish white background, blurring with the given mode. Clean value
+    * > 6 recommended.
+    *
+    * @param buffer           The pixels, they are left unchanged.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    * @return                 Returns a new buffer of the converted pixels.
+    */
+   public static PixelBuffer blackFigureOnYellowishWhite
+   (PixelBuffer buffer, int clean, BlurMode mode)
+   {
+      return stipple(buffer, StippleMode.BLACK_FIGURE_ON_YELLOWISH_WHITE, clean,
+              mode);
+   }
+
    /**
     * Mutates the image input into a white figured image. Named "white
     * figure" based on outline color of the image figures. Clean value > 3
@@ -173,230 +284,335 @@ public class ConvertToStipple {
     */
    public static void whiteFigure(File imageFile, String fileType, int clean)
    {
-      // Check if clean argument is valid.
-      if (clean < 3 || clean > 10)
-         throw new IllegalArgumentException("input value for clean is " +
-                 "invalid, choose a value between 1 to 10. " +
-                 "Values > 3 recommended");
+      whiteFigure(imageFile, fileType, clean, BlurMode.SEPARABLE);
+   }
 
+   /**
+    * Mutates the image input into a white figured image, blurring with the
+    * given mode. Clean value > 3 recommended.
+    *
+    * @param imageFile        A file path for the image.
+    * @param fileType         The type of image file.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    */
+   public static void whiteFigure
+   (File imageFile, String fileType, int clean, BlurMode mode)
+   {
       // Initialize the img variable.
       BufferedImage img = null;
 
       // Read the image.
       try
       {
-         img = ImageIO.read(imageFile);
+         img = ImageInput.read(imageFile);
       }
       catch (IOException e)
       {
          e.printStackTrace();
       }
 
-      // convert the image data to greyScale, and create one that is G-blurred.
-      img = convertToGreyScale(img);
-      BufferedImage GreyGBlur =
-              gaussianBlur(10, convertToGreyScale(imageFile));
-
-      // Change the image data pixel by pixel.
-      for (int y = 0; y < img.getHeight(); y++)
-      {
-         for (int x = 0; x < img.getWidth(); x++)
-         {
-            // Retrieve the RGB values of the two images.
-            Color greyRGB = new Color(img.getRGB(x, y));
-            Color GreyGBlurRGB = new Color(GreyGBlur.getRGB(x, y));
-
-            // Subtract the pixels add ten to the left side to clean up the
-            // image and convert to white figure.
-            int alpha = (GreyGBlurRGB.getAlpha() + clean) - (greyRGB.getAlpha());
-            int red = (GreyGBlurRGB.getRed() + clean) - (greyRGB.getRed());
-            int green = (GreyGBlurRGB.getGreen() + clean) - (greyRGB.getGreen());
-            int blue = (GreyGBlurRGB.getBlue() + clean) - (greyRGB.getBlue());
-
-            // Convert the values into a single RBG value.
-            int RGB = (alpha << 24) | (red << 16) | (green << 8) | blue;
-
-            // Set the RGB data of the pixel.
-            img.setRGB(x, y, RGB);
-         }
-      }
-
-      // Remove the Yellow in the image "clean"
-      img = convertToGreyScale(img);
+      // Convert the image.
+      img = whiteFigure(img, clean, mode);
 
       // Change the image file data.
       try
       {
-         File file = new File(imageFile.getAbsolutePath());
-         ImageIO.write(img, fileType, file);
-      } catch (IOException e)
+         new ImageOutput(fileType).write(img, imageFile);
+      }
+      catch (IOException e)
       {
          e.printStackTrace();
       }
    }
 
    /**
-    * A private helper method that applies Gaussian blur to a BufferedImage.
-    * The larger the radius the stronger the blur.
+    * Converts the image input into a white figured image, written at a
+    * width to an output. A file wider than the width is decoded at a
+    * fraction of its size and the blur radius is scaled down to match.
+    * Clean value > 3 recommended.
+    *
+    * @param imageFile        A file path for the image.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    * @param width            The width of the image written, the height
+    *                         keeps the aspect ratio.
+    * @param output           Where and how the image is written, to a file
+    *                         other than the image file.
+    */
+   public static void whiteFigure
+   (File imageFile, int clean, BlurMode mode, int width,
+    ImageOutput output)
+   {
+      stipple(imageFile, StippleMode.WHITE_FIGURE, clean, mode, width,
+              output);
+   }
+
+   /**
+    * Converts an image in memory into a white figured image. Clean value > 3
+    * recommended.
     *
-    * @param radius        The radius of the gaussian kernel.
-    * @param img           The BufferedImage to be processed.
-    * @return              Returned a Gaussian Blurred BufferedImage.
+    * @param img              The image, its pixels are replaced.
+    * @param clean            How much of the background is cleaned up.
+    * @return                 Returns the converted image.
     */
-   private static BufferedImage gaussianBlur(int radius, BufferedImage img)
+   public static BufferedImage whiteFigure(BufferedImage img, int clean)
    {
-      BufferedImage inputImg = img;
-      BufferedImage result = img;
+      return whiteFigure(img, clean, BlurMode.SEPARABLE);
+   }
 
-      // Set the sigma value and kernel width based on the radius input.
-      double sigma = Math.max(radius / 2, 1);
-      int kernelWidth = (2 * radius) + 1;
+   /**
+    * Converts an image in memory into a white figured image, blurring with
+    * the given mode. Clean value > 3 recommended.
+    *
+    * @param img              The image, its pixels are replaced.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    * @return                 Returns the converted image.
+    */
+   public static BufferedImage whiteFigure
+   (BufferedImage img, int clean, BlurMode mode)
+   {
+      return stipple(img, StippleMode.WHITE_FIGURE, clean, mode,
+              BLUR_RADIUS);
+   }
 
-      // Initialize the 2D array which is the kernel.
-      double[][] kernel = new double[kernelWidth][kernelWidth];
-      double sum = 0;
+   /**
+    * Converts the pixels in a PixelBuffer into a white figured image,
+    * blurring with the given mode. Clean value > 3 recommended.
+    *
+    * @param buffer           The pixels, they are left unchanged.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    * @return                 Returns a new buffer of the converted pixels.
+    */
+   public static PixelBuffer whiteFigure
+   (PixelBuffer buffer, int clean, BlurMode mode)
+   {
+      return stipple(buffer, StippleMode.WHITE_FIGURE, clean, mode);
+   }
 
-      // Populate the kernel with the respective Gaussian distribution values.
-      // The x and y values are how far they are from the center
-      for (int y = -radius; y <= radius; y++)
+   /**
+    * Converts an image in memory into one of the black and white stipple
+    * art styles, as an 8-bit grey image. Written as PNG it's an 8-bit grey
+    * PNG, a quarter of the size of the pixels in memory.
+    *
+    * @param img              The image, it's left unchanged.
+    * @param stippleMode      The style, BLACK_FIGURE_ON_WHITE or
+    *                         WHITE_FIGURE.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    * @return                 Returns a new TYPE_BYTE_GRAY image.
+    */
+   public static BufferedImage greyStipple
+   (BufferedImage img, StippleMode stippleMode, int clean, BlurMode mode)
+   {
+      int width = img.getWidth();
+      int height = img.getHeight();
+      int[] pixels = BufferPool.ints(width * height);
+      byte[] grey = BufferPool.bytes(width * height);
+      try
       {
-         for (int x = -radius; x <= radius; x++)
-         {
-            // Use the gaussian equation.
-            double exponentNumerator = -(x * x + y * y);
-            double exponentDenominator = (2 * sigma * sigma);
-
-            double eExpression =
-                    Math.pow(Math.E, exponentNumerator / exponentDenominator);
-            double kernelValue = (eExpression / (2 * Math.PI * sigma * sigma));
-
-            // Set the cell the to kernel value.
-            kernel[x + radius][y + radius] = kernelValue;
-
-            // The sum of all the kernel values, should be close to one.
-            sum += kernelValue;
-         }
+         return stipple(LumaPlane.of(PixelBuffer.of(img, pixels), grey),
+                 stippleMode, clean, mode).toImage();
       }
-
-      // Normalize the kernel, ensuring all values add up to one.
-      for (int y = 0; y < kernelWidth; y++)
+      finally
       {
-         for (int x = 0; x < kernelWidth; x++)
-         {
-            kernel[x][y] /= sum;
-         }
+         BufferPool.release(pixels);
+         BufferPool.release(grey);
       }
+   }
 
-      // Set the new pixel values, ignore the edges.
-      for (int y = radius; y < inputImg.getHeight() - radius; y++)
-      {
-         for (int x = radius; x < inputImg.getWidth() - radius; x++)
-         {
-            Color colorsOfPixel = new Color(inputImg.getRGB(x, y));
-
-            // Initialize the RGB values.
-            double redValue = 0;
-            double greenValue = 0;
-            double blueValue = 0;
-
-            // Find the new RBG values from the kernel.
-            for (int kernelY = -radius; kernelY <= radius; kernelY++)
-            {
-               for (int kernelX = -radius; kernelX <= radius; kernelX++)
-               {
-                  double kernelValue =
-                          kernel[kernelX + radius][kernelY + radius];
-                  Color colors = new Color
-                          (inputImg.getRGB(x - kernelX, y - kernelY));
-
-                  redValue += colors.getRed() * kernelValue;
-                  greenValue += colors.getGreen() * kernelValue;
-                  blueValue += colors.getBlue() * kernelValue;
-               }
-            }
-
-            int RGB = (colorsOfPixel.getAlpha() << 24) |
-                    ((int) redValue << 16) | ( (int) greenValue << 8) |
-                    (int) blueValue;
-
-            result.setRGB(x, y, RGB);
-         }
-      }
+   /**
+    * Converts a grey plane into one of the black and white stipple art
+    * styles.
+    *
+    * @param grey             The grey values, they are left unchanged.
+    * @param stippleMode      The style, BLACK_FIGURE_ON_WHITE or
+    *                         WHITE_FIGURE.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    * @return                 Returns a new plane of the converted values.
+    */
+   public static LumaPlane stipple
+   (LumaPlane grey, StippleMode stippleMode, int clean, BlurMode mode)
+   {
+      // Check if the style is black and white.
+      if (!stippleMode.isGreyScale())
+         throw new IllegalArgumentException("input value for stippleMode " +
+                 "is invalid, choose BLACK_FIGURE_ON_WHITE or WHITE_FIGURE");
 
+      // Check if the clean value is valid.
+      stippleMode.checkClean(clean);
+
+      // G-blur the grey values and subtract each one from its blurred value.
+      LumaPlane result = new LumaPlane(grey.getWidth(), grey.getHeight());
+      GaussianBlur.blur(grey.getValues(), result.getValues(), grey.getWidth(),
+              grey.getHeight(), BLUR_RADIUS, mode, (src, dst, from, to) ->
+                      PixelOps.get().stippleGrey(stippleMode, clean, src, dst,
+                              from, to));
       return result;
    }
 
    /**
-    * A private helper method that converts an image to GreyScale
-    * (black and white) based on a file path.
+    * The stipple engine shared by all of the styles. Converts the pixels to
+    * a grey plane, then blurs it and combines each blurred value with its
+    * grey value in the same pass that writes it.
     *
-    * @param imageFile        The file path to for the image.
-    * @return                 Returns the image as a GreyScale version.
+    * @param buffer           The pixels, they are left unchanged.
+    * @param stippleMode      The style of stipple art.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    * @return                 Returns a new buffer of the converted pixels.
     */
-   private static BufferedImage convertToGreyScale(File imageFile)
+   static PixelBuffer stipple
+   (PixelBuffer buffer, StippleMode stippleMode, int clean, BlurMode mode)
    {
-      BufferedImage result = null;
+      // Check if the clean value is valid.
+      stippleMode.checkClean(clean);
 
-      // Read the contents of the image.
+      PixelBuffer result = new PixelBuffer(buffer.getWidth(),
+              buffer.getHeight());
+      stipple(buffer, result.getPixels(), stippleMode, clean, mode,
+              BLUR_RADIUS);
+      return result;
+   }
+
+   /**
+    * Converts an image on the machine read at a width, blurring with the
+    * radius scaled to the width, and writes it to an output.
+    */
+   private static void stipple(File imageFile, StippleMode stippleMode,
+                               int clean, BlurMode mode, int width,
+                               ImageOutput output)
+   {
+      // Check if the clean value is valid and the image file is kept.
+      stippleMode.checkClean(clean);
+      output.checkKeeps(imageFile);
+
+      // Read the image at the width.
+      ImageInput.Scaled scaled = null;
       try
       {
-         result = ImageIO.read(imageFile);
+         scaled = ImageInput.read(imageFile, width);
       }
       catch (IOException e)
       {
          e.printStackTrace();
       }
 
-      // Loop through each of the pixels.
-      for (int y = 0; y < result.getHeight(); y++)
+      // Convert the image.
+      BufferedImage img = stipple(scaled.image, stippleMode, clean, mode,
+              scaled.radius(BLUR_RADIUS));
+
+      // Write the image to the output.
+      try
       {
-         for (int x = 0; x < result.getWidth(); x++)
-         {
-            // Find the average of each of the colors
-            Color colors = new Color(result.getRGB(x, y));
-            int greyAverage = (colors.getRed() + colors.getBlue() +
-                    colors.getGreen()) / 3;
-
-            // Convert the averages into an RGB value.
-            int RGB = (colors.getAlpha() << 24) | (greyAverage << 16) |
-                    (greyAverage << 8) | greyAverage;
-
-            // Set the RBG value of the individual pixel.
-            result.setRGB(x, y, RGB);
-         }
+         output.write(img, imageFile);
+      }
+      catch (IOException e)
+      {
+         e.printStackTrace();
       }
-      return result;
    }
 
    /**
-    * A private helper method that converts of BufferedImage to GreyScale
-    * (black and white).
-    *
-    * @param image        The BufferedImage to be converted.
-    * @return             Returns a GreyScale version of the argument.
+    * Converts an image in memory, with the pixel arrays taken from the
+    * BufferPool. The pixels read from the image are written over by the
+    * result, they aren't needed once they are converted to grey.
     */
-   private static BufferedImage convertToGreyScale(BufferedImage image)
+   private static BufferedImage stipple
+   (BufferedImage img, StippleMode stippleMode, int clean, BlurMode mode,
+    int radius)
    {
-      BufferedImage result = image;
+      // Check if the clean value is valid.
+      stippleMode.checkClean(clean);
 
-      // Loop through each of the pixels.
-      for (int y = 0; y < result.getHeight(); y++)
+      int[] pixels = BufferPool.ints(img.getWidth() * img.getHeight());
+      try
       {
-         for (int x = 0; x < result.getWidth(); x++)
-         {
-            // Find the average of each of the colors
-            Color colors = new Color(result.getRGB(x, y));
-            int greyAverage = (colors.getRed() + colors.getBlue() +
-                    colors.getGreen()) / 3;
-
-            // Convert the averages into an RGB value.
-            int RGB = (colors.getAlpha() << 24) | (greyAverage << 16) |
-                    (greyAverage << 8) | greyAverage;
-
-            // Set the RBG value of the individual pixel.
-            result.setRGB(x, y, RGB);
-         }
+         PixelBuffer buffer = PixelBuffer.of(img, pixels);
+         stipple(buffer, pixels, stippleMode, clean, mode, radius);
+         buffer.writeTo(img);
       }
-      return result;
+      finally
+      {
+         BufferPool.release(pixels);
+      }
+      return img;
+   }
+
+   /**
+    * Converts the pixels to a grey plane, then blurs it and combines each
+    * blurred value with its grey value into the output in the same pass
+    * that writes it. The output can be the array of the pixels.
+    */
+   private static void stipple(PixelBuffer buffer, int[] output,
+                               StippleMode stippleMode, int clean,
+                               BlurMode mode, int radius)
+   {
+      int width = buffer.getWidth();
+      int height = buffer.getHeight();
+      byte[] grey = BufferPool.bytes(width * height);
+      byte[] blurred = BufferPool.bytes(width * height);
+      try
+      {
+         stipple(buffer, output, grey, blurred, stippleMode, clean, mode,
+                 radius);
+      }
+      finally
+      {
+         BufferPool.release(grey);
+         BufferPool.release(blurred);
+      }
+   }
+
+   /**
+    * Converts the pixels to a grey plane, then blurs it and combines each
+    * blurred value with its grey value into the output, using planes the
+    * caller keeps, like the planes a FrameSequence reuses for each frame.
+    * The output can be the array of the pixels. The clean value isn't
+    * checked.
+    *
+    * @param buffer           The pixels.
+    * @param output           The array the converted pixels are written to,
+    *                         at least width * height long.
+    * @param grey             The array the grey values are written to, at
+    *                         least width * height long.
+    * @param blurred          The array the blurred values are written to,
+    *                         at least width * height long.
+    * @param stippleMode      The style of stipple art.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    */
+   static void stipple(PixelBuffer buffer, int[] output, byte[] grey,
+                       byte[] blurred, StippleMode stippleMode, int clean,
+                       BlurMode mode)
+   {
+      stipple(buffer, output, grey, blurred, stippleMode, clean, mode,
+              BLUR_RADIUS);
+   }
+
+   /**
+    * Converts the pixels like the method above, blurring with a radius
+    * other than BLUR_RADIUS, like the radius scaled down for an image read
+    * smaller than its file.
+    */
+   private static void stipple(PixelBuffer buffer, int[] output,
+                               byte[] grey, byte[] blurred,
+                               StippleMode stippleMode, int clean,
+                               BlurMode mode, int radius)
+   {
+      int width = buffer.getWidth();
+      int height = buffer.getHeight();
+
+      // convert the image data to greyScale.
+      LumaPlane.of(buffer, grey);
+
+      // G-blur the grey values and subtract each one from its blurred
+      // value.
+      GaussianBlur.blur(grey, blurred, width, height, radius, mode,
+              (src, dst, from, to) -> PixelOps.get().stipple(stippleMode,
+                      clean, src, dst, from, output, from, to - from));
    }
 }
@@ -0,0 +1,400 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Converts a sequence of frames, like the frames of a video dumped as
+ * PNGs, into a stipple art style. Every frame of a sequence has the size of
+ * the first one, so each worker allocates its planes once and reuses them
+ * for every frame it converts: the decoded image, through
+ * ImageReadParam.setDestination(), the pixels read from it and the grey
+ * and blurred planes of the stipple. Several frames are decoded, converted
+ * and encoded at once, but the encoded frames are written in the order of
+ * the sequence, and only so many frames run ahead of the last one written.
+ * The summary counts the frames, so imagesPerSecond() is the frames per
+ * second of the sequence.
+ */
+public final class FrameSequence {
+
+   private final StippleMode stippleMode;
+   private final int clean;
+   private final BlurMode mode;
+   private final ImageOutput output;
+   private final int workers;
+
+   // Told about each frame once it's written, in order, or null.
+   private Consumer<File> listener;
+
+   /**
+    * Creates a sequence converter using every processor.
+    *
+    * @param stippleMode      The stipple art style.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    * @param output           Where and how the frames are written.
+    */
+   public FrameSequence(StippleMode stippleMode, int clean, BlurMode mode,
+                        ImageOutput output)
+   {
+      this(stippleMode, clean, mode, output,
+              Runtime.getRuntime().availableProcessors());
+   }
+
+   /**
+    * Creates a sequence converter.
+    *
+    * @param stippleMode      The stipple art style.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    * @param output           Where and how the frames are written.
+    * @param workers          How many frames are converted at once.
+    */
+   public FrameSequence(StippleMode stippleMode, int clean, BlurMode mode,
+                        ImageOutput output, int workers)
+   {
+      // Check if the clean value is valid.
+      stippleMode.checkClean(clean);
+
+      // Check if the number of workers is valid.
+      if (workers < 1)
+         throw new IllegalArgumentException("input value for workers is " +
+                 "invalid, choose a value of 1 or more");
+
+      this.stippleMode = stippleMode;
+      this.clean = clean;
+      this.mode = mode;
+      this.output = output;
+      this.workers = workers;
+   }
+
+   /**
+    * Tells a listener about each frame once it's written, in the order of
+    * the sequence.
+    *
+    * @param listener         Takes the file the frame was read from, or
+    *                         null for no listener.
+    */
+   public void setListener(Consumer<File> listener)
+   {
+      this.listener = listener;
+   }
+
+   /**
+    * Converts the frames in a directory, in the order of their names.
+    * Subdirectories are skipped.
+    *
+    * @param directory        The directory holding the frames.
+    * @return                 Returns the summary of the run.
+    */
+   public BatchSummary run(File directory)
+   {
+      File[] fileArray = directory.listFiles(File::isFile);
+
+      // Check if the directory can be listed.
+      if (fileArray == null)
+         throw new IllegalArgumentException(directory + " is not a directory");
+
+      Arrays.sort(fileArray);
+      return run(Arrays.asList(fileArray));
+   }
+
+   /**
+    * Converts the frames of a sequence. A frame which can't be read or
+    * isn't the size of the first frame is recorded in the summary, the
+    * rest carry on.
+    *
+    * @param frames           The frame files, in order.
+    * @return                 Returns the summary of the run.
+    */
+   public BatchSummary run(List<File> frames)
+   {
+      BatchSummary summary = new BatchSummary();
+      long start = System.nanoTime();
+
+      Dimension size = frames.isEmpty() ? null : sizeOf(frames.get(0));
+      if (size == null)
+      {
+         for (File frame : frames)
+            summary.failed(frame, new IOException("not a readable image"));
+         summary.finished(System.nanoTime() - start);
+         return summary;
+      }
+
+      List<CompletableFuture<Frame>> converted = new ArrayList<>();
+      for (int i = 0; i < frames.size(); i++)
+         converted.add(new CompletableFuture<>());
+
+      // The frames converted but not yet written.
+      Semaphore window = new Semaphore(2 * workers);
+      AtomicInteger nextFrame = new AtomicInteger();
+
+      ExecutorService pool = Executors.newFixedThreadPool(workers);
+      try
+      {
+         for (int i = 0; i < workers; i++)
+         {
+            pool.execute(() -> convert(frames, size, nextFrame, window,
+                    converted));
+         }
+
+         // Write the frames in order as they are converted.
+         for (int i = 0; i < frames.size(); i++)
+         {
+            File source = frames.get(i);
+            try
+            {
+               Frame frame = converted.get(i).get();
+               output.write(frame.encoded, source);
+               summary.succeeded(source, size.width, size.height,
+                       System.nanoTime() - frame.started);
+
+               Consumer<File> listener = this.listener;
+               if (listener != null)
+                  listener.accept(source);
+            }
+            catch (ExecutionException e)
+            {
+               summary.failed(source, e.getCause());
+            }
+            catch (IOException | RuntimeException e)
+            {
+               summary.failed(source, e);
+            }
+            finally
+            {
+               converted.set(i, null);
+               window.release();
+            }
+         }
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+      finally
+      {
+         pool.shutdownNow();
+      }
+
+      summary.finished(System.nanoTime() - start);
+      return summary;
+   }
+
+   /**
+    * A worker, converts frames until there are none left, reusing one set
+    * of planes. If the worker fails, even before its planes are allocated,
+    * its frame and every frame no worker has taken yet fail with it, so
+    * the writer never waits for a frame which won't come.
+    */
+   private void convert(List<File> frames, Dimension size,
+                        AtomicInteger nextFrame, Semaphore window,
+                        List<CompletableFuture<Frame>> converted)
+   {
+      Planes planes = null;
+
+      // The frame being converted, null between frames.
+      CompletableFuture<Frame> claimed = null;
+      try
+      {
+         planes = new Planes(size);
+         while (true)
+         {
+            // Wait until the frame is close enough to the last one written.
+            window.acquire();
+            int i = nextFrame.getAndIncrement();
+            if (i >= frames.size())
+               return;
+
+            claimed = converted.get(i);
+            long started = System.nanoTime();
+            try
+            {
+               claimed.complete(
+                       new Frame(planes.convert(frames.get(i)), started));
+            }
+            catch (IOException | RuntimeException | OutOfMemoryError e)
+            {
+               claimed.completeExceptionally(e);
+            }
+            claimed = null;
+         }
+      }
+      catch (Throwable e)
+      {
+         if (e instanceof InterruptedException)
+            Thread.currentThread().interrupt();
+
+         if (claimed != null)
+            claimed.completeExceptionally(e);
+         for (int i = nextFrame.getAndIncrement(); i < frames.size();
+              i = nextFrame.getAndIncrement())
+            converted.get(i).completeExceptionally(e);
+      }
+      finally
+      {
+         if (planes != null)
+            planes.dispose();
+      }
+   }
+
+   /**
+    * The size of the first frame, or null if it can't be read.
+    */
+   private static Dimension sizeOf(File frame)
+   {
+      try
+      {
+         return ImageInput.dimensions(frame);
+      }
+      catch (IOException e)
+      {
+         return null;
+      }
+   }
+
+   /**
+    * A frame converted and encoded, waiting to be written.
+    */
+   private static final class Frame {
+
+      private final byte[] encoded;
+      private final long started;
+
+      Frame(byte[] encoded, long started)
+      {
+         this.encoded = encoded;
+         this.started = started;
+      }
+   }
+
+   /**
+    * The planes of a worker, allocated for the size of the sequence and
+    * reused for each frame.
+    */
+   private final class Planes {
+
+      private final Dimension size;
+      private final int[] pixels;
+      private final byte[] grey;
+      private final byte[] blurred;
+      private final ByteArrayOutputStream encoded =
+              new ByteArrayOutputStream();
+
+      // The reader of the format of the frames and the image the last
+      // frame was decoded into, null until the first frame.
+      private ImageReader reader;
+      private BufferedImage image;
+
+      Planes(Dimension size)
+      {
+         this.size = size;
+         this.pixels = new int[size.width * size.height];
+         this.grey = new byte[size.width * size.height];
+         this.blurred = new byte[size.width * size.height];
+      }
+
+      /**
+       * Decodes, converts and encodes a frame.
+       */
+      byte[] convert(File frame) throws IOException
+      {
+         BufferedImage img = decode(frame);
+
+         // Check if the frame has the size of the sequence.
+         if (img.getWidth() != size.width || img.getHeight() != size.height)
+            throw new IllegalArgumentException("the frame is " +
+                    img.getWidth() + "x" + img.getHeight() + ", the " +
+                    "sequence is " + size.width + "x" + size.height);
+         image = img;
+
+         // Convert the frame, writing the result over the decoded image.
+         PixelBuffer buffer = PixelBuffer.of(img, pixels);
+         ConvertToStipple.stipple(buffer, pixels, grey, blurred, stippleMode,
+                 clean, mode);
+         buffer.writeTo(img);
+
+         encoded.reset();
+         output.write(img, encoded);
+         return encoded.toByteArray();
+      }
+
+      /**
+       * Decodes a frame into the image of the last frame when the reader
+       * can decode it into that type of image.
+       */
+      private BufferedImage decode(File frame) throws IOException
+      {
+         try (StageTimer timer = StageTimer.start(Stage.DECODE,
+                 (long) size.width * size.height, frame);
+              ImageInputStream in = ImageIO.createImageInputStream(frame))
+         {
+            if (in == null)
+               throw new IOException("can't read " + frame);
+
+            if (reader == null)
+            {
+               Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+               if (!readers.hasNext())
+                  throw new IOException("not a readable image");
+               reader = readers.next();
+            }
+
+            reader.setInput(in, true, true);
+            ImageReadParam param = reader.getDefaultReadParam();
+            if (canDecodeInto(image))
+               param.setDestination(image);
+            return reader.read(0, param);
+         }
+         finally
+         {
+            if (reader != null)
+               reader.setInput(null);
+         }
+      }
+
+      /**
+       * Checks if the reader can decode the frame it's reading into an
+       * image, which it can when the image has one of its types and the
+       * size of the frame.
+       */
+      private boolean canDecodeInto(BufferedImage img) throws IOException
+      {
+         if (img == null || img.getType() == BufferedImage.TYPE_CUSTOM ||
+                 reader.getWidth(0) != img.getWidth() ||
+                 reader.getHeight(0) != img.getHeight())
+            return false;
+
+         for (Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+              types.hasNext(); )
+         {
+            if (types.next().getBufferedImageType() == img.getType())
+               return true;
+         }
+         return false;
+      }
+
+      void dispose()
+      {
+         if (reader != null)
+            reader.dispose();
+      }
+   }
+}
@@ -0,0 +1,934 @@
+import java.util.Arrays;
+
+/**
+ * A class of static methods. The Gaussian blur engine shared by ImageFilters
+ * and ConvertToStipple. Works on packed ARGB pixels (the format returned by
+ * BufferedImage.getRGB()), or on the one channel of a LumaPlane for grey
+ * images, and can blur any band of rows on its own, reading the rows around
+ * the band as a halo. Like the original 2D kernel, pixels within the radius
+ * of the border are left unchanged and every blurred pixel is fully opaque.
+ * A plane blurs to exactly the blue channel of its grey pixels blurred.
+ */
+final class GaussianBlur {
+
+   // The minimum number of rows the box mode blurs at a time.
+   private final static int BOX_BAND_HEIGHT = 256;
+
+   // The fixed point fraction bits the box mode keeps between passes.
+   private final static int BOX_SHIFT = 8;
+
+   // The fraction bits the fixed point mode keeps between its passes.
+   private final static int FIXED_ROW_SHIFT = 8;
+
+   private GaussianBlur() {}
+
+   /**
+    * Blurs a whole image, in parallel bands.
+    *
+    * @param src           The pixels to be blurred.
+    * @param dst           The buffer the blurred pixels are written to, the
+    *                      same size as src.
+    * @param radius        The radius of the gaussian kernel.
+    * @param mode          How the blur is computed.
+    */
+   static void blur(PixelBuffer src, PixelBuffer dst, int radius,
+                    BlurMode mode)
+   {
+      blur(src.getPixels(), dst.getPixels(), src.getWidth(), src.getHeight(),
+              radius, mode);
+   }
+
+   /**
+    * Blurs a whole image, in parallel bands.
+    *
+    * @param src           The packed ARGB pixels to be blurred.
+    * @param dst           The array the blurred pixels are written to.
+    * @param width         The width of the image.
+    * @param height        The height of the image.
+    * @param radius        The radius of the gaussian kernel.
+    * @param mode          How the blur is computed.
+    */
+   static void blur(int[] src, int[] dst, int width, int height, int radius,
+                    BlurMode mode)
+   {
+      blur(src, dst, width, height, radius, mode, null);
+   }
+
+   /**
+    * Blurs a whole image in parallel bands, combining each blurred pixel
+    * with its source pixel as it is written.
+    *
+    * @param src           The packed ARGB pixels to be blurred.
+    * @param dst           The array the combined pixels are written to.
+    * @param width         The width of the image.
+    * @param height        The height of the image.
+    * @param radius        The radius of the gaussian kernel.
+    * @param mode          How the blur is computed.
+    * @param combiner      Combines the pixels, null keeps the blurred pixel.
+    */
+   static void blur(int[] src, int[] dst, int width, int height, int radius,
+                    BlurMode mode, Combiner combiner)
+   {
+      parallelBlur(src, dst, width, height, radius, mode, 0, height,
+              combiner);
+   }
+
+   /**
+    * Blurs the rows fromRow (inclusive) to toRow (exclusive) of an image in
+    * parallel bands, combining each blurred pixel with its source pixel as
+    * it is written.
+    *
+    * @param src           The packed ARGB pixels to be blurred.
+    * @param dst           The array the combined pixels are written to.
+    * @param width         The width of the image.
+    * @param height        The height of the image.
+    * @param radius        The radius of the gaussian kernel.
+    * @param mode          How the blur is computed.
+    * @param fromRow       The first row to be written.
+    * @param toRow         The row after the last row to be written.
+    * @param combiner      Combines the pixels, null keeps the blurred pixel.
+    */
+   static void parallelBlur(int[] src, int[] dst, int width, int height,
+                            int radius, BlurMode mode, int fromRow, int toRow,
+                            Combiner combiner)
+   {
+      // Blur bands of rows in parallel, big enough that reading the halo of
+      // each band is cheap.
+      int minRows = 8 * halo(radius, mode);
+      try (StageTimer timer = StageTimer.start(Stage.BLUR,
+              (long) (toRow - fromRow) * width))
+      {
+         TileExecutor.forEachBand(width, toRow - fromRow, minRows,
+                 (from, to) -> blur(src, dst, width, height, radius, mode,
+                         fromRow + from, fromRow + to, combiner));
+      }
+   }
+
+   /**
+    * Blurs the rows fromRow (inclusive) to toRow (exclusive) of an image. Each
+    * pixel only depends on the source, so blurring an image in any number of
+    * bands gives exactly the same result as blurring it all at once.
+    *
+    * @param src           The packed ARGB pixels to be blurred.
+    * @param dst           The array the blurred pixels are written to.
+    * @param width         The width of the image.
+    * @param height        The height of the image.
+    * @param radius        The radius of the gaussian kernel.
+    * @param mode          How the blur is computed.
+    * @param fromRow       The first row to be written.
+    * @param toRow         The row after the last row to be written.
+    */
+   static void blur(int[] src, int[] dst, int width, int height, int radius,
+                    BlurMode mode, int fromRow, int toRow)
+   {
+      blur(src, dst, width, height, radius, mode, fromRow, toRow, null);
+   }
+
+   /**
+    * Blurs the rows fromRow (inclusive) to toRow (exclusive) of an image,
+    * combining each blurred pixel with its source pixel as each row is
+    * written.
+    *
+    * @param src           The packed ARGB pixels to be blurred.
+    * @param dst           The array the combined pixels are written to.
+    * @param width         The width of the image.
+    * @param height        The height of the image.
+    * @param radius        The radius of the gaussian kernel.
+    * @param mode          How the blur is computed.
+    * @param fromRow       The first row to be written.
+    * @param toRow         The row after the last row to be written.
+    * @param combiner      Combines the pixels, null keeps the blurred pixel.
+    */
+   static void blur(int[] src, int[] dst, int width, int height, int radius,
+                    BlurMode mode, int fromRow, int toRow, Combiner combiner)
+   {
+      // Check if the radius is valid.
+      if (radius < 0)
+         throw new IllegalArgumentException("input value for radius is " +
+                 "invalid, choose a value of 0 or more");
+
+      // Copy the band, leaving the border pixels unchanged.
+      System.arraycopy(src, fromRow * width, dst, fromRow * width,
+              (toRow - fromRow) * width);
+
+      // Find the rows of the band which are not part of the border.
+      int top = Math.max(fromRow, radius);
+      int bottom = Math.min(toRow, height - radius);
+
+      // Nothing to blur if the band is all border.
+      if (top >= bottom || radius >= width - radius)
+      {
+         combineRows(src, dst, width, fromRow, toRow, combiner);
+         return;
+      }
+
+      // The border rows are already finished.
+      combineRows(src, dst, width, fromRow, top, combiner);
+      combineRows(src, dst, width, bottom, toRow, combiner);
+
+      // A radius of 0 is a kernel of one weight, narrower than any box.
+      if (mode == BlurMode.BOX && radius > 0)
+      {
+         // Box blur the band in pieces to keep the planes small.
+         int bandHeight = Math.max(BOX_BAND_HEIGHT, 4 * halo(radius, mode));
+         for (int y = top; y < bottom; y += bandHeight)
+         {
+            boxBlur(src, dst, width, height, radius, y,
+                    Math.min(bottom, y + bandHeight), combiner);
+         }
+      }
+      else if (mode == BlurMode.FIXED_POINT)
+      {
+         fixedPointBlur(src, dst, width, radius, top, bottom, combiner);
+      }
+      else
+      {
+         separableBlur(src, dst, width, radius, top, bottom, combiner);
+      }
+   }
+
+   /**
+    * Combines each pixel of a blurred image with its source pixel, as the
+    * last step of the pass which writes it.
+    */
+   @FunctionalInterface
+   interface Combiner {
+
+      /**
+       * Finds the output pixel.
+       *
+       * @param source        The packed source pixel.
+       * @param blurred       The packed blurred pixel.
+       * @return              Returns the packed output pixel.
+       */
+      int combine(int source, int blurred);
+
+      /**
+       * Combines the pixels from (inclusive) to (exclusive) of the blurred
+       * image with the source, one pixel at a time unless overridden.
+       *
+       * @param src           The packed source pixels.
+       * @param dst           The packed blurred pixels, they are replaced.
+       * @param from          The index of the first pixel.
+       * @param to            The index after the last pixel.
+       */
+      default void combine(int[] src, int[] dst, int from, int to)
+      {
+         for (int i = from; i < to; i++)
+            dst[i] = combine(src[i], dst[i]);
+      }
+   }
+
+   /**
+    * The number of rows above and below a band that are read to blur it.
+    *
+    * @param radius        The radius of the gaussian kernel.
+    * @param mode          How the blur is computed.
+    * @return              Returns the height of the halo.
+    */
+   static int halo(int radius, BlurMode mode)
+   {
+      if (mode != BlurMode.BOX || radius == 0)
+         return radius;
+
+      // The stacked boxes can reach past the radius.
+      int reach = 0;
+      for (int boxRadius : Kernel.of(radius).boxRadii)
+         reach += boxRadius;
+      return Math.max(radius, reach);
+   }
+
+   /**
+    * Blurs the rows top to bottom with a horizontal then a vertical pass of
+    * the 1D kernel. The horizontally blurred rows are kept in a ring that
+    * holds just enough rows for the vertical pass.
+    */
+   private static void separableBlur(int[] src, int[] dst, int width,
+                                     int radius, int top, int bottom,
+                                     Combiner combiner)
+   {
+      double[] kernel = Kernel.of(radius).weights;
+      int kernelWidth = kernel.length;
+      int length = width - 2 * radius;
+      PixelOps ops = PixelOps.get();
+
+      // The ring of horizontally blurred rows, row y is in slot
+      // y % kernelWidth.
+      double[] red = new double[kernelWidth * width];
+      double[] green = new double[kernelWidth * width];
+      double[] blue = new double[kernelWidth * width];
+
+      // The channels of the row being blurred horizontally.
+      double[] rowRed = new double[width];
+      double[] rowGreen = new double[width];
+      double[] rowBlue = new double[width];
+
+      // The vertical sums of the row being written.
+      double[] redSum = new double[width];
+      double[] greenSum = new double[width];
+      double[] blueSum = new double[width];
+
+      // Fill the ring with the rows above the first row.
+      for (int y = top - radius; y < top + radius; y++)
+      {
+         horizontalPass(ops, src, y, width, kernel, rowRed, rowGreen,
+                 rowBlue, red, green, blue);
+      }
+
+      for (int y = top; y < bottom; y++)
+      {
+         // Add the row below to the ring.
+         horizontalPass(ops, src, y + radius, width, kernel, rowRed,
+                 rowGreen, rowBlue, red, green, blue);
+
+         Arrays.fill(redSum, 0);
+         Arrays.fill(greenSum, 0);
+         Arrays.fill(blueSum, 0);
+
+         // Sum the rows of the ring with the kernel.
+         for (int kernelY = 0; kernelY < kernelWidth; kernelY++)
+         {
+            double kernelValue = kernel[kernelY];
+            int slot = ((y - radius + kernelY) % kernelWidth) * width;
+
+            ops.accumulate(redSum, radius, red, slot + radius, kernelValue,
+                    length);
+            ops.accumulate(greenSum, radius, green, slot + radius,
+                    kernelValue, length);
+            ops.accumulate(blueSum, radius, blue, slot + radius, kernelValue,
+                    length);
+         }
+
+         // Set the new pixel values, ignore the edges.
+         int offset = y * width;
+         for (int x = radius; x < width - radius; x++)
+         {
+            dst[offset + x] = 0xFF000000 | ((int) redSum[x] << 16) |
+                    ((int) greenSum[x] << 8) | (int) blueSum[x];
+         }
+         combineRows(src, dst, width, y, y + 1, combiner);
+      }
+   }
+
+   /**
+    * Blurs a row of the source with the kernel and stores it in its slot of
+    * the ring.
+    */
+   private static void horizontalPass(PixelOps ops, int[] src, int y,
+                                      int width, double[] kernel,
+                                      double[] rowRed, double[] rowGreen,
+                                      double[] rowBlue, double[] red,
+                                      double[] green, double[] blue)
+   {
+      int kernelWidth = kernel.length;
+      int radius = kernelWidth / 2;
+      int length = width - 2 * radius;
+
+      // Split the row into its channels.
+      int offset = y * width;
+      for (int x = 0; x < width; x++)
+      {
+         int pixel = src[offset + x];
+         rowRed[x] = (pixel >> 16) & 0xFF;
+         rowGreen[x] = (pixel >> 8) & 0xFF;
+         rowBlue[x] = pixel & 0xFF;
+      }
+
+      int slot = (y % kernelWidth) * width + radius;
+      ops.convolve(rowRed, 0, kernel, red, slot, length);
+      ops.convolve(rowGreen, 0, kernel, green, slot, length);
+      ops.convolve(rowBlue, 0, kernel, blue, slot, length);
+   }
+
+   /**
+    * Blurs the rows top to bottom like separableBlur() but with the fixed
+    * point weights and int sums. The horizontal pass keeps FIXED_ROW_SHIFT
+    * fraction bits, and the result is rounded and clamped to 0 to 255.
+    */
+   private static void fixedPointBlur(int[] src, int[] dst, int width,
+                                      int radius, int top, int bottom,
+                                      Combiner combiner)
+   {
+      int[] kernel = Kernel.of(radius).fixedWeights;
+      int kernelWidth = kernel.length;
+      int length = width - 2 * radius;
+      PixelOps ops = PixelOps.get();
+
+      // The vertical sums have the fraction bits of both passes.
+      int shift = Kernel.FIXED_SHIFT + FIXED_ROW_SHIFT;
+      int half = 1 << (shift - 1);
+
+      // The ring of horizontally blurred rows, row y is in slot
+      // y % kernelWidth.
+      int[] red = new int[kernelWidth * width];
+      int[] green = new int[kernelWidth * width];
+      int[] blue = new int[kernelWidth * width];
+
+      // The channels of the row being blurred horizontally.
+      int[] rowRed = new int[width];
+      int[] rowGreen = new int[width];
+      int[] rowBlue = new int[width];
+
+      // The vertical sums of the row being written.
+      int[] redSum = new int[width];
+      int[] greenSum = new int[width];
+      int[] blueSum = new int[width];
+
+      // Fill the ring with the rows above the first row.
+      for (int y = top - radius; y < top + radius; y++)
+      {
+         fixedPointHorizontalPass(ops, src, y, width, kernel, rowRed,
+                 rowGreen, rowBlue, red, green, blue);
+      }
+
+      for (int y = top; y < bottom; y++)
+      {
+         // Add the row below to the ring.
+         fixedPointHorizontalPass(ops, src, y + radius, width, kernel, rowRed,
+                 rowGreen, rowBlue, red, green, blue);
+
+         Arrays.fill(redSum, half);
+         Arrays.fill(greenSum, half);
+         Arrays.fill(blueSum, half);
+
+         // Sum the rows of the ring with the kernel.
+         for (int kernelY = 0; kernelY < kernelWidth; kernelY++)
+         {
+            int kernelValue = kernel[kernelY];
+            int slot = ((y - radius + kernelY) % kernelWidth) * width;
+
+            ops.accumulate(redSum, radius, red, slot + radius, kernelValue,
+                    length);
+            ops.accumulate(greenSum, radius, green, slot + radius,
+                    kernelValue, length);
+            ops.accumulate(blueSum, radius, blue, slot + radius, kernelValue,
+                    length);
+         }
+
+         // Set the new pixel values, ignore the edges.
+         int offset = y * width;
+         for (int x = radius; x < width - radius; x++)
+         {
+            int redValue = Math.min(255, redSum[x] >> shift);
+            int greenValue = Math.min(255, greenSum[x] >> shift);
+            int blueValue = Math.min(255, blueSum[x] >> shift);
+
+            dst[offset + x] = 0xFF000000 | (redValue << 16) |
+                    (greenValue << 8) | blueValue;
+         }
+         combineRows(src, dst, width, y, y + 1, combiner);
+      }
+   }
+
+   /**
+    * Blurs a row of the source with the fixed point kernel and stores it in
+    * its slot of the ring, rounded to FIXED_ROW_SHIFT fraction bits.
+    */
+   private static void fixedPointHorizontalPass(PixelOps ops, int[] src,
+                                                int y, int width,
+                                                int[] kernel, int[] rowRed,
+                                                int[] rowGreen, int[] rowBlue,
+                                                int[] red, int[] green,
+                                                int[] blue)
+   {
+      int kernelWidth = kernel.length;
+      int radius = kernelWidth / 2;
+      int length = width - 2 * radius;
+      int shift = Kernel.FIXED_SHIFT - FIXED_ROW_SHIFT;
+
+      // Split the row into its channels.
+      int offset = y * width;
+      for (int x = 0; x < width; x++)
+      {
+         int pixel = src[offset + x];
+         rowRed[x] = (pixel >> 16) & 0xFF;
+         rowGreen[x] = (pixel >> 8) & 0xFF;
+         rowBlue[x] = pixel & 0xFF;
+      }
+
+      int slot = (y % kernelWidth) * width + radius;
+      ops.convolve(rowRed, 0, kernel, red, slot, length, shift);
+      ops.convolve(rowGreen, 0, kernel, green, slot, length, shift);
+      ops.convolve(rowBlue, 0, kernel, blue, slot, length, shift);
+   }
+
+   /**
+    * Blurs the rows top to bottom with stacked box blurs. The sums are exact
+    * integers, so the result doesn't depend on where the band starts.
+    */
+   private static void boxBlur(int[] src, int[] dst, int width, int height,
+                               int radius, int top, int bottom,
+                               Combiner combiner)
+   {
+      int[] boxRadii = Kernel.of(radius).boxRadii;
+      int reach = halo(radius, BlurMode.BOX);
+
+      // The rows read to blur the band.
+      int firstRow = Math.max(0, top - reach);
+      int lastRow = Math.min(height, bottom + reach);
+      int rows = lastRow - firstRow;
+
+      int[][] planes = new int[3][rows * width];
+      int[] scratch = new int[rows * width];
+
+      // Split the rows into fixed point channels.
+      for (int i = 0; i < rows * width; i++)
+      {
+         int pixel = src[firstRow * width + i];
+         planes[0][i] = ((pixel >> 16) & 0xFF) << BOX_SHIFT;
+         planes[1][i] = ((pixel >> 8) & 0xFF) << BOX_SHIFT;
+         planes[2][i] = (pixel & 0xFF) << BOX_SHIFT;
+      }
+
+      for (int c = 0; c < 3; c++)
+      {
+         int[] plane = planes[c];
+
+         // The horizontal boxes, row by row.
+         for (int boxRadius : boxRadii)
+         {
+            for (int y = 0; y < rows; y++)
+               boxRow(plane, scratch, y * width, width, boxRadius);
+
+            int[] swap = plane;
+            plane = scratch;
+            scratch = swap;
+         }
+
+         // The vertical boxes, only the columns which are written.
+         for (int boxRadius : boxRadii)
+         {
+            boxColumns(plane, scratch, width, rows, radius, width - radius,
+                    boxRadius);
+
+            int[] swap = plane;
+            plane = scratch;
+            scratch = swap;
+         }
+
+         planes[c] = plane;
+      }
+
+      // Set the new pixel values, ignore the edges.
+      int half = 1 << (BOX_SHIFT - 1);
+      for (int y = top; y < bottom; y++)
+      {
+         int i = (y - firstRow) * width;
+         int offset = y * width;
+
+         for (int x = radius; x < width - radius; x++)
+         {
+            int red = Math.min(255, (planes[0][i + x] + half) >> BOX_SHIFT);
+            int green = Math.min(255, (planes[1][i + x] + half) >> BOX_SHIFT);
+            int blue = Math.min(255, (planes[2][i + x] + half) >> BOX_SHIFT);
+
+            dst[offset + x] = 0xFF000000 | (red << 16) | (green << 8) | blue;
+         }
+         combineRows(src, dst, width, y, y + 1, combiner);
+      }
+   }
+
+   /**
+    * A box blur of one row using a running sum, the edges are extended.
+    */
+   private static void boxRow(int[] in, int[] out, int offset, int length,
+                              int boxRadius)
+   {
+      int boxWidth = (2 * boxRadius) + 1;
+      long sum = 0;
+
+      for (int i = -boxRadius; i <= boxRadius; i++)
+         sum += in[offset + clamp(i, length)];
+
+      for (int i = 0; i < length; i++)
+      {
+         out[offset + i] = (int) ((sum + boxWidth / 2) / boxWidth);
+         sum += in[offset + clamp(i + boxRadius + 1, length)] -
+                 in[offset + clamp(i - boxRadius, length)];
+      }
+   }
+
+   /**
+    * A box blur of the columns left to right using a running sum for each
+    * column, the edges are extended. Walks the rows in order so the memory is
+    * read sequentially.
+    */
+   private static void boxColumns(int[] in, int[] out, int width, int rows,
+                                  int left, int right, int boxRadius)
+   {
+      int boxWidth = (2 * boxRadius) + 1;
+      long[] sums = new long[width];
+
+      for (int i = -boxRadius; i <= boxRadius; i++)
+      {
+         int row = clamp(i, rows) * width;
+         for (int x = left; x < right; x++)
+            sums[x] += in[row + x];
+      }
+
+      for (int y = 0; y < rows; y++)
+      {
+         int offset = y * width;
+         int added = clamp(y + boxRadius + 1, rows) * width;
+         int removed = clamp(y - boxRadius, rows) * width;
+
+         for (int x = left; x < right; x++)
+         {
+            out[offset + x] = (int) ((sums[x] + boxWidth / 2) / boxWidth);
+            sums[x] += in[added + x] - in[removed + x];
+         }
+      }
+   }
+
+   /**
+    * Blurs a whole grey plane, in parallel bands.
+    *
+    * @param src           The plane to be blurred.
+    * @param dst           The plane the blurred values are written to, the
+    *                      same size as src.
+    * @param radius        The radius of the gaussian kernel.
+    * @param mode          How the blur is computed.
+    */
+   static void blur(LumaPlane src, LumaPlane dst, int radius, BlurMode mode)
+   {
+      blur(src.getValues(), dst.getValues(), src.getWidth(), src.getHeight(),
+              radius, mode, null);
+   }
+
+   /**
+    * Blurs a whole grey plane in parallel bands, combining each blurred
+    * value with its source value as it is written.
+    *
+    * @param src           The grey values to be blurred.
+    * @param dst           The array the blurred values are written to.
+    * @param width         The width of the image.
+    * @param height        The height of the image.
+    * @param radius        The radius of the gaussian kernel.
+    * @param mode          How the blur is computed.
+    * @param combiner      Combines the values, null keeps the blurred value.
+    */
+   static void blur(byte[] src, byte[] dst, int width, int height,
+                    int radius, BlurMode mode, PlaneCombiner combiner)
+   {
+      // Blur bands of rows in parallel, big enough that reading the halo of
+      // each band is cheap.
+      int minRows = 8 * halo(radius, mode);
+      try (StageTimer timer = StageTimer.start(Stage.BLUR,
+              (long) width * height))
+      {
+         TileExecutor.forEachBand(width, height, minRows,
+                 (from, to) -> blur(src, dst, width, height, radius, mode,
+                         from, to, combiner));
+      }
+   }
+
+   /**
+    * Blurs the rows fromRow (inclusive) to toRow (exclusive) of a grey
+    * plane, combining each blurred value with its source value as each row
+    * is written.
+    *
+    * @param src           The grey values to be blurred.
+    * @param dst           The array the combined values are written to.
+    * @param width         The width of the image.
+    * @param height        The height of the image.
+    * @param radius        The radius of the gaussian kernel.
+    * @param mode          How the blur is computed.
+    * @param fromRow       The first row to be written.
+    * @param toRow         The row after the last row to be written.
+    * @param combiner      Combines the values, null keeps the blurred value.
+    */
+   static void blur(byte[] src, byte[] dst, int width, int height,
+                    int radius, BlurMode mode, int fromRow, int toRow,
+                    PlaneCombiner combiner)
+   {
+      // Check if the radius is valid.
+      if (radius < 0)
+         throw new IllegalArgumentException("input value for radius is " +
+                 "invalid, choose a value of 0 or more");
+
+      // Copy the band, leaving the border values unchanged.
+      System.arraycopy(src, fromRow * width, dst, fromRow * width,
+              (toRow - fromRow) * width);
+
+      // Find the rows of the band which are not part of the border.
+      int top = Math.max(fromRow, radius);
+      int bottom = Math.min(toRow, height - radius);
+
+      // Nothing to blur if the band is all border.
+      if (top >= bottom || radius >= width - radius)
+      {
+         combinePlaneRows(src, dst, width, fromRow, toRow, combiner);
+         return;
+      }
+
+      // The border rows are already finished.
+      combinePlaneRows(src, dst, width, fromRow, top, combiner);
+      combinePlaneRows(src, dst, width, bottom, toRow, combiner);
+
+      // A radius of 0 is a kernel of one weight, narrower than any box.
+      if (mode == BlurMode.BOX && radius > 0)
+      {
+         // Box blur the band in pieces to keep the plane small.
+         int bandHeight = Math.max(BOX_BAND_HEIGHT, 4 * halo(radius, mode));
+         for (int y = top; y < bottom; y += bandHeight)
+         {
+            boxPlaneBlur(src, dst, width, height, radius, y,
+                    Math.min(bottom, y + bandHeight), combiner);
+         }
+      }
+      else if (mode == BlurMode.FIXED_POINT)
+      {
+         fixedPointPlaneBlur(src, dst, width, radius, top, bottom, combiner);
+      }
+      else
+      {
+         separablePlaneBlur(src, dst, width, radius, top, bottom, combiner);
+      }
+   }
+
+   /**
+    * Combines each value of a blurred grey plane with its source value, as
+    * the last step of the pass which writes it.
+    */
+   @FunctionalInterface
+   interface PlaneCombiner {
+
+      /**
+       * Combines the values from (inclusive) to (exclusive) of the blurred
+       * plane with the source.
+       *
+       * @param src           The source grey values.
+       * @param dst           The blurred grey values.
+       * @param from          The index of the first value.
+       * @param to            The index after the last value.
+       */
+      void combine(byte[] src, byte[] dst, int from, int to);
+   }
+
+   /**
+    * separableBlur() for the one channel of a grey plane.
+    */
+   private static void separablePlaneBlur(byte[] src, byte[] dst, int width,
+                                          int radius, int top, int bottom,
+                                          PlaneCombiner combiner)
+   {
+      double[] kernel = Kernel.of(radius).weights;
+      int kernelWidth = kernel.length;
+      int length = width - 2 * radius;
+      PixelOps ops = PixelOps.get();
+
+      // The ring of horizontally blurred rows, row y is in slot
+      // y % kernelWidth.
+      double[] ring = new double[kernelWidth * width];
+
+      // The row being blurred horizontally, and the vertical sums of the
+      // row being written.
+      double[] row = new double[width];
+      double[] sum = new double[width];
+
+      // Fill the ring with the rows above the first row.
+      for (int y = top - radius; y < top + radius; y++)
+         planeHorizontalPass(ops, src, y, width, kernel, row, ring);
+
+      for (int y = top; y < bottom; y++)
+      {
+         // Add the row below to the ring.
+         planeHorizontalPass(ops, src, y + radius, width, kernel, row, ring);
+
+         Arrays.fill(sum, 0);
+
+         // Sum the rows of the ring with the kernel.
+         for (int kernelY = 0; kernelY < kernelWidth; kernelY++)
+         {
+            int slot = ((y - radius + kernelY) % kernelWidth) * width;
+            ops.accumulate(sum, radius, ring, slot + radius, kernel[kernelY],
+                    length);
+         }
+
+         // Set the new values, ignore the edges.
+         int offset = y * width;
+         for (int x = radius; x < width - radius; x++)
+            dst[offset + x] = (byte) (int) sum[x];
+         combinePlaneRows(src, dst, width, y, y + 1, combiner);
+      }
+   }
+
+   /**
+    * Blurs a row of a grey plane with the kernel and stores it in its slot
+    * of the ring.
+    */
+   private static void planeHorizontalPass(PixelOps ops, byte[] src, int y,
+                                           int width, double[] kernel,
+                                           double[] row, double[] ring)
+   {
+      int radius = kernel.length / 2;
+      int offset = y * width;
+      for (int x = 0; x < width; x++)
+         row[x] = src[offset + x] & 0xFF;
+
+      ops.convolve(row, 0, kernel, ring, (y % kernel.length) * width + radius,
+              width - 2 * radius);
+   }
+
+   /**
+    * fixedPointBlur() for the one channel of a grey plane.
+    */
+   private static void fixedPointPlaneBlur(byte[] src, byte[] dst, int width,
+                                           int radius, int top, int bottom,
+                                           PlaneCombiner combiner)
+   {
+      int[] kernel = Kernel.of(radius).fixedWeights;
+      int kernelWidth = kernel.length;
+      int length = width - 2 * radius;
+      PixelOps ops = PixelOps.get();
+
+      // The vertical sums have the fraction bits of both passes.
+      int shift = Kernel.FIXED_SHIFT + FIXED_ROW_SHIFT;
+      int half = 1 << (shift - 1);
+
+      // The ring of horizontally blurred rows, row y is in slot
+      // y % kernelWidth.
+      int[] ring = new int[kernelWidth * width];
+
+      // The row being blurred horizontally, and the vertical sums of the
+      // row being written.
+      int[] row = new int[width];
+      int[] sum = new int[width];
+
+      // Fill the ring with the rows above the first row.
+      for (int y = top - radius; y < top + radius; y++)
+         fixedPointPlaneHorizontalPass(ops, src, y, width, kernel, row, ring);
+
+      for (int y = top; y < bottom; y++)
+      {
+         // Add the row below to the ring.
+         fixedPointPlaneHorizontalPass(ops, src, y + radius, width, kernel,
+                 row, ring);
+
+         Arrays.fill(sum, half);
+
+         // Sum the rows of the ring with the kernel.
+         for (int kernelY = 0; kernelY < kernelWidth; kernelY++)
+         {
+            int slot = ((y - radius + kernelY) % kernelWidth) * width;
+            ops.accumulate(sum, radius, ring, slot + radius, kernel[kernelY],
+                    length);
+         }
+
+         // Set the new values, ignore the edges.
+         int offset = y * width;
+         for (int x = radius; x < width - radius; x++)
+            dst[offset + x] = (byte) Math.min(255, sum[x] >> shift);
+         combinePlaneRows(src, dst, width, y, y + 1, combiner);
+      }
+   }
+
+   /**
+    * Blurs a row of a grey plane with the fixed point kernel and stores it
+    * in its slot of the ring, rounded to FIXED_ROW_SHIFT fraction bits.
+    */
+   private static void fixedPointPlaneHorizontalPass(PixelOps ops,
+                                                     byte[] src, int y,
+                                                     int width, int[] kernel,
+                                                     int[] row, int[] ring)
+   {
+      int radius = kernel.length / 2;
+      int offset = y * width;
+      for (int x = 0; x < width; x++)
+         row[x] = src[offset + x] & 0xFF;
+
+      ops.convolve(row, 0, kernel, ring, (y % kernel.length) * width + radius,
+              width - 2 * radius, Kernel.FIXED_SHIFT - FIXED_ROW_SHIFT);
+   }
+
+   /**
+    * boxBlur() for the one channel of a grey plane.
+    */
+   private static void boxPlaneBlur(byte[] src, byte[] dst, int width,
+                                    int height, int radius, int top,
+                                    int bottom, PlaneCombiner combiner)
+   {
+      int[] boxRadii = Kernel.of(radius).boxRadii;
+      int reach = halo(radius, BlurMode.BOX);
+
+      // The rows read to blur the band.
+      int firstRow = Math.max(0, top - reach);
+      int lastRow = Math.min(height, bottom + reach);
+      int rows = lastRow - firstRow;
+
+      int[] plane = new int[rows * width];
+      int[] scratch = new int[rows * width];
+
+      // Convert the rows to fixed point.
+      for (int i = 0; i < rows * width; i++)
+         plane[i] = (src[firstRow * width + i] & 0xFF) << BOX_SHIFT;
+
+      // The horizontal boxes, row by row.
+      for (int boxRadius : boxRadii)
+      {
+         for (int y = 0; y < rows; y++)
+            boxRow(plane, scratch, y * width, width, boxRadius);
+
+         int[] swap = plane;
+         plane = scratch;
+         scratch = swap;
+      }
+
+      // The vertical boxes, only the columns which are written.
+      for (int boxRadius : boxRadii)
+      {
+         boxColumns(plane, scratch, width, rows, radius, width - radius,
+                 boxRadius);
+
+         int[] swap = plane;
+         plane = scratch;
+         scratch = swap;
+      }
+
+      // Set the new values, ignore the edges.
+      int half = 1 << (BOX_SHIFT - 1);
+      for (int y = top; y < bottom; y++)
+      {
+         int i = (y - firstRow) * width;
+         int offset = y * width;
+
+         for (int x = radius; x < width - radius; x++)
+         {
+            dst[offset + x] = (byte) Math.min(255,
+                    (plane[i + x] + half) >> BOX_SHIFT);
+         }
+         combinePlaneRows(src, dst, width, y, y + 1, combiner);
+      }
+   }
+
+   /**
+    * Combines the finished rows fromRow to toRow of a grey plane with the
+    * source, while they are still in the cache.
+    */
+   private static void combinePlaneRows(byte[] src, byte[] dst, int width,
+                                        int fromRow, int toRow,
+                                        PlaneCombiner combiner)
+   {
+      if (combiner != null && fromRow < toRow)
+         combiner.combine(src, dst, fromRow * width, toRow * width);
+   }
+
+   /**
+    * Combines the finished rows fromRow to toRow with the source, while they
+    * are still in the cache.
+    */
+   private static void combineRows(int[] src, int[] dst, int width,
+                                   int fromRow, int toRow, Combiner combiner)
+   {
+      if (combiner != null)
+         combiner.combine(src, dst, fromRow * width, toRow * width);
+   }
+
+   /**
+    * Clamps an index to the range 0 to length - 1.
+    */
+   private static int clamp(int i, int length)
+   {
+      return Math.max(0, Math.min(length - 1, i));
+   }
+}
@@ -0,0 +1,448 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Watches a directory other programs drop images into and filters each new
+ * or changed image as it arrives, instead of listing and filtering the
+ * whole directory again. A file still being written keeps changing, so a
+ * file is only filtered once its size and modification time have stayed
+ * the same for a quiet period. The images ready at once are filtered
+ * together by a BatchProcessor, while the watch carries on. The results
+ * go to an output directory other than the watched one, so writing them
+ * doesn't look like new images arriving. Images already in the directory
+ * when the watch starts are filtered unless their output is newer than
+ * they are.
+ *
+ * <p>The latency of each image, from the first sign of its file to its
+ * output being written, and the backlog of images waiting or being
+ * filtered are kept as metrics, see toJson().
+ */
+public final class HotFolder implements AutoCloseable {
+
+   /**
+    * How long a file must stay unchanged before it's filtered unless
+    * another period is given.
+    */
+   public final static long DEFAULT_QUIET_MILLIS = 500;
+
+   // The latencies kept for the percentiles.
+   private final static int LATENCIES = 1024;
+
+   private final Path directory;
+   private final BatchProcessor batch;
+   private final long quietNanos;
+
+   private final WatchService watcher;
+   private final ExecutorService watch = Executors.newSingleThreadExecutor();
+   private final ExecutorService process =
+           Executors.newSingleThreadExecutor();
+
+   // The files seen but not yet steady.
+   private final Map<Path, Pending> pending = new ConcurrentHashMap<>();
+
+   // When each file handed to the batch processor was first seen.
+   private final Map<Path, Long> arrived = new ConcurrentHashMap<>();
+
+   // Told about the summary of each batch, or null.
+   private volatile Consumer<BatchSummary> listener;
+
+   // The metrics, guarded by this.
+   private long processed;
+   private long failed;
+   private long latencyTotalNanos;
+   private long latencyMaxNanos;
+   private final long[] latencies = new long[LATENCIES];
+
+   /**
+    * Creates a watch waiting DEFAULT_QUIET_MILLIS for files to settle.
+    *
+    * @param directory        The directory images are dropped into.
+    * @param filter           The filter applied to each image.
+    * @param output           Where and how the images are written, into a
+    *                         directory other than the watched one.
+    * @throws IOException     If the directory can't be watched.
+    */
+   public HotFolder(File directory, UnaryOperator<BufferedImage> filter,
+                    ImageOutput output) throws IOException
+   {
+      this(directory, filter, output, DEFAULT_QUIET_MILLIS);
+   }
+
+   /**
+    * Creates a watch.
+    *
+    * @param directory        The directory images are dropped into.
+    * @param filter           The filter applied to each image.
+    * @param output           Where and how the images are written, into a
+    *                         directory other than the watched one.
+    * @param quietMillis      How long a file must stay unchanged before
+    *                         it's filtered.
+    * @throws IOException     If the directory can't be watched.
+    */
+   public HotFolder(File directory, UnaryOperator<BufferedImage> filter,
+                    ImageOutput output, long quietMillis) throws IOException
+   {
+      // Check if the directories are valid.
+      if (!directory.isDirectory())
+         throw new IllegalArgumentException(directory + " is not a directory");
+      if (output.getDirectory() == null || output.getDirectory()
+              .getCanonicalFile().equals(directory.getCanonicalFile()))
+         throw new IllegalArgumentException("input value for output is " +
+                 "invalid, choose an output directory other than " +
+                 directory);
+
+      // Check if the quiet period is valid.
+      if (quietMillis < 0)
+         throw new IllegalArgumentException("input value for quietMillis " +
+                 "is invalid, choose a value of 0 or more");
+
+      this.directory = directory.toPath().toAbsolutePath();
+      this.batch = new BatchProcessor(filter, output);
+      this.quietNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis);
+      batch.setWrittenListener(this::written);
+
+      this.watcher = FileSystems.getDefault().newWatchService();
+      this.directory.register(watcher,
+              StandardWatchEventKinds.ENTRY_CREATE,
+              StandardWatchEventKinds.ENTRY_MODIFY);
+   }
+
+   /**
+    * Limits the memory of the images being filtered at once.
+    *
+    * @param budget           The budget, or null for no limit.
+    */
+   public void setMemoryBudget(MemoryBudget budget)
+   {
+      batch.setMemoryBudget(budget);
+   }
+
+   /**
+    * Tells a listener about the summary of each batch of images, on the
+    * thread which filtered them.
+    *
+    * @param listener         Takes the summary, or null for no listener.
+    */
+   public void setListener(Consumer<BatchSummary> listener)
+   {
+      this.listener = listener;
+   }
+
+   /**
+    * Starts watching, first filtering the images already in the directory
+    * whose output isn't newer than they are.
+    */
+   public void start()
+   {
+      watch.execute(this::watch);
+   }
+
+   /**
+    * Stops watching, waiting for the images being filtered.
+    *
+    * @throws IOException     If the watch can't be closed.
+    */
+   @Override
+   public void close() throws IOException
+   {
+      watcher.close();
+      watch.shutdown();
+      process.shutdown();
+      try
+      {
+         watch.awaitTermination(1, TimeUnit.MINUTES);
+         process.awaitTermination(1, TimeUnit.MINUTES);
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * The images seen but not yet written: settling, waiting to be
+    * filtered or being filtered.
+    *
+    * @return                 Returns the backlog.
+    */
+   public int getBacklog()
+   {
+      int settling = 0;
+      for (Path path : pending.keySet())
+      {
+         if (!arrived.containsKey(path))
+            settling++;
+      }
+      return settling + arrived.size();
+   }
+
+   public synchronized long getProcessed()
+   {
+      return processed;
+   }
+
+   public synchronized long getFailed()
+   {
+      return failed;
+   }
+
+   /**
+    * The metrics as one JSON object: the backlog, the images processed and
+    * failed, and the mean, median, 95th percentile and slowest latency in
+    * seconds. The percentiles are of the last images processed.
+    *
+    * @return                 Returns the JSON text.
+    */
+   public synchronized String toJson()
+   {
+      int kept = (int) Math.min(processed, LATENCIES);
+      long[] sorted = Arrays.copyOf(latencies, kept);
+      Arrays.sort(sorted);
+
+      return String.format(Locale.ROOT, "{\"backlog\":%d,\"processed\":%d," +
+                      "\"failed\":%d,\"latencySeconds\":{\"mean\":%.6f," +
+                      "\"p50\":%.6f,\"p95\":%.6f,\"max\":%.6f}}",
+              getBacklog(), processed, failed,
+              processed == 0 ? 0 : latencyTotalNanos / 1e9 / processed,
+              percentile(sorted, 0.5) / 1e9, percentile(sorted, 0.95) / 1e9,
+              latencyMaxNanos / 1e9);
+   }
+
+   @Override
+   public String toString()
+   {
+      return toJson();
+   }
+
+   /**
+    * The watch thread, notes each file which changes and hands the files
+    * which have settled to the batch processor.
+    */
+   private void watch()
+   {
+      scanExisting();
+
+      // Check the files settling a few times in each quiet period.
+      long pollMillis = Math.max(10,
+              TimeUnit.NANOSECONDS.toMillis(quietNanos) / 4);
+      try
+      {
+         while (true)
+         {
+            WatchKey key = watcher.poll(pollMillis, TimeUnit.MILLISECONDS);
+            if (key != null)
+            {
+               for (WatchEvent<?> event : key.pollEvents())
+               {
+                  // Events were lost, so look at every file again.
+                  if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                     rescan();
+                  else
+                     noteChanged(directory.resolve((Path) event.context()));
+               }
+               key.reset();
+            }
+            submitSettled();
+         }
+      }
+      catch (ClosedWatchServiceException e)
+      {
+         // The watch was closed.
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * Notes the images already in the directory which have no output newer
+    * than them.
+    */
+   private void scanExisting()
+   {
+      File[] files = directory.toFile().listFiles(File::isFile);
+      if (files == null)
+         return;
+
+      Arrays.sort(files);
+      ImageOutput output = batch.getOutput();
+      for (File file : files)
+      {
+         File target = output.target(file);
+         if (!target.isFile() || target.lastModified() < file.lastModified())
+            noteChanged(file.toPath());
+      }
+   }
+
+   /**
+    * Notes every file in the directory as changed.
+    */
+   private void rescan()
+   {
+      File[] files = directory.toFile().listFiles(File::isFile);
+      if (files == null)
+         return;
+
+      for (File file : files)
+         noteChanged(file.toPath());
+   }
+
+   /**
+    * Starts or restarts the quiet period of a file.
+    */
+   private void noteChanged(Path path)
+   {
+      // Hidden files are the temporary files of other programs.
+      if (path.getFileName().toString().startsWith("."))
+         return;
+
+      Pending settling = pending.get(path);
+      if (settling == null)
+         pending.put(path, new Pending());
+      else
+         settling.changed();
+   }
+
+   /**
+    * Hands the files which have stayed the same for the quiet period to
+    * the batch processor. A file which changed while it's being filtered
+    * waits for the next batch.
+    */
+   private void submitSettled()
+   {
+      long now = System.nanoTime();
+      List<File> settled = new ArrayList<>();
+      for (Iterator<Map.Entry<Path, Pending>> entries =
+           pending.entrySet().iterator(); entries.hasNext(); )
+      {
+         Map.Entry<Path, Pending> entry = entries.next();
+         Path path = entry.getKey();
+         File file = path.toFile();
+
+         // Drop files which were removed or are directories.
+         if (!file.isFile())
+         {
+            entries.remove();
+            continue;
+         }
+
+         Pending settling = entry.getValue();
+         if (settling.hasSettled(file, now) &&
+                 arrived.putIfAbsent(path, settling.seenNanos) == null)
+         {
+            entries.remove();
+            settled.add(file);
+         }
+      }
+
+      if (!settled.isEmpty())
+         process.execute(() -> filter(settled));
+   }
+
+   /**
+    * The process thread, filters a batch of settled images.
+    */
+   private void filter(List<File> files)
+   {
+      BatchSummary summary = batch.run(files);
+
+      // Whatever wasn't written failed or was skipped.
+      for (File file : files)
+         arrived.remove(file.toPath());
+      synchronized (this)
+      {
+         failed += summary.getFailed();
+      }
+
+      Consumer<BatchSummary> listener = this.listener;
+      if (listener != null)
+         listener.accept(summary);
+   }
+
+   /**
+    * Records the latency of an image once its output is written.
+    */
+   private void written(File source)
+   {
+      Long start = arrived.remove(source.toPath());
+      if (start == null)
+         return;
+
+      long nanos = System.nanoTime() - start;
+      synchronized (this)
+      {
+         latencies[(int) (processed % LATENCIES)] = nanos;
+         processed++;
+         latencyTotalNanos += nanos;
+         latencyMaxNanos = Math.max(latencyMaxNanos, nanos);
+      }
+   }
+
+   /**
+    * The value at a fraction of the sorted values, 0 if there are none.
+    */
+   private static long percentile(long[] sorted, double fraction)
+   {
+      if (sorted.length == 0)
+         return 0;
+      return sorted[(int) Math.ceil(fraction * sorted.length) - 1];
+   }
+
+   /**
+    * The size and modification time a settling file last had, when they
+    * were last seen to change and when the file was first seen.
+    */
+   private final class Pending {
+
+      private final long seenNanos = System.nanoTime();
+      private long length = -1;
+      private long modified = -1;
+      private volatile long changedNanos = seenNanos;
+
+      /**
+       * Restarts the quiet period, the file was written to.
+       */
+      void changed()
+      {
+         changedNanos = System.nanoTime();
+      }
+
+      /**
+       * Checks if the file has stayed the same for the quiet period.
+       */
+      boolean hasSettled(File file, long now)
+      {
+         long newLength = file.length();
+         long newModified = file.lastModified();
+         if (newLength != length || newModified != modified)
+         {
+            length = newLength;
+            modified = newModified;
+            changedNanos = now;
+            return false;
+         }
+         return now - changedNanos >= quietNanos;
+      }
+   }
+}
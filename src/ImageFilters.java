@@ -1,5 +1,3 @@
-import javax.imageio.ImageIO;
-import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -7,12 +5,17 @@ import java.io.IOException;
 /**
  * A class of static methods. Convert images on the machine based on the
  * File path. Image filters include invertColors(), convertToGreyScale(), and
- * gaussianBlur().
+ * gaussianBlur(), which can be computed with any BlurMode. Grey work that
+ * doesn't need four channels can use convertToGreyImage() or
+ * convertToLuminance(), which keep one byte a pixel. Each filter can
+ * also be applied to a BufferedImage or a PixelBuffer in memory, so several
+ * filters can be chained with one read and one write of the file. The file
+ * based filters write the image back in the format it was read in, or at
+ * a smaller width to an output if one is given. The filters of a
+ * BufferedImage take the pixel arrays they need from the BufferPool.
  */
 public class ImageFilters {
 
-   private final static int MAX_RGB = 255;
-
    /**
     * Inverts the Colors of an image in the machine based on a file path.
     *
@@ -25,41 +28,84 @@ public class ImageFilters {
       // Read the contents of the image.
       try
       {
-         img = ImageIO.read(imageFile);
+         img = ImageInput.read(imageFile);
       }
       catch (IOException e)
       {
          e.printStackTrace();
       }
 
-      // Loop through each of the pixels.
-      for (int y = 0; y < img.getHeight(); y++)
+      img = invertColors(img);
+
+      // Change the image file data, in the format it was read in.
+      try
+      {
+         new ImageOutput(ImageOutput.formatOf(imageFile)).write(img,
+                 imageFile);
+      }
+      catch (IOException e)
       {
-         for (int x = 0; x < img.getWidth(); x++)
-         {
-            // Find the integer values of the pixels.
-            Color colors = new Color(img.getRGB(x, y));
-            int alpha = MAX_RGB - colors.getAlpha();
-            int red = MAX_RGB - colors.getRed();
-            int blue = MAX_RGB - colors.getBlue();
-            int green = MAX_RGB - colors.getGreen();
+         e.printStackTrace();
+      }
+   }
 
-            // Convert the integer values into an RGB value.
-            int RGB = (alpha << 24) | (red << 16) | (green << 8) | blue;
+   /**
+    * Inverts the Colors of an image in the machine based on a file path,
+    * written at a width to an output. A file wider than the width is
+    * decoded at a fraction of its size.
+    *
+    * @param imageFile        The file path where the image is located.
+    * @param width            The width of the image written, the height
+    *                         keeps the aspect ratio.
+    * @param output           Where and how the image is written, to a file
+    *                         other than the image file.
+    */
+   public static void invertColors(File imageFile, int width,
+                                   ImageOutput output)
+   {
+      new Pipeline().invertColors().apply(imageFile, width, output);
+   }
 
-            // Set the RBG value of the individual pixel.
-            img.setRGB(x, y, RGB);
-         }
-      }
-      // Change the image file data.
+   /**
+    * Inverts the Colors of an image in memory.
+    *
+    * @param img              The image, its pixels are replaced.
+    * @return                 Returns the inverted image.
+    */
+   public static BufferedImage invertColors(BufferedImage img)
+   {
+      int[] pixels = BufferPool.ints(img.getWidth() * img.getHeight());
       try
       {
-         File file = new File(imageFile.getAbsolutePath());
-         ImageIO.write(img, "png", file);
-      } catch (IOException e)
+         invertColors(PixelBuffer.of(img, pixels)).writeTo(img);
+      }
+      finally
       {
-         e.printStackTrace();
+         BufferPool.release(pixels);
       }
+      return img;
+   }
+
+   /**
+    * Inverts the Colors of the pixels in a PixelBuffer.
+    *
+    * @param buffer           The pixels, they are replaced.
+    * @return                 Returns the inverted buffer.
+    */
+   public static PixelBuffer invertColors(PixelBuffer buffer)
+   {
+      int[] pixels = buffer.getPixels();
+      int width = buffer.getWidth();
+
+      // Loop through each of the pixels, a band of rows at a time.
+      try (StageTimer timer = StageTimer.start(Stage.INVERT,
+              (long) width * buffer.getHeight()))
+      {
+         TileExecutor.forEachBand(width, buffer.getHeight(), 1,
+                 (fromRow, toRow) -> PixelOps.get().invert(pixels, pixels,
+                         fromRow * width, toRow * width));
+      }
+      return buffer;
    }
 
    /**
@@ -74,36 +120,114 @@ public class ImageFilters {
       // Read the contents of the image.
       try
       {
-         img = ImageIO.read(imageFile);
+         img = ImageInput.read(imageFile);
       }
       catch (IOException e)
       {
          e.printStackTrace();
       }
 
-      // Loop through each of the pixels.
-      for (int y = 0; y < img.getHeight(); y++)
+      img = convertToGreyScale(img);
+
+      // Change the image file data, in the format it was read in.
+      try
       {
-         for (int x = 0; x < img.getWidth(); x++)
-         {
-            // Find the average of each of the colors
-            Color colors = new Color(img.getRGB(x, y));
-            int greyAverage = (colors.getRed() + colors.getBlue() +
-                    colors.getGreen()) / 3;
+         new ImageOutput(ImageOutput.formatOf(imageFile)).write(img,
+                 imageFile);
+      }
+      catch (IOException e)
+      {
+         e.printStackTrace();
+      }
+   }
 
-            // Convert the averages into an RGB value.
-            int RGB = (colors.getAlpha() << 24) | (greyAverage << 16) |
-                    (greyAverage << 8) | greyAverage;
+   /**
+    * Converts an image in the machine to GreyScale based on a file path,
+    * written at a width to an output. A file wider than the width is
+    * decoded at a fraction of its size.
+    *
+    * @param imageFile        The filePath where the image is located.
+    * @param width            The width of the image written, the height
+    *                         keeps the aspect ratio.
+    * @param output           Where and how the image is written, to a file
+    *                         other than the image file.
+    */
+   public static void convertToGreyScale(File imageFile, int width,
+                                         ImageOutput output)
+   {
+      new Pipeline().convertToGreyScale().apply(imageFile, width, output);
+   }
 
-            // Set the RBG value of the individual pixel.
-            img.setRGB(x, y, RGB);
-         }
+   /**
+    * Converts an image in memory to GreyScale.
+    *
+    * @param img              The image, its pixels are replaced.
+    * @return                 Returns the GreyScale image.
+    */
+   public static BufferedImage convertToGreyScale(BufferedImage img)
+   {
+      int[] pixels = BufferPool.ints(img.getWidth() * img.getHeight());
+      try
+      {
+         convertToGreyScale(PixelBuffer.of(img, pixels)).writeTo(img);
+      }
+      finally
+      {
+         BufferPool.release(pixels);
+      }
+      return img;
+   }
+
+   /**
+    * Converts the pixels in a PixelBuffer to GreyScale.
+    *
+    * @param buffer           The pixels, they are replaced.
+    * @return                 Returns the GreyScale buffer.
+    */
+   public static PixelBuffer convertToGreyScale(PixelBuffer buffer)
+   {
+      int[] pixels = buffer.getPixels();
+      int width = buffer.getWidth();
+
+      // Loop through each of the pixels, a band of rows at a time.
+      try (StageTimer timer = StageTimer.start(Stage.GREYSCALE,
+              (long) width * buffer.getHeight()))
+      {
+         TileExecutor.forEachBand(width, buffer.getHeight(), 1,
+                 (fromRow, toRow) -> PixelOps.get().grey(pixels, pixels,
+                         fromRow * width, toRow * width));
+      }
+      return buffer;
+   }
+
+   /**
+    * Converts an image in the machine to an 8-bit GreyScale image based on
+    * a file path. The image is written back in the format it was read in
+    * with one byte a pixel, as an 8-bit grey PNG for png files.
+    *
+    * @param imageFile        The filePath where the image is located.
+    */
+   public static void convertToGreyImage(File imageFile)
+   {
+      BufferedImage img = null;
+
+      // Read the contents of the image.
+      try
+      {
+         img = ImageInput.read(imageFile);
       }
-      // Change the image file data.
+      catch (IOException e)
+      {
+         e.printStackTrace();
+      }
+
+      img = convertToGreyImage(img);
+
+      // Change the image file data, in the format it was read in.
       try
       {
-         File file = new File(imageFile.getAbsolutePath());
-         ImageIO.write(img, "png", file);
+         new ImageOutput(ImageOutput.formatOf(imageFile)).write(img,
+                 imageFile);
       }
       catch (IOException e)
       {
@@ -111,6 +235,38 @@ public class ImageFilters {
       }
    }
 
+   /**
+    * Converts an image in memory to an 8-bit GreyScale image, with the same
+    * grey values as convertToGreyScale() gives.
+    *
+    * @param img              The image, it's left unchanged.
+    * @return                 Returns a new TYPE_BYTE_GRAY image.
+    */
+   public static BufferedImage convertToGreyImage(BufferedImage img)
+   {
+      int[] pixels = BufferPool.ints(img.getWidth() * img.getHeight());
+      try
+      {
+         return convertToLuminance(PixelBuffer.of(img, pixels)).toImage();
+      }
+      finally
+      {
+         BufferPool.release(pixels);
+      }
+   }
+
+   /**
+    * Converts the pixels in a PixelBuffer to a plane of their grey values,
+    * a byte a pixel instead of the four of a PixelBuffer.
+    *
+    * @param buffer           The pixels, they are left unchanged.
+    * @return                 Returns a new plane of the grey values.
+    */
+   public static LumaPlane convertToLuminance(PixelBuffer buffer)
+   {
+      return LumaPlane.of(buffer);
+   }
+
    /**
     * Applies Gaussian Blur to an image on the machine based on the file path
     * of the image. The larger the radius, the stronger the blur. Doesn't blur
@@ -121,103 +277,129 @@ public class ImageFilters {
     */
    public static void gaussianBlur(int radius, File imageFile)
    {
-      BufferedImage inputImg = null;
-      BufferedImage outputImg = null;
+      gaussianBlur(radius, imageFile, BlurMode.SEPARABLE);
+   }
+
+   /**
+    * Applies Gaussian Blur to an image on the machine based on the file path
+    * of the image, computed with the given mode. The larger the radius, the
+    * stronger the blur. Doesn't blur the border of the image.
+    *
+    * @param radius           The radius of the Gaussian Kernel.
+    * @param imageFile        The filePath where the image is located.
+    * @param mode             How the blur is computed, BOX is recommended
+    *                         for large radii.
+    */
+   public static void gaussianBlur(int radius, File imageFile, BlurMode mode)
+   {
+      BufferedImage img = null;
 
       // Read the contents of the image.
       try
       {
-         inputImg = ImageIO.read(imageFile);
-         outputImg = ImageIO.read(imageFile);
+         img = ImageInput.read(imageFile);
       }
       catch (IOException e)
       {
          e.printStackTrace();
       }
 
-      // Set the sigma value and kernel width based on the radius input.
-      double sigma = Math.max(radius / 2, 1);
-      int kernelWidth = (2 * radius) + 1;
-
-      // Initialize the 2D array which is the kernel.
-      double[][] kernel = new double[kernelWidth][kernelWidth];
-      double sum = 0;
+      img = gaussianBlur(radius, img, mode);
 
-      // Populate the kernel with the respective Gaussian distribution values.
-      // The x and y values are how far they are from the center
-      for (int y = -radius; y <= radius; y++)
+      // Change the image file data, in the format it was read in.
+      try
       {
-         for (int x = -radius; x <= radius; x++)
-         {
-            // Use the gaussian equation.
-            double exponentNumerator = -(x * x + y * y);
-            double exponentDenominator = (2 * sigma * sigma);
-
-            double eExpression =
-                    Math.pow(Math.E, exponentNumerator / exponentDenominator);
-            double kernelValue = (eExpression / (2 * Math.PI * sigma * sigma));
-
-            // Set the cell the to kernel value.
-            kernel[x + radius][y + radius] = kernelValue;
-
-            // The sum of all the kernel values, should be close to one.
-            sum += kernelValue;
-         }
+         new ImageOutput(ImageOutput.formatOf(imageFile)).write(img,
+                 imageFile);
       }
-
-      // Normalize the kernel, ensuring all values add up to one.
-      for (int y = 0; y < kernelWidth; y++)
+      catch (IOException e)
       {
-         for (int x = 0; x < kernelWidth; x++)
-         {
-            kernel[x][y] /= sum;
-         }
+         e.printStackTrace();
       }
+   }
 
-      // Set the new pixel values, ignore the edges.
-      for (int y = radius; y < inputImg.getHeight() - radius; y++)
-      {
-         for (int x = radius; x < inputImg.getWidth() - radius; x++)
-         {
-            Color colorsOfPixel = new Color(inputImg.getRGB(x, y));
-
-            // Initialize the RGB values.
-            double redValue = 0;
-            double greenValue = 0;
-            double blueValue = 0;
-
-            // Find the new RBG values from the kernel.
-            for (int kernelY = -radius; kernelY <= radius; kernelY++)
-            {
-               for (int kernelX = -radius; kernelX <= radius; kernelX++)
-               {
-                  double kernelValue =
-                          kernel[kernelX + radius][kernelY + radius];
-                  Color colors = new Color
-                          (inputImg.getRGB(x - kernelX, y - kernelY));
-
-                  redValue += colors.getRed() * kernelValue;
-                  greenValue += colors.getGreen() * kernelValue;
-                  blueValue += colors.getBlue() * kernelValue;
-               }
-            }
-
-            int RGB = (colorsOfPixel.getAlpha() << 24) |
-                    ((int) redValue << 16) | ( (int) greenValue << 8) |
-                    (int) blueValue;
+   /**
+    * Applies Gaussian Blur to an image on the machine based on the file path
+    * of the image, written at a width to an output. A file wider than the
+    * width is decoded at a fraction of its size and the radius is scaled
+    * down to match, so the blur looks the same as at the full size.
+    *
+    * @param radius           The radius of the Gaussian Kernel, at the size
+    *                         of the file, up to Pipeline.MAX_RADIUS.
+    * @param imageFile        The filePath where the image is located.
+    * @param mode             How the blur is computed, BOX is recommended
+    *                         for large radii.
+    * @param width            The width of the image written, the height
+    *                         keeps the aspect ratio.
+    * @param output           Where and how the image is written, to a file
+    *                         other than the image file.
+    */
+   public static void gaussianBlur(int radius, File imageFile, BlurMode mode,
+                                   int width, ImageOutput output)
+   {
+      new Pipeline().gaussianBlur(radius, mode).apply(imageFile, width,
+              output);
+   }
 
-            outputImg.setRGB(x, y, RGB);
-         }
-      }
+   /**
+    * Applies Gaussian Blur to an image in memory. Doesn't blur the border of
+    * the image.
+    *
+    * @param radius           The radius of the Gaussian Kernel.
+    * @param img              The image, its pixels are replaced.
+    * @return                 Returns the blurred image.
+    */
+   public static BufferedImage gaussianBlur(int radius, BufferedImage img)
+   {
+      return gaussianBlur(radius, img, BlurMode.SEPARABLE);
+   }
 
-      // Change the image file data.
+   /**
+    * Applies Gaussian Blur to an image in memory, computed with the given
+    * mode. Doesn't blur the border of the image.
+    *
+    * @param radius           The radius of the Gaussian Kernel.
+    * @param img              The image, its pixels are replaced.
+    * @param mode             How the blur is computed.
+    * @return                 Returns the blurred image.
+    */
+   public static BufferedImage gaussianBlur
+   (int radius, BufferedImage img, BlurMode mode)
+   {
+      int width = img.getWidth();
+      int height = img.getHeight();
+      int[] pixels = BufferPool.ints(width * height);
+      int[] blurred = BufferPool.ints(width * height);
       try
       {
-         File file = new File(imageFile.getAbsolutePath());
-         ImageIO.write(outputImg, "png", file);
-      } catch (IOException e)
+         PixelBuffer output = new PixelBuffer(width, height, blurred);
+         GaussianBlur.blur(PixelBuffer.of(img, pixels), output, radius, mode);
+         output.writeTo(img);
+      }
+      finally
       {
-         e.printStackTrace();
+         BufferPool.release(pixels);
+         BufferPool.release(blurred);
       }
+      return img;
+   }
+
+   /**
+    * Applies Gaussian Blur to the pixels in a PixelBuffer, computed with the
+    * given mode. Doesn't blur the border of the image. The blur can't be done
+    * in place, so the result is a new buffer.
+    *
+    * @param radius           The radius of the Gaussian Kernel.
+    * @param buffer           The pixels, they are left unchanged.
+    * @param mode             How the blur is computed.
+    * @return                 Returns a new buffer of the blurred pixels.
+    */
+   public static PixelBuffer gaussianBlur
+   (int radius, PixelBuffer buffer, BlurMode mode)
+   {
+      PixelBuffer output =
+              new PixelBuffer(buffer.getWidth(), buffer.getHeight());
+      GaussianBlur.blur(buffer, output, radius, mode);
+      return output;
    }
 }
@@ -0,0 +1,222 @@
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * A class of static methods. Decodes image files, timing the DECODE stage,
+ * and reads their size from the header without decoding them. An image
+ * wanted smaller than its file is decoded with only every n-th pixel of
+ * every n-th row, so a 6000x4000 photo wanted 1500 pixels wide is held in
+ * 1/16 of the memory and filtered in about 1/16 of the time, then shrunk
+ * to the exact size.
+ */
+final class ImageInput {
+
+   private ImageInput() {}
+
+   /**
+    * Reads an image file.
+    *
+    * @param imageFile        The file path where the image is located.
+    * @return                 Returns the image, or null if no ImageReader
+    *                         can decode the file.
+    * @throws IOException     If the file can't be read.
+    */
+   static BufferedImage read(File imageFile) throws IOException
+   {
+      try (StageTimer timer = StageTimer.start(Stage.DECODE, 0, imageFile))
+      {
+         BufferedImage img = ImageIO.read(imageFile);
+         if (img != null)
+            timer.setPixels((long) img.getWidth() * img.getHeight());
+         return img;
+      }
+   }
+
+   /**
+    * Reads an image file at a width, keeping the aspect ratio. The reader
+    * decodes every n-th pixel of every n-th row, n the largest whole factor
+    * which keeps the image at least the width, and the pixels decoded are
+    * shrunk to the width by averaging. An image no wider than the width is
+    * read as it is.
+    *
+    * @param imageFile        The file path where the image is located.
+    * @param width            The width wanted.
+    * @return                 Returns the image read, or null if no
+    *                         ImageReader can decode the file.
+    * @throws IOException     If the file can't be read.
+    */
+   static Scaled read(File imageFile, int width) throws IOException
+   {
+      // Check if the width is valid.
+      if (width < 1)
+         throw new IllegalArgumentException("input value for width is " +
+                 "invalid, choose a value of 1 or more");
+
+      if (!imageFile.canRead())
+         throw new IIOException("Can't read input file!");
+
+      BufferedImage img;
+      int sourceWidth;
+      int newWidth;
+      int newHeight;
+      try (StageTimer timer = StageTimer.start(Stage.DECODE, 0, imageFile);
+           ImageInputStream in = ImageIO.createImageInputStream(imageFile))
+      {
+         if (in == null)
+            return null;
+
+         Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+         if (!readers.hasNext())
+            return null;
+
+         ImageReader reader = readers.next();
+         try
+         {
+            reader.setInput(in, true, true);
+            sourceWidth = reader.getWidth(0);
+            int sourceHeight = reader.getHeight(0);
+            newWidth = Math.min(width, sourceWidth);
+            newHeight = (int) Math.max(1, Math.round(
+                    (double) sourceHeight * newWidth / sourceWidth));
+
+            // Skip the pixels the image can do without.
+            int factor = Math.min(sourceWidth / newWidth,
+                    sourceHeight / newHeight);
+            ImageReadParam param = reader.getDefaultReadParam();
+            if (factor > 1)
+               param.setSourceSubsampling(factor, factor, 0, 0);
+
+            img = reader.read(0, param);
+            timer.setPixels((long) img.getWidth() * img.getHeight());
+         }
+         finally
+         {
+            reader.dispose();
+         }
+      }
+
+      if (img.getWidth() != newWidth || img.getHeight() != newHeight)
+      {
+         BufferedImage shrunk = new BufferedImage(newWidth, newHeight,
+                 typeOf(img));
+         PixelBuffer.of(img).scaleDown(newWidth, newHeight).writeTo(shrunk);
+         img = shrunk;
+      }
+      return new Scaled(img, sourceWidth);
+   }
+
+   /**
+    * Decodes the bytes of an image file already read into memory.
+    *
+    * @param bytes            The contents of the file.
+    * @param imageFile        The file the bytes were read from.
+    * @return                 Returns the image, or null if no ImageReader
+    *                         can decode the bytes.
+    * @throws IOException     If the bytes can't be decoded.
+    */
+   static BufferedImage read(byte[] bytes, File imageFile) throws IOException
+   {
+      try (StageTimer timer = StageTimer.start(Stage.DECODE, 0, imageFile))
+      {
+         BufferedImage img = ImageIO.read(new ByteArrayInputStream(bytes));
+         if (img != null)
+            timer.setPixels((long) img.getWidth() * img.getHeight());
+         return img;
+      }
+   }
+
+   /**
+    * Reads the width and height of an image from the header of its file,
+    * without decoding the pixels.
+    *
+    * @param imageFile        The file path where the image is located.
+    * @return                 Returns the size, or null if no ImageReader
+    *                         can read the file.
+    * @throws IOException     If the file can't be read.
+    */
+   static Dimension dimensions(File imageFile) throws IOException
+   {
+      try (ImageInputStream in = ImageIO.createImageInputStream(imageFile))
+      {
+         if (in == null)
+            return null;
+
+         Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+         if (!readers.hasNext())
+            return null;
+
+         ImageReader reader = readers.next();
+         try
+         {
+            reader.setInput(in, true, true);
+            return new Dimension(reader.getWidth(0), reader.getHeight(0));
+         }
+         finally
+         {
+            reader.dispose();
+         }
+      }
+   }
+
+   /**
+    * The type of a shrunk image, the type of the image decoded unless its
+    * pixels can't be set to any color, like the pixels of an indexed image.
+    */
+   private static int typeOf(BufferedImage img)
+   {
+      switch (img.getType())
+      {
+         case BufferedImage.TYPE_INT_RGB:
+         case BufferedImage.TYPE_INT_ARGB:
+         case BufferedImage.TYPE_INT_BGR:
+         case BufferedImage.TYPE_3BYTE_BGR:
+         case BufferedImage.TYPE_4BYTE_ABGR:
+         case BufferedImage.TYPE_BYTE_GRAY:
+            return img.getType();
+
+         default:
+            return img.getColorModel().hasAlpha() ?
+                    BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+      }
+   }
+
+   /**
+    * An image read at a width, with the width of the file it was read from.
+    */
+   static final class Scaled {
+
+      final BufferedImage image;
+      final int sourceWidth;
+
+      Scaled(BufferedImage image, int sourceWidth)
+      {
+         this.image = image;
+         this.sourceWidth = sourceWidth;
+      }
+
+      /**
+       * Scales a radius in pixels of the file to the pixels of the image,
+       * so a blur looks the same at the smaller size. A radius which isn't
+       * 0 stays at least 1.
+       *
+       * @param radius        The radius at the size of the file.
+       * @return              Returns the radius at the size of the image.
+       */
+      int radius(int radius)
+      {
+         if (radius == 0)
+            return 0;
+         return Math.max(1, Math.round(
+                 (float) radius * image.getWidth() / sourceWidth));
+      }
+   }
+}
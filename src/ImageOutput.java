@@ -0,0 +1,431 @@
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Where and how filtered images are written. The image is encoded in the
+ * chosen format into a temporary file next to its target, which then
+ * replaces the target in one atomic rename, so a crash or a failed write
+ * never leaves a half written file behind and never touches the source
+ * image. Images are written over their source unless an output directory
+ * is given. The compression can be traded for speed, PNG deflate at its
+ * default level is often slower than the filter itself.
+ */
+public final class ImageOutput {
+
+   /**
+    * The compression quality of a PNG written quickly, deflate level 1. The
+    * file is larger than at the default level but is written several times
+    * faster.
+    */
+   public final static float FAST_PNG = 0.9f;
+
+   // Leaves the compression to the ImageWriter.
+   private final static float WRITER_DEFAULT = -1;
+
+   private final String formatName;
+   private final File directory;
+   private final float quality;
+
+   /**
+    * Creates an output writing each image over its source, compressed the
+    * way the ImageWriter of the format does by default.
+    *
+    * @param formatName       The format the images are written in, like
+    *                         "png" or "jpeg".
+    */
+   public ImageOutput(String formatName)
+   {
+      this(formatName, null, WRITER_DEFAULT);
+   }
+
+   /**
+    * Creates an output writing each image into a directory, compressed the
+    * way the ImageWriter of the format does by default.
+    *
+    * @param formatName       The format the images are written in.
+    * @param directory        The directory the images are written to, it's
+    *                         created if needed. Null writes each image over
+    *                         its source.
+    */
+   public ImageOutput(String formatName, File directory)
+   {
+      this(formatName, directory, WRITER_DEFAULT);
+   }
+
+   /**
+    * Creates an output writing each image into a directory with the given
+    * compression quality. For PNG the quality picks the deflate level, 0 is
+    * the smallest file and 1 is no compression, FAST_PNG is a good trade.
+    * For JPEG it's the image quality.
+    *
+    * @param formatName       The format the images are written in.
+    * @param directory        The directory the images are written to, it's
+    *                         created if needed. Null writes each image over
+    *                         its source.
+    * @param quality          The compression quality, from 0 to 1.
+    */
+   public ImageOutput(String formatName, File directory, float quality)
+   {
+      // Check if the format can be written.
+      if (!ImageIO.getImageWritersByFormatName(formatName).hasNext())
+         throw new IllegalArgumentException("input value for formatName is " +
+                 "invalid, choose one of " +
+                 Arrays.toString(ImageIO.getWriterFormatNames()));
+
+      // Check if the quality is valid.
+      if (quality != WRITER_DEFAULT && !(quality >= 0 && quality <= 1))
+         throw new IllegalArgumentException("input value for quality is " +
+                 "invalid, choose a value from 0 to 1");
+
+      this.formatName = formatName;
+      this.directory = directory;
+      this.quality = quality;
+   }
+
+   /**
+    * The format name of an image file, so it can be written back in the
+    * format it was read in.
+    *
+    * @param imageFile        The file path where the image is located.
+    * @return                 Returns the format name of its ImageReader.
+    * @throws IOException     If the file can't be read or isn't an image.
+    */
+   public static String formatOf(File imageFile) throws IOException
+   {
+      try (ImageInputStream stream = ImageIO.createImageInputStream(imageFile))
+      {
+         if (stream == null)
+            throw new IOException("can't read " + imageFile);
+
+         Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+         if (!readers.hasNext())
+            throw new IOException(imageFile + " is not a supported image");
+
+         ImageReader reader = readers.next();
+         String name = reader.getFormatName();
+         reader.dispose();
+         return name;
+      }
+   }
+
+   /**
+    * The format the images are written in.
+    *
+    * @return                 Returns the format name.
+    */
+   public String getFormatName()
+   {
+      return formatName;
+   }
+
+   /**
+    * The directory the images are written to.
+    *
+    * @return                 Returns the directory, or null if each image
+    *                         is written over its source.
+    */
+   public File getDirectory()
+   {
+      return directory;
+   }
+
+   /**
+    * The file an image is written to. In the output directory it's named
+    * after the source with the suffix of the format.
+    *
+    * @param source           The file the image was read from.
+    * @return                 Returns the file the image is written to.
+    */
+   public File target(File source)
+   {
+      if (directory == null)
+         return source.getAbsoluteFile();
+
+      String name = source.getName();
+      int dot = name.lastIndexOf('.');
+      if (dot > 0)
+         name = name.substring(0, dot);
+
+      return target(name);
+   }
+
+   /**
+    * The file an image of the given name is written to in the output
+    * directory, the name with the suffix of the format.
+    *
+    * @param name             The name of the image, without a suffix.
+    * @return                 Returns the file the image is written to.
+    */
+   public File target(String name)
+   {
+      // Check if there is a directory to write to.
+      if (directory == null)
+         throw new IllegalStateException("the output has no directory, " +
+                 "give one to write images by name");
+
+      String suffix = ImageIO.getImageWritersByFormatName(formatName).next()
+              .getOriginatingProvider().getFileSuffixes()[0];
+      return new File(directory, name + "." + suffix).getAbsoluteFile();
+   }
+
+   /**
+    * Checks if the image read from a source is written to a file of its
+    * own, so the source is kept.
+    *
+    * @param source           The file the image is read from.
+    * @throws IllegalArgumentException If the image would be written over
+    *                         its source.
+    */
+   public void checkKeeps(File source)
+   {
+      // Check if the target is another file than the source.
+      if (target(source).toPath().normalize().equals(
+              source.getAbsoluteFile().toPath().normalize()))
+         throw new IllegalArgumentException("input value for output is " +
+                 "invalid, choose an output directory other than the one " +
+                 "of " + source);
+   }
+
+   /**
+    * Writes an image to the target of its source, through a temporary file
+    * that replaces the target once it's complete.
+    *
+    * @param image            The image.
+    * @param source           The file the image was read from.
+    * @return                 Returns the file the image was written to.
+    * @throws IOException     If the image can't be written.
+    */
+   public File write(RenderedImage image, File source) throws IOException
+   {
+      try (StageTimer timer = StageTimer.start(Stage.ENCODE,
+              (long) image.getWidth() * image.getHeight(), source))
+      {
+         return replaceTarget(target(source),
+                 temp -> encode(image, temp.toFile()));
+      }
+   }
+
+   /**
+    * Writes an image of the given name into the output directory, through a
+    * temporary file that replaces the target once it's complete.
+    *
+    * @param image            The image.
+    * @param name             The name of the image, without a suffix.
+    * @return                 Returns the file the image was written to.
+    * @throws IOException     If the image can't be written.
+    */
+   public File write(RenderedImage image, String name) throws IOException
+   {
+      File target = target(name);
+      try (StageTimer timer = StageTimer.start(Stage.ENCODE,
+              (long) image.getWidth() * image.getHeight(), target))
+      {
+         return replaceTarget(target, temp -> encode(image, temp.toFile()));
+      }
+   }
+
+   /**
+    * Checks if an image can be written in the format of this output as it
+    * is, without converting its type.
+    *
+    * @param image            The image.
+    * @return                 Returns true if a writer takes the image.
+    */
+   public boolean canWrite(RenderedImage image)
+   {
+      return ImageIO.getImageWriters(
+              ImageTypeSpecifier.createFromRenderedImage(image), formatName)
+              .hasNext();
+   }
+
+   /**
+    * Encodes an image into a stream, like the body of a response. The
+    * stream is left open.
+    *
+    * @param image            The image.
+    * @param out              The stream the encoded image is written to.
+    * @throws IOException     If the image can't be written.
+    */
+   public void write(RenderedImage image, OutputStream out) throws IOException
+   {
+      try (StageTimer timer = StageTimer.start(Stage.ENCODE,
+              (long) image.getWidth() * image.getHeight());
+           ImageOutputStream stream = new MemoryCacheImageOutputStream(out))
+      {
+         encode(image, stream);
+      }
+   }
+
+   /**
+    * Copies an already encoded image to the target of its source, the same
+    * way an image is written.
+    *
+    * @param encoded          The encoded image, written by this output.
+    * @param source           The file the image was read from.
+    * @return                 Returns the file the image was written to.
+    * @throws IOException     If the image can't be copied.
+    */
+   File copy(File encoded, File source) throws IOException
+   {
+      return replaceTarget(target(source), temp -> {
+         try (InputStream in = Files.newInputStream(encoded.toPath()))
+         {
+            Files.copy(in, temp);
+         }
+      });
+   }
+
+   /**
+    * Writes an image already encoded into memory to the target of its
+    * source, the same way an image is written.
+    *
+    * @param encoded          The encoded image, written by this output.
+    * @param source           The file the image was read from.
+    * @return                 Returns the file the image was written to.
+    * @throws IOException     If the image can't be written.
+    */
+   File write(byte[] encoded, File source) throws IOException
+   {
+      return replaceTarget(target(source),
+              temp -> Files.write(temp, encoded));
+   }
+
+   /**
+    * Describes how the images are encoded, so results written with other
+    * settings can be told apart.
+    *
+    * @return                 Returns the format name and quality.
+    */
+   String encoding()
+   {
+      return formatName.toLowerCase(Locale.ROOT) + " " + quality;
+   }
+
+   /**
+    * Writes a target into a temporary file next to it, which then replaces
+    * the target.
+    */
+   private static File replaceTarget(File target, TempWriter writer)
+           throws IOException
+   {
+      Files.createDirectories(target.toPath().getParent());
+      replace(target.toPath(), writer);
+      return target;
+   }
+
+   /**
+    * Writes a file into a temporary file next to it, which then replaces
+    * it in one atomic rename. The writer creates the temporary file, so it
+    * gets the same permissions the file would get, Files.createTempFile()
+    * makes files only the owner can read.
+    *
+    * @param target           The file written.
+    * @param writer           Writes the contents of the temporary file.
+    * @throws IOException     If the file can't be written.
+    */
+   static void replace(Path target, TempWriter writer) throws IOException
+   {
+      Path temp = target.resolveSibling(target.getFileName() + "." +
+              Long.toUnsignedString(ThreadLocalRandom.current().nextLong(),
+                      36) + ".tmp");
+
+      try
+      {
+         writer.write(temp);
+
+         Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+      }
+      finally
+      {
+         Files.deleteIfExists(temp);
+      }
+   }
+
+   /**
+    * Writes the contents of a temporary file.
+    */
+   @FunctionalInterface
+   interface TempWriter {
+
+      /**
+       * Creates the temporary file and writes it.
+       *
+       * @param temp          The path of the temporary file.
+       * @throws IOException  If the file can't be written.
+       */
+      void write(Path temp) throws IOException;
+   }
+
+   /**
+    * Encodes an image into a file with the compression of this output.
+    */
+   private void encode(RenderedImage image, File file) throws IOException
+   {
+      try (ImageOutputStream stream = ImageIO.createImageOutputStream(file))
+      {
+         encode(image, stream);
+      }
+   }
+
+   /**
+    * Encodes an image into a stream with the compression of this output.
+    */
+   private void encode(RenderedImage image, ImageOutputStream stream)
+           throws IOException
+   {
+      // Find a writer for the format which takes this type of image.
+      Iterator<ImageWriter> writers = ImageIO.getImageWriters(
+              ImageTypeSpecifier.createFromRenderedImage(image), formatName);
+      if (!writers.hasNext())
+      {
+         throw new IOException("no " + formatName + " writer for images of " +
+                 "type " + image.getColorModel());
+      }
+
+      ImageWriter writer = writers.next();
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      if (quality != WRITER_DEFAULT && param.canWriteCompressed())
+      {
+         param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+
+         // Formats like TIFF have several compressions, prefer deflate.
+         String[] types = param.getCompressionTypes();
+         if (types != null && param.getCompressionType() == null)
+         {
+            param.setCompressionType(Arrays.asList(types).contains("Deflate")
+                    ? "Deflate" : types[0]);
+         }
+         param.setCompressionQuality(quality);
+      }
+
+      try
+      {
+         writer.setOutput(stream);
+         writer.write(null, new IIOImage(image, null, null), param);
+      }
+      finally
+      {
+         writer.dispose();
+      }
+   }
+}
@@ -0,0 +1,646 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the filters behind a local HTTP server, so a stream of requests is
+ * served by one warmed up JVM instead of each paying for the JVM to start,
+ * the JIT to compile the filters and ImageIO to find its plugins. Each
+ * request is handled on its own virtual thread. Only so many requests are
+ * filtered at once and only so many more wait for their turn, the rest are
+ * turned away with 503 Service Unavailable straight away, so a burst of
+ * requests can't pile up images in memory. A waiting request reads its
+ * image before its turn, so a slow upload doesn't hold up the filtering.
+ *
+ * <p>POST /process filters the image in the body of the request, or the
+ * image file named by the path parameter, and answers with the encoded
+ * result. The parameters are:
+ * <ul>
+ *    <li>op, the filters applied in order, separated by commas, from
+ *    invertColors, convertToGreyScale, gaussianBlur and the stipple styles
+ *    like blackFigureOnWhite,</li>
+ *    <li>radius, the radius of gaussianBlur, up to Pipeline.MAX_RADIUS,</li>
+ *    <li>clean, the clean value of the stipple styles,</li>
+ *    <li>blur, the BlurMode, SEPARABLE unless given,</li>
+ *    <li>format, the format of the result, png unless given,</li>
+ *    <li>path, the image file read instead of the body, within the root
+ *    directory the server was started with,</li>
+ *    <li>out, a directory the result is written to instead of answered
+ *    with, within the output directory the server was started with, the
+ *    answer is then the JSON {"file": path}.</li>
+ * </ul>
+ * GET /status answers with the requests running, waiting, served, turned
+ * away and failed as JSON.
+ *
+ * <p>The server only reads files under its root directory and only writes
+ * under its output directory, and doesn't read or write files at all unless
+ * they are given. A path leading out of them, through .. or a link, is
+ * refused with 403 Forbidden. So are requests with an Origin header, which
+ * browsers send with the requests of web pages, so a page open on the same
+ * machine can't use the server. Bind it to the loopback address all the
+ * same.
+ */
+public final class ImageServer implements AutoCloseable {
+
+   /**
+    * The most bytes of an image in the body of a request unless another
+    * limit is given.
+    */
+   public final static int DEFAULT_MAX_BODY_BYTES = 256 << 20;
+
+   // The side of the image filtered by warmUp().
+   private final static int WARM_UP_SIZE = 256;
+
+   // The times warmUp() runs each filter, enough for the JIT to compile it.
+   private final static int WARM_UP_ROUNDS = 10;
+
+   private final HttpServer server;
+   private final ExecutorService handlers;
+   private final int concurrency;
+   private final int maxBodyBytes;
+
+   // The directories files are read from and written to, null if they
+   // can't be.
+   private final File root;
+   private final File outputRoot;
+
+   // Admits the requests running and waiting, and lets so many run.
+   private final Semaphore admitted;
+   private final Semaphore running;
+
+   private final AtomicLong served = new AtomicLong();
+   private final AtomicLong rejected = new AtomicLong();
+   private final AtomicLong failed = new AtomicLong();
+
+   /**
+    * Creates a server filtering as many requests at once as there are
+    * processors, with four times as many waiting, which neither reads nor
+    * writes files.
+    *
+    * @param address          The address the server listens on.
+    * @throws IOException     If the address can't be bound.
+    */
+   public ImageServer(InetSocketAddress address) throws IOException
+   {
+      this(address, Runtime.getRuntime().availableProcessors(),
+              4 * Runtime.getRuntime().availableProcessors(),
+              DEFAULT_MAX_BODY_BYTES);
+   }
+
+   /**
+    * Creates a server which neither reads nor writes files.
+    *
+    * @param address          The address the server listens on.
+    * @param concurrency      The most requests filtered at once.
+    * @param queueLength      The most requests waiting to be filtered.
+    * @param maxBodyBytes     The most bytes of an image in a request.
+    * @throws IOException     If the address can't be bound.
+    */
+   public ImageServer(InetSocketAddress address, int concurrency,
+                      int queueLength, int maxBodyBytes) throws IOException
+   {
+      this(address, concurrency, queueLength, maxBodyBytes, null, null);
+   }
+
+   /**
+    * Creates a server.
+    *
+    * @param address          The address the server listens on.
+    * @param concurrency      The most requests filtered at once.
+    * @param queueLength      The most requests waiting to be filtered.
+    * @param maxBodyBytes     The most bytes of an image in a request.
+    * @param root             The directory the path parameter is resolved
+    *                         in, null refuses the parameter.
+    * @param outputRoot       The directory the out parameter is resolved
+    *                         in, null refuses the parameter.
+    * @throws IOException     If the address can't be bound.
+    */
+   public ImageServer(InetSocketAddress address, int concurrency,
+                      int queueLength, int maxBodyBytes, File root,
+                      File outputRoot) throws IOException
+   {
+      // Check if the limits are valid.
+      if (concurrency < 1)
+         throw new IllegalArgumentException("input value for concurrency " +
+                 "is invalid, choose a value of 1 or more");
+      if (queueLength < 0)
+         throw new IllegalArgumentException("input value for queueLength " +
+                 "is invalid, choose a value of 0 or more");
+      if (maxBodyBytes < 1)
+         throw new IllegalArgumentException("input value for maxBodyBytes " +
+                 "is invalid, choose a value of 1 or more");
+
+      // Check if the directories exist.
+      if (root != null && !root.isDirectory())
+         throw new IllegalArgumentException(root + " is not a directory");
+      if (outputRoot != null && !outputRoot.isDirectory())
+         throw new IllegalArgumentException(outputRoot +
+                 " is not a directory");
+
+      this.concurrency = concurrency;
+      this.maxBodyBytes = maxBodyBytes;
+      this.root = root == null ? null : root.getCanonicalFile();
+      this.outputRoot = outputRoot == null ? null :
+              outputRoot.getCanonicalFile();
+      this.admitted = new Semaphore(concurrency + queueLength);
+      this.running = new Semaphore(concurrency, true);
+
+      this.server = HttpServer.create(address, 0);
+      this.handlers = VirtualThreads.newThreadPerTaskExecutor();
+      server.setExecutor(handlers);
+      server.createContext("/process", this::process);
+      server.createContext("/status", this::status);
+   }
+
+   /**
+    * Starts answering requests.
+    */
+   public void start()
+   {
+      server.start();
+   }
+
+   /**
+    * Runs every filter on a small image until the JIT has compiled them,
+    * so the first requests are as quick as the later ones.
+    */
+   public void warmUp()
+   {
+      BufferedImage img = new BufferedImage(WARM_UP_SIZE, WARM_UP_SIZE,
+              BufferedImage.TYPE_INT_ARGB);
+      for (int y = 0; y < WARM_UP_SIZE; y++)
+      {
+         for (int x = 0; x < WARM_UP_SIZE; x++)
+            img.setRGB(x, y, 0xFF000000 | (x << 16) | (y << 8) | (x ^ y));
+      }
+
+      ImageOutput output = new ImageOutput("png");
+      for (int round = 0; round < WARM_UP_ROUNDS; round++)
+      {
+         for (BlurMode mode : BlurMode.values())
+         {
+            Pipeline pipeline = new Pipeline().invertColors()
+                    .convertToGreyScale().gaussianBlur(3, mode);
+            for (StippleMode stippleMode : StippleMode.values())
+               pipeline.stipple(stippleMode, 6, mode);
+
+            // Encode and decode the result too, as a request does.
+            try
+            {
+               ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+               output.write(pipeline.apply(copy(img)), encoded);
+               ImageInput.read(encoded.toByteArray(), null);
+            }
+            catch (IOException e)
+            {
+               e.printStackTrace();
+            }
+         }
+      }
+   }
+
+   /**
+    * The port the server listens on, useful when it was bound to port 0.
+    *
+    * @return                 Returns the port.
+    */
+   public int getPort()
+   {
+      return server.getAddress().getPort();
+   }
+
+   /**
+    * Stops the server, letting the requests running finish for up to a
+    * second.
+    */
+   @Override
+   public void close()
+   {
+      server.stop(1);
+      handlers.shutdown();
+   }
+
+   /**
+    * Filters an image, waiting for a turn if enough requests are running
+    * and turning the request away if enough are waiting.
+    */
+   private void process(HttpExchange exchange) throws IOException
+   {
+      try (exchange)
+      {
+         if (!exchange.getRequestMethod().equals("POST"))
+         {
+            discardBody(exchange);
+            sendError(exchange, 405, "use POST");
+            return;
+         }
+
+         // Browsers send an Origin header with the requests of web pages,
+         // a client of the server has no reason to.
+         if (exchange.getRequestHeaders().containsKey("Origin"))
+         {
+            discardBody(exchange);
+            sendError(exchange, 403, "requests from web pages are refused");
+            return;
+         }
+
+         if (!admitted.tryAcquire())
+         {
+            rejected.incrementAndGet();
+            discardBody(exchange);
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 503, "too many requests waiting");
+            return;
+         }
+
+         try
+         {
+            // Read the whole body before waiting for a turn, so a slow
+            // upload holds a place in the queue but no running slot.
+            Request request = read(exchange);
+            if (request == null)
+               return;
+
+            running.acquire();
+            try
+            {
+               filter(exchange, request);
+               served.incrementAndGet();
+            }
+            finally
+            {
+               running.release();
+            }
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            failed.incrementAndGet();
+            sendError(exchange, 503, "the server is stopping");
+         }
+         finally
+         {
+            admitted.release();
+         }
+      }
+   }
+
+   /**
+    * Reads the parameters and the image of a request.
+    *
+    * @return                 Returns the request, or null if it was
+    *                         answered with an error.
+    */
+   private Request read(HttpExchange exchange) throws IOException
+   {
+      try
+      {
+         // Read the whole body first, an error answered before it's read
+         // would reset the connection.
+         Map<String, String> parameters = parameters(exchange);
+         String path = parameters.get("path");
+         File source = path == null ? null : resolve(root, path, "path");
+         byte[] body = null;
+         if (source == null)
+            body = readBody(exchange);
+         else
+            discardBody(exchange);
+
+         Pipeline pipeline = pipeline(parameters);
+         ImageOutput output = new ImageOutput(
+                 parameters.getOrDefault("format", "png"),
+                 parameters.containsKey("out") ? resolve(outputRoot,
+                         parameters.get("out"), "out") : null);
+         return new Request(source, body, pipeline, output);
+      }
+      catch (IOException | RuntimeException e)
+      {
+         sendFailure(exchange, e);
+         return null;
+      }
+   }
+
+   /**
+    * Filters and answers with the image of a request.
+    */
+   private void filter(HttpExchange exchange, Request request)
+           throws IOException
+   {
+      try
+      {
+         File source = request.source;
+         ImageOutput output = request.output;
+
+         // Read the contents of the image.
+         BufferedImage img = source == null ?
+                 ImageInput.read(request.body, null) :
+                 ImageInput.read(source);
+         if (img == null)
+         {
+            failed.incrementAndGet();
+            sendError(exchange, 415, "not a supported image");
+            return;
+         }
+
+         img = request.pipeline.apply(img);
+
+         // Write the result to the output directory, or answer with it.
+         if (output.getDirectory() != null)
+         {
+            File written = output.write(img, source != null ? source :
+                    new File("image-" + System.nanoTime()));
+            send(exchange, 200, "application/json", ("{\"file\": " +
+                    Json.quote(written.getPath()) + "}")
+                    .getBytes(StandardCharsets.UTF_8));
+            return;
+         }
+
+         ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+         output.write(img, encoded);
+         send(exchange, 200, mimeType(output.getFormatName()),
+                 encoded.toByteArray());
+      }
+      catch (IOException | RuntimeException e)
+      {
+         sendFailure(exchange, e);
+      }
+   }
+
+   /**
+    * Answers a request which failed with the status of its exception.
+    */
+   private void sendFailure(HttpExchange exchange, Exception e)
+           throws IOException
+   {
+      failed.incrementAndGet();
+      if (e instanceof IllegalArgumentException)
+         sendError(exchange, 400, e.getMessage());
+      else if (e instanceof ForbiddenException)
+         sendError(exchange, 403, e.getMessage());
+      else if (e instanceof BodyTooLargeException)
+         sendError(exchange, 413, "the image is larger than " +
+                 maxBodyBytes + " bytes");
+      else
+      {
+         e.printStackTrace();
+         sendError(exchange, 500, String.valueOf(e.getMessage()));
+      }
+   }
+
+   /**
+    * Answers with the counts of the requests.
+    */
+   private void status(HttpExchange exchange) throws IOException
+   {
+      try (exchange)
+      {
+         int runningNow = concurrency - running.availablePermits();
+         String json = "{\"running\": " + runningNow +
+                 ", \"waiting\": " + Math.max(0, running.getQueueLength()) +
+                 ", \"served\": " + served.get() +
+                 ", \"rejected\": " + rejected.get() +
+                 ", \"failed\": " + failed.get() + "}";
+         send(exchange, 200, "application/json",
+                 json.getBytes(StandardCharsets.UTF_8));
+      }
+   }
+
+   /**
+    * Finds the file a parameter names within a directory, refusing it if
+    * there is no directory or the file is outside of it. The file and the
+    * directory are compared as canonical paths, so .. and links can't lead
+    * out of it.
+    */
+   private static File resolve(File directory, String name, String parameter)
+           throws IOException
+   {
+      if (directory == null)
+         throw new ForbiddenException("the " + parameter + " parameter " +
+                 "isn't allowed by this server");
+
+      File file = new File(directory, name).getCanonicalFile();
+      if (!file.toPath().startsWith(directory.toPath()))
+         throw new ForbiddenException(name + " is outside of the " +
+                 "directory of the " + parameter + " parameter");
+      return file;
+   }
+
+   /**
+    * Builds the filters named by the op parameter.
+    */
+   private static Pipeline pipeline(Map<String, String> parameters)
+   {
+      String ops = parameters.get("op");
+      if (ops == null)
+         throw new IllegalArgumentException("input value for op is " +
+                 "invalid, choose invertColors, convertToGreyScale, " +
+                 "gaussianBlur or a stipple style");
+
+      BlurMode mode = BlurMode.SEPARABLE;
+      if (parameters.containsKey("blur"))
+         mode = blurModeOf(parameters.get("blur"));
+
+      Pipeline pipeline = new Pipeline();
+      for (String op : ops.split(","))
+      {
+         switch (op.trim())
+         {
+            case "invertColors":
+               pipeline.invertColors();
+               break;
+
+            case "convertToGreyScale":
+               pipeline.convertToGreyScale();
+               break;
+
+            case "gaussianBlur":
+               pipeline.gaussianBlur(intParameter(parameters, "radius"),
+                       mode);
+               break;
+
+            // The stipple styles, named like blackFigureOnWhite.
+            default:
+               pipeline.stipple(StippleVariant.modeOf(op.trim()),
+                       intParameter(parameters, "clean"), mode);
+               break;
+         }
+      }
+      return pipeline;
+   }
+
+   /**
+    * Finds the BlurMode of its name, in any case.
+    */
+   private static BlurMode blurModeOf(String name)
+   {
+      for (BlurMode mode : BlurMode.values())
+      {
+         if (mode.name().equalsIgnoreCase(name))
+            return mode;
+      }
+
+      throw new IllegalArgumentException("input value for blur is " +
+              "invalid, choose SEPARABLE, FIXED_POINT or BOX");
+   }
+
+   /**
+    * Reads a number from the parameters of a request.
+    */
+   private static int intParameter(Map<String, String> parameters,
+                                   String name)
+   {
+      try
+      {
+         return Integer.parseInt(parameters.get(name));
+      }
+      catch (NumberFormatException e)
+      {
+         throw new IllegalArgumentException("input value for " + name +
+                 " is invalid, give it as " + name + "=<number>");
+      }
+   }
+
+   /**
+    * Decodes the parameters of the query of a request.
+    */
+   private static Map<String, String> parameters(HttpExchange exchange)
+   {
+      Map<String, String> parameters = new HashMap<>();
+      String query = exchange.getRequestURI().getRawQuery();
+      if (query == null)
+         return parameters;
+
+      for (String pair : query.split("&"))
+      {
+         int equals = pair.indexOf('=');
+         if (equals < 0)
+            continue;
+
+         parameters.put(
+                 URLDecoder.decode(pair.substring(0, equals),
+                         StandardCharsets.UTF_8),
+                 URLDecoder.decode(pair.substring(equals + 1),
+                         StandardCharsets.UTF_8));
+      }
+      return parameters;
+   }
+
+   /**
+    * Reads the body of a request, up to the most bytes allowed.
+    */
+   private byte[] readBody(HttpExchange exchange) throws IOException
+   {
+      try (InputStream in = exchange.getRequestBody())
+      {
+         byte[] body = in.readNBytes(maxBodyBytes + 1);
+         if (body.length > maxBodyBytes)
+         {
+            in.transferTo(OutputStream.nullOutputStream());
+            throw new BodyTooLargeException();
+         }
+         return body;
+      }
+   }
+
+   /**
+    * Reads the body of a request which is answered without it. Answering
+    * before the client has sent the whole body resets the connection, so
+    * the client never sees the answer.
+    */
+   private static void discardBody(HttpExchange exchange) throws IOException
+   {
+      try (InputStream in = exchange.getRequestBody())
+      {
+         in.transferTo(OutputStream.nullOutputStream());
+      }
+   }
+
+   /**
+    * The MIME type of an image format, like image/png.
+    */
+   private static String mimeType(String formatName)
+   {
+      String[] types = ImageIO.getImageWritersByFormatName(formatName).next()
+              .getOriginatingProvider().getMIMETypes();
+      return types == null || types.length == 0 ?
+              "application/octet-stream" : types[0];
+   }
+
+   private static BufferedImage copy(BufferedImage img)
+   {
+      BufferedImage copy = new BufferedImage(img.getWidth(), img.getHeight(),
+              img.getType());
+      copy.setData(img.getData());
+      return copy;
+   }
+
+   private static void sendError(HttpExchange exchange, int status,
+                                 String message) throws IOException
+   {
+      send(exchange, status, "application/json", ("{\"error\": " +
+              Json.quote(message) + "}").getBytes(StandardCharsets.UTF_8));
+   }
+
+   private static void send(HttpExchange exchange, int status,
+                            String contentType, byte[] body)
+           throws IOException
+   {
+      exchange.getResponseHeaders().set("Content-Type", contentType);
+      exchange.sendResponseHeaders(status, body.length);
+      try (OutputStream out = exchange.getResponseBody())
+      {
+         out.write(body);
+      }
+   }
+
+   /**
+    * Thrown when the body of a request is larger than allowed.
+    */
+   private static final class BodyTooLargeException extends IOException {}
+
+   /**
+    * The parameters and image of a request, read before it waits for a
+    * turn to run.
+    */
+   private static final class Request {
+
+      final File source;
+      final byte[] body;
+      final Pipeline pipeline;
+      final ImageOutput output;
+
+      Request(File source, byte[] body, Pipeline pipeline, ImageOutput output)
+      {
+         this.source = source;
+         this.body = body;
+         this.pipeline = pipeline;
+         this.output = output;
+      }
+   }
+
+   /**
+    * Thrown when a request names a file the server may not use.
+    */
+   private static final class ForbiddenException extends IOException {
+
+      ForbiddenException(String message)
+      {
+         super(message);
+      }
+   }
+}
@@ -0,0 +1,252 @@
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+/**
+ * Runs a filter again on new versions of an image, like a large photo a
+ * retoucher changes a small part of, recomputing only what the changes
+ * reach. The last input and output are kept. Each new input is compared to
+ * the last one in tiles of TILE_SIZE pixels. The output each run of changed
+ * tiles in a row reaches, the run with the halo of the blur around it, is
+ * filtered again with the halo around that and copied into the kept
+ * output. Every pixel the blur writes only depends on the pixels within
+ * its halo, so the output is exactly what filtering the whole image gives,
+ * at a cost that grows with the area changed rather than the size of the
+ * image. The comparison still reads the whole image, but it's far cheaper
+ * than the filter. An image of another size is filtered whole.
+ */
+public final class IncrementalFilter {
+
+   /**
+    * The width and height of the tiles compared.
+    */
+   public final static int TILE_SIZE = 64;
+
+   private final UnaryOperator<PixelBuffer> filter;
+   private final int halo;
+
+   // The last input and output, null until the first run.
+   private int[] input;
+   private PixelBuffer output;
+
+   // The tiles of the image and how many the last run filtered.
+   private int tiles;
+   private int tilesRecomputed;
+
+   private IncrementalFilter(UnaryOperator<PixelBuffer> filter, int halo)
+   {
+      this.filter = filter;
+      this.halo = halo;
+   }
+
+   /**
+    * Creates an incremental stipple conversion, see ConvertToStipple.
+    *
+    * @param stippleMode      The stipple art style.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    * @return                 Returns the filter.
+    */
+   public static IncrementalFilter stipple(StippleMode stippleMode, int clean,
+                                           BlurMode mode)
+   {
+      // Check if the clean value is valid.
+      stippleMode.checkClean(clean);
+
+      return new IncrementalFilter(buffer -> ConvertToStipple.stipple(buffer,
+              stippleMode, clean, mode),
+              GaussianBlur.halo(ConvertToStipple.BLUR_RADIUS, mode));
+   }
+
+   /**
+    * Creates an incremental Gaussian Blur, see ImageFilters.
+    *
+    * @param radius           The radius of the Gaussian Kernel.
+    * @param mode             How the blur is computed.
+    * @return                 Returns the filter.
+    */
+   public static IncrementalFilter gaussianBlur(int radius, BlurMode mode)
+   {
+      // Check if the radius is valid.
+      if (radius < 0)
+         throw new IllegalArgumentException("input value for radius is " +
+                 "invalid, choose a value of 0 or more");
+
+      return new IncrementalFilter(buffer -> ImageFilters.gaussianBlur(radius,
+              buffer, mode), GaussianBlur.halo(radius, mode));
+   }
+
+   /**
+    * Filters a new version of the image, recomputing the tiles which
+    * changed since the last one.
+    *
+    * @param buffer           The pixels, they are left unchanged.
+    * @return                 Returns the filtered pixels. The buffer is the
+    *                         one kept for the next run, which changes it in
+    *                         place, so it must not be changed.
+    */
+   public synchronized PixelBuffer apply(PixelBuffer buffer)
+   {
+      int width = buffer.getWidth();
+      int height = buffer.getHeight();
+      int tilesAcross = (width + TILE_SIZE - 1) / TILE_SIZE;
+      int tilesDown = (height + TILE_SIZE - 1) / TILE_SIZE;
+      tiles = tilesAcross * tilesDown;
+
+      // Filter the whole image the first time or when its size changed.
+      if (output == null || output.getWidth() != width ||
+              output.getHeight() != height)
+      {
+         input = Arrays.copyOf(buffer.getPixels(), width * height);
+         output = filter.apply(new PixelBuffer(width, height, input));
+         tilesRecomputed = tiles;
+         return output;
+      }
+
+      boolean[] changed = diff(buffer.getPixels(), width, height,
+              tilesAcross);
+      tilesRecomputed = 0;
+      for (int tileY = 0; tileY < tilesDown; tileY++)
+      {
+         int tileX = 0;
+         while (tileX < tilesAcross)
+         {
+            // Find the next run of changed tiles in the row.
+            if (!changed[tileY * tilesAcross + tileX])
+            {
+               tileX++;
+               continue;
+            }
+            int end = tileX;
+            while (end < tilesAcross && changed[tileY * tilesAcross + end])
+               end++;
+
+            recompute(buffer.getPixels(), tileX * TILE_SIZE,
+                    tileY * TILE_SIZE, Math.min(width, end * TILE_SIZE),
+                    Math.min(height, (tileY + 1) * TILE_SIZE));
+            tilesRecomputed += end - tileX;
+            tileX = end;
+         }
+      }
+
+      // Keep the new pixels of the changed tiles for the next run.
+      for (int i = 0; i < changed.length; i++)
+      {
+         if (changed[i])
+         {
+            int x = (i % tilesAcross) * TILE_SIZE;
+            int y = (i / tilesAcross) * TILE_SIZE;
+            copy(buffer.getPixels(), width, x, y, input, width, x, y,
+                    Math.min(width - x, TILE_SIZE),
+                    Math.min(height - y, TILE_SIZE));
+         }
+      }
+      return output;
+   }
+
+   /**
+    * Forgets the last image, so the next one is filtered whole.
+    */
+   public synchronized void reset()
+   {
+      input = null;
+      output = null;
+   }
+
+   /**
+    * The tiles of the last image filtered.
+    *
+    * @return                 Returns the number of tiles.
+    */
+   public synchronized int getTiles()
+   {
+      return tiles;
+   }
+
+   /**
+    * The tiles the last run filtered, all of them for the first image.
+    *
+    * @return                 Returns the number of tiles.
+    */
+   public synchronized int getTilesRecomputed()
+   {
+      return tilesRecomputed;
+   }
+
+   /**
+    * Compares the pixels to the last input, a row of a tile at a time, in
+    * parallel bands of rows.
+    *
+    * @return                 Returns which tiles changed, row by row.
+    */
+   private boolean[] diff(int[] pixels, int width, int height,
+                          int tilesAcross)
+   {
+      int tilesDown = (height + TILE_SIZE - 1) / TILE_SIZE;
+      boolean[] changed = new boolean[tilesAcross * tilesDown];
+
+      // Bands may share a row of tiles, but only ever mark a tile changed.
+      TileExecutor.forEachBand(width, height, 1, (fromRow, toRow) -> {
+         for (int y = fromRow; y < toRow; y++)
+         {
+            int row = (y / TILE_SIZE) * tilesAcross;
+            for (int tileX = 0; tileX < tilesAcross; tileX++)
+            {
+               if (changed[row + tileX])
+                  continue;
+
+               int from = y * width + tileX * TILE_SIZE;
+               int to = y * width + Math.min(width, (tileX + 1) * TILE_SIZE);
+               if (!Arrays.equals(pixels, from, to, input, from, to))
+                  changed[row + tileX] = true;
+            }
+         }
+      });
+      return changed;
+   }
+
+   /**
+    * Recomputes the output the changes in an area reach, the area with the
+    * halo around it, by filtering it with the halo around that.
+    */
+   private void recompute(int[] pixels, int fromX, int fromY, int toX,
+                          int toY)
+   {
+      int width = output.getWidth();
+      int height = output.getHeight();
+
+      // The pixels written, cut off at the border of the image.
+      int writeLeft = Math.max(0, fromX - halo);
+      int writeTop = Math.max(0, fromY - halo);
+      int writeRight = Math.min(width, toX + halo);
+      int writeBottom = Math.min(height, toY + halo);
+
+      // The pixels read to write them.
+      int left = Math.max(0, writeLeft - halo);
+      int top = Math.max(0, writeTop - halo);
+      int areaWidth = Math.min(width, writeRight + halo) - left;
+      int areaHeight = Math.min(height, writeBottom + halo) - top;
+
+      PixelBuffer area = new PixelBuffer(areaWidth, areaHeight);
+      copy(pixels, width, left, top, area.getPixels(), areaWidth, 0, 0,
+              areaWidth, areaHeight);
+
+      PixelBuffer filtered = filter.apply(area);
+      copy(filtered.getPixels(), areaWidth, writeLeft - left,
+              writeTop - top, output.getPixels(), width, writeLeft, writeTop,
+              writeRight - writeLeft, writeBottom - writeTop);
+   }
+
+   /**
+    * Copies a rectangle of pixels from one image to another.
+    */
+   private static void copy(int[] src, int srcWidth, int srcX, int srcY,
+                            int[] dst, int dstWidth, int dstX, int dstY,
+                            int width, int height)
+   {
+      for (int y = 0; y < height; y++)
+      {
+         System.arraycopy(src, (srcY + y) * srcWidth + srcX, dst,
+                 (dstY + y) * dstWidth + dstX, width);
+      }
+   }
+}
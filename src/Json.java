@@ -0,0 +1,33 @@
+/**
+ * A class of static methods. Writes the values of the machine readable
+ * summaries as JSON.
+ */
+final class Json {
+
+   private Json() {}
+
+   /**
+    * Quotes a string as a JSON string.
+    *
+    * @param text             The text, or null.
+    * @return                 Returns the quoted and escaped text, or null.
+    */
+   static String quote(String text)
+   {
+      if (text == null)
+         return "null";
+
+      StringBuilder json = new StringBuilder("\"");
+      for (int i = 0; i < text.length(); i++)
+      {
+         char c = text.charAt(i);
+         if (c == '"' || c == '\\')
+            json.append('\\').append(c);
+         else if (c < 0x20)
+            json.append(String.format("\\u%04x", (int) c));
+         else
+            json.append(c);
+      }
+      return json.append('"').toString();
+   }
+}
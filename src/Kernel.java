@@ -0,0 +1,142 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The weights of the Gaussian blur for one radius, built once and shared by
+ * every blur in the process. Holds the normalized 1D kernel as doubles, the
+ * same kernel as fixed point integers, and the stacked box radii. The sigma
+ * value is derived from the radius, so the radius is the cache key. Only the
+ * kernels of radii up to MAX_CACHED_RADIUS are kept, so requests for many
+ * different large radii can't fill the heap. A larger kernel costs far less
+ * to build than the blur using it.
+ */
+final class Kernel {
+
+   // The fraction bits of the fixed point weights, which add up to exactly
+   // 1 << FIXED_SHIFT.
+   final static int FIXED_SHIFT = 14;
+
+   // The number of stacked box blurs used to approximate the Gaussian.
+   private final static int BOX_PASSES = 3;
+
+   // The largest radius whose kernel is kept.
+   private final static int MAX_CACHED_RADIUS = 64;
+
+   private final static Map<Integer, Kernel> CACHE =
+           new ConcurrentHashMap<>();
+
+   final int radius;
+   final double sigma;
+   final double[] weights;
+   final int[] fixedWeights;
+   final int[] boxRadii;
+
+   private Kernel(int radius)
+   {
+      this.radius = radius;
+      this.sigma = Math.max(radius / 2, 1);
+      this.weights = buildWeights(radius, sigma);
+      this.fixedWeights = buildFixedWeights(weights);
+      this.boxRadii = buildBoxRadii(sigma);
+   }
+
+   /**
+    * Finds the kernel for a radius, building it the first time. Kernels of
+    * radii above MAX_CACHED_RADIUS are built every time.
+    *
+    * @param radius        The radius of the gaussian kernel.
+    * @return              Returns the shared kernel, don't modify it.
+    */
+   static Kernel of(int radius)
+   {
+      // Check if the radius is valid.
+      if (radius < 0)
+         throw new IllegalArgumentException("input value for radius is " +
+                 "invalid, choose a value of 0 or more");
+
+      if (radius > MAX_CACHED_RADIUS)
+         return build(radius);
+      return CACHE.computeIfAbsent(radius, Kernel::build);
+   }
+
+   /**
+    * Builds a kernel, timed as the KERNEL stage.
+    */
+   private static Kernel build(int radius)
+   {
+      try (StageTimer timer = StageTimer.start(Stage.KERNEL, 0))
+      {
+         return new Kernel(radius);
+      }
+   }
+
+   /**
+    * Builds the normalized 1D Gaussian kernel. The 2D kernel is the product
+    * of this kernel with itself, so blurring horizontally then vertically
+    * with it is the same as using the 2D kernel.
+    */
+   private static double[] buildWeights(int radius, double sigma)
+   {
+      double[] kernel = new double[(2 * radius) + 1];
+      double sum = 0;
+
+      // Populate the kernel with the respective Gaussian distribution values.
+      for (int x = -radius; x <= radius; x++)
+      {
+         double kernelValue = Math.exp(-(x * x) / (2 * sigma * sigma));
+         kernel[x + radius] = kernelValue;
+         sum += kernelValue;
+      }
+
+      // Normalize the kernel, ensuring all values add up to one.
+      for (int x = 0; x < kernel.length; x++)
+         kernel[x] /= sum;
+
+      return kernel;
+   }
+
+   /**
+    * Rounds the kernel to fixed point, then corrects the center weight so
+    * the weights add up to exactly one and a flat image stays flat.
+    */
+   private static int[] buildFixedWeights(double[] weights)
+   {
+      int[] fixed = new int[weights.length];
+      int sum = 0;
+
+      for (int i = 0; i < weights.length; i++)
+      {
+         fixed[i] = (int) Math.round(weights[i] * (1 << FIXED_SHIFT));
+         sum += fixed[i];
+      }
+
+      fixed[weights.length / 2] += (1 << FIXED_SHIFT) - sum;
+      return fixed;
+   }
+
+   /**
+    * Finds the radii of the stacked box blurs that approximate the Gaussian
+    * with the same sigma.
+    */
+   private static int[] buildBoxRadii(double sigma)
+   {
+      double variance = 12 * sigma * sigma;
+
+      // The ideal box width, rounded down and up to odd widths.
+      double idealWidth = Math.sqrt(variance / BOX_PASSES + 1);
+      int lowerWidth = (int) Math.floor(idealWidth);
+      if (lowerWidth % 2 == 0)
+         lowerWidth--;
+      int upperWidth = lowerWidth + 2;
+
+      // How many of the passes use the lower width to get the closest sigma.
+      long lowerCount = Math.round((variance - BOX_PASSES * lowerWidth *
+              lowerWidth - 4 * BOX_PASSES * lowerWidth - 3 * BOX_PASSES) /
+              (-4.0 * lowerWidth - 4));
+
+      int[] radii = new int[BOX_PASSES];
+      for (int i = 0; i < BOX_PASSES; i++)
+         radii[i] = ((i < lowerCount ? lowerWidth : upperWidth) - 1) / 2;
+      return radii;
+   }
+}
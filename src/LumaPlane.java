@@ -0,0 +1,194 @@
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * The grey value of each pixel of an image, a byte a pixel. GreyScale work
+ * only needs one channel, so a LumaPlane holds a quarter of the memory of a
+ * PixelBuffer and is blurred with a third of the arithmetic. The grey value
+ * is the average of the red, green and blue channels, the same value
+ * ImageFilters.convertToGreyScale() puts in each channel. toImage() wraps
+ * the plane in a TYPE_BYTE_GRAY image without copying it, which is written
+ * as an 8-bit grey PNG.
+ */
+public final class LumaPlane {
+
+   private final int width;
+   private final int height;
+   private final byte[] values;
+
+   /**
+    * Creates a plane of black pixels.
+    *
+    * @param width        The width of the image.
+    * @param height       The height of the image.
+    */
+   public LumaPlane(int width, int height)
+   {
+      this(width, height, new byte[width * height]);
+   }
+
+   /**
+    * Creates a plane backed by an array of grey values, row by row.
+    *
+    * @param width        The width of the image.
+    * @param height       The height of the image.
+    * @param values       The grey values, the array is used without copying.
+    */
+   public LumaPlane(int width, int height, byte[] values)
+   {
+      if (values.length < width * height)
+         throw new IllegalArgumentException("the value array is too small " +
+                 "for a " + width + "x" + height + " image");
+
+      this.width = width;
+      this.height = height;
+      this.values = values;
+   }
+
+   /**
+    * Converts the pixels of a buffer to their grey values.
+    *
+    * @param buffer       The pixels, they are left unchanged.
+    * @return             Returns a new plane of the grey values.
+    */
+   public static LumaPlane of(PixelBuffer buffer)
+   {
+      return of(buffer, new byte[buffer.getWidth() * buffer.getHeight()]);
+   }
+
+   /**
+    * Converts the pixels of a buffer to their grey values, into an array
+    * like one from the BufferPool.
+    *
+    * @param buffer       The pixels, they are left unchanged.
+    * @param values       The array the grey values are written to, at least
+    *                     width * height long.
+    * @return             Returns a plane backed by the array.
+    */
+   static LumaPlane of(PixelBuffer buffer, byte[] values)
+   {
+      int width = buffer.getWidth();
+      int height = buffer.getHeight();
+      int[] pixels = buffer.getPixels();
+
+      // Loop through each of the pixels, a band of rows at a time.
+      try (StageTimer timer = StageTimer.start(Stage.GREYSCALE,
+              (long) width * height))
+      {
+         TileExecutor.forEachBand(width, height, 1, (fromRow, toRow) ->
+                 PixelOps.get().luma(pixels, values, fromRow * width,
+                         toRow * width));
+      }
+      return new LumaPlane(width, height, values);
+   }
+
+   /**
+    * Converts the pixels of an image to their grey values.
+    *
+    * @param image        The image, it's left unchanged.
+    * @return             Returns a new plane of the grey values.
+    */
+   public static LumaPlane of(BufferedImage image)
+   {
+      return of(PixelBuffer.of(image));
+   }
+
+   /**
+    * Wraps the plane in an 8-bit grey image. The image shares the array of
+    * the plane, so changes to one change the other.
+    *
+    * @return             Returns a TYPE_BYTE_GRAY image.
+    */
+   public BufferedImage toImage()
+   {
+      BufferedImage image = new BufferedImage(width, height,
+              BufferedImage.TYPE_BYTE_GRAY);
+      WritableRaster raster = Raster.createWritableRaster(
+              image.getSampleModel(), new DataBufferByte(values,
+                      width * height), new Point());
+      return new BufferedImage(image.getColorModel(), raster, false, null);
+   }
+
+   /**
+    * Shrinks the plane to half its width and height, each value the
+    * rounded average of a block of two by two values. An odd last row or
+    * column is averaged with itself.
+    *
+    * @return             Returns a new plane, at least 1x1.
+    */
+   public LumaPlane half()
+   {
+      int halfWidth = (width + 1) / 2;
+      int halfHeight = (height + 1) / 2;
+      byte[] halved = new byte[halfWidth * halfHeight];
+
+      TileExecutor.forEachBand(halfWidth, halfHeight, 1, (fromRow, toRow) -> {
+         for (int y = fromRow; y < toRow; y++)
+         {
+            int top = 2 * y * width;
+            int bottom = Math.min(2 * y + 1, height - 1) * width;
+            for (int x = 0; x < halfWidth; x++)
+            {
+               int left = 2 * x;
+               int right = Math.min(2 * x + 1, width - 1);
+               int sum = (values[top + left] & 0xFF) +
+                       (values[top + right] & 0xFF) +
+                       (values[bottom + left] & 0xFF) +
+                       (values[bottom + right] & 0xFF);
+               halved[y * halfWidth + x] = (byte) ((sum + 2) >> 2);
+            }
+         }
+      });
+      return new LumaPlane(halfWidth, halfHeight, halved);
+   }
+
+   /**
+    * Expands the grey values into opaque grey pixels.
+    *
+    * @return             Returns a new buffer of the pixels.
+    */
+   public PixelBuffer toPixelBuffer()
+   {
+      PixelBuffer buffer = new PixelBuffer(width, height);
+      int[] pixels = buffer.getPixels();
+
+      TileExecutor.forEachBand(width, height, 1, (fromRow, toRow) -> {
+         for (int i = fromRow * width; i < toRow * width; i++)
+            pixels[i] = PixelBuffer.opaqueGrey(values[i] & 0xFF);
+      });
+      return buffer;
+   }
+
+   public int getWidth()
+   {
+      return width;
+   }
+
+   public int getHeight()
+   {
+      return height;
+   }
+
+   /**
+    * The grey values, row by row. Changes to the array change the plane.
+    *
+    * @return             Returns the backing array.
+    */
+   public byte[] getValues()
+   {
+      return values;
+   }
+
+   public int get(int x, int y)
+   {
+      return values[y * width + x] & 0xFF;
+   }
+
+   public void set(int x, int y, int grey)
+   {
+      values[y * width + x] = (byte) grey;
+   }
+}
@@ -1,22 +1,204 @@
 import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Runs the project code.
  */
 public class Main {
 
+   // The most bytes of results kept in the cache.
+   private final static long CACHE_BYTES = 1L << 30;
+
+   // The property naming a file the summary is also written to as JSON.
+   private final static String SUMMARY_PROPERTY = "imageprocessing.summary";
+
+   // The port the server listens on unless another is given.
+   private final static int SERVER_PORT = 8080;
+
    public static void main(String[] args)
    {
-      // The shortcut to the file containing the images
-      File fileList = new File("C:\\Users\\reece\\Desktop\\EditImages");
+      // Serves the filters over HTTP on the loopback address instead,
+      // "--serve 8080 [<image directory> [<output directory>]]". The
+      // server only reads files under the image directory and only writes
+      // under the output directory, and neither without them.
+      if (args.length > 0 && args[0].equals("--serve"))
+      {
+         serve(args.length > 1 ? Integer.parseInt(args[1]) : SERVER_PORT,
+                 args.length > 2 ? new File(args[2]) : null,
+                 args.length > 3 ? new File(args[3]) : null);
+         return;
+      }
+
+      // Converts a sequence of same sized frames, in the order of their
+      // names, "--frames <directory> <output directory>".
+      if (args.length > 2 && args[0].equals("--frames"))
+      {
+         frames(new File(args[1]), new File(args[2]));
+         return;
+      }
+
+      // Filters the images dropped into a directory as they arrive,
+      // "--watch <directory> <output directory>".
+      if (args.length > 2 && args[0].equals("--watch"))
+      {
+         watch(new File(args[1]), new File(args[2]));
+         return;
+      }
+
+      // The shortcut to the file containing the images, unless one is given.
+      File fileList = new File(args.length > 0 ? args[0] :
+              "C:\\Users\\reece\\Desktop\\EditImages");
+
+      // Writes several stipple variants of each image when they're given,
+      // like "blackFigureOnWhite:2,whiteFigure:4:jpeg".
+      if (args.length > 2)
+      {
+         fanOut(fileList, new File(args[1]), args[2]);
+         return;
+      }
+
+      // The images are written over themselves, unless a directory for the
+      // output is given.
+      ImageOutput output = new ImageOutput("png",
+              args.length > 1 ? new File(args[1]) : null);
+
+      // Applies the filter to all images in the file that holds them,
+      // reading, filtering and writing several images at once.
+      BatchProcessor batch = new BatchProcessor(img ->
+              ConvertToStipple.blackFigureOnWhite(img, 4), output);
+
+      // Keeps the images in memory at once to half of the heap, so a few
+      // huge images can't run the JVM out of memory.
+      batch.setMemoryBudget(MemoryBudget.ofHeap(0.5));
+
+      // Remembers the results, so running again skips the images already
+      // converted instead of converting them twice.
+      try (ResultCache cache = new ResultCache(
+              new File(fileList, ".imageprocessing-cache"), CACHE_BYTES))
+      {
+         batch.setCache(cache, "blackFigureOnWhite clean=4");
+         BatchSummary summary = batch.run(fileList);
+
+         System.out.println(summary);
+         writeSummary(summary);
+      }
+      catch (IOException e)
+      {
+         e.printStackTrace();
+      }
+   }
+
+   /**
+    * Starts a server which runs until the JVM is stopped.
+    */
+   private static void serve(int port, File root, File outputRoot)
+   {
+      int processors = Runtime.getRuntime().availableProcessors();
+      try
+      {
+         ImageServer server = new ImageServer(new InetSocketAddress(
+                 InetAddress.getLoopbackAddress(), port), processors,
+                 4 * processors, ImageServer.DEFAULT_MAX_BODY_BYTES, root,
+                 outputRoot);
+         server.warmUp();
+         server.start();
+         System.out.println("Serving on http://localhost:" +
+                 server.getPort() + "/process");
+      }
+      catch (IOException e)
+      {
+         e.printStackTrace();
+      }
+   }
+
+   /**
+    * Converts every frame in a directory, reusing the planes of each
+    * worker from frame to frame.
+    */
+   private static void frames(File directory, File outputDirectory)
+   {
+      FrameSequence sequence = new FrameSequence(
+              StippleMode.BLACK_FIGURE_ON_WHITE, 4, BlurMode.SEPARABLE,
+              new ImageOutput("png", outputDirectory));
+      BatchSummary summary = sequence.run(directory);
 
-      // The images in the file
-      File[] fileArray = fileList.listFiles();
+      System.out.println(summary);
+      System.out.printf("%.2f frames/s%n", summary.imagesPerSecond());
+      try
+      {
+         writeSummary(summary);
+      }
+      catch (IOException e)
+      {
+         e.printStackTrace();
+      }
+   }
 
-      // Applies the filter to all images in the file that holds them.
-      for (File f : fileArray)
+   /**
+    * Watches a directory until the JVM is stopped, printing the metrics
+    * after each batch of images.
+    */
+   private static void watch(File directory, File outputDirectory)
+   {
+      try
       {
-            ConvertToStipple.blackFigureOnWhite(f, "png", 4);
+         HotFolder folder = new HotFolder(directory, img ->
+                 ConvertToStipple.blackFigureOnWhite(img, 4),
+                 new ImageOutput("png", outputDirectory));
+         folder.setMemoryBudget(MemoryBudget.ofHeap(0.5));
+         folder.setListener(summary -> {
+            System.out.println(summary);
+            System.out.println(folder.toJson());
+         });
+         folder.start();
       }
+      catch (IOException e)
+      {
+         e.printStackTrace();
+      }
+   }
+
+   /**
+    * Writes each variant of every image in a directory from one decode and
+    * blur of the image.
+    */
+   private static void fanOut(File fileList, File outputDirectory,
+                              String variantList)
+   {
+      List<StippleVariant> variants = new ArrayList<>();
+      for (String spec : variantList.split(","))
+         variants.add(StippleVariant.parse(spec.trim()));
+
+      StippleFanOut fanOut = new StippleFanOut(variants, BlurMode.SEPARABLE,
+              outputDirectory);
+      BatchSummary summary = fanOut.runAll(fileList);
+
+      System.out.println(summary);
+      try
+      {
+         writeSummary(summary);
+      }
+      catch (IOException e)
+      {
+         e.printStackTrace();
+      }
+   }
+
+   /**
+    * Writes the summary as JSON to the file named by the
+    * imageprocessing.summary property, if it's set.
+    */
+   private static void writeSummary(BatchSummary summary) throws IOException
+   {
+      String path = System.getProperty(SUMMARY_PROPERTY);
+      if (path != null)
+         Files.write(new File(path).toPath(),
+                 summary.toJson().getBytes(StandardCharsets.UTF_8));
    }
 }
@@ -0,0 +1,129 @@
+/**
+ * Limits how much memory the images being processed at once can use. Each
+ * image is admitted with the bytes it's expected to need, found from its
+ * size in pixels, and waits until that much of the budget is free, so a
+ * few huge images wait for each other instead of running the JVM out of
+ * memory while small ones keep flowing. An image bigger than the whole
+ * budget is admitted once nothing else is running. One budget can be
+ * shared by several batch runs. Safe to use from several threads.
+ */
+public final class MemoryBudget {
+
+   /**
+    * The bytes an image is expected to need for each of its pixels unless
+    * another estimate is given: the decoded image, the pixels read from it,
+    * the output pixels and the grey planes of the filters.
+    */
+   public final static int DEFAULT_BYTES_PER_PIXEL = 16;
+
+   private final long bytes;
+   private final int bytesPerPixel;
+   private long used;
+
+   /**
+    * Creates a budget using DEFAULT_BYTES_PER_PIXEL.
+    *
+    * @param bytes            The most bytes the images can use at once.
+    */
+   public MemoryBudget(long bytes)
+   {
+      this(bytes, DEFAULT_BYTES_PER_PIXEL);
+   }
+
+   /**
+    * Creates a budget.
+    *
+    * @param bytes            The most bytes the images can use at once.
+    * @param bytesPerPixel    The bytes an image needs for each pixel.
+    */
+   public MemoryBudget(long bytes, int bytesPerPixel)
+   {
+      // Check if the budget is valid.
+      if (bytes < 1)
+         throw new IllegalArgumentException("input value for bytes is " +
+                 "invalid, choose a value of 1 or more");
+      if (bytesPerPixel < 1)
+         throw new IllegalArgumentException("input value for bytesPerPixel " +
+                 "is invalid, choose a value of 1 or more");
+
+      this.bytes = bytes;
+      this.bytesPerPixel = bytesPerPixel;
+   }
+
+   /**
+    * Creates a budget of part of the most memory the JVM can use.
+    *
+    * @param fraction         The part of the heap, more than 0 and at most
+    *                         1.
+    * @return                 Returns the budget.
+    */
+   public static MemoryBudget ofHeap(double fraction)
+   {
+      // Check if the fraction is valid.
+      if (!(fraction > 0 && fraction <= 1))
+         throw new IllegalArgumentException("input value for fraction is " +
+                 "invalid, choose a value above 0 and up to 1");
+
+      return new MemoryBudget(Math.max(1,
+              (long) (Runtime.getRuntime().maxMemory() * fraction)));
+   }
+
+   /**
+    * The bytes an image is expected to need, never more than the whole
+    * budget.
+    *
+    * @param width            The width of the image.
+    * @param height           The height of the image.
+    * @return                 Returns the bytes acquired for the image.
+    */
+   public long cost(int width, int height)
+   {
+      return Math.min(bytes, (long) width * height * bytesPerPixel);
+   }
+
+   /**
+    * Waits until enough of the budget is free and takes it.
+    *
+    * @param amount           The bytes taken, from cost().
+    * @throws InterruptedException If interrupted while waiting.
+    */
+   public synchronized void acquire(long amount) throws InterruptedException
+   {
+      long needed = Math.min(bytes, amount);
+      while (used + needed > bytes)
+         wait();
+      used += needed;
+   }
+
+   /**
+    * Gives back bytes taken by acquire().
+    *
+    * @param amount           The bytes given back, the same amount as was
+    *                         acquired.
+    */
+   public synchronized void release(long amount)
+   {
+      used -= Math.min(bytes, amount);
+      notifyAll();
+   }
+
+   /**
+    * The most bytes the images can use at once.
+    *
+    * @return                 Returns the size of the budget.
+    */
+   public long getBytes()
+   {
+      return bytes;
+   }
+
+   /**
+    * The bytes of the budget not taken.
+    *
+    * @return                 Returns the free bytes.
+    */
+   public synchronized long getAvailable()
+   {
+      return bytes - used;
+   }
+}
@@ -0,0 +1,637 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+import java.util.function.UnaryOperator;
+
+/**
+ * A chain of filters which is recorded first and run later, like
+ * new Pipeline().convertToGreyScale().invertColors().gaussianBlur(3). When
+ * it runs, the chain is compiled into a plan: per pixel operations (invert,
+ * GreyScale) next to each other are fused into one pass over the pixels, a
+ * few thousand pixels at a time so each one is read from memory once.
+ * Operations after a blur or stipple are fused into the pass which writes
+ * its rows, and operations before a stipple into the pass which converts
+ * the pixels to grey. A new buffer is only needed for the Gaussian blur,
+ * which reads the pixels around each one, and two buffers are swapped
+ * however many blurs the chain has. The result is exactly what the same
+ * filters of ImageFilters and ConvertToStipple give one after the other.
+ * A Pipeline is a UnaryOperator, so it can be given to a BatchProcessor.
+ * A file can be run at a smaller width, read at a fraction of its size
+ * with the radius of each blur and stipple scaled down to match, and
+ * written to an output instead of over itself.
+ */
+public final class Pipeline implements UnaryOperator<BufferedImage> {
+
+   /**
+    * The largest radius of a blur. The cost of the blur grows with the
+    * radius, so a chain built from a request can't take minutes per image.
+    */
+   public final static int MAX_RADIUS = 256;
+
+   // The pixels a fused pass works on at a time, small enough to stay in
+   // the cache between the operations.
+   private final static int CHUNK_PIXELS = 4096;
+
+   // The operations as recorded, a per pixel operation is a PointStep of
+   // its own until the plan is compiled.
+   private final List<Step> operations = new ArrayList<>();
+
+   /**
+    * Inverts the Colors of the pixels.
+    *
+    * @return                 Returns this pipeline.
+    */
+   public synchronized Pipeline invertColors()
+   {
+      operations.add(new PointStep(List.of(PointOp.INVERT)));
+      return this;
+   }
+
+   /**
+    * Converts the pixels to GreyScale.
+    *
+    * @return                 Returns this pipeline.
+    */
+   public synchronized Pipeline convertToGreyScale()
+   {
+      operations.add(new PointStep(List.of(PointOp.GREY)));
+      return this;
+   }
+
+   /**
+    * Applies Gaussian Blur with the SEPARABLE mode. Doesn't blur the border
+    * of the image.
+    *
+    * @param radius           The radius of the Gaussian Kernel, from 0 to
+    *                         MAX_RADIUS.
+    * @return                 Returns this pipeline.
+    */
+   public Pipeline gaussianBlur(int radius)
+   {
+      return gaussianBlur(radius, BlurMode.SEPARABLE);
+   }
+
+   /**
+    * Applies Gaussian Blur, computed with the given mode. Doesn't blur the
+    * border of the image.
+    *
+    * @param radius           The radius of the Gaussian Kernel, from 0 to
+    *                         MAX_RADIUS.
+    * @param mode             How the blur is computed.
+    * @return                 Returns this pipeline.
+    */
+   public synchronized Pipeline gaussianBlur(int radius, BlurMode mode)
+   {
+      // Check if the radius is valid.
+      if (radius < 0 || radius > MAX_RADIUS)
+         throw new IllegalArgumentException("input value for radius is " +
+                 "invalid, choose a value from 0 to " + MAX_RADIUS);
+
+      operations.add(new BlurStep(radius, mode));
+      return this;
+   }
+
+   /**
+    * Converts the pixels into one of the stipple art styles of
+    * ConvertToStipple.
+    *
+    * @param stippleMode      The stipple art style.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    * @return                 Returns this pipeline.
+    */
+   public synchronized Pipeline stipple(StippleMode stippleMode, int clean,
+                                        BlurMode mode)
+   {
+      // Check if the clean value is valid.
+      stippleMode.checkClean(clean);
+
+      operations.add(new StippleStep(stippleMode, clean, mode,
+              ConvertToStipple.BLUR_RADIUS));
+      return this;
+   }
+
+   /**
+    * Runs the pipeline on the pixels of a buffer.
+    *
+    * @param buffer           The pixels, they may be replaced.
+    * @return                 Returns the buffer, or a new buffer if the
+    *                         result ended up in the other buffer of a blur.
+    */
+   public PixelBuffer apply(PixelBuffer buffer)
+   {
+      int width = buffer.getWidth();
+      int height = buffer.getHeight();
+      List<Step> plan = compile();
+
+      int[] spare = needsSpare(plan) ? new int[width * height] : null;
+      int[] result = run(plan, buffer.getPixels(), spare, width, height);
+      return result == buffer.getPixels() ? buffer :
+              new PixelBuffer(width, height, result);
+   }
+
+   /**
+    * Runs the pipeline on an image in memory, with the pixel arrays taken
+    * from the BufferPool.
+    *
+    * @param img              The image, its pixels are replaced.
+    * @return                 Returns the image.
+    */
+   @Override
+   public BufferedImage apply(BufferedImage img)
+   {
+      return apply(img, compile());
+   }
+
+   /**
+    * Runs a plan on an image in memory, with the pixel arrays taken from
+    * the BufferPool.
+    */
+   private static BufferedImage apply(BufferedImage img, List<Step> plan)
+   {
+      int width = img.getWidth();
+      int height = img.getHeight();
+
+      int[] pixels = BufferPool.ints(width * height);
+      int[] spare = needsSpare(plan) ? BufferPool.ints(width * height) :
+              null;
+      try
+      {
+         PixelBuffer.of(img, pixels);
+         int[] result = run(plan, pixels, spare, width, height);
+         img.setRGB(0, 0, width, height, result, 0, width);
+      }
+      finally
+      {
+         BufferPool.release(pixels);
+         if (spare != null)
+            BufferPool.release(spare);
+      }
+      return img;
+   }
+
+   /**
+    * Runs the pipeline on an image in the machine based on a file path,
+    * writing it back in the format it was read in.
+    *
+    * @param imageFile        The file path where the image is located.
+    */
+   public void apply(File imageFile)
+   {
+      BufferedImage img = null;
+
+      // Read the contents of the image.
+      try
+      {
+         img = ImageInput.read(imageFile);
+      }
+      catch (IOException e)
+      {
+         e.printStackTrace();
+      }
+
+      write(apply(img), imageFile);
+   }
+
+   /**
+    * Runs the pipeline on an image in the machine based on a file path,
+    * writing it at a width to an output. A file wider than the width is
+    * decoded at a fraction of its size and shrunk to the width, and the
+    * radius of each blur and stipple is scaled down to match, so the result
+    * looks like the full size result shrunk. The result is never written
+    * over the file, it's a different image.
+    *
+    * @param imageFile        The file path where the image is located.
+    * @param width            The width of the image written, the height
+    *                         keeps the aspect ratio.
+    * @param output           Where and how the image is written, to a file
+    *                         other than the image file.
+    */
+   public void apply(File imageFile, int width, ImageOutput output)
+   {
+      // Check if the image file is kept.
+      output.checkKeeps(imageFile);
+
+      ImageInput.Scaled scaled = null;
+
+      // Read the contents of the image at the width.
+      try
+      {
+         scaled = ImageInput.read(imageFile, width);
+      }
+      catch (IOException e)
+      {
+         e.printStackTrace();
+      }
+
+      // Write the image to the output.
+      try
+      {
+         output.write(apply(scaled.image, compile(scaled::radius)),
+                 imageFile);
+      }
+      catch (IOException e)
+      {
+         e.printStackTrace();
+      }
+   }
+
+   /**
+    * Changes the image file data, in the format it was read in.
+    */
+   private static void write(BufferedImage img, File imageFile)
+   {
+      try
+      {
+         new ImageOutput(ImageOutput.formatOf(imageFile)).write(img,
+                 imageFile);
+      }
+      catch (IOException e)
+      {
+         e.printStackTrace();
+      }
+   }
+
+   /**
+    * The compiled plan, each pass over the pixels separated by " | ", like
+    * "convertToGreyScale+invertColors | gaussianBlur(3, BOX)+invertColors".
+    *
+    * @return                 Returns the plan.
+    */
+   @Override
+   public String toString()
+   {
+      StringBuilder text = new StringBuilder();
+      for (Step step : compile())
+      {
+         if (text.length() > 0)
+            text.append(" | ");
+         text.append(step);
+      }
+      return text.toString();
+   }
+
+   /**
+    * Groups the operations into passes. The per pixel operations before
+    * the first blur or stipple are a pass of their own, unless a stipple
+    * comes first and takes them into its conversion to grey. The ones after
+    * a blur or stipple are done as it writes each row.
+    */
+   private List<Step> compile()
+   {
+      return compile(IntUnaryOperator.identity());
+   }
+
+   /**
+    * Groups the operations into passes, the radius of each blur and
+    * stipple changed by a function, like the scaling for a smaller image.
+    */
+   private synchronized List<Step> compile(IntUnaryOperator radius)
+   {
+      List<Step> plan = new ArrayList<>();
+      List<PointOp> leading = new ArrayList<>();
+
+      for (Step operation : operations)
+      {
+         if (operation instanceof PointStep)
+         {
+            if (plan.isEmpty())
+               leading.addAll(operation.after);
+            else
+               plan.get(plan.size() - 1).after.addAll(operation.after);
+         }
+         else
+         {
+            Step step = operation.copy(radius);
+            if (plan.isEmpty() && !leading.isEmpty())
+            {
+               if (step instanceof StippleStep)
+                  ((StippleStep) step).before.addAll(leading);
+               else
+                  plan.add(new PointStep(leading));
+            }
+            plan.add(step);
+         }
+      }
+
+      if (plan.isEmpty() && !leading.isEmpty())
+         plan.add(new PointStep(leading));
+      return plan;
+   }
+
+   /**
+    * Checks if the plan needs a second buffer for a blur.
+    */
+   private static boolean needsSpare(List<Step> plan)
+   {
+      for (Step step : plan)
+      {
+         if (step instanceof BlurStep)
+            return true;
+      }
+      return false;
+   }
+
+   /**
+    * Runs each pass of the plan, swapping the buffers after a blur.
+    *
+    * @return                 Returns the array holding the result.
+    */
+   private static int[] run(List<Step> plan, int[] pixels, int[] spare,
+                            int width, int height)
+   {
+      for (Step step : plan)
+      {
+         if (step.run(pixels, spare, width, height))
+         {
+            int[] swap = pixels;
+            pixels = spare;
+            spare = swap;
+         }
+      }
+      return pixels;
+   }
+
+   /**
+    * Applies per pixel operations to the pixels from (inclusive) to
+    * (exclusive), a chunk at a time.
+    */
+   private static void applyAll(List<PointOp> ops, int[] pixels, int from,
+                                int to)
+   {
+      if (ops.isEmpty())
+         return;
+
+      PixelOps pixelOps = PixelOps.get();
+      for (int start = from; start < to; start += CHUNK_PIXELS)
+      {
+         int end = Math.min(to, start + CHUNK_PIXELS);
+         for (PointOp op : ops)
+            op.apply(pixelOps, pixels, start, end);
+      }
+   }
+
+   /**
+    * Names the operations joined by "+".
+    */
+   private static String describe(String name, List<PointOp> ops)
+   {
+      StringBuilder text = new StringBuilder(name);
+      for (PointOp op : ops)
+      {
+         if (text.length() > 0)
+            text.append('+');
+         text.append(op.methodName);
+      }
+      return text.toString();
+   }
+
+   /**
+    * An operation on each pixel on its own.
+    */
+   private enum PointOp {
+
+      INVERT("invertColors")
+      {
+         @Override
+         void apply(PixelOps ops, int[] pixels, int from, int to)
+         {
+            ops.invert(pixels, pixels, from, to);
+         }
+      },
+
+      GREY("convertToGreyScale")
+      {
+         @Override
+         void apply(PixelOps ops, int[] pixels, int from, int to)
+         {
+            ops.grey(pixels, pixels, from, to);
+         }
+      };
+
+      private final String methodName;
+
+      PointOp(String methodName)
+      {
+         this.methodName = methodName;
+      }
+
+      /**
+       * Applies the operation in place to the pixels from (inclusive) to
+       * (exclusive).
+       */
+      abstract void apply(PixelOps ops, int[] pixels, int from, int to);
+   }
+
+   /**
+    * One pass of the plan, with the per pixel operations done as it writes
+    * each row.
+    */
+   private abstract static class Step {
+
+      final List<PointOp> after = new ArrayList<>();
+
+      /**
+       * Runs the pass.
+       *
+       * @param pixels        The pixels.
+       * @param spare         A second buffer of the same size, or null if
+       *                      the plan has no blur.
+       * @param width         The width of the image.
+       * @param height        The height of the image.
+       * @return              Returns true if the result is in spare.
+       */
+      abstract boolean run(int[] pixels, int[] spare, int width,
+                           int height);
+
+      /**
+       * A copy of the step without the operations after it, so compiling
+       * doesn't change the recorded steps.
+       *
+       * @param radius        Changes the radius of a blur or stipple.
+       */
+      abstract Step copy(IntUnaryOperator radius);
+   }
+
+   /**
+    * A pass of per pixel operations, in place.
+    */
+   private static final class PointStep extends Step {
+
+      PointStep(List<PointOp> ops)
+      {
+         after.addAll(ops);
+      }
+
+      @Override
+      boolean run(int[] pixels, int[] spare, int width, int height)
+      {
+         try (StageTimer timer = StageTimer.start(Stage.FUSED,
+                 (long) width * height))
+         {
+            TileExecutor.forEachBand(width, height, 1, (fromRow, toRow) ->
+                    applyAll(after, pixels, fromRow * width, toRow * width));
+         }
+         return false;
+      }
+
+      @Override
+      Step copy(IntUnaryOperator radius)
+      {
+         return new PointStep(after);
+      }
+
+      @Override
+      public String toString()
+      {
+         return describe("", after);
+      }
+   }
+
+   /**
+    * The Gaussian blur into the spare buffer.
+    */
+   private static final class BlurStep extends Step {
+
+      private final int radius;
+      private final BlurMode mode;
+
+      BlurStep(int radius, BlurMode mode)
+      {
+         this.radius = radius;
+         this.mode = mode;
+      }
+
+      @Override
+      boolean run(int[] pixels, int[] spare, int width, int height)
+      {
+         GaussianBlur.Combiner combiner = null;
+         if (!after.isEmpty())
+         {
+            combiner = new GaussianBlur.Combiner() {
+
+               @Override
+               public int combine(int source, int blurred)
+               {
+                  int[] pixel = {blurred};
+                  applyAll(after, pixel, 0, 1);
+                  return pixel[0];
+               }
+
+               @Override
+               public void combine(int[] src, int[] dst, int from, int to)
+               {
+                  applyAll(after, dst, from, to);
+               }
+            };
+         }
+
+         GaussianBlur.blur(pixels, spare, width, height, radius, mode,
+                 combiner);
+         return true;
+      }
+
+      @Override
+      Step copy(IntUnaryOperator radius)
+      {
+         return new BlurStep(radius.applyAsInt(this.radius), mode);
+      }
+
+      @Override
+      public String toString()
+      {
+         return describe("gaussianBlur(" + radius + ", " + mode + ")",
+                 after);
+      }
+   }
+
+   /**
+    * A stipple art style, written over the pixels once they are converted
+    * to a grey plane.
+    */
+   private static final class StippleStep extends Step {
+
+      final List<PointOp> before = new ArrayList<>();
+      private final StippleMode stippleMode;
+      private final int clean;
+      private final BlurMode mode;
+      private final int radius;
+
+      StippleStep(StippleMode stippleMode, int clean, BlurMode mode,
+                  int radius)
+      {
+         this.stippleMode = stippleMode;
+         this.clean = clean;
+         this.mode = mode;
+         this.radius = radius;
+      }
+
+      @Override
+      boolean run(int[] pixels, int[] spare, int width, int height)
+      {
+         byte[] grey = BufferPool.bytes(width * height);
+         byte[] blurred = BufferPool.bytes(width * height);
+         try
+         {
+            // convert the image data to greyScale, after the operations
+            // before it.
+            try (StageTimer timer = StageTimer.start(Stage.GREYSCALE,
+                    (long) width * height))
+            {
+               TileExecutor.forEachBand(width, height, 1, (fromRow, toRow) ->
+                       toGrey(pixels, grey, fromRow * width, toRow * width));
+            }
+
+            // G-blur the grey values and subtract each one from its blurred
+            // value, writing over the pixels.
+            GaussianBlur.blur(grey, blurred, width, height, radius, mode,
+                    (src, dst, from, to) -> {
+                       PixelOps.get().stipple(stippleMode, clean, src, dst,
+                               from, pixels, from, to - from);
+                       applyAll(after, pixels, from, to);
+                    });
+         }
+         finally
+         {
+            BufferPool.release(grey);
+            BufferPool.release(blurred);
+         }
+         return false;
+      }
+
+      /**
+       * Applies the operations before the stipple and converts the result
+       * to grey, a chunk at a time.
+       */
+      private void toGrey(int[] pixels, byte[] grey, int from, int to)
+      {
+         PixelOps pixelOps = PixelOps.get();
+         for (int start = from; start < to; start += CHUNK_PIXELS)
+         {
+            int end = Math.min(to, start + CHUNK_PIXELS);
+            for (PointOp op : before)
+               op.apply(pixelOps, pixels, start, end);
+            pixelOps.luma(pixels, grey, start, end);
+         }
+      }
+
+      @Override
+      Step copy(IntUnaryOperator radius)
+      {
+         return new StippleStep(stippleMode, clean, mode,
+                 radius.applyAsInt(this.radius));
+      }
+
+      @Override
+      public String toString()
+      {
+         String name = "stipple(" + stippleMode + ", " + clean + ", " +
+                 mode + ")";
+         String fused = describe("", before);
+         return describe(fused.isEmpty() ? name : fused + "+" + name, after);
+      }
+   }
+}
@@ -0,0 +1,247 @@
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * The pixels of an image held as packed ARGB ints (the format returned by
+ * BufferedImage.getRGB()). The pixels are read from a BufferedImage in one
+ * bulk operation and written back the same way, and the accessors work on
+ * the packed values directly, so the filters don't convert or allocate
+ * anything per pixel.
+ */
+public final class PixelBuffer {
+
+   private final int width;
+   private final int height;
+   private final int[] pixels;
+
+   /**
+    * Creates a buffer of transparent black pixels.
+    *
+    * @param width        The width of the image.
+    * @param height       The height of the image.
+    */
+   public PixelBuffer(int width, int height)
+   {
+      this(width, height, new int[width * height]);
+   }
+
+   /**
+    * Creates a buffer backed by an array of packed ARGB pixels, row by row.
+    *
+    * @param width        The width of the image.
+    * @param height       The height of the image.
+    * @param pixels       The pixels, the array is used without copying.
+    */
+   public PixelBuffer(int width, int height, int[] pixels)
+   {
+      if (pixels.length < width * height)
+         throw new IllegalArgumentException("the pixel array is too small " +
+                 "for a " + width + "x" + height + " image");
+
+      this.width = width;
+      this.height = height;
+      this.pixels = pixels;
+   }
+
+   /**
+    * Reads all of the pixels of an image in one operation.
+    *
+    * @param image        The image to be read.
+    * @return             Returns a buffer holding a copy of the pixels.
+    */
+   public static PixelBuffer of(BufferedImage image)
+   {
+      int width = image.getWidth();
+      int height = image.getHeight();
+
+      return new PixelBuffer(width, height,
+              image.getRGB(0, 0, width, height, null, 0, width));
+   }
+
+   /**
+    * Reads all of the pixels of an image in one operation into an array,
+    * like one from the BufferPool.
+    *
+    * @param image        The image to be read.
+    * @param pixels       The array the pixels are read into, at least
+    *                     width * height long.
+    * @return             Returns a buffer backed by the array.
+    */
+   public static PixelBuffer of(BufferedImage image, int[] pixels)
+   {
+      int width = image.getWidth();
+      int height = image.getHeight();
+
+      PixelBuffer buffer = new PixelBuffer(width, height, pixels);
+      image.getRGB(0, 0, width, height, pixels, 0, width);
+      return buffer;
+   }
+
+   /**
+    * Writes all of the pixels to an image of the same size in one operation.
+    *
+    * @param image        The image to be written to.
+    */
+   public void writeTo(BufferedImage image)
+   {
+      image.setRGB(0, 0, width, height, pixels, 0, width);
+   }
+
+   /**
+    * Copies the pixels into a new buffer.
+    *
+    * @return             Returns the copy.
+    */
+   public PixelBuffer copy()
+   {
+      return new PixelBuffer(width, height, pixels.clone());
+   }
+
+   /**
+    * Shrinks the pixels to a smaller size, each pixel the rounded average
+    * of the area of pixels it covers, a pixel cut by its edge counting for
+    * the part inside it. Each channel, alpha too, is averaged on its own.
+    *
+    * @param newWidth     The width of the new buffer, from 1 to the width.
+    * @param newHeight    The height of the new buffer, from 1 to the
+    *                     height.
+    * @return             Returns a new buffer of the pixels.
+    */
+   public PixelBuffer scaleDown(int newWidth, int newHeight)
+   {
+      // Check if the size is valid.
+      if (newWidth < 1 || newWidth > width || newHeight < 1 ||
+              newHeight > height)
+         throw new IllegalArgumentException("input value for the size is " +
+                 "invalid, choose a size from 1x1 to " + width + "x" +
+                 height);
+
+      PixelBuffer scaled = new PixelBuffer(newWidth, newHeight);
+      int[] output = scaled.pixels;
+
+      // An output pixel covers width * height units of area, a pixel of
+      // the buffer newWidth * newHeight of them.
+      long area = (long) width * height;
+      TileExecutor.forEachBand(newWidth, newHeight, 1, (fromRow, toRow) -> {
+         long[] sums = new long[4 * newWidth];
+         for (int y = fromRow; y < toRow; y++)
+         {
+            Arrays.fill(sums, 0);
+            long top = (long) y * height;
+            long bottom = top + height;
+            for (int row = (int) (top / newHeight);
+                 (long) row * newHeight < bottom; row++)
+            {
+               long weight = Math.min(bottom, (long) (row + 1) * newHeight) -
+                       Math.max(top, (long) row * newHeight);
+               addRow(row, weight, newWidth, sums);
+            }
+
+            for (int x = 0; x < newWidth; x++)
+            {
+               output[y * newWidth + x] =
+                       (int) ((sums[4 * x] + area / 2) / area) << 24 |
+                       (int) ((sums[4 * x + 1] + area / 2) / area) << 16 |
+                       (int) ((sums[4 * x + 2] + area / 2) / area) << 8 |
+                       (int) ((sums[4 * x + 3] + area / 2) / area);
+            }
+         }
+      });
+      return scaled;
+   }
+
+   /**
+    * Adds the channels of a row, shrunk to the new width and weighed by
+    * the part of the row an output row covers, to the sums of the output
+    * row.
+    */
+   private void addRow(int row, long rowWeight, int newWidth, long[] sums)
+   {
+      int offset = row * width;
+      for (int x = 0; x < newWidth; x++)
+      {
+         long left = (long) x * width;
+         long right = left + width;
+         for (int column = (int) (left / newWidth);
+              (long) column * newWidth < right; column++)
+         {
+            long weight = rowWeight *
+                    (Math.min(right, (long) (column + 1) * newWidth) -
+                            Math.max(left, (long) column * newWidth));
+            int argb = pixels[offset + column];
+            sums[4 * x] += weight * (argb >>> 24);
+            sums[4 * x + 1] += weight * red(argb);
+            sums[4 * x + 2] += weight * green(argb);
+            sums[4 * x + 3] += weight * blue(argb);
+         }
+      }
+   }
+
+   public int getWidth()
+   {
+      return width;
+   }
+
+   public int getHeight()
+   {
+      return height;
+   }
+
+   /**
+    * The packed ARGB pixels, row by row. Changes to the array change the
+    * buffer.
+    *
+    * @return             Returns the backing array.
+    */
+   public int[] getPixels()
+   {
+      return pixels;
+   }
+
+   public int get(int x, int y)
+   {
+      return pixels[y * width + x];
+   }
+
+   public void set(int x, int y, int argb)
+   {
+      pixels[y * width + x] = argb;
+   }
+
+   public static int red(int argb)
+   {
+      return (argb >> 16) & 0xFF;
+   }
+
+   public static int green(int argb)
+   {
+      return (argb >> 8) & 0xFF;
+   }
+
+   public static int blue(int argb)
+   {
+      return argb & 0xFF;
+   }
+
+   /**
+    * The average of the red, green and blue channels of a pixel.
+    *
+    * @param argb         The packed pixel.
+    * @return             Returns the grey value.
+    */
+   public static int greyAverage(int argb)
+   {
+      return (red(argb) + blue(argb) + green(argb)) / 3;
+   }
+
+   /**
+    * Packs a grey value into an opaque pixel.
+    *
+    * @param grey         The grey value.
+    * @return             Returns the packed pixel.
+    */
+   public static int opaqueGrey(int grey)
+   {
+      return 0xFF000000 | (grey << 16) | (grey << 8) | grey;
+   }
+}
@@ -0,0 +1,183 @@
+/**
+ * The per pixel loops the filters spend their time in. There are two
+ * versions which give exactly the same results: a plain scalar one and one
+ * using the SIMD instructions of the processor through the incubating
+ * Vector API. The vector version is chosen when the JVM is started with
+ * --add-modules jdk.incubator.vector, unless the system property
+ * imageprocessing.vector is false.
+ */
+abstract class PixelOps {
+
+   private final static PixelOps INSTANCE = select();
+
+   /**
+    * The version of the loops used by the filters.
+    *
+    * @return              Returns the vector version when it's available.
+    */
+   static PixelOps get()
+   {
+      return INSTANCE;
+   }
+
+   /**
+    * The name of the version of the loops used, for reports.
+    *
+    * @return              Returns "vector" or "scalar".
+    */
+   static String describe()
+   {
+      return INSTANCE.name();
+   }
+
+   abstract String name();
+
+   /**
+    * Inverts the pixels from (inclusive) to (exclusive) of src into dst,
+    * which can be the same array. The inverted alpha is always 0.
+    */
+   abstract void invert(int[] src, int[] dst, int from, int to);
+
+   /**
+    * Converts the pixels from (inclusive) to (exclusive) of src to opaque
+    * GreyScale into dst, which can be the same array.
+    */
+   abstract void grey(int[] src, int[] dst, int from, int to);
+
+   /**
+    * Converts the pixels from (inclusive) to (exclusive) of src to their
+    * grey values, a byte each, into the same indices of dst.
+    */
+   abstract void luma(int[] src, byte[] dst, int from, int to);
+
+   /**
+    * Combines the grey pixels from (inclusive) to (exclusive) with their
+    * blurred pixels into one of the stipple art styles.
+    *
+    * @param mode          The stipple art style.
+    * @param clean         How much of the background is cleaned up.
+    * @param grey          The grey pixels.
+    * @param blurred       The blurred grey pixels, they are replaced.
+    * @param from          The index of the first pixel.
+    * @param to            The index after the last pixel.
+    */
+   abstract void stipple(StippleMode mode, int clean, int[] grey,
+                         int[] blurred, int from, int to);
+
+   /**
+    * Combines the grey values of a plane with their blurred values into one
+    * of the stipple art styles, written as packed pixels.
+    *
+    * @param mode          The stipple art style.
+    * @param clean         How much of the background is cleaned up.
+    * @param grey          The grey values.
+    * @param blurred       The blurred grey values.
+    * @param from          The index of the first value.
+    * @param dst           The array the packed pixels are written to.
+    * @param dstFrom       The index the first pixel is written to.
+    * @param length        The number of pixels.
+    */
+   abstract void stipple(StippleMode mode, int clean, byte[] grey,
+                         byte[] blurred, int from, int[] dst, int dstFrom,
+                         int length);
+
+   /**
+    * Combines the grey values from (inclusive) to (exclusive) with their
+    * blurred values into one of the GreyScale stipple art styles, keeping
+    * only the grey value of each output pixel.
+    *
+    * @param mode          The stipple art style, one which is GreyScale.
+    * @param clean         How much of the background is cleaned up.
+    * @param grey          The grey values.
+    * @param blurred       The blurred grey values, they are replaced.
+    * @param from          The index of the first value.
+    * @param to            The index after the last value.
+    */
+   abstract void stippleGrey(StippleMode mode, int clean, byte[] grey,
+                             byte[] blurred, int from, int to);
+
+   /**
+    * Blurs a row with a 1D kernel, the horizontal pass of the blur. Each
+    * output is the sum of the kernel weights times the row values from its
+    * position on, added up in the order of the kernel starting from 0.
+    *
+    * @param row           The values of one channel of the row.
+    * @param rowOffset     The index of the first value read.
+    * @param kernel        The weights of the kernel.
+    * @param out           The array the blurred values are written to.
+    * @param outOffset     The index of the first blurred value.
+    * @param length        The number of values blurred, kernel width - 1
+    *                      more values are read.
+    */
+   abstract void convolve(double[] row, int rowOffset, double[] kernel,
+                          double[] out, int outOffset, int length);
+
+   /**
+    * Blurs a row with a fixed point 1D kernel, the horizontal pass of the
+    * fixed point blur. Each sum is rounded by shifting it right.
+    *
+    * @param row           The values of one channel of the row.
+    * @param rowOffset     The index of the first value read.
+    * @param kernel        The fixed point weights of the kernel.
+    * @param out           The array the blurred values are written to.
+    * @param outOffset     The index of the first blurred value.
+    * @param length        The number of values blurred, kernel width - 1
+    *                      more values are read.
+    * @param shift         The fraction bits removed from each sum.
+    */
+   abstract void convolve(int[] row, int rowOffset, int[] kernel, int[] out,
+                          int outOffset, int length, int shift);
+
+   /**
+    * Adds a row multiplied by a weight to a row of sums, the vertical pass
+    * of the blur.
+    *
+    * @param sums          The sums, length of them are added to.
+    * @param sumOffset     The index of the first sum.
+    * @param row           The values multiplied by the weight.
+    * @param rowOffset     The index of the first value.
+    * @param weight        The weight.
+    * @param length        The number of values.
+    */
+   abstract void accumulate(double[] sums, int sumOffset, double[] row,
+                            int rowOffset, double weight, int length);
+
+   /**
+    * Adds a row multiplied by a weight to a row of sums, the vertical pass
+    * of the fixed point blur.
+    *
+    * @param sums          The sums, length of them are added to.
+    * @param sumOffset     The index of the first sum.
+    * @param row           The values multiplied by the weight.
+    * @param rowOffset     The index of the first value.
+    * @param weight        The weight.
+    * @param length        The number of values.
+    */
+   abstract void accumulate(int[] sums, int sumOffset, int[] row,
+                            int rowOffset, int weight, int length);
+
+   /**
+    * Uses the vector version if the Vector API module was added to the JVM.
+    * It's loaded by name, so the scalar version works without the module.
+    */
+   private static PixelOps select()
+   {
+      boolean enabled = Boolean.parseBoolean(
+              System.getProperty("imageprocessing.vector", "true"));
+
+      if (enabled && ModuleLayer.boot().findModule("jdk.incubator.vector")
+              .isPresent())
+      {
+         try
+         {
+            return (PixelOps) Class.forName("VectorPixelOps")
+                    .getDeclaredConstructor().newInstance();
+         }
+         catch (ReflectiveOperationException | LinkageError e)
+         {
+            // Fall back to the scalar loops.
+         }
+      }
+      return new ScalarPixelOps();
+   }
+}
@@ -0,0 +1,88 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+/**
+ * Keeps the StipplePlanes of images on disk, so trying other clean values
+ * or styles on an image skips the decode and the blur. The planes are found
+ * by a key hashed from the bytes of the image file, the blur radius and the
+ * BlurMode, so a changed image gets new planes. They are stored raw, two
+ * bytes a pixel, and mapped into memory when asked for, so only the pages
+ * read are loaded. Nothing is deleted, delete the directory to empty the
+ * cache.
+ */
+public final class PlaneCache {
+
+   private final File directory;
+
+   /**
+    * Opens a cache, creating the directory if it doesn't exist.
+    *
+    * @param directory        The directory the planes are kept in.
+    * @throws IOException     If the directory can't be created.
+    */
+   public PlaneCache(File directory) throws IOException
+   {
+      this.directory = directory;
+      Files.createDirectories(directory.toPath());
+   }
+
+   /**
+    * The planes of an image file, computed and stored the first time they
+    * are asked for.
+    *
+    * @param imageFile        The file path where the image is located.
+    * @param mode             How the blur is computed.
+    * @return                 Returns the planes, mapped from the cache.
+    * @throws IOException     If the image can't be read, or the planes
+    *                         can't be stored.
+    */
+   public StipplePlanes planes(File imageFile, BlurMode mode)
+           throws IOException
+   {
+      byte[] bytes = Files.readAllBytes(imageFile.toPath());
+      String key = ResultCache.key(bytes, "planes radius=" +
+              ConvertToStipple.BLUR_RADIUS + " " + mode);
+      File stored = new File(directory, key + ".planes");
+
+      if (!stored.isFile())
+      {
+         // Read the image.
+         BufferedImage img = ImageInput.read(bytes, imageFile);
+         if (img == null)
+            throw new IOException(imageFile + " is not a readable image");
+
+         StipplePlanes planes = StipplePlanes.of(PixelBuffer.of(img), mode);
+         ImageOutput.replace(stored.toPath(), temp -> {
+            try (OutputStream out = Files.newOutputStream(temp))
+            {
+               planes.write(out);
+            }
+         });
+      }
+      return StipplePlanes.map(stored);
+   }
+
+   /**
+    * Converts an image file into one of the stipple art styles through its
+    * cached planes. The result is the same as ConvertToStipple gives.
+    *
+    * @param stippleMode      The stipple art style.
+    * @param imageFile        The file path where the image is located.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    * @return                 Returns a new buffer of the converted pixels.
+    * @throws IOException     If the image can't be read, or the planes
+    *                         can't be stored.
+    */
+   public PixelBuffer stipple(StippleMode stippleMode, File imageFile,
+                              int clean, BlurMode mode) throws IOException
+   {
+      // Check the clean value before doing the work.
+      stippleMode.checkClean(clean);
+
+      return planes(imageFile, mode).stipple(stippleMode, clean);
+   }
+}
@@ -0,0 +1,431 @@
+import javax.imageio.ImageTypeSpecifier;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes a non interlaced PNG file row by row in one pass, holding a single
+ * row at a time. The PNG ImageReader decodes from the start of the file on
+ * every read, so reading strips through its source regions decodes the top
+ * of the image once per strip. The rows are unfiltered here and set in an
+ * image of the same type the ImageReader uses, so the ARGB values are the
+ * same as ImageIO.read() gives.
+ */
+final class PngStripReader implements StripReader {
+
+   private final static long SIGNATURE = 0x89504E470D0A1A0AL;
+
+   private final static int IHDR = 0x49484452;
+   private final static int IDAT = 0x49444154;
+   private final static int TRNS = 0x74524E53;
+
+   private final static int COLOR_GREY = 0;
+   private final static int COLOR_RGB = 2;
+   private final static int COLOR_PALETTE = 3;
+   private final static int COLOR_GREY_ALPHA = 4;
+
+   private final Inflater inflater = new Inflater();
+   private final InputStream pixelStream;
+   private final ImageTypeSpecifier type;
+   private final int width;
+   private final int height;
+   private final int bitDepth;
+   private final int bands;
+
+   // The bytes each filter looks back, at least one.
+   private final int filterStride;
+
+   // The decoded row, and the row above it which the filters refer to.
+   private byte[] row;
+   private byte[] prior;
+
+   // The row as samples, and the image it's converted to ARGB through.
+   private final int[] samples;
+   private final BufferedImage rowImage;
+   private final int[][] scale;
+
+   private PngStripReader(DataInputStream in, ImageTypeSpecifier type,
+                          int width, int height, int bitDepth, int colorType,
+                          int idatLength)
+   {
+      this.type = type;
+      this.width = width;
+      this.height = height;
+      this.bitDepth = bitDepth;
+      this.bands = bands(colorType);
+      this.filterStride = Math.max(1, (bands * bitDepth) / 8);
+
+      int rowBytes = (int) (((long) width * bands * bitDepth + 7) / 8);
+      this.row = new byte[rowBytes];
+      this.prior = new byte[rowBytes];
+
+      this.samples = new int[width * bands];
+      this.rowImage = type.createBufferedImage(width, 1);
+      this.scale = buildScale(rowImage.getRaster().getSampleModel()
+              .getSampleSize(), bitDepth);
+      this.pixelStream = new InflaterInputStream(
+              new IdatStream(in, idatLength), inflater, 1 << 16);
+   }
+
+   /**
+    * Opens a PNG file, positioned at the start of its pixel data.
+    *
+    * @param imageFile        The file path where the image is located.
+    * @param type             The type of image the ImageReader decodes it to.
+    * @return                 Returns the reader, or null if the file is
+    *                         interlaced or has a transparent color, which
+    *                         the ImageReader converts to an alpha channel.
+    * @throws IOException     If the file can't be read or isn't a PNG.
+    */
+   static PngStripReader open(File imageFile, ImageTypeSpecifier type)
+           throws IOException
+   {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(
+              new FileInputStream(imageFile), 1 << 16));
+      try
+      {
+         if (in.readLong() != SIGNATURE)
+            throw new IOException(imageFile + " is not a PNG file");
+
+         int width = 0;
+         int height = 0;
+         int bitDepth = 0;
+         int colorType = 0;
+         int interlace = 0;
+         boolean transparentColor = false;
+
+         // Read the chunks up to the first one holding pixel data.
+         while (true)
+         {
+            int length = in.readInt();
+            int chunkType = in.readInt();
+
+            if (chunkType == IDAT)
+            {
+               if (interlace != 0 || transparentColor)
+               {
+                  in.close();
+                  return null;
+               }
+               return new PngStripReader(in, type, width, height, bitDepth,
+                       colorType, length);
+            }
+
+            if (chunkType == IHDR)
+            {
+               width = in.readInt();
+               height = in.readInt();
+               bitDepth = in.readUnsignedByte();
+               colorType = in.readUnsignedByte();
+               in.readUnsignedByte();
+               in.readUnsignedByte();
+               interlace = in.readUnsignedByte();
+               in.skipNBytes(length - 13);
+            }
+            else
+            {
+               if (chunkType == TRNS && colorType != COLOR_PALETTE)
+                  transparentColor = true;
+               in.skipNBytes(length);
+            }
+
+            // Skip the CRC.
+            in.skipNBytes(4);
+         }
+      }
+      catch (IOException | RuntimeException e)
+      {
+         in.close();
+         throw e;
+      }
+   }
+
+   @Override
+   public int getWidth()
+   {
+      return width;
+   }
+
+   @Override
+   public int getHeight()
+   {
+      return height;
+   }
+
+   @Override
+   public ImageTypeSpecifier getImageType()
+   {
+      return type;
+   }
+
+   @Override
+   public void read(int[] pixels, int offset, int rows) throws IOException
+   {
+      WritableRaster raster = rowImage.getRaster();
+      boolean copyBytes = bitDepth == 8 && scale == null &&
+              raster.getTransferType() == DataBuffer.TYPE_BYTE &&
+              raster.getNumDataElements() == bands;
+
+      for (int y = 0; y < rows; y++)
+      {
+         readRow();
+
+         if (copyBytes)
+         {
+            // The bytes are already the samples in band order.
+            raster.setDataElements(0, 0, width, 1, row);
+         }
+         else
+         {
+            unpackSamples();
+            raster.setPixels(0, 0, width, 1, samples);
+         }
+
+         rowImage.getRGB(0, 0, width, 1, pixels, offset + y * width, width);
+      }
+   }
+
+   @Override
+   public void close() throws IOException
+   {
+      pixelStream.close();
+      inflater.end();
+   }
+
+   /**
+    * Reads the next row and undoes its filter.
+    */
+   private void readRow() throws IOException
+   {
+      byte[] swap = prior;
+      prior = row;
+      row = swap;
+
+      int filter = pixelStream.read();
+      if (filter < 0)
+         throw new EOFException("PNG pixel data ended early");
+
+      int length = row.length;
+      int read = 0;
+      while (read < length)
+      {
+         int n = pixelStream.read(row, read, length - read);
+         if (n < 0)
+            throw new EOFException("PNG pixel data ended early");
+         read += n;
+      }
+
+      int stride = filterStride;
+      switch (filter)
+      {
+         case 0:
+            break;
+
+         // Sub, the byte to the left.
+         case 1:
+            for (int i = stride; i < length; i++)
+               row[i] += row[i - stride];
+            break;
+
+         // Up, the byte above.
+         case 2:
+            for (int i = 0; i < length; i++)
+               row[i] += prior[i];
+            break;
+
+         // Average of the left and above.
+         case 3:
+            for (int i = 0; i < stride; i++)
+               row[i] += (prior[i] & 0xFF) >> 1;
+            for (int i = stride; i < length; i++)
+               row[i] += ((row[i - stride] & 0xFF) + (prior[i] & 0xFF)) >> 1;
+            break;
+
+         // Paeth, whichever of left, above and above left is nearest.
+         case 4:
+            for (int i = 0; i < stride; i++)
+               row[i] += prior[i];
+            for (int i = stride; i < length; i++)
+            {
+               row[i] += paeth(row[i - stride] & 0xFF, prior[i] & 0xFF,
+                       prior[i - stride] & 0xFF);
+            }
+            break;
+
+         default:
+            throw new IOException("unknown PNG row filter " + filter);
+      }
+   }
+
+   /**
+    * Splits the row bytes into samples, scaled to the sample size of the
+    * image the same way the ImageReader scales them.
+    */
+   private void unpackSamples()
+   {
+      int count = samples.length;
+
+      if (bitDepth == 16)
+      {
+         for (int i = 0; i < count; i++)
+            samples[i] = ((row[2 * i] & 0xFF) << 8) | (row[2 * i + 1] & 0xFF);
+      }
+      else if (bitDepth == 8)
+      {
+         for (int i = 0; i < count; i++)
+            samples[i] = row[i] & 0xFF;
+      }
+      else
+      {
+         // Several samples a byte, the leftmost in the highest bits.
+         int perByte = 8 / bitDepth;
+         int mask = (1 << bitDepth) - 1;
+         for (int i = 0; i < count; i++)
+         {
+            int shift = 8 - bitDepth * (1 + i % perByte);
+            samples[i] = ((row[i / perByte] & 0xFF) >> shift) & mask;
+         }
+      }
+
+      if (scale != null)
+      {
+         for (int i = 0; i < count; i++)
+            samples[i] = scale[i % bands][samples[i]];
+      }
+   }
+
+   /**
+    * The tables scaling each band to the sample size of the image, or null
+    * if every band already has the bit depth of the file.
+    */
+   private static int[][] buildScale(int[] sampleSizes, int bitDepth)
+   {
+      boolean same = true;
+      for (int size : sampleSizes)
+         same &= size == bitDepth;
+      if (same)
+         return null;
+
+      int maxIn = (1 << bitDepth) - 1;
+      int[][] scale = new int[sampleSizes.length][maxIn + 1];
+      for (int b = 0; b < sampleSizes.length; b++)
+      {
+         int maxOut = (1 << sampleSizes[b]) - 1;
+         for (int s = 0; s <= maxIn; s++)
+            scale[b][s] = (s * maxOut + maxIn / 2) / maxIn;
+      }
+      return scale;
+   }
+
+   /**
+    * The Paeth predictor of the PNG specification.
+    */
+   private static int paeth(int left, int above, int aboveLeft)
+   {
+      int estimate = left + above - aboveLeft;
+      int toLeft = Math.abs(estimate - left);
+      int toAbove = Math.abs(estimate - above);
+      int toAboveLeft = Math.abs(estimate - aboveLeft);
+
+      if (toLeft <= toAbove && toLeft <= toAboveLeft)
+         return left;
+      return toAbove <= toAboveLeft ? above : aboveLeft;
+   }
+
+   /**
+    * The number of samples in a pixel of a color type.
+    */
+   private static int bands(int colorType)
+   {
+      switch (colorType)
+      {
+         case COLOR_GREY:
+         case COLOR_PALETTE:
+            return 1;
+         case COLOR_GREY_ALPHA:
+            return 2;
+         case COLOR_RGB:
+            return 3;
+         default:
+            return 4;
+      }
+   }
+
+   /**
+    * The compressed pixel data, which is split across consecutive IDAT
+    * chunks.
+    */
+   private static final class IdatStream extends InputStream {
+
+      private final DataInputStream in;
+
+      // The bytes left in the current chunk, -1 after the last chunk.
+      private int remaining;
+
+      IdatStream(DataInputStream in, int length)
+      {
+         this.in = in;
+         this.remaining = length;
+      }
+
+      @Override
+      public int read() throws IOException
+      {
+         if (!nextChunk())
+            return -1;
+         remaining--;
+         return in.read();
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException
+      {
+         if (len == 0)
+            return 0;
+         if (!nextChunk())
+            return -1;
+
+         int n = in.read(b, off, Math.min(len, remaining));
+         if (n < 0)
+            throw new EOFException("PNG file ended early");
+         remaining -= n;
+         return n;
+      }
+
+      @Override
+      public void close() throws IOException
+      {
+         in.close();
+      }
+
+      /**
+       * Moves past empty chunks, returns false after the last IDAT chunk.
+       */
+      private boolean nextChunk() throws IOException
+      {
+         while (remaining == 0)
+         {
+            // Skip the CRC of the finished chunk.
+            in.skipNBytes(4);
+
+            int length = in.readInt();
+            if (in.readInt() != IDAT)
+            {
+               remaining = -1;
+               break;
+            }
+            remaining = length;
+         }
+         return remaining > 0;
+      }
+   }
+}
@@ -0,0 +1,89 @@
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Reads the rows of any image ImageIO can decode through the source regions
+ * of its ImageReader. Tiled and striped formats like TIFF only decode the
+ * rows asked for. Formats that can only be decoded from the start, like
+ * JPEG, decode everything above each strip again, so tall strips read them
+ * faster.
+ */
+final class RegionStripReader implements StripReader {
+
+   private final ImageReader reader;
+   private final ImageInputStream stream;
+   private final ImageReadParam param;
+   private final ImageTypeSpecifier type;
+   private final int width;
+   private final int height;
+
+   // The rows are decoded into this image, it grows to the tallest strip.
+   private BufferedImage strip;
+   private int nextRow;
+
+   /**
+    * Creates a reader of the first image of a stream.
+    *
+    * @param reader           The ImageReader, its input is the stream.
+    * @param stream           The stream of the image file.
+    * @throws IOException     If the header of the image can't be read.
+    */
+   RegionStripReader(ImageReader reader, ImageInputStream stream)
+           throws IOException
+   {
+      this.reader = reader;
+      this.stream = stream;
+      this.param = reader.getDefaultReadParam();
+      this.type = reader.getImageTypes(0).next();
+      this.width = reader.getWidth(0);
+      this.height = reader.getHeight(0);
+   }
+
+   @Override
+   public int getWidth()
+   {
+      return width;
+   }
+
+   @Override
+   public int getHeight()
+   {
+      return height;
+   }
+
+   @Override
+   public ImageTypeSpecifier getImageType()
+   {
+      return type;
+   }
+
+   @Override
+   public void read(int[] pixels, int offset, int rows) throws IOException
+   {
+      if (rows <= 0)
+         return;
+
+      if (strip == null || strip.getHeight() < rows)
+         strip = type.createBufferedImage(width, rows);
+
+      // Decode just the rows of the strip into the top of the strip image.
+      param.setSourceRegion(new Rectangle(0, nextRow, width, rows));
+      param.setDestination(strip);
+      reader.read(0, param);
+
+      strip.getRGB(0, 0, width, rows, pixels, offset, width);
+      nextRow += rows;
+   }
+
+   @Override
+   public void close() throws IOException
+   {
+      reader.dispose();
+      stream.close();
+   }
+}
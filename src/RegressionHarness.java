@@ -0,0 +1,780 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Checks every public operation of ImageFilters and ConvertToStipple end to
+ * end, from reading an image file to writing it, so an optimization which
+ * changes an output or slows down the whole path is caught, not only one
+ * which slows down a microbenchmark. Run it with
+ * "java RegressionHarness [--update] [--record] [--threshold=0.2]
+ * [--rounds=3] [--golden=file] [--baseline=file] [--corpus=directory]".
+ *
+ * <p>It generates the same synthetic images on every machine: gradients,
+ * noise, stripes, flat colours, translucent and grey images, from 1x1 up
+ * to 1024x768. Each operation is run on each image and the SHA-256 of the
+ * output pixels is compared to the golden hash stored for it. Outputs
+ * which are meant to match another output, like the in-memory and the file
+ * version of a filter, or to be within a level of it, like the FIXED_POINT
+ * and SEPARABLE blurs, are compared pixel by pixel. --update stores the
+ * hashes of this run as the golden hashes, after a change meant to change
+ * the outputs. The golden hashes are kept in regression/golden.txt, run
+ * the harness from the top of the repository to use them.
+ *
+ * <p>The file operations are then timed on the biggest images. The images
+ * per second, megapixels per second and the p50 and p99 latency of each
+ * are recorded in a baseline file, and the run fails when the throughput
+ * of one at its median latency drops by more than the threshold. The
+ * baseline depends on the machine, so it isn't kept with the code. It's
+ * recorded by the first run on a machine, or with --record.
+ *
+ * <p>The exit status is 1 if anything failed.
+ */
+public final class RegressionHarness {
+
+   // The files used unless others are given.
+   private final static String GOLDEN_FILE = "regression/golden.txt";
+   private final static String BASELINE_FILE = "regression/baseline.txt";
+
+   // The seed of the synthetic images, changing it changes every hash.
+   private final static long SEED = 0x5EED;
+
+   // The width the scaled operations are read at, smaller than the larger
+   // images and larger than the smaller ones.
+   private final static int SCALED_WIDTH = 100;
+
+   // Ends the name of a scaled operation read at the width of the image.
+   private final static String FULL_WIDTH = ", full width, ImageOutput)";
+
+   // The images with at least this many pixels are timed.
+   private final static int TIMED_PIXELS = 512 * 512;
+
+   private final Map<String, Case> cases = new LinkedHashMap<>();
+   private final List<Comparison> comparisons = new ArrayList<>();
+   private final List<String> failures = new ArrayList<>();
+
+   /**
+    * An operation, reading the source file, or a copy of it which the
+    * operation can write over, and giving back the output.
+    */
+   @FunctionalInterface
+   private interface Operation {
+
+      BufferedImage apply(File source, File work) throws IOException;
+   }
+
+   /**
+    * An operation which writes its result over the image file.
+    */
+   @FunctionalInterface
+   private interface FileOperation {
+
+      void apply(File imageFile);
+   }
+
+   /**
+    * An operation which reads the image file at a width and writes the
+    * result to an output.
+    */
+   @FunctionalInterface
+   private interface ScaledOperation {
+
+      void apply(File imageFile, int width, ImageOutput output);
+   }
+
+   /**
+    * Runs the harness.
+    *
+    * @param args             The options, see the class comment.
+    */
+   public static void main(String[] args)
+   {
+      Map<String, String> options = new HashMap<>();
+      for (String arg : args)
+      {
+         int equals = arg.indexOf('=');
+         if (!arg.startsWith("--"))
+            throw new IllegalArgumentException("input value for " + arg +
+                    " is invalid, write options as --name or --name=value");
+         if (equals < 0)
+            options.put(arg.substring(2), "true");
+         else
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+      }
+
+      try
+      {
+         boolean passed = new RegressionHarness().run(options);
+         System.exit(passed ? 0 : 1);
+      }
+      catch (IOException e)
+      {
+         e.printStackTrace();
+         System.exit(1);
+      }
+   }
+
+   private RegressionHarness()
+   {
+      addCases();
+      addComparisons();
+   }
+
+   /**
+    * Runs the checks and the timings.
+    */
+   private boolean run(Map<String, String> options) throws IOException
+   {
+      File golden = new File(options.getOrDefault("golden", GOLDEN_FILE));
+      File baseline = new File(options.getOrDefault("baseline",
+              BASELINE_FILE));
+      double threshold = Double.parseDouble(options.getOrDefault(
+              "threshold", "0.2"));
+      int rounds = Integer.parseInt(options.getOrDefault("rounds", "3"));
+
+      File corpus = options.containsKey("corpus") ?
+              new File(options.get("corpus")) :
+              Files.createTempDirectory("regression").toFile();
+      List<File> images = generateCorpus(corpus);
+      File work = new File(corpus, "work");
+      Files.createDirectories(work.toPath());
+
+      // Run every operation on every image.
+      Map<String, String> hashes = new TreeMap<>();
+      Map<String, BufferedImage> outputs = new HashMap<>();
+      for (File image : images)
+      {
+         outputs.clear();
+         for (Map.Entry<String, Case> entry : cases.entrySet())
+         {
+            String key = entry.getKey() + " " + image.getName();
+            try
+            {
+               BufferedImage output = entry.getValue().operation.apply(
+                       image, copy(image, work));
+               outputs.put(entry.getKey(), output);
+               hashes.put(key, hash(output));
+            }
+            catch (IOException | RuntimeException e)
+            {
+               failures.add(key + ": " + e);
+            }
+         }
+         compare(image, outputs);
+      }
+
+      // Check the hashes against the golden ones, or store them.
+      if (options.containsKey("update") || !golden.isFile())
+      {
+         writeValues(golden, "# operation image sha256", hashes);
+         System.out.println("Stored " + hashes.size() + " golden hashes in " +
+                 golden);
+      }
+      else
+      {
+         checkHashes(readValues(golden), hashes);
+      }
+
+      // Time the file operations and check them against the baseline.
+      Map<String, String> throughput = time(images, work, rounds);
+      if (options.containsKey("record") || !baseline.isFile())
+      {
+         writeValues(baseline, "# operation images/s MP/s p50ms p99ms",
+                 throughput);
+         System.out.println("Recorded the baseline in " + baseline);
+      }
+      else
+      {
+         checkThroughput(readValues(baseline), throughput, threshold);
+      }
+
+      for (String failure : failures)
+         System.out.println("FAILED " + failure);
+      System.out.println(failures.isEmpty() ? "PASSED" :
+              failures.size() + " failures");
+      return failures.isEmpty();
+   }
+
+   /**
+    * The operations, named after the method and the form of the image it
+    * takes. The file forms are the whole read, filter and write path.
+    */
+   private void addCases()
+   {
+      // The filters of ImageFilters.
+      addFile("invertColors(File)", ImageFilters::invertColors);
+      add("invertColors(BufferedImage)", (source, work) ->
+              ImageFilters.invertColors(read(source)));
+      add("invertColors(PixelBuffer)", (source, work) ->
+              toImage(ImageFilters.invertColors(
+                      PixelBuffer.of(read(source)))));
+
+      addFile("convertToGreyScale(File)", ImageFilters::convertToGreyScale);
+      add("convertToGreyScale(BufferedImage)", (source, work) ->
+              ImageFilters.convertToGreyScale(read(source)));
+      add("convertToGreyScale(PixelBuffer)", (source, work) ->
+              toImage(ImageFilters.convertToGreyScale(
+                      PixelBuffer.of(read(source)))));
+
+      addFile("convertToGreyImage(File)", ImageFilters::convertToGreyImage);
+      add("convertToGreyImage(BufferedImage)", (source, work) ->
+              ImageFilters.convertToGreyImage(read(source)));
+      add("convertToLuminance(PixelBuffer)", (source, work) ->
+              ImageFilters.convertToLuminance(PixelBuffer.of(read(source)))
+                      .toImage());
+
+      addFile("gaussianBlur(3, File)",
+              file -> ImageFilters.gaussianBlur(3, file));
+      add("gaussianBlur(3, BufferedImage)", (source, work) ->
+              ImageFilters.gaussianBlur(3, read(source)));
+      for (BlurMode mode : BlurMode.values())
+      {
+         addFile("gaussianBlur(3, File, " + mode + ")",
+                 file -> ImageFilters.gaussianBlur(3, file, mode));
+         add("gaussianBlur(3, BufferedImage, " + mode + ")", (source, work) ->
+                 ImageFilters.gaussianBlur(3, read(source), mode));
+         add("gaussianBlur(3, PixelBuffer, " + mode + ")", (source, work) ->
+                 toImage(ImageFilters.gaussianBlur(3,
+                         PixelBuffer.of(read(source)), mode)));
+      }
+      add("gaussianBlur(12, BufferedImage, BOX)", (source, work) ->
+              ImageFilters.gaussianBlur(12, read(source), BlurMode.BOX));
+
+      // The file filters read at a width and written to an output.
+      addScaled("invertColors(File)", ImageFilters::invertColors);
+      addScaled("convertToGreyScale(File)",
+              ImageFilters::convertToGreyScale);
+      for (BlurMode mode : BlurMode.values())
+      {
+         addScaled("gaussianBlur(3, File, " + mode + ")",
+                 (file, width, output) -> ImageFilters.gaussianBlur(3, file,
+                         mode, width, output));
+      }
+
+      // The styles of ConvertToStipple, each at a clean value it
+      // recommends.
+      addFile("blackFigureOnWhite(File)", file ->
+              ConvertToStipple.blackFigureOnWhite(file, "png", 4));
+      addFile("blackFigureOnYellowishWhite(File)", file ->
+              ConvertToStipple.blackFigureOnYellowishWhite(file, "png", 7));
+      addFile("whiteFigure(File)", file ->
+              ConvertToStipple.whiteFigure(file, "png", 4));
+      add("blackFigureOnWhite(BufferedImage)", (source, work) ->
+              ConvertToStipple.blackFigureOnWhite(read(source), 4));
+      add("blackFigureOnYellowishWhite(BufferedImage)", (source, work) ->
+              ConvertToStipple.blackFigureOnYellowishWhite(read(source), 7));
+      add("whiteFigure(BufferedImage)", (source, work) ->
+              ConvertToStipple.whiteFigure(read(source), 4));
+      for (BlurMode mode : BlurMode.values())
+      {
+         addFile("blackFigureOnWhite(File, " + mode + ")", file ->
+                 ConvertToStipple.blackFigureOnWhite(file, "png", 4, mode));
+         addFile("blackFigureOnYellowishWhite(File, " + mode + ")", file ->
+                 ConvertToStipple.blackFigureOnYellowishWhite(file, "png", 7,
+                         mode));
+         addFile("whiteFigure(File, " + mode + ")", file ->
+                 ConvertToStipple.whiteFigure(file, "png", 4, mode));
+         add("blackFigureOnWhite(BufferedImage, " + mode + ")",
+                 (source, work) -> ConvertToStipple.blackFigureOnWhite(
+                         read(source), 4, mode));
+         add("blackFigureOnYellowishWhite(BufferedImage, " + mode + ")",
+                 (source, work) -> ConvertToStipple
+                         .blackFigureOnYellowishWhite(read(source), 7, mode));
+         add("whiteFigure(BufferedImage, " + mode + ")",
+                 (source, work) -> ConvertToStipple.whiteFigure(
+                         read(source), 4, mode));
+         add("blackFigureOnWhite(PixelBuffer, " + mode + ")",
+                 (source, work) -> toImage(ConvertToStipple
+                         .blackFigureOnWhite(PixelBuffer.of(read(source)), 4,
+                                 mode)));
+         add("blackFigureOnYellowishWhite(PixelBuffer, " + mode + ")",
+                 (source, work) -> toImage(ConvertToStipple
+                         .blackFigureOnYellowishWhite(
+                                 PixelBuffer.of(read(source)), 7, mode)));
+         add("whiteFigure(PixelBuffer, " + mode + ")",
+                 (source, work) -> toImage(ConvertToStipple.whiteFigure(
+                         PixelBuffer.of(read(source)), 4, mode)));
+         add("greyStipple(BufferedImage, " + mode + ")", (source, work) ->
+                 ConvertToStipple.greyStipple(read(source),
+                         StippleMode.BLACK_FIGURE_ON_WHITE, 4, mode));
+         add("stipple(LumaPlane, " + mode + ")", (source, work) ->
+                 ConvertToStipple.stipple(LumaPlane.of(read(source)),
+                         StippleMode.WHITE_FIGURE, 4, mode).toImage());
+      }
+
+      // The styles read at a width and written to an output.
+      for (BlurMode mode : BlurMode.values())
+      {
+         addScaled("blackFigureOnWhite(File, " + mode + ")",
+                 (file, width, output) -> ConvertToStipple
+                         .blackFigureOnWhite(file, 4, mode, width, output));
+         addScaled("blackFigureOnYellowishWhite(File, " + mode + ")",
+                 (file, width, output) -> ConvertToStipple
+                         .blackFigureOnYellowishWhite(file, 7, mode, width,
+                                 output));
+         addScaled("whiteFigure(File, " + mode + ")",
+                 (file, width, output) -> ConvertToStipple.whiteFigure(file,
+                         4, mode, width, output));
+      }
+
+      // A chain of filters, each blur scaled to the width.
+      addScaled("Pipeline(convertToGreyScale, gaussianBlur(6), " +
+              "invertColors)", new Pipeline().convertToGreyScale()
+              .gaussianBlur(6).invertColors()::apply);
+   }
+
+   /**
+    * The outputs which must match each other, or be within a number of
+    * levels of each other on every channel.
+    */
+   private void addComparisons()
+   {
+      // The file forms write what the in-memory forms give back.
+      for (String name : cases.keySet())
+      {
+         if (name.contains("(File"))
+            comparisons.add(new Comparison(name,
+                    name.replace("(File", "(BufferedImage"), 0));
+      }
+
+      // Read at their own width, the images are what the full size file
+      // forms give.
+      for (String name : cases.keySet())
+      {
+         if (name.endsWith(FULL_WIDTH))
+            comparisons.add(new Comparison(name,
+                    name.replace(FULL_WIDTH, ")"), 0));
+      }
+
+      // The default blur mode is SEPARABLE.
+      comparisons.add(new Comparison("gaussianBlur(3, BufferedImage)",
+              "gaussianBlur(3, BufferedImage, SEPARABLE)", 0));
+      comparisons.add(new Comparison("blackFigureOnWhite(BufferedImage)",
+              "blackFigureOnWhite(BufferedImage, SEPARABLE)", 0));
+
+      // FIXED_POINT is within one level of SEPARABLE.
+      comparisons.add(new Comparison(
+              "gaussianBlur(3, PixelBuffer, FIXED_POINT)",
+              "gaussianBlur(3, PixelBuffer, SEPARABLE)", 1));
+   }
+
+   private void add(String name, Operation operation)
+   {
+      cases.put(name, new Case(operation, false));
+   }
+
+   /**
+    * Adds an operation which writes the result over its file, reading the
+    * result back.
+    */
+   private void addFile(String name, FileOperation operation)
+   {
+      cases.put(name, new Case((source, work) -> {
+         operation.apply(work);
+         return read(work);
+      }, true));
+   }
+
+   /**
+    * Adds an operation which reads its file at a width and writes the
+    * result into another directory, reading the result back. It's added
+    * at SCALED_WIDTH and at the width of each image, named after the file
+    * operation it matches, like "invertColors(File, 100, ImageOutput)".
+    */
+   private void addScaled(String fileName, ScaledOperation operation)
+   {
+      String name = fileName.substring(0, fileName.length() - 1);
+      cases.put(name + ", " + SCALED_WIDTH + ", ImageOutput)",
+              new Case((source, work) -> scaled(operation, work,
+                      SCALED_WIDTH), true));
+      cases.put(name + FULL_WIDTH, new Case((source, work) ->
+              scaled(operation, work, read(source).getWidth()), false));
+   }
+
+   /**
+    * Runs an operation at a width, writing into a directory next to the
+    * file, and reads the result back.
+    */
+   private static BufferedImage scaled(ScaledOperation operation, File work,
+                                       int width) throws IOException
+   {
+      ImageOutput output = new ImageOutput("png",
+              new File(work.getParentFile(), "scaled"));
+      operation.apply(work, width, output);
+      return read(output.target(work));
+   }
+
+   /**
+    * Compares the outputs of one image which must match.
+    */
+   private void compare(File image, Map<String, BufferedImage> outputs)
+   {
+      for (Comparison comparison : comparisons)
+      {
+         BufferedImage first = outputs.get(comparison.first);
+         BufferedImage second = outputs.get(comparison.second);
+         if (first == null || second == null)
+            continue;
+
+         int difference = maxDifference(first, second);
+         if (difference > comparison.tolerance)
+         {
+            failures.add(comparison.first + " and " + comparison.second +
+                    " differ by " + difference + " on " + image.getName() +
+                    ", at most " + comparison.tolerance + " allowed");
+         }
+      }
+   }
+
+   /**
+    * Compares the hashes of this run to the golden ones.
+    */
+   private void checkHashes(Map<String, String> golden,
+                            Map<String, String> hashes)
+   {
+      for (Map.Entry<String, String> entry : hashes.entrySet())
+      {
+         String expected = golden.get(entry.getKey());
+         if (expected == null)
+            failures.add(entry.getKey() + ": no golden hash, run with " +
+                    "--update to store it");
+         else if (!expected.equals(entry.getValue()))
+            failures.add(entry.getKey() + ": the output changed");
+      }
+      for (String key : golden.keySet())
+      {
+         if (!hashes.containsKey(key))
+            failures.add(key + ": not run");
+      }
+   }
+
+   /**
+    * Times each file operation on the biggest images after a round to warm
+    * up, giving "images/s MP/s p50ms p99ms" for each.
+    */
+   private Map<String, String> time(List<File> images, File work, int rounds)
+           throws IOException
+   {
+      List<File> timed = new ArrayList<>();
+      long pixels = 0;
+      for (File image : images)
+      {
+         BufferedImage img = read(image);
+         if ((long) img.getWidth() * img.getHeight() >= TIMED_PIXELS)
+         {
+            timed.add(image);
+            pixels += (long) img.getWidth() * img.getHeight();
+         }
+      }
+
+      Map<String, String> throughput = new TreeMap<>();
+      for (Map.Entry<String, Case> entry : cases.entrySet())
+      {
+         if (!entry.getValue().timed)
+            continue;
+
+         Operation operation = entry.getValue().operation;
+         long[] nanos = new long[rounds * timed.size()];
+         for (int round = -1; round < rounds; round++)
+         {
+            for (int i = 0; i < timed.size(); i++)
+            {
+               File copy = copy(timed.get(i), work);
+               long start = System.nanoTime();
+               operation.apply(timed.get(i), copy);
+               if (round >= 0)
+                  nanos[round * timed.size() + i] = System.nanoTime() - start;
+            }
+         }
+
+         long total = 0;
+         for (long n : nanos)
+            total += n;
+         Arrays.sort(nanos);
+         double seconds = total / 1e9;
+         throughput.put(entry.getKey(), String.format(Locale.ROOT,
+                 "%.3f %.3f %.3f %.3f", nanos.length / seconds,
+                 pixels * rounds / 1e6 / seconds,
+                 percentile(nanos, 0.5) / 1e6, percentile(nanos, 0.99) / 1e6));
+         System.out.println(entry.getKey() + ": " +
+                 throughput.get(entry.getKey()));
+      }
+      return throughput;
+   }
+
+   /**
+    * Fails the operations whose throughput dropped by more than the
+    * threshold. The throughput is judged by the median latency, as a few
+    * slow runs from a GC or another process would move the mean.
+    */
+   private void checkThroughput(Map<String, String> baseline,
+                                Map<String, String> throughput,
+                                double threshold)
+   {
+      for (Map.Entry<String, String> entry : throughput.entrySet())
+      {
+         String recorded = baseline.get(entry.getKey());
+         if (recorded == null)
+            continue;
+
+         double before = Double.parseDouble(recorded.split(" ")[2]);
+         double now = Double.parseDouble(entry.getValue().split(" ")[2]);
+         if (before < now * (1 - threshold))
+         {
+            failures.add(String.format(Locale.ROOT, "%s: a median of " +
+                            "%.3f ms, up from %.3f ms", entry.getKey(), now,
+                    before));
+         }
+      }
+   }
+
+   /**
+    * Writes the synthetic images, the same ones on every machine.
+    */
+   private static List<File> generateCorpus(File corpus) throws IOException
+   {
+      Files.createDirectories(corpus.toPath());
+      Random random = new Random(SEED);
+
+      int[][] sizes = {{1, 1}, {7, 5}, {64, 48}, {333, 217}, {1024, 768}};
+      String[] kinds = {"gradient", "noise", "stripes", "flat",
+              "translucent", "grey"};
+
+      List<File> images = new ArrayList<>();
+      for (int[] size : sizes)
+      {
+         for (String kind : kinds)
+         {
+            BufferedImage img = generate(kind, size[0], size[1], random);
+            File file = new File(corpus, kind + "-" + size[0] + "x" +
+                    size[1] + ".png");
+            ImageIO.write(img, "png", file);
+            images.add(file);
+         }
+      }
+      return images;
+   }
+
+   private static BufferedImage generate(String kind, int width, int height,
+                                         Random random)
+   {
+      int type = kind.equals("translucent") ? BufferedImage.TYPE_INT_ARGB :
+              kind.equals("grey") ? BufferedImage.TYPE_BYTE_GRAY :
+                      BufferedImage.TYPE_INT_RGB;
+      BufferedImage img = new BufferedImage(width, height, type);
+      int flat = random.nextInt() | 0xFF000000;
+
+      for (int y = 0; y < height; y++)
+      {
+         for (int x = 0; x < width; x++)
+         {
+            int value;
+            switch (kind)
+            {
+               case "gradient":
+                  value = 0xFF000000 | (x * 255 / width << 16) |
+                          (y * 255 / height << 8) | ((x + y) & 0xFF);
+                  break;
+
+               case "stripes":
+                  value = ((x / 3 + y / 5) & 1) == 0 ? 0xFF101010 :
+                          0xFFF0E0D0;
+                  break;
+
+               case "flat":
+                  value = flat;
+                  break;
+
+               // Random colours, with random alpha for translucent.
+               default:
+                  value = random.nextInt();
+                  if (!kind.equals("translucent"))
+                     value |= 0xFF000000;
+                  break;
+            }
+            img.setRGB(x, y, value);
+         }
+      }
+      return img;
+   }
+
+   /**
+    * The SHA-256 of the size and pixels of an image.
+    */
+   private static String hash(BufferedImage img)
+   {
+      MessageDigest digest;
+      try
+      {
+         digest = MessageDigest.getInstance("SHA-256");
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+         throw new IllegalStateException(e);
+      }
+
+      int width = img.getWidth();
+      int height = img.getHeight();
+      ByteBuffer row = ByteBuffer.allocate(4 * width);
+      digest.update(ByteBuffer.allocate(8).putInt(width).putInt(height)
+              .array());
+      for (int y = 0; y < height; y++)
+      {
+         row.clear();
+         row.asIntBuffer().put(img.getRGB(0, y, width, 1, null, 0, width));
+         digest.update(row.array());
+      }
+
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest.digest())
+         hex.append(String.format("%02x", b));
+      return hex.toString();
+   }
+
+   /**
+    * The largest difference of any channel of any pixel, or 256 if the
+    * sizes differ.
+    */
+   private static int maxDifference(BufferedImage first, BufferedImage second)
+   {
+      int width = first.getWidth();
+      int height = first.getHeight();
+      if (second.getWidth() != width || second.getHeight() != height)
+         return 256;
+
+      int max = 0;
+      for (int y = 0; y < height; y++)
+      {
+         for (int x = 0; x < width; x++)
+         {
+            int a = first.getRGB(x, y);
+            int b = second.getRGB(x, y);
+            for (int shift = 0; shift < 32; shift += 8)
+            {
+               max = Math.max(max, Math.abs(((a >>> shift) & 0xFF) -
+                       ((b >>> shift) & 0xFF)));
+            }
+         }
+      }
+      return max;
+   }
+
+   private static long percentile(long[] sorted, double fraction)
+   {
+      if (sorted.length == 0)
+         return 0;
+      return sorted[(int) Math.ceil(fraction * sorted.length) - 1];
+   }
+
+   private static BufferedImage read(File file) throws IOException
+   {
+      BufferedImage img = ImageIO.read(file);
+      if (img == null)
+         throw new IOException(file + " is not a readable image");
+      return img;
+   }
+
+   private static BufferedImage toImage(PixelBuffer buffer)
+   {
+      BufferedImage img = new BufferedImage(buffer.getWidth(),
+              buffer.getHeight(), BufferedImage.TYPE_INT_ARGB);
+      buffer.writeTo(img);
+      return img;
+   }
+
+   /**
+    * Copies an image into the work directory, for an operation to write
+    * over.
+    */
+   private static File copy(File image, File work) throws IOException
+   {
+      File copy = new File(work, image.getName());
+      Files.copy(image.toPath(), copy.toPath(),
+              StandardCopyOption.REPLACE_EXISTING);
+      return copy;
+   }
+
+   /**
+    * Reads "key value" lines, skipping comments. Keys may hold spaces, the
+    * value is what follows the tab.
+    */
+   private static Map<String, String> readValues(File file)
+           throws IOException
+   {
+      Map<String, String> values = new TreeMap<>();
+      for (String line : Files.readAllLines(file.toPath(),
+              StandardCharsets.UTF_8))
+      {
+         int tab = line.indexOf('\t');
+         if (line.startsWith("#") || tab < 0)
+            continue;
+         values.put(line.substring(0, tab), line.substring(tab + 1));
+      }
+      return values;
+   }
+
+   /**
+    * Writes "key\tvalue" lines under a comment.
+    */
+   private static void writeValues(File file, String comment,
+                                   Map<String, String> values)
+           throws IOException
+   {
+      List<String> lines = new ArrayList<>();
+      lines.add(comment);
+      for (Map.Entry<String, String> entry : values.entrySet())
+         lines.add(entry.getKey() + "\t" + entry.getValue());
+
+      File parent = file.getAbsoluteFile().getParentFile();
+      Files.createDirectories(parent.toPath());
+      Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+   }
+
+   /**
+    * An operation, and whether it's a file operation which is timed.
+    */
+   private static final class Case {
+
+      private final Operation operation;
+      private final boolean timed;
+
+      Case(Operation operation, boolean timed)
+      {
+         this.operation = operation;
+         this.timed = timed;
+      }
+   }
+
+   /**
+    * Two outputs which must be within a tolerance of each other.
+    */
+   private static final class Comparison {
+
+      private final String first;
+      private final String second;
+      private final int tolerance;
+
+      Comparison(String first, String second, int tolerance)
+      {
+         this.first = first;
+         this.second = second;
+         this.tolerance = tolerance;
+      }
+   }
+}
@@ -0,0 +1,395 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the results of a batch run on disk, so running the same filter
+ * over the same images again skips them. Results are found by a key hashed
+ * from the bytes of the image file and the operation, its parameters and
+ * the output encoding. The cache knows the key of every result it stored,
+ * so an image which is already the result of the operation, because it was
+ * written over its source, isn't filtered twice. The encoded results are
+ * kept too, up to a size limit, and are copied back if the output is
+ * missing. When the limit is passed the least recently used results are
+ * deleted, but their keys are remembered.
+ *
+ * Each result stored is appended to a journal straight away, so a run which
+ * is killed or runs out of memory partway through still leaves the records
+ * of the images it already wrote over. When the cache is opened the journal
+ * is replayed over the index and both are compacted into a new index, which
+ * is written again when the cache is closed. Only one process should use a
+ * cache directory at a time.
+ */
+public final class ResultCache implements Closeable {
+
+   // The file holding the keys, least recently used first.
+   private final static String INDEX = "index";
+
+   // The file the entries stored since the index was written are appended
+   // to.
+   private final static String JOURNAL = "journal";
+
+   // The length of a key, a SHA-256 hash in hex. A shorter key is the end
+   // of a line cut off by a run which was killed.
+   private final static int KEY_LENGTH = 64;
+
+   // The most keys remembered, each takes a line of the index.
+   private final static int MAX_ENTRIES = 100_000;
+
+   private final File directory;
+   private final long maxBytes;
+
+   // The entries by the key of their source, in access order.
+   private final LinkedHashMap<String, Entry> entries =
+           new LinkedHashMap<>(16, 0.75f, true);
+
+   // The key of each stored result, to the key of its source.
+   private final Map<String, String> results = new HashMap<>();
+
+   // The size of the encoded results kept.
+   private long storedBytes;
+
+   // Appends to the journal, null once the cache is closed.
+   private BufferedWriter journal;
+
+   /**
+    * Opens a cache, creating the directory if it doesn't exist.
+    *
+    * @param directory        The directory the index and results are kept in.
+    * @param maxBytes         The most bytes of encoded results kept.
+    * @throws IOException     If the directory or index can't be read.
+    */
+   public ResultCache(File directory, long maxBytes) throws IOException
+   {
+      // Check if the size is valid.
+      if (maxBytes < 0)
+         throw new IllegalArgumentException("input value for maxBytes is " +
+                 "invalid, choose a value of 0 or more");
+
+      this.directory = directory;
+      this.maxBytes = maxBytes;
+
+      Files.createDirectories(directory.toPath());
+      read(new File(directory, INDEX));
+      read(new File(directory, JOURNAL));
+      evict();
+
+      // Start a new journal from the compacted index.
+      writeIndex();
+      journal = Files.newBufferedWriter(new File(directory, JOURNAL)
+              .toPath());
+   }
+
+   /**
+    * The key of the contents of a file under an operation.
+    *
+    * @param content          The bytes of the file.
+    * @param operation        The operation, its parameters and the output
+    *                         encoding.
+    * @return                 Returns the key, a SHA-256 hash in hex.
+    */
+   static String key(byte[] content, String operation)
+   {
+      MessageDigest digest;
+      try
+      {
+         digest = MessageDigest.getInstance("SHA-256");
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+         // Every JVM has SHA-256.
+         throw new IllegalStateException(e);
+      }
+
+      digest.update(operation.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      digest.update(content);
+      return HexFormat.of().formatHex(digest.digest());
+   }
+
+   /**
+    * Checks if a file is the result of an operation stored in the cache.
+    *
+    * @param key              The key of the file.
+    * @return                 Returns true if the key is of a result.
+    */
+   synchronized boolean isResult(String key)
+   {
+      String source = results.get(key);
+      if (source == null)
+         return false;
+
+      // Mark the entry as used.
+      entries.get(source);
+      return true;
+   }
+
+   /**
+    * The key of the result of a source.
+    *
+    * @param key              The key of the source.
+    * @return                 Returns the key of its result, or null if there
+    *                         is none.
+    */
+   synchronized String resultOf(String key)
+   {
+      Entry entry = entries.get(key);
+      return entry == null ? null : entry.result;
+   }
+
+   /**
+    * The encoded result of a source.
+    *
+    * @param key              The key of the source.
+    * @return                 Returns the file of the result, or null if it
+    *                         isn't kept.
+    */
+   synchronized File storedResult(String key)
+   {
+      Entry entry = entries.get(key);
+      if (entry == null || entry.size < 0)
+         return null;
+
+      File stored = new File(directory, key);
+      return stored.isFile() ? stored : null;
+   }
+
+   /**
+    * Stores the result of a source, then deletes the least recently used
+    * results until the cache fits its size. The entry is in the journal
+    * once this returns.
+    *
+    * @param key              The key of the source.
+    * @param result           The key of the result.
+    * @param encoded          The encoded result.
+    * @throws IOException     If the result can't be stored.
+    */
+   void put(String key, String result, byte[] encoded) throws IOException
+   {
+      long size = -1;
+
+      // Write the result unless it's bigger than the whole cache.
+      if (encoded.length <= maxBytes)
+      {
+         Path stored = new File(directory, key).toPath();
+         Path temp = Files.createTempFile(directory.toPath(), key, ".tmp");
+         try
+         {
+            Files.write(temp, encoded);
+            Files.move(temp, stored, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            size = encoded.length;
+         }
+         finally
+         {
+            Files.deleteIfExists(temp);
+         }
+      }
+
+      synchronized (this)
+      {
+         // The stored file of an old entry was replaced or is deleted.
+         Entry old = entries.put(key, new Entry(result, size));
+         if (old != null)
+         {
+            results.remove(old.result);
+            if (size < 0)
+               remove(old, key);
+            else if (old.size >= 0)
+               storedBytes -= old.size;
+         }
+
+         results.put(result, key);
+         if (size >= 0)
+            storedBytes += size;
+
+         evict();
+
+         // Check if the cache is still open.
+         if (journal == null)
+            throw new IOException("the cache is closed");
+
+         journal.write(line(key, entries.get(key)));
+         journal.newLine();
+         journal.flush();
+      }
+   }
+
+   /**
+    * The size of the encoded results kept.
+    *
+    * @return                 Returns the size in bytes.
+    */
+   public synchronized long getStoredBytes()
+   {
+      return storedBytes;
+   }
+
+   /**
+    * Writes the index with the order the results were last used in, and
+    * empties the journal.
+    *
+    * @throws IOException     If the index can't be written.
+    */
+   @Override
+   public synchronized void close() throws IOException
+   {
+      if (journal == null)
+         return;
+
+      journal.close();
+      journal = null;
+      writeIndex();
+      Files.deleteIfExists(new File(directory, JOURNAL).toPath());
+   }
+
+   /**
+    * Writes every entry to the index, replacing it in one step.
+    */
+   private void writeIndex() throws IOException
+   {
+      Path index = new File(directory, INDEX).toPath();
+      Path temp = Files.createTempFile(directory.toPath(), INDEX, ".tmp");
+
+      try
+      {
+         try (BufferedWriter out = Files.newBufferedWriter(temp))
+         {
+            for (Map.Entry<String, Entry> e : entries.entrySet())
+            {
+               out.write(line(e.getKey(), e.getValue()));
+               out.newLine();
+            }
+         }
+
+         Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+      }
+      finally
+      {
+         Files.deleteIfExists(temp);
+      }
+   }
+
+   /**
+    * The line of an entry in the index and the journal.
+    */
+   private static String line(String key, Entry entry)
+   {
+      return key + " " + entry.result + " " + entry.size;
+   }
+
+   /**
+    * Reads the entries of the index or the journal, a later entry of a
+    * source replacing an earlier one. The size of a result kept is taken
+    * from its file, which may have been deleted or replaced since.
+    */
+   private void read(File file) throws IOException
+   {
+      if (!file.isFile())
+         return;
+
+      try (BufferedReader in = Files.newBufferedReader(file.toPath()))
+      {
+         for (String line = in.readLine(); line != null; line = in.readLine())
+         {
+            String[] fields = line.split(" ");
+            if (fields.length != 3 || fields[0].length() != KEY_LENGTH ||
+                    fields[1].length() != KEY_LENGTH)
+               continue;
+
+            long size;
+            try
+            {
+               size = Long.parseLong(fields[2]);
+            }
+            catch (NumberFormatException e)
+            {
+               continue;
+            }
+            File stored = new File(directory, fields[0]);
+            size = size >= 0 && stored.isFile() ? stored.length() : -1;
+
+            Entry old = entries.put(fields[0], new Entry(fields[1], size));
+            if (old != null)
+            {
+               results.remove(old.result);
+               if (old.size >= 0)
+                  storedBytes -= old.size;
+            }
+            results.put(fields[1], fields[0]);
+            if (size >= 0)
+               storedBytes += size;
+         }
+      }
+   }
+
+   /**
+    * Deletes the least recently used results until the rest fit, and
+    * forgets the oldest keys past MAX_ENTRIES.
+    */
+   private void evict()
+   {
+      Iterator<Map.Entry<String, Entry>> oldest =
+              entries.entrySet().iterator();
+
+      while (oldest.hasNext() &&
+              (storedBytes > maxBytes || entries.size() > MAX_ENTRIES))
+      {
+         Map.Entry<String, Entry> e = oldest.next();
+         remove(e.getValue(), e.getKey());
+
+         if (entries.size() > MAX_ENTRIES)
+         {
+            results.remove(e.getValue().result);
+            oldest.remove();
+         }
+         else
+         {
+            // Keep the key, so the result is still known.
+            e.setValue(new Entry(e.getValue().result, -1));
+         }
+      }
+   }
+
+   /**
+    * Deletes the stored result of an entry.
+    */
+   private void remove(Entry entry, String key)
+   {
+      if (entry == null || entry.size < 0)
+         return;
+
+      storedBytes -= entry.size;
+      new File(directory, key).delete();
+   }
+
+   /**
+    * The result of a source, and the size of its encoded result, -1 if it
+    * isn't kept.
+    */
+   private static final class Entry {
+
+      private final String result;
+      private final long size;
+
+      Entry(String result, long size)
+      {
+         this.result = result;
+         this.size = size;
+      }
+   }
+}
@@ -0,0 +1,127 @@
+/**
+ * The per pixel loops written one pixel at a time. Used when the Vector API
+ * isn't available, and for the pixels left over after the last full vector.
+ */
+final class ScalarPixelOps extends PixelOps {
+
+   private final static int MAX_RGB = 255;
+
+   @Override
+   String name()
+   {
+      return "scalar";
+   }
+
+   @Override
+   void invert(int[] src, int[] dst, int from, int to)
+   {
+      for (int i = from; i < to; i++)
+      {
+         // Find the integer values of the pixels. The pixels are read as
+         // opaque, so the inverted alpha is always 0.
+         int pixel = src[i];
+         int red = MAX_RGB - PixelBuffer.red(pixel);
+         int blue = MAX_RGB - PixelBuffer.blue(pixel);
+         int green = MAX_RGB - PixelBuffer.green(pixel);
+
+         // Convert the integer values into an RGB value.
+         dst[i] = (red << 16) | (green << 8) | blue;
+      }
+   }
+
+   @Override
+   void grey(int[] src, int[] dst, int from, int to)
+   {
+      for (int i = from; i < to; i++)
+      {
+         // Convert the average of each of the colors into an RGB value.
+         dst[i] = PixelBuffer.opaqueGrey(PixelBuffer.greyAverage(src[i]));
+      }
+   }
+
+   @Override
+   void luma(int[] src, byte[] dst, int from, int to)
+   {
+      for (int i = from; i < to; i++)
+         dst[i] = (byte) PixelBuffer.greyAverage(src[i]);
+   }
+
+   @Override
+   void stipple(StippleMode mode, int clean, int[] grey, int[] blurred,
+                int from, int to)
+   {
+      for (int i = from; i < to; i++)
+      {
+         blurred[i] = mode.combine(PixelBuffer.blue(grey[i]),
+                 PixelBuffer.blue(blurred[i]), clean);
+      }
+   }
+
+   @Override
+   void stipple(StippleMode mode, int clean, byte[] grey, byte[] blurred,
+                int from, int[] dst, int dstFrom, int length)
+   {
+      for (int i = 0; i < length; i++)
+      {
+         dst[dstFrom + i] = mode.combine(grey[from + i] & 0xFF,
+                 blurred[from + i] & 0xFF, clean);
+      }
+   }
+
+   @Override
+   void stippleGrey(StippleMode mode, int clean, byte[] grey, byte[] blurred,
+                    int from, int to)
+   {
+      // The output pixels are grey, so their blue channel is their value.
+      for (int i = from; i < to; i++)
+      {
+         blurred[i] = (byte) mode.combine(grey[i] & 0xFF, blurred[i] & 0xFF,
+                 clean);
+      }
+   }
+
+   @Override
+   void convolve(double[] row, int rowOffset, double[] kernel, double[] out,
+                 int outOffset, int length)
+   {
+      for (int x = 0; x < length; x++)
+      {
+         double value = 0;
+         int i = rowOffset + x;
+         for (int kernelX = 0; kernelX < kernel.length; kernelX++, i++)
+            value += row[i] * kernel[kernelX];
+         out[outOffset + x] = value;
+      }
+   }
+
+   @Override
+   void convolve(int[] row, int rowOffset, int[] kernel, int[] out,
+                 int outOffset, int length, int shift)
+   {
+      int half = 1 << (shift - 1);
+      for (int x = 0; x < length; x++)
+      {
+         int value = half;
+         int i = rowOffset + x;
+         for (int kernelX = 0; kernelX < kernel.length; kernelX++, i++)
+            value += row[i] * kernel[kernelX];
+         out[outOffset + x] = value >> shift;
+      }
+   }
+
+   @Override
+   void accumulate(double[] sums, int sumOffset, double[] row, int rowOffset,
+                   double weight, int length)
+   {
+      for (int i = 0; i < length; i++)
+         sums[sumOffset + i] += row[rowOffset + i] * weight;
+   }
+
+   @Override
+   void accumulate(int[] sums, int sumOffset, int[] row, int rowOffset,
+                   int weight, int length)
+   {
+      for (int i = 0; i < length; i++)
+         sums[sumOffset + i] += row[rowOffset + i] * weight;
+   }
+}
@@ -0,0 +1,48 @@
+/**
+ * The stages an image goes through, which StageStats and the StageEvent JFR
+ * events record the time of.
+ */
+public enum Stage {
+
+   /**
+    * Reading and decoding an image file.
+    */
+   DECODE,
+
+   /**
+    * Inverting the colors of the pixels.
+    */
+   INVERT,
+
+   /**
+    * Converting the pixels to GreyScale.
+    */
+   GREYSCALE,
+
+   /**
+    * Several per pixel operations of a Pipeline fused into one pass.
+    */
+   FUSED,
+
+   /**
+    * Building the weights of a Gaussian kernel, once for each radius.
+    */
+   KERNEL,
+
+   /**
+    * The Gaussian blur. The stipple styles subtract the grey pixels in the
+    * same pass, so for them this includes the combine.
+    */
+   BLUR,
+
+   /**
+    * Subtracting the grey pixels from the blurred ones when it's a pass of
+    * its own, as for StipplePlanes.
+    */
+   COMBINE,
+
+   /**
+    * Encoding and writing an image file.
+    */
+   ENCODE
+}
@@ -0,0 +1,34 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JFR event of a stage of one image, recorded when a flight recording
+ * is running, like with -XX:StartFlightRecording. Its duration is the time
+ * of the stage.
+ */
+@Name("imageprocessing.Stage")
+@Label("Image Stage")
+@Category("Image Processing")
+@Description("A stage of processing an image")
+@StackTrace(false)
+final class StageEvent extends jdk.jfr.Event {
+
+   @Label("Stage")
+   String stage;
+
+   @Label("Image")
+   @Description("The image file, if the stage knows it")
+   String image;
+
+   @Label("Pixels")
+   long pixels;
+
+   @Label("Allocated")
+   @Description("The bytes allocated by the thread running the stage")
+   @DataAmount
+   long allocated;
+}
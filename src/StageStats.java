@@ -0,0 +1,253 @@
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The time spent in each Stage by the whole process: how many times it ran,
+ * its total time and a histogram of its times, the pixels it worked on and
+ * the bytes it allocated. The stages record themselves as they run,
+ * snapshot() reads the totals and since() gives what happened between two
+ * snapshots. The histograms have a bucket for each power of two of
+ * microseconds, so the percentiles are the top of their bucket, at most
+ * twice the real value.
+ */
+public final class StageStats {
+
+   // Bucket i counts the times below 2^i microseconds, the last one the
+   // rest.
+   private final static int BUCKETS = 32;
+
+   private final static Recorder[] RECORDERS = new Recorder[
+           Stage.values().length];
+
+   static
+   {
+      for (int i = 0; i < RECORDERS.length; i++)
+         RECORDERS[i] = new Recorder();
+   }
+
+   private final long[] counts;
+   private final long[] nanos;
+   private final long[] pixels;
+   private final long[] allocated;
+   private final long[][] histograms;
+
+   private StageStats(long[] counts, long[] nanos, long[] pixels,
+                      long[] allocated, long[][] histograms)
+   {
+      this.counts = counts;
+      this.nanos = nanos;
+      this.pixels = pixels;
+      this.allocated = allocated;
+      this.histograms = histograms;
+   }
+
+   /**
+    * Records one run of a stage.
+    *
+    * @param stage            The stage.
+    * @param nanos            How long it took in nanoseconds.
+    * @param pixels           The number of pixels it worked on.
+    * @param allocated        The bytes it allocated.
+    */
+   static void record(Stage stage, long nanos, long pixels, long allocated)
+   {
+      Recorder recorder = RECORDERS[stage.ordinal()];
+      recorder.count.increment();
+      recorder.nanos.add(nanos);
+      recorder.pixels.add(pixels);
+      recorder.allocated.add(allocated);
+
+      long micros = nanos / 1000;
+      int bucket = 64 - Long.numberOfLeadingZeros(micros);
+      recorder.histogram.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+   }
+
+   /**
+    * Reads the totals of every stage so far.
+    *
+    * @return                 Returns the totals.
+    */
+   public static StageStats snapshot()
+   {
+      int stages = RECORDERS.length;
+      long[] counts = new long[stages];
+      long[] nanos = new long[stages];
+      long[] pixels = new long[stages];
+      long[] allocated = new long[stages];
+      long[][] histograms = new long[stages][BUCKETS];
+
+      for (int s = 0; s < stages; s++)
+      {
+         Recorder recorder = RECORDERS[s];
+         counts[s] = recorder.count.sum();
+         nanos[s] = recorder.nanos.sum();
+         pixels[s] = recorder.pixels.sum();
+         allocated[s] = recorder.allocated.sum();
+         for (int b = 0; b < BUCKETS; b++)
+            histograms[s][b] = recorder.histogram.get(b);
+      }
+      return new StageStats(counts, nanos, pixels, allocated, histograms);
+   }
+
+   /**
+    * What happened between an earlier snapshot and this one.
+    *
+    * @param earlier          The earlier snapshot.
+    * @return                 Returns the difference of the totals.
+    */
+   public StageStats since(StageStats earlier)
+   {
+      int stages = counts.length;
+      long[][] histogramDeltas = new long[stages][BUCKETS];
+      for (int s = 0; s < stages; s++)
+      {
+         for (int b = 0; b < BUCKETS; b++)
+            histogramDeltas[s][b] = histograms[s][b] - earlier.histograms[s][b];
+      }
+
+      return new StageStats(minus(counts, earlier.counts),
+              minus(nanos, earlier.nanos), minus(pixels, earlier.pixels),
+              minus(allocated, earlier.allocated), histogramDeltas);
+   }
+
+   public long getCount(Stage stage)
+   {
+      return counts[stage.ordinal()];
+   }
+
+   public double getSeconds(Stage stage)
+   {
+      return nanos[stage.ordinal()] / 1e9;
+   }
+
+   public long getPixels(Stage stage)
+   {
+      return pixels[stage.ordinal()];
+   }
+
+   public long getAllocatedBytes(Stage stage)
+   {
+      return allocated[stage.ordinal()];
+   }
+
+   /**
+    * The throughput of a stage while it ran.
+    *
+    * @param stage            The stage.
+    * @return                 Returns the megapixels per second, 0 if it
+    *                         didn't run.
+    */
+   public double megapixelsPerSecond(Stage stage)
+   {
+      long time = nanos[stage.ordinal()];
+      return time == 0 ? 0 : pixels[stage.ordinal()] * 1e3 / time;
+   }
+
+   /**
+    * A percentile of the times of a stage, from its histogram.
+    *
+    * @param stage            The stage.
+    * @param percentile       The percentile, from 0 to 100.
+    * @return                 Returns the top of the bucket holding the
+    *                         percentile in milliseconds, 0 if the stage
+    *                         didn't run.
+    */
+   public double percentileMillis(Stage stage, double percentile)
+   {
+      // Check if the percentile is valid.
+      if (!(percentile >= 0 && percentile <= 100))
+         throw new IllegalArgumentException("input value for percentile is " +
+                 "invalid, choose a value from 0 to 100");
+
+      long[] histogram = histograms[stage.ordinal()];
+      long count = counts[stage.ordinal()];
+      if (count == 0)
+         return 0;
+
+      long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+      long seen = 0;
+      for (int b = 0; b < BUCKETS; b++)
+      {
+         seen += histogram[b];
+         if (seen >= rank)
+            return (1L << b) / 1e3;
+      }
+      return (1L << (BUCKETS - 1)) / 1e3;
+   }
+
+   /**
+    * The stats as a JSON object with a member for each stage that ran.
+    *
+    * @return                 Returns the JSON text.
+    */
+   public String toJson()
+   {
+      StringBuilder json = new StringBuilder("{");
+      for (Stage stage : Stage.values())
+      {
+         if (getCount(stage) == 0)
+            continue;
+
+         if (json.length() > 1)
+            json.append(',');
+         json.append(Json.quote(stage.name().toLowerCase(Locale.ROOT)))
+                 .append(String.format(Locale.ROOT, ":{\"count\":%d," +
+                                 "\"seconds\":%.6f,\"megapixels\":%.3f," +
+                                 "\"megapixelsPerSecond\":%.3f," +
+                                 "\"allocatedBytes\":%d,\"p50Millis\":%.3f," +
+                                 "\"p90Millis\":%.3f,\"p99Millis\":%.3f}",
+                         getCount(stage), getSeconds(stage),
+                         getPixels(stage) / 1e6, megapixelsPerSecond(stage),
+                         getAllocatedBytes(stage),
+                         percentileMillis(stage, 50),
+                         percentileMillis(stage, 90),
+                         percentileMillis(stage, 99)));
+      }
+      return json.append('}').toString();
+   }
+
+   /**
+    * A line for each stage that ran.
+    */
+   @Override
+   public String toString()
+   {
+      StringBuilder text = new StringBuilder();
+      for (Stage stage : Stage.values())
+      {
+         if (getCount(stage) == 0)
+            continue;
+
+         if (text.length() > 0)
+            text.append(System.lineSeparator());
+         text.append(String.format("%-9s %6d x %9.3f s %9.2f MP/s " +
+                         "%9.1f MB  p50 %.3f ms  p99 %.3f ms", stage,
+                 getCount(stage), getSeconds(stage),
+                 megapixelsPerSecond(stage),
+                 getAllocatedBytes(stage) / 1e6, percentileMillis(stage, 50),
+                 percentileMillis(stage, 99)));
+      }
+      return text.toString();
+   }
+
+   private static long[] minus(long[] later, long[] earlier)
+   {
+      long[] difference = new long[later.length];
+      for (int i = 0; i < later.length; i++)
+         difference[i] = later[i] - earlier[i];
+      return difference;
+   }
+
+   /**
+    * The running totals of one stage.
+    */
+   private static final class Recorder {
+
+      private final LongAdder count = new LongAdder();
+      private final LongAdder nanos = new LongAdder();
+      private final LongAdder pixels = new LongAdder();
+      private final LongAdder allocated = new LongAdder();
+      private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+   }
+}
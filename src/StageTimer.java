@@ -0,0 +1,111 @@
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Times a stage of an image, from start() to close(), and records it in
+ * StageStats and as a StageEvent. The bytes allocated are those of the
+ * thread running the stage, the bands it hands to other threads aren't
+ * counted. Used with try-with-resources.
+ */
+final class StageTimer implements AutoCloseable {
+
+   // The bean counting the bytes each thread allocated, null if the JVM
+   // can't.
+   private final static com.sun.management.ThreadMXBean THREADS =
+           findThreads();
+
+   private final Stage stage;
+   private final File image;
+   private final StageEvent event = new StageEvent();
+   private final long startNanos;
+   private final long startAllocated;
+   private long pixels;
+
+   private StageTimer(Stage stage, long pixels, File image)
+   {
+      this.stage = stage;
+      this.pixels = pixels;
+      this.image = image;
+      this.startAllocated = allocated();
+      event.begin();
+      this.startNanos = System.nanoTime();
+   }
+
+   /**
+    * Starts timing a stage.
+    *
+    * @param stage            The stage.
+    * @param pixels           The number of pixels it works on.
+    * @return                 Returns the timer, close it when the stage ends.
+    */
+   static StageTimer start(Stage stage, long pixels)
+   {
+      return new StageTimer(stage, pixels, null);
+   }
+
+   /**
+    * Starts timing a stage of an image file.
+    *
+    * @param stage            The stage.
+    * @param pixels           The number of pixels it works on, 0 if it's
+    *                         not known yet.
+    * @param image            The image file.
+    * @return                 Returns the timer, close it when the stage ends.
+    */
+   static StageTimer start(Stage stage, long pixels, File image)
+   {
+      return new StageTimer(stage, pixels, image);
+   }
+
+   /**
+    * Sets the number of pixels, once a decode knows it.
+    *
+    * @param pixels           The number of pixels.
+    */
+   void setPixels(long pixels)
+   {
+      this.pixels = pixels;
+   }
+
+   @Override
+   public void close()
+   {
+      long nanos = System.nanoTime() - startNanos;
+      long allocated = Math.max(0, allocated() - startAllocated);
+      StageStats.record(stage, nanos, pixels, allocated);
+
+      event.end();
+      if (event.shouldCommit())
+      {
+         event.stage = stage.name();
+         event.image = image == null ? null : image.getName();
+         event.pixels = pixels;
+         event.allocated = allocated;
+         event.commit();
+      }
+   }
+
+   /**
+    * The bytes the current thread has allocated, 0 if the JVM can't tell.
+    */
+   private static long allocated()
+   {
+      return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+   }
+
+   private static com.sun.management.ThreadMXBean findThreads()
+   {
+      try
+      {
+         com.sun.management.ThreadMXBean threads =
+                 (com.sun.management.ThreadMXBean)
+                         ManagementFactory.getThreadMXBean();
+         return threads.isThreadAllocatedMemorySupported() &&
+                 threads.isThreadAllocatedMemoryEnabled() ? threads : null;
+      }
+      catch (ClassCastException | UnsupportedOperationException e)
+      {
+         return null;
+      }
+   }
+}
@@ -0,0 +1,238 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Writes several stipple art variants of each image from one decode. The
+ * image is read, converted to GreyScale and blurred once into its
+ * StipplePlanes, then each variant is only the last step of its style. The
+ * variants are converted and encoded in parallel on a WriteBehindQueue
+ * while the next image is read. Each output is named after its image, style
+ * and clean value, like "photo-whiteFigure-4.png", so the images are never
+ * written over. Files named like that are skipped when a directory is
+ * read, so the outputs of an earlier run written next to their images
+ * aren't taken for new images.
+ */
+public final class StippleFanOut {
+
+   private final List<StippleVariant> variants;
+   private final BlurMode mode;
+   private final File directory;
+
+   /**
+    * Creates a fan out writing the outputs next to their images.
+    *
+    * @param variants         The variants written for each image.
+    * @param mode             How the blur is computed.
+    */
+   public StippleFanOut(List<StippleVariant> variants, BlurMode mode)
+   {
+      this(variants, mode, null);
+   }
+
+   /**
+    * Creates a fan out.
+    *
+    * @param variants         The variants written for each image.
+    * @param mode             How the blur is computed.
+    * @param directory        The directory the outputs are written to, it's
+    *                         created if needed. Null writes each output
+    *                         next to its image.
+    */
+   public StippleFanOut(List<StippleVariant> variants, BlurMode mode,
+                        File directory)
+   {
+      // Check if there is anything to write.
+      if (variants.isEmpty())
+         throw new IllegalArgumentException("input value for variants is " +
+                 "invalid, choose at least one variant");
+
+      // Check if each format can be written.
+      for (StippleVariant variant : variants)
+         new ImageOutput(variant.getFormatName());
+
+      this.variants = new ArrayList<>(variants);
+      this.mode = mode;
+      this.directory = directory;
+   }
+
+   /**
+    * Writes the variants of one image and waits for them to be written.
+    *
+    * @param imageFile        The file path where the image is located.
+    * @return                 Returns the files written, in the order of the
+    *                         variants.
+    * @throws IOException     If the image can't be read or an output can't
+    *                         be written.
+    */
+   public List<File> run(File imageFile) throws IOException
+   {
+      BufferedImage img = ImageInput.read(imageFile);
+      if (img == null)
+         throw new IOException(imageFile + " is not a readable image");
+
+      List<File> written = new ArrayList<>();
+      try (WriteBehindQueue writes = new WriteBehindQueue(variants.size()))
+      {
+         for (CompletableFuture<File> output : submit(imageFile, img, writes))
+            written.add(output.get());
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new IOException("interrupted while writing " + imageFile, e);
+      }
+      catch (ExecutionException e)
+      {
+         if (e.getCause() instanceof IOException)
+            throw (IOException) e.getCause();
+         throw new IOException(e.getCause());
+      }
+      return written;
+   }
+
+   /**
+    * Writes the variants of every file in a directory. Subdirectories and
+    * files named like outputs, like "photo-whiteFigure-4.png", are skipped.
+    *
+    * @param directory        The directory holding the images.
+    * @return                 Returns the summary of the run.
+    */
+   public BatchSummary runAll(File directory)
+   {
+      File[] fileArray = directory.listFiles(file -> file.isFile() &&
+              !StippleVariant.isOutputName(baseName(file)));
+
+      // Check if the directory can be listed.
+      if (fileArray == null)
+         throw new IllegalArgumentException(directory + " is not a directory");
+
+      Arrays.sort(fileArray);
+      return runAll(Arrays.asList(fileArray));
+   }
+
+   /**
+    * Writes the variants of every file, reading each image while the
+    * variants of the last one are encoded. An image counts as processed
+    * once all of its variants are written.
+    *
+    * @param files            The image files.
+    * @return                 Returns the summary of the run.
+    */
+   public BatchSummary runAll(List<File> files)
+   {
+      BatchSummary summary = new BatchSummary();
+      long start = System.nanoTime();
+
+      // Room for the variants of two images, the one being encoded and the
+      // next one.
+      try (WriteBehindQueue writes = new WriteBehindQueue(
+              2 * variants.size()))
+      {
+         for (File file : files)
+         {
+            long started = System.nanoTime();
+            try
+            {
+               BufferedImage img = ImageInput.read(file);
+               if (img == null)
+                  throw new IOException("not a readable image");
+
+               // Record the image once all of its variants are written.
+               int width = img.getWidth();
+               int height = img.getHeight();
+               CompletableFuture.allOf(submit(file, img, writes)
+                       .toArray(new CompletableFuture<?>[0]))
+                       .whenComplete((done, e) -> {
+                          if (e == null)
+                             summary.succeeded(file, width, height,
+                                     System.nanoTime() - started);
+                          else
+                             summary.failed(file, e.getCause() != null ?
+                                     e.getCause() : e);
+                       });
+            }
+            catch (IOException | RuntimeException | OutOfMemoryError e)
+            {
+               summary.failed(file, e);
+            }
+         }
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+
+      summary.finished(System.nanoTime() - start);
+      return summary;
+   }
+
+   /**
+    * Computes the planes of an image once and queues each variant of it.
+    */
+   private List<CompletableFuture<File>> submit(File imageFile,
+                                                BufferedImage img,
+                                                WriteBehindQueue writes)
+           throws InterruptedException
+   {
+      StipplePlanes planes = StipplePlanes.of(PixelBuffer.of(img), mode);
+
+      // The outputs are named after the image, with the suffix of their
+      // format.
+      File source = imageFile.getAbsoluteFile();
+      File outputDirectory = directory != null ? directory :
+              source.getParentFile();
+      String imageName = baseName(source);
+
+      List<CompletableFuture<File>> written = new ArrayList<>();
+      for (StippleVariant variant : variants)
+      {
+         ImageOutput output = new ImageOutput(variant.getFormatName(),
+                 outputDirectory);
+         String name = variant.outputName(imageName);
+
+         // Each variant is converted and encoded by a task of its own.
+         written.add(writes.submit(() -> {
+            BufferedImage stippled = blankLike(img, output);
+            planes.stipple(variant.getMode(), variant.getClean())
+                    .writeTo(stippled);
+            return output.write(stippled, name);
+         }));
+      }
+      return written;
+   }
+
+   /**
+    * The name of a file without its suffix.
+    */
+   private static String baseName(File file)
+   {
+      String name = file.getName();
+      int dot = name.lastIndexOf('.');
+      return dot > 0 ? name.substring(0, dot) : name;
+   }
+
+   /**
+    * Creates an image of the same size and type as another, as
+    * ConvertToStipple does, unless the output can't write that type, like
+    * a JPEG of an image with alpha, which then gets an RGB image.
+    */
+   private static BufferedImage blankLike(BufferedImage img,
+                                          ImageOutput output)
+   {
+      if (!output.canWrite(img))
+         return new BufferedImage(img.getWidth(), img.getHeight(),
+                 BufferedImage.TYPE_INT_RGB);
+
+      ColorModel model = img.getColorModel();
+      return new BufferedImage(model, model.createCompatibleWritableRaster(
+              img.getWidth(), img.getHeight()), model.isAlphaPremultiplied(),
+              null);
+   }
+}
@@ -0,0 +1,141 @@
+/**
+ * The stipple art styles of ConvertToStipple. Each style subtracts the grey
+ * image from its Gaussian blur, offset by the clean value, and has its own
+ * range of clean values.
+ */
+public enum StippleMode {
+
+   /**
+    * Black outlined figures, fully black and white. Clean value > 2
+    * recommended.
+    */
+   BLACK_FIGURE_ON_WHITE(1, 2, -1, true),
+
+   /**
+    * Black outlined figures on a yellowish white background. Clean value > 6
+    * recommended.
+    */
+   BLACK_FIGURE_ON_YELLOWISH_WHITE(1, 6, -1, false),
+
+   /**
+    * White outlined figures. Clean value > 3 recommended.
+    */
+   WHITE_FIGURE(3, 3, 1, true);
+
+   private final static int MAX_CLEAN = 10;
+
+   private final int minClean;
+   private final int recommendedClean;
+
+   // The black figures subtract the clean value from the right side, the
+   // white figure adds it to the left side.
+   private final int cleanSign;
+
+   // The styles which remove the Yellow in the image "clean".
+   private final boolean greyScale;
+
+   StippleMode(int minClean, int recommendedClean, int cleanSign,
+               boolean greyScale)
+   {
+      this.minClean = minClean;
+      this.recommendedClean = recommendedClean;
+      this.cleanSign = cleanSign;
+      this.greyScale = greyScale;
+   }
+
+   /**
+    * Finds the output pixel from the grey value of the source pixel and of
+    * the blurred pixel.
+    *
+    * @param grey           The grey value of the source pixel.
+    * @param blurred        The grey value of the blurred pixel.
+    * @param clean          How much of the background is cleaned up.
+    * @return               Returns the packed output pixel.
+    */
+   int combine(int grey, int blurred, int clean)
+   {
+      // Subtract the pixels and add the clean value to clean up the image.
+      int offset = cleanOffset(clean);
+      int value = blurred - grey + offset;
+      int pixel = pack(offset, value);
+
+      // Remove the Yellow in the image "clean".
+      if (greyScale)
+         pixel = PixelBuffer.opaqueGrey(PixelBuffer.greyAverage(pixel));
+      return pixel;
+   }
+
+   /**
+    * The combiner of the blur, which subtracts each grey pixel from its
+    * blurred pixel a row at a time.
+    *
+    * @param clean          How much of the background is cleaned up.
+    * @return               Returns the combiner.
+    */
+   GaussianBlur.Combiner combiner(int clean)
+   {
+      return new GaussianBlur.Combiner() {
+
+         @Override
+         public int combine(int source, int blurred)
+         {
+            return StippleMode.this.combine(PixelBuffer.blue(source),
+                    PixelBuffer.blue(blurred), clean);
+         }
+
+         @Override
+         public void combine(int[] src, int[] dst, int from, int to)
+         {
+            PixelOps.get().stipple(StippleMode.this, clean, src, dst, from,
+                    to);
+         }
+      };
+   }
+
+   /**
+    * The value added to the difference of the grey channels, which is also
+    * packed as the alpha of the output.
+    *
+    * @param clean          How much of the background is cleaned up.
+    * @return               Returns the signed clean value.
+    */
+   int cleanOffset(int clean)
+   {
+      return cleanSign * clean;
+   }
+
+   /**
+    * Whether the output is converted to GreyScale.
+    *
+    * @return               Returns true unless the style keeps the Yellow.
+    */
+   boolean isGreyScale()
+   {
+      return greyScale;
+   }
+
+   /**
+    * Throws an IllegalArgumentException if the clean value is out of range
+    * for this mode.
+    *
+    * @param clean          How much of the background is cleaned up.
+    */
+   void checkClean(int clean)
+   {
+      if (clean < minClean || clean > MAX_CLEAN)
+         throw new IllegalArgumentException("input value for clean is " +
+                 "invalid, choose a value between 1 to 10. " +
+                 "Values > " + recommendedClean + " recommended");
+   }
+
+   /**
+    * Packs the difference of the grey channels the same way for all three
+    * channels. The differences can be negative or above 255 and are packed
+    * without clamping, the bits that spill into the other channels are part
+    * of the look of the styles.
+    */
+   private static int pack(int alpha, int value)
+   {
+      return (alpha << 24) | (value << 16) | (value << 8) | value;
+   }
+}
@@ -0,0 +1,246 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The two planes every stipple style is computed from: the grey value of
+ * each pixel and of its blurred pixel, a byte each. Only the last step of
+ * the stipple, which subtracts one from the other, depends on the style and
+ * the clean value, so with the planes kept a new style or clean value costs
+ * one pass over the planes instead of a decode and a blur. The planes can
+ * be saved to a raw file and mapped back into memory, see PlaneCache.
+ */
+public final class StipplePlanes {
+
+   // The start of a planes file, "STPL".
+   private final static int MAGIC = 0x5354504C;
+
+   // The magic, width, height, radius and BlurMode.
+   private final static int HEADER_BYTES = 20;
+
+   // The rows read from the planes at a time by stipple().
+   private final static int CHUNK_ROWS = 16;
+
+   private final int width;
+   private final int height;
+   private final int radius;
+   private final BlurMode mode;
+   private final ByteBuffer grey;
+   private final ByteBuffer blurred;
+
+   private StipplePlanes(int width, int height, int radius, BlurMode mode,
+                         ByteBuffer grey, ByteBuffer blurred)
+   {
+      this.width = width;
+      this.height = height;
+      this.radius = radius;
+      this.mode = mode;
+      this.grey = grey;
+      this.blurred = blurred;
+   }
+
+   /**
+    * Computes the planes of an image, converting it to GreyScale and
+    * blurring it the way ConvertToStipple does.
+    *
+    * @param buffer           The pixels, they are left unchanged.
+    * @param mode             How the blur is computed.
+    * @return                 Returns the planes.
+    */
+   public static StipplePlanes of(PixelBuffer buffer, BlurMode mode)
+   {
+      // convert the image data to greyScale, then G-blur it.
+      return of(LumaPlane.of(buffer), ConvertToStipple.BLUR_RADIUS, mode);
+   }
+
+   /**
+    * Computes the planes of a grey plane, blurring it with any radius, as
+    * StipplePreview does for the smaller levels of an image.
+    *
+    * @param grey             The grey values, the array is kept without
+    *                         copying.
+    * @param radius           The radius of the blur.
+    * @param mode             How the blur is computed.
+    * @return                 Returns the planes.
+    */
+   static StipplePlanes of(LumaPlane grey, int radius, BlurMode mode)
+   {
+      LumaPlane blurred = new LumaPlane(grey.getWidth(), grey.getHeight());
+      GaussianBlur.blur(grey, blurred, radius, mode);
+
+      return new StipplePlanes(grey.getWidth(), grey.getHeight(), radius,
+              mode, ByteBuffer.wrap(grey.getValues()),
+              ByteBuffer.wrap(blurred.getValues()));
+   }
+
+   /**
+    * Maps the planes saved in a file into memory. The file mustn't be
+    * changed while the planes are used.
+    *
+    * @param file             The file written by write().
+    * @return                 Returns the planes.
+    * @throws IOException     If the file can't be read or isn't a planes
+    *                         file.
+    */
+   public static StipplePlanes map(File file) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(file.toPath(),
+              StandardOpenOption.READ))
+      {
+         ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+         while (header.hasRemaining())
+         {
+            if (channel.read(header) < 0)
+               throw new IOException(file + " is not a planes file");
+         }
+         header.flip();
+
+         if (header.getInt() != MAGIC)
+            throw new IOException(file + " is not a planes file");
+         int width = header.getInt();
+         int height = header.getInt();
+         int radius = header.getInt();
+         int modeIndex = header.getInt();
+
+         long planeBytes = (long) width * height;
+         if (width < 0 || height < 0 || modeIndex < 0 ||
+                 modeIndex >= BlurMode.values().length ||
+                 channel.size() != HEADER_BYTES + 2 * planeBytes)
+            throw new IOException(file + " is not a planes file");
+
+         // The mappings stay valid after the channel is closed.
+         ByteBuffer grey = channel.map(FileChannel.MapMode.READ_ONLY,
+                 HEADER_BYTES, planeBytes);
+         ByteBuffer blurred = channel.map(FileChannel.MapMode.READ_ONLY,
+                 HEADER_BYTES + planeBytes, planeBytes);
+         return new StipplePlanes(width, height, radius,
+                 BlurMode.values()[modeIndex], grey, blurred);
+      }
+   }
+
+   /**
+    * Saves the planes to a file, which map() reads back.
+    *
+    * @param out              The stream the file is written to, it's left
+    *                         open.
+    * @throws IOException     If the file can't be written.
+    */
+   public void write(OutputStream out) throws IOException
+   {
+      DataOutputStream data = new DataOutputStream(
+              new BufferedOutputStream(out, 1 << 16));
+      data.writeInt(MAGIC);
+      data.writeInt(width);
+      data.writeInt(height);
+      data.writeInt(radius);
+      data.writeInt(mode.ordinal());
+
+      byte[] row = new byte[width];
+      for (ByteBuffer plane : new ByteBuffer[] {grey, blurred})
+      {
+         for (int y = 0; y < height; y++)
+         {
+            plane.get(y * width, row);
+            data.write(row);
+         }
+      }
+      data.flush();
+   }
+
+   /**
+    * Saves the planes to a file, which map() reads back.
+    *
+    * @param file             The file written.
+    * @throws IOException     If the file can't be written.
+    */
+   public void write(File file) throws IOException
+   {
+      try (OutputStream out = Files.newOutputStream(file.toPath()))
+      {
+         write(out);
+      }
+   }
+
+   /**
+    * Converts the planes into one of the stipple art styles. The result is
+    * the same as ConvertToStipple gives for the image.
+    *
+    * @param stippleMode      The stipple art style.
+    * @param clean            How much of the background is cleaned up.
+    * @return                 Returns a new buffer of the converted pixels.
+    */
+   public PixelBuffer stipple(StippleMode stippleMode, int clean)
+   {
+      // Check if the clean value is valid.
+      stippleMode.checkClean(clean);
+
+      try (StageTimer timer = StageTimer.start(Stage.COMBINE,
+              (long) width * height))
+      {
+         PixelBuffer result = new PixelBuffer(width, height);
+         int[] pixels = result.getPixels();
+
+         TileExecutor.forEachBand(width, height, CHUNK_ROWS,
+                 (fromRow, toRow) -> combine(stippleMode, clean, pixels,
+                         fromRow, toRow));
+         return result;
+      }
+   }
+
+   /**
+    * Subtracts each grey value from its blurred value for the rows fromRow
+    * to toRow, a few rows of the planes at a time.
+    */
+   private void combine(StippleMode stippleMode, int clean, int[] pixels,
+                        int fromRow, int toRow)
+   {
+      byte[] greyRows = new byte[CHUNK_ROWS * width];
+      byte[] blurredRows = new byte[CHUNK_ROWS * width];
+
+      for (int y = fromRow; y < toRow; y += CHUNK_ROWS)
+      {
+         int length = (Math.min(toRow, y + CHUNK_ROWS) - y) * width;
+         grey.get(y * width, greyRows, 0, length);
+         blurred.get(y * width, blurredRows, 0, length);
+
+         PixelOps.get().stipple(stippleMode, clean, greyRows, blurredRows, 0,
+                 pixels, y * width, length);
+      }
+   }
+
+   /**
+    * The width of the image.
+    *
+    * @return                 Returns the width in pixels.
+    */
+   public int getWidth()
+   {
+      return width;
+   }
+
+   /**
+    * The height of the image.
+    *
+    * @return                 Returns the height in pixels.
+    */
+   public int getHeight()
+   {
+      return height;
+   }
+
+   /**
+    * How the blurred plane was blurred.
+    *
+    * @return                 Returns the BlurMode.
+    */
+   public BlurMode getBlurMode()
+   {
+      return mode;
+   }
+}
@@ -0,0 +1,233 @@
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Previews the stipple art styles of an image quickly, for trying clean
+ * values interactively. The image is converted to grey once and halved
+ * again and again into a pyramid of levels, level 0 being the full size.
+ * A preview is computed on a small level with the blur radius scaled down
+ * by the same amount, so it takes milliseconds, and then refined level by
+ * level up to the full size in the background. The blurred planes of each
+ * level don't depend on the style or the clean value, so they are kept,
+ * and once a level has been computed a new clean value costs one pass over
+ * its planes. Asking for a new refinement cancels the last one, which
+ * stops before its next level. The full size result is exactly what
+ * ConvertToStipple gives.
+ */
+public final class StipplePreview implements AutoCloseable {
+
+   /**
+    * The longest side of the level previewed first unless another is
+    * given.
+    */
+   public final static int DEFAULT_PREVIEW_SIZE = 512;
+
+   private final BlurMode mode;
+   private final List<LumaPlane> levels = new ArrayList<>();
+   private final int previewLevel;
+
+   // The planes of each level, computed the first time they are needed.
+   private final AtomicReferenceArray<StipplePlanes> planes;
+
+   private final ExecutorService refiner =
+           Executors.newSingleThreadExecutor();
+   private CompletableFuture<PixelBuffer> refinement;
+
+   /**
+    * Receives each result of a refinement, from the smallest level to the
+    * full size.
+    */
+   @FunctionalInterface
+   public interface Listener {
+
+      /**
+       * Called with the result of a level, on the refining thread.
+       *
+       * @param pixels        The pixels of the level.
+       * @param level         The level, 0 is the full size.
+       */
+      void refined(PixelBuffer pixels, int level);
+   }
+
+   /**
+    * Builds the pyramid of an image, previewing levels of up to
+    * DEFAULT_PREVIEW_SIZE pixels a side.
+    *
+    * @param img              The image, it's left unchanged.
+    * @param mode             How the blur is computed.
+    */
+   public StipplePreview(BufferedImage img, BlurMode mode)
+   {
+      this(img, mode, DEFAULT_PREVIEW_SIZE);
+   }
+
+   /**
+    * Builds the pyramid of an image.
+    *
+    * @param img              The image, it's left unchanged.
+    * @param mode             How the blur is computed.
+    * @param previewSize      The longest side of the level previewed first.
+    */
+   public StipplePreview(BufferedImage img, BlurMode mode, int previewSize)
+   {
+      // Check if the preview size is valid.
+      if (previewSize < 1)
+         throw new IllegalArgumentException("input value for previewSize " +
+                 "is invalid, choose a value of 1 or more");
+
+      this.mode = mode;
+
+      // Halve the grey image until it fits in the preview size.
+      LumaPlane level = LumaPlane.of(img);
+      levels.add(level);
+      while (Math.max(level.getWidth(), level.getHeight()) > previewSize)
+      {
+         level = level.half();
+         levels.add(level);
+      }
+      this.previewLevel = levels.size() - 1;
+      this.planes = new AtomicReferenceArray<>(levels.size());
+   }
+
+   /**
+    * Computes the preview of a style on the smallest level.
+    *
+    * @param stippleMode      The stipple art style.
+    * @param clean            How much of the background is cleaned up.
+    * @return                 Returns a new buffer of the preview, the size
+    *                         of the smallest level.
+    */
+   public PixelBuffer preview(StippleMode stippleMode, int clean)
+   {
+      return stipple(stippleMode, clean, previewLevel);
+   }
+
+   /**
+    * Computes a style on one level.
+    *
+    * @param stippleMode      The stipple art style.
+    * @param clean            How much of the background is cleaned up.
+    * @param level            The level, 0 is the full size.
+    * @return                 Returns a new buffer of the converted pixels.
+    */
+   public PixelBuffer stipple(StippleMode stippleMode, int clean, int level)
+   {
+      // Check if the level is valid.
+      if (level < 0 || level >= levels.size())
+         throw new IllegalArgumentException("input value for level is " +
+                 "invalid, choose a value from 0 to " + (levels.size() - 1));
+
+      return planes(level).stipple(stippleMode, clean);
+   }
+
+   /**
+    * Refines a style from the smallest level to the full size in the
+    * background, cancelling the refinement asked for before. Cancelling
+    * the returned future stops the refinement before its next level.
+    *
+    * @param stippleMode      The stipple art style.
+    * @param clean            How much of the background is cleaned up.
+    * @param listener         Receives the result of each level.
+    * @return                 Returns the full size result once it's done.
+    */
+   public synchronized CompletableFuture<PixelBuffer> refine
+   (StippleMode stippleMode, int clean, Listener listener)
+   {
+      // Check the clean value before doing the work.
+      stippleMode.checkClean(clean);
+
+      if (refinement != null)
+         refinement.cancel(false);
+
+      CompletableFuture<PixelBuffer> result = new CompletableFuture<>();
+      refinement = result;
+      refiner.execute(() -> {
+         try
+         {
+            PixelBuffer pixels = null;
+            for (int level = previewLevel; level >= 0; level--)
+            {
+               // Stop if a newer refinement was asked for.
+               if (result.isDone())
+                  return;
+
+               pixels = stipple(stippleMode, clean, level);
+               if (result.isDone())
+                  return;
+               listener.refined(pixels, level);
+            }
+            result.complete(pixels);
+         }
+         catch (RuntimeException | OutOfMemoryError e)
+         {
+            result.completeExceptionally(e);
+         }
+      });
+      return result;
+   }
+
+   /**
+    * The number of levels in the pyramid.
+    *
+    * @return                 Returns the levels, at least 1.
+    */
+   public int getLevels()
+   {
+      return levels.size();
+   }
+
+   /**
+    * The level previewed first.
+    *
+    * @return                 Returns the index of the smallest level.
+    */
+   public int getPreviewLevel()
+   {
+      return previewLevel;
+   }
+
+   /**
+    * The blur radius used on a level, the radius of ConvertToStipple scaled
+    * down with the level and at least 1.
+    *
+    * @param level            The level, 0 is the full size.
+    * @return                 Returns the radius.
+    */
+   public int radius(int level)
+   {
+      return Math.max(1, Math.round(
+              (float) ConvertToStipple.BLUR_RADIUS / (1 << level)));
+   }
+
+   /**
+    * Cancels the refinement running and stops the refining thread.
+    */
+   @Override
+   public synchronized void close()
+   {
+      if (refinement != null)
+         refinement.cancel(false);
+      refiner.shutdown();
+   }
+
+   /**
+    * The planes of a level, computing them the first time. Two threads
+    * asking at once may both compute them, the first one stored is kept.
+    */
+   private StipplePlanes planes(int level)
+   {
+      StipplePlanes levelPlanes = planes.get(level);
+      if (levelPlanes == null)
+      {
+         planes.compareAndSet(level, null,
+                 StipplePlanes.of(levels.get(level), radius(level), mode));
+         levelPlanes = planes.get(level);
+      }
+      return levelPlanes;
+   }
+}
@@ -0,0 +1,155 @@
+import java.util.Locale;
+
+/**
+ * One output of a StippleFanOut: a stipple art style, its clean value and
+ * the format it's written in.
+ */
+public final class StippleVariant {
+
+   private final StippleMode mode;
+   private final int clean;
+   private final String formatName;
+
+   /**
+    * Creates a variant.
+    *
+    * @param mode             The stipple art style.
+    * @param clean            How much of the background is cleaned up.
+    * @param formatName       The format the output is written in.
+    */
+   public StippleVariant(StippleMode mode, int clean, String formatName)
+   {
+      // Check if the clean value is valid.
+      mode.checkClean(clean);
+
+      this.mode = mode;
+      this.clean = clean;
+      this.formatName = formatName;
+   }
+
+   /**
+    * Reads a variant written as "style:clean" or "style:clean:format", like
+    * "whiteFigure:4:jpeg". The style is the name of the ConvertToStipple
+    * method or of the StippleMode. The format is png unless one is given.
+    *
+    * @param spec             The variant.
+    * @return                 Returns the variant.
+    */
+   public static StippleVariant parse(String spec)
+   {
+      String[] fields = spec.split(":");
+
+      // Check if the variant has a style and a clean value.
+      if (fields.length < 2 || fields.length > 3)
+         throw new IllegalArgumentException("input value for spec is " +
+                 "invalid, write it as style:clean or style:clean:format");
+
+      int clean;
+      try
+      {
+         clean = Integer.parseInt(fields[1]);
+      }
+      catch (NumberFormatException e)
+      {
+         throw new IllegalArgumentException("input value for clean is " +
+                 "invalid, " + fields[1] + " is not a number");
+      }
+
+      return new StippleVariant(modeOf(fields[0]), clean,
+              fields.length > 2 ? fields[2] : "png");
+   }
+
+   /**
+    * The name the output of an image is given, the name of the image
+    * followed by the style and clean value.
+    *
+    * @param imageName        The file name of the image, without a suffix.
+    * @return                 Returns the name of the output, without a
+    *                         suffix.
+    */
+   String outputName(String imageName)
+   {
+      return imageName + "-" + methodName(mode) + "-" + clean;
+   }
+
+   /**
+    * Checks if a name is one outputName gives, of any style and clean
+    * value, like "photo-whiteFigure-4".
+    *
+    * @param name             The file name, without a suffix.
+    * @return                 Returns true if it's the name of an output.
+    */
+   static boolean isOutputName(String name)
+   {
+      for (StippleMode mode : StippleMode.values())
+      {
+         String style = "-" + methodName(mode) + "-";
+         int index = name.lastIndexOf(style);
+         if (index > 0 && name.length() > index + style.length() &&
+                 name.substring(index + style.length()).chars()
+                         .allMatch(Character::isDigit))
+            return true;
+      }
+      return false;
+   }
+
+   public StippleMode getMode()
+   {
+      return mode;
+   }
+
+   public int getClean()
+   {
+      return clean;
+   }
+
+   public String getFormatName()
+   {
+      return formatName;
+   }
+
+   @Override
+   public String toString()
+   {
+      return methodName(mode) + ":" + clean + ":" + formatName;
+   }
+
+   /**
+    * Finds the style of a ConvertToStipple method name, like whiteFigure,
+    * or of a StippleMode name, like WHITE_FIGURE.
+    *
+    * @param name             The name of the style.
+    * @return                 Returns the style.
+    */
+   static StippleMode modeOf(String name)
+   {
+      for (StippleMode mode : StippleMode.values())
+      {
+         if (mode.name().equalsIgnoreCase(name) ||
+                 methodName(mode).equalsIgnoreCase(name))
+            return mode;
+      }
+
+      throw new IllegalArgumentException("input value for style is " +
+              "invalid, choose blackFigureOnWhite, " +
+              "blackFigureOnYellowishWhite or whiteFigure");
+   }
+
+   /**
+    * The ConvertToStipple method name of a style, BLACK_FIGURE_ON_WHITE is
+    * blackFigureOnWhite.
+    */
+   private static String methodName(StippleMode mode)
+   {
+      StringBuilder name = new StringBuilder();
+      for (String word : mode.name().toLowerCase(Locale.ROOT).split("_"))
+      {
+         if (name.length() == 0)
+            name.append(word);
+         else
+            name.append(Character.toUpperCase(word.charAt(0)))
+                    .append(word.substring(1));
+      }
+      return name.toString();
+   }
+}
@@ -0,0 +1,241 @@
+import javax.imageio.ImageTypeSpecifier;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Vector;
+
+/**
+ * An image whose pixels are computed a strip of rows at a time, as an
+ * ImageWriter asks for them. Only one strip is held, so writing the image
+ * takes the memory of a strip rather than of the image. The writer has to
+ * ask for the rows top to bottom, the PNG and TIFF writers do.
+ */
+final class StripImage implements RenderedImage {
+
+   /**
+    * Computes the pixels of a strip.
+    */
+   @FunctionalInterface
+   interface StripFilter {
+
+      /**
+       * Writes the rows fromRow (inclusive) to toRow (exclusive) of the image
+       * to the top of the strip image.
+       *
+       * @param fromRow          The first row of the strip.
+       * @param toRow            The row after the last row of the strip.
+       * @param strip            The image the rows are written to.
+       * @throws IOException     If the source of the rows can't be read.
+       */
+      void filter(int fromRow, int toRow, BufferedImage strip)
+              throws IOException;
+   }
+
+   private final int width;
+   private final int height;
+   private final int stripHeight;
+   private final StripFilter filter;
+   private final BufferedImage strip;
+
+   // The first row of the strip held, -1 before the first strip.
+   private int stripRow = -1;
+
+   /**
+    * Creates an image computed in strips.
+    *
+    * @param width            The width of the image.
+    * @param height           The height of the image.
+    * @param stripHeight      The number of rows in a strip.
+    * @param type             The type of the image written.
+    * @param filter           Computes the pixels of each strip.
+    */
+   StripImage(int width, int height, int stripHeight, ImageTypeSpecifier type,
+              StripFilter filter)
+   {
+      this.width = width;
+      this.height = height;
+      this.stripHeight = Math.max(1, Math.min(height, stripHeight));
+      this.filter = filter;
+      this.strip = type.createBufferedImage(width, this.stripHeight);
+   }
+
+   @Override
+   public Raster getTile(int tileX, int tileY)
+   {
+      int fromRow = tileY * stripHeight;
+
+      // Compute the strips up to the one asked for, in order.
+      if (fromRow < stripRow)
+         throw new IllegalStateException("the rows of a StripImage must be " +
+                 "read top to bottom, row " + fromRow + " was already " +
+                 "discarded");
+
+      while (stripRow < fromRow)
+      {
+         int nextRow = stripRow < 0 ? 0 : stripRow + stripHeight;
+         try
+         {
+            filter.filter(nextRow, Math.min(height, nextRow + stripHeight),
+                    strip);
+         }
+         catch (IOException e)
+         {
+            throw new UncheckedIOException(e);
+         }
+         stripRow = nextRow;
+      }
+
+      int rows = Math.min(height, fromRow + stripHeight) - fromRow;
+      return strip.getRaster().createChild(0, 0, width, rows, 0, fromRow,
+              null);
+   }
+
+   @Override
+   public Raster getData(Rectangle rect)
+   {
+      Rectangle bounds = rect.intersection(new Rectangle(width, height));
+      int firstStrip = bounds.y / stripHeight;
+      int lastStrip = (bounds.y + bounds.height - 1) / stripHeight;
+
+      // The rows are usually in one strip, which is shared.
+      if (firstStrip == lastStrip)
+      {
+         return getTile(0, firstStrip).createChild(bounds.x, bounds.y,
+                 bounds.width, bounds.height, bounds.x, bounds.y, null);
+      }
+
+      WritableRaster raster = strip.getRaster().createCompatibleWritableRaster(
+              bounds.x, bounds.y, bounds.width, bounds.height);
+      for (int tileY = firstStrip; tileY <= lastStrip; tileY++)
+         raster.setRect(getTile(0, tileY));
+      return raster;
+   }
+
+   @Override
+   public Raster getData()
+   {
+      return getData(new Rectangle(width, height));
+   }
+
+   @Override
+   public WritableRaster copyData(WritableRaster raster)
+   {
+      if (raster == null)
+      {
+         raster = strip.getRaster().createCompatibleWritableRaster(width,
+                 height);
+      }
+
+      raster.setRect(getData(raster.getBounds()));
+      return raster;
+   }
+
+   @Override
+   public Vector<RenderedImage> getSources()
+   {
+      return null;
+   }
+
+   @Override
+   public Object getProperty(String name)
+   {
+      return Image.UndefinedProperty;
+   }
+
+   @Override
+   public String[] getPropertyNames()
+   {
+      return null;
+   }
+
+   @Override
+   public ColorModel getColorModel()
+   {
+      return strip.getColorModel();
+   }
+
+   @Override
+   public SampleModel getSampleModel()
+   {
+      return strip.getSampleModel();
+   }
+
+   @Override
+   public int getWidth()
+   {
+      return width;
+   }
+
+   @Override
+   public int getHeight()
+   {
+      return height;
+   }
+
+   @Override
+   public int getMinX()
+   {
+      return 0;
+   }
+
+   @Override
+   public int getMinY()
+   {
+      return 0;
+   }
+
+   @Override
+   public int getNumXTiles()
+   {
+      return 1;
+   }
+
+   @Override
+   public int getNumYTiles()
+   {
+      return (height + stripHeight - 1) / stripHeight;
+   }
+
+   @Override
+   public int getMinTileX()
+   {
+      return 0;
+   }
+
+   @Override
+   public int getMinTileY()
+   {
+      return 0;
+   }
+
+   @Override
+   public int getTileWidth()
+   {
+      return width;
+   }
+
+   @Override
+   public int getTileHeight()
+   {
+      return stripHeight;
+   }
+
+   @Override
+   public int getTileGridXOffset()
+   {
+      return 0;
+   }
+
+   @Override
+   public int getTileGridYOffset()
+   {
+      return 0;
+   }
+}
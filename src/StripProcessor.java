@@ -0,0 +1,292 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Applies the filters to images too big to decode into memory. The image is
+ * read, filtered and written a strip of rows at a time, keeping only the
+ * strip and the rows the blur reads above and below it. Peak memory depends
+ * on the width of the image and the strip height, not on the height of the
+ * image. The output is the same as the file based filters of ImageFilters
+ * and ConvertToStipple write. The output is written as png or tiff, whose
+ * writers take the rows in order, to a temporary file which then replaces
+ * the image.
+ */
+public final class StripProcessor {
+
+   /**
+    * The number of rows filtered at a time unless one is given.
+    */
+   public final static int DEFAULT_STRIP_HEIGHT = 512;
+
+   // The types whose ImageWriter asks for the rows top to bottom.
+   private final static Set<String> STREAMING_TYPES =
+           Set.of("png", "tif", "tiff");
+
+   private final int stripHeight;
+
+   /**
+    * Creates a processor filtering DEFAULT_STRIP_HEIGHT rows at a time.
+    */
+   public StripProcessor()
+   {
+      this(DEFAULT_STRIP_HEIGHT);
+   }
+
+   /**
+    * Creates a processor. Taller strips have more rows to share the cost of
+    * the blur halo and of reading formats that can't be decoded in strips,
+    * shorter strips use less memory.
+    *
+    * @param stripHeight      The number of rows filtered at a time.
+    */
+   public StripProcessor(int stripHeight)
+   {
+      // Check if the strip height is valid.
+      if (stripHeight < 1)
+         throw new IllegalArgumentException("input value for stripHeight " +
+                 "is invalid, choose a value of 1 or more");
+
+      this.stripHeight = stripHeight;
+   }
+
+   /**
+    * Inverts the Colors of an image in the machine based on a file path.
+    *
+    * @param imageFile        The file path where the image is located.
+    * @param fileType         The type the image is written as, png or tiff.
+    * @throws IOException     If the image can't be read or written.
+    */
+   public void invertColors(File imageFile, String fileType)
+           throws IOException
+   {
+      run(imageFile, fileType, 0, (window, output, width, rows, from, to) ->
+              TileExecutor.forEachBand(width, to - from, 1, (f, t) ->
+                      PixelOps.get().invert(window, output,
+                              (from + f) * width, (from + t) * width)));
+   }
+
+   /**
+    * Converts an image in the machine to GreyScale based on a file path.
+    *
+    * @param imageFile        The file path where the image is located.
+    * @param fileType         The type the image is written as, png or tiff.
+    * @throws IOException     If the image can't be read or written.
+    */
+   public void convertToGreyScale(File imageFile, String fileType)
+           throws IOException
+   {
+      run(imageFile, fileType, 0, (window, output, width, rows, from, to) ->
+              TileExecutor.forEachBand(width, to - from, 1, (f, t) ->
+                      PixelOps.get().grey(window, output,
+                              (from + f) * width, (from + t) * width)));
+   }
+
+   /**
+    * Applies Gaussian Blur to an image on the machine based on the file path
+    * of the image, computed with the given mode. Doesn't blur the border of
+    * the image.
+    *
+    * @param radius           The radius of the Gaussian Kernel.
+    * @param imageFile        The file path where the image is located.
+    * @param fileType         The type the image is written as, png or tiff.
+    * @param mode             How the blur is computed.
+    * @throws IOException     If the image can't be read or written.
+    */
+   public void gaussianBlur(int radius, File imageFile, String fileType,
+                            BlurMode mode) throws IOException
+   {
+      // Check if the radius is valid.
+      if (radius < 0)
+         throw new IllegalArgumentException("input value for radius is " +
+                 "invalid, choose a value of 0 or more");
+
+      run(imageFile, fileType, GaussianBlur.halo(radius, mode),
+              (window, output, width, rows, from, to) ->
+                      GaussianBlur.parallelBlur(window, output, width, rows,
+                              radius, mode, from, to, null));
+   }
+
+   /**
+    * Mutates an image on the machine into one of the stipple art styles of
+    * ConvertToStipple.
+    *
+    * @param stippleMode      The stipple art style.
+    * @param imageFile        The file path where the image is located.
+    * @param fileType         The type the image is written as, png or tiff.
+    * @param clean            How much of the background is cleaned up.
+    * @param mode             How the blur is computed.
+    * @throws IOException     If the image can't be read or written.
+    */
+   public void stipple(StippleMode stippleMode, File imageFile,
+                       String fileType, int clean, BlurMode mode)
+           throws IOException
+   {
+      // Check if the clean value is valid.
+      stippleMode.checkClean(clean);
+
+      int radius = ConvertToStipple.BLUR_RADIUS;
+      GaussianBlur.Combiner combiner = stippleMode.combiner(clean);
+
+      run(imageFile, fileType, GaussianBlur.halo(radius, mode),
+              new StripOperation() {
+
+                 @Override
+                 public void read(int[] window, int width, int from, int to)
+                 {
+                    // The blur reads the grey rows, convert them once.
+                    TileExecutor.forEachBand(width, to - from, 1, (f, t) ->
+                            PixelOps.get().grey(window, window,
+                                    (from + f) * width, (from + t) * width));
+                 }
+
+                 @Override
+                 public void filter(int[] window, int[] output, int width,
+                                    int rows, int from, int to)
+                 {
+                    GaussianBlur.parallelBlur(window, output, width, rows,
+                            radius, mode, from, to, combiner);
+                 }
+              });
+   }
+
+   /**
+    * The work of a filter on the rows held in memory.
+    */
+   @FunctionalInterface
+   private interface StripOperation {
+
+      /**
+       * Prepares the rows from (inclusive) to (exclusive) of the window as
+       * they are read, in place. Does nothing unless overridden.
+       *
+       * @param window        The rows held, packed ARGB.
+       * @param width         The width of the image.
+       * @param from          The first row read.
+       * @param to            The row after the last row read.
+       */
+      default void read(int[] window, int width, int from, int to) {}
+
+      /**
+       * Filters the rows from (inclusive) to (exclusive) of the window into
+       * the same rows of the output. The window holds the halo rows around
+       * them unless they are at the edge of the image, so the window can be
+       * filtered as if it were the whole image.
+       *
+       * @param window        The rows held, packed ARGB.
+       * @param output        The array the filtered rows are written to.
+       * @param width         The width of the image.
+       * @param rows          The number of rows in the window.
+       * @param from          The first row written.
+       * @param to            The row after the last row written.
+       */
+      void filter(int[] window, int[] output, int width, int rows, int from,
+                  int to);
+   }
+
+   /**
+    * Filters the image into a temporary file, which then replaces it.
+    */
+   private void run(File imageFile, String fileType, int halo,
+                    StripOperation operation) throws IOException
+   {
+      // Check if the type can be written a strip at a time.
+      if (!STREAMING_TYPES.contains(fileType.toLowerCase(Locale.ROOT)))
+         throw new IllegalArgumentException("input value for fileType is " +
+                 "invalid, choose one of " + STREAMING_TYPES);
+
+      // Replace the image once it's closed and the output is complete.
+      ImageOutput.replace(imageFile.getAbsoluteFile().toPath(), temp ->
+              write(imageFile, temp.toFile(), fileType, halo, operation));
+   }
+
+   /**
+    * Reads the image in strips, filters each strip and writes it to the
+    * output file.
+    */
+   private void write(File imageFile, File outputFile, String fileType,
+                      int halo, StripOperation operation) throws IOException
+   {
+      try (StripReader reader = StripReader.open(imageFile))
+      {
+         int width = reader.getWidth();
+         int height = reader.getHeight();
+         Window window = new Window(reader, operation, width, height, halo,
+                 Math.min(stripHeight, height));
+
+         StripImage image = new StripImage(width, height, stripHeight,
+                 reader.getImageType(), window::filter);
+         if (!ImageIO.write(image, fileType, outputFile))
+            throw new IOException("no writer for " + fileType);
+      }
+      catch (UncheckedIOException e)
+      {
+         throw e.getCause();
+      }
+   }
+
+   /**
+    * The rows of the source held in memory, a strip and its halo. Moving to
+    * the next strip keeps the rows the two share and reads the rest.
+    */
+   private static final class Window {
+
+      private final StripReader reader;
+      private final StripOperation operation;
+      private final int width;
+      private final int height;
+      private final int halo;
+      private final int[] pixels;
+      private final int[] output;
+
+      // The rows of the source held, firstRow (inclusive) to lastRow
+      // (exclusive).
+      private int firstRow;
+      private int lastRow;
+
+      Window(StripReader reader, StripOperation operation, int width,
+             int height, int halo, int stripHeight)
+      {
+         this.reader = reader;
+         this.operation = operation;
+         this.width = width;
+         this.height = height;
+         this.halo = halo;
+
+         int rows = Math.min(height, stripHeight + 2 * halo);
+         this.pixels = new int[rows * width];
+         this.output = new int[rows * width];
+      }
+
+      /**
+       * Filters the rows fromRow to toRow of the image into the strip.
+       */
+      void filter(int fromRow, int toRow, BufferedImage strip)
+              throws IOException
+      {
+         int first = Math.max(0, fromRow - halo);
+         int last = Math.min(height, toRow + halo);
+
+         // Drop the rows above the halo and move the rest to the top.
+         int kept = Math.max(0, lastRow - first);
+         System.arraycopy(pixels, (lastRow - kept - firstRow) * width, pixels,
+                 0, kept * width);
+         firstRow = first;
+
+         // Read the new rows below them.
+         int read = last - firstRow - kept;
+         reader.read(pixels, kept * width, read);
+         operation.read(pixels, width, kept, kept + read);
+         lastRow = last;
+
+         int from = fromRow - firstRow;
+         int to = toRow - firstRow;
+         operation.filter(pixels, output, width, lastRow - firstRow, from, to);
+         strip.setRGB(0, 0, width, to - from, output, from * width, width);
+      }
+   }
+}
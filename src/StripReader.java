@@ -0,0 +1,97 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Reads the rows of an image file top to bottom, a few at a time, without
+ * holding the whole image. The rows are packed ARGB, the same values
+ * PixelBuffer.of() would read from the decoded image.
+ */
+interface StripReader extends Closeable {
+
+   /**
+    * Opens an image file. Non interlaced PNG files are decoded row by row in
+    * one pass, any other file is read through the source regions of its
+    * ImageReader.
+    *
+    * @param imageFile        The file path where the image is located.
+    * @return                 Returns the reader, close it when done.
+    * @throws IOException     If the file can't be read or isn't an image.
+    */
+   static StripReader open(File imageFile) throws IOException
+   {
+      ImageInputStream stream = ImageIO.createImageInputStream(imageFile);
+      if (stream == null)
+         throw new IOException("can't read " + imageFile);
+
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+      if (!readers.hasNext())
+      {
+         stream.close();
+         throw new IOException(imageFile + " is not a supported image");
+      }
+
+      ImageReader reader = readers.next();
+      try
+      {
+         reader.setInput(stream, true, true);
+
+         if (reader.getFormatName().equalsIgnoreCase("png"))
+         {
+            // The reader is only needed for the type of the pixels.
+            ImageTypeSpecifier type = reader.getImageTypes(0).next();
+            StripReader png = PngStripReader.open(imageFile, type);
+            if (png != null)
+            {
+               reader.dispose();
+               stream.close();
+               return png;
+            }
+         }
+         return new RegionStripReader(reader, stream);
+      }
+      catch (IOException | RuntimeException e)
+      {
+         reader.dispose();
+         stream.close();
+         throw e;
+      }
+   }
+
+   /**
+    * The width of the image.
+    *
+    * @return                 Returns the width in pixels.
+    */
+   int getWidth();
+
+   /**
+    * The height of the image.
+    *
+    * @return                 Returns the height in pixels.
+    */
+   int getHeight();
+
+   /**
+    * The type of image ImageIO.read() would decode the file to, so the
+    * output can be written the same way as a filtered image.
+    *
+    * @return                 Returns the type of the image.
+    */
+   ImageTypeSpecifier getImageType();
+
+   /**
+    * Reads the next rows of the image.
+    *
+    * @param pixels           The array the packed ARGB rows are written to.
+    * @param offset           The index of the first pixel in the array.
+    * @param rows             The number of rows read.
+    * @throws IOException     If the file can't be read.
+    */
+   void read(int[] pixels, int offset, int rows) throws IOException;
+}
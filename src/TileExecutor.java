@@ -0,0 +1,151 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A class of static methods. Runs the per pixel work of the filters on bands
+ * of rows in parallel. The rows are split in half recursively on a
+ * ForkJoinPool, so idle workers steal bands from busy ones. Every band is
+ * computed exactly as it would be on one thread, so the output is the same
+ * at any parallelism.
+ */
+public final class TileExecutor {
+
+   // The fewest pixels worth handing to another worker.
+   private final static int MIN_BAND_PIXELS = 1 << 16;
+
+   // How many bands each worker gets, so uneven bands can be stolen.
+   private final static int BANDS_PER_WORKER = 4;
+
+   private static volatile ForkJoinPool pool =
+           new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+   private TileExecutor() {}
+
+   /**
+    * The work done on a band of rows.
+    */
+   @FunctionalInterface
+   interface RowBand {
+
+      /**
+       * Processes the rows fromRow (inclusive) to toRow (exclusive).
+       *
+       * @param fromRow       The first row of the band.
+       * @param toRow         The row after the last row of the band.
+       */
+      void run(int fromRow, int toRow);
+   }
+
+   /**
+    * Sets how many threads the filters use, so the machine can be shared
+    * with other jobs. 1 runs every filter on the calling thread. Defaults to
+    * the number of processors. Filters already running finish on the old
+    * threads, which then stop.
+    *
+    * @param parallelism        The number of threads, at least 1.
+    */
+   public static synchronized void setParallelism(int parallelism)
+   {
+      // Check if the parallelism is valid.
+      if (parallelism < 1)
+         throw new IllegalArgumentException("input value for parallelism " +
+                 "is invalid, choose a value of 1 or more");
+
+      if (parallelism != pool.getParallelism())
+      {
+         // Replace the pool first, so only filters which already took the
+         // old one can find it shut down.
+         ForkJoinPool old = pool;
+         pool = new ForkJoinPool(parallelism);
+         old.shutdown();
+      }
+   }
+
+   /**
+    * The number of threads the filters use.
+    *
+    * @return                   Returns the parallelism.
+    */
+   public static int getParallelism()
+   {
+      return pool.getParallelism();
+   }
+
+   /**
+    * Runs the work on bands covering all rows of an image and waits for it
+    * to finish.
+    *
+    * @param width              The width of the image.
+    * @param height             The height of the image.
+    * @param minRows            The fewest rows in a band, for work which
+    *                           reads a halo around each band.
+    * @param band               The work done on each band.
+    */
+   static void forEachBand(int width, int height, int minRows, RowBand band)
+   {
+      while (true)
+      {
+         ForkJoinPool current = pool;
+
+         // Size the bands so each worker gets a few of them.
+         int parallelism = current.getParallelism();
+         int bandRows = Math.max(minRows, Math.max(
+                 (MIN_BAND_PIXELS + width - 1) / Math.max(1, width),
+                 height / (parallelism * BANDS_PER_WORKER)));
+
+         // Small images and a single thread don't need the pool.
+         if (parallelism == 1 || height <= bandRows)
+         {
+            band.run(0, height);
+            return;
+         }
+
+         try
+         {
+            current.invoke(new BandAction(band, 0, height, bandRows));
+            return;
+         }
+         catch (RejectedExecutionException e)
+         {
+            // The pool was replaced and shut down before the work was
+            // taken, so nothing ran yet. Run it on the new pool.
+            if (current == pool)
+               throw e;
+         }
+      }
+   }
+
+   /**
+    * Splits its rows in half until they fit in a band.
+    */
+   private static final class BandAction extends RecursiveAction {
+
+      private final RowBand band;
+      private final int fromRow;
+      private final int toRow;
+      private final int bandRows;
+
+      BandAction(RowBand band, int fromRow, int toRow, int bandRows)
+      {
+         this.band = band;
+         this.fromRow = fromRow;
+         this.toRow = toRow;
+         this.bandRows = bandRows;
+      }
+
+      @Override
+      protected void compute()
+      {
+         if (toRow - fromRow <= bandRows)
+         {
+            band.run(fromRow, toRow);
+            return;
+         }
+
+         int middle = (fromRow + toRow) >>> 1;
+         invokeAll(new BandAction(band, fromRow, middle, bandRows),
+                 new BandAction(band, middle, toRow, bandRows));
+      }
+   }
+}
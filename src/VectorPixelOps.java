@@ -0,0 +1,288 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The per pixel loops written with the Vector API, a full SIMD register of
+ * pixels at a time. Every lane computes exactly what ScalarPixelOps computes
+ * for its pixel: the integer loops use the same bit operations, and the
+ * blur sums multiply then add without fusing, like the scalar code. Only
+ * loaded when the jdk.incubator.vector module is present.
+ */
+final class VectorPixelOps extends PixelOps {
+
+   private final static VectorSpecies<Integer> INTS =
+           IntVector.SPECIES_PREFERRED;
+   private final static VectorSpecies<Double> DOUBLES =
+           DoubleVector.SPECIES_PREFERRED;
+
+   // A byte for each lane of INTS, so a vector of grey values converts to
+   // a vector of pixels. Null if no vector is that short, then the grey
+   // planes use the scalar loops.
+   private final static VectorSpecies<Byte> BYTES = bytesFor(INTS);
+
+   // Dividing the sum of three channels (0 to 765) by 3 is the same as
+   // multiplying by THIRD and shifting right by THIRD_SHIFT, which vectors
+   // can do quickly.
+   private final static int THIRD = 43691;
+   private final static int THIRD_SHIFT = 17;
+
+   // Handles the pixels after the last full vector.
+   private final ScalarPixelOps tail = new ScalarPixelOps();
+
+   @Override
+   String name()
+   {
+      return "vector";
+   }
+
+   @Override
+   void invert(int[] src, int[] dst, int from, int to)
+   {
+      int i = from;
+      int bound = from + INTS.loopBound(to - from);
+      for (; i < bound; i += INTS.length())
+      {
+         // 255 minus each channel is its bits flipped, the alpha becomes 0.
+         IntVector.fromArray(INTS, src, i).not().and(0x00FFFFFF)
+                 .intoArray(dst, i);
+      }
+      tail.invert(src, dst, i, to);
+   }
+
+   @Override
+   void grey(int[] src, int[] dst, int from, int to)
+   {
+      int i = from;
+      int bound = from + INTS.loopBound(to - from);
+      for (; i < bound; i += INTS.length())
+         opaqueGrey(greyAverage(IntVector.fromArray(INTS, src, i)))
+                 .intoArray(dst, i);
+      tail.grey(src, dst, i, to);
+   }
+
+   @Override
+   void luma(int[] src, byte[] dst, int from, int to)
+   {
+      int i = from;
+      if (BYTES != null)
+      {
+         int bound = from + INTS.loopBound(to - from);
+         for (; i < bound; i += INTS.length())
+            toBytes(greyAverage(IntVector.fromArray(INTS, src, i)))
+                    .intoArray(dst, i);
+      }
+      tail.luma(src, dst, i, to);
+   }
+
+   @Override
+   void stipple(StippleMode mode, int clean, int[] grey, int[] blurred,
+                int from, int to)
+   {
+      int offset = mode.cleanOffset(clean);
+      boolean greyScale = mode.isGreyScale();
+
+      int i = from;
+      int bound = from + INTS.loopBound(to - from);
+      for (; i < bound; i += INTS.length())
+      {
+         IntVector greyValue = IntVector.fromArray(INTS, grey, i).and(0xFF);
+         IntVector blurredValue =
+                 IntVector.fromArray(INTS, blurred, i).and(0xFF);
+
+         stipplePixel(greyValue, blurredValue, offset, greyScale)
+                 .intoArray(blurred, i);
+      }
+      tail.stipple(mode, clean, grey, blurred, i, to);
+   }
+
+   @Override
+   void stipple(StippleMode mode, int clean, byte[] grey, byte[] blurred,
+                int from, int[] dst, int dstFrom, int length)
+   {
+      int offset = mode.cleanOffset(clean);
+      boolean greyScale = mode.isGreyScale();
+
+      int x = 0;
+      if (BYTES != null)
+      {
+         int bound = INTS.loopBound(length);
+         for (; x < bound; x += INTS.length())
+         {
+            stipplePixel(fromBytes(grey, from + x),
+                    fromBytes(blurred, from + x), offset, greyScale)
+                    .intoArray(dst, dstFrom + x);
+         }
+      }
+      tail.stipple(mode, clean, grey, blurred, from + x, dst, dstFrom + x,
+              length - x);
+   }
+
+   @Override
+   void stippleGrey(StippleMode mode, int clean, byte[] grey, byte[] blurred,
+                    int from, int to)
+   {
+      int offset = mode.cleanOffset(clean);
+
+      int i = from;
+      if (BYTES != null)
+      {
+         int bound = from + INTS.loopBound(to - from);
+         for (; i < bound; i += INTS.length())
+         {
+            toBytes(stipplePixel(fromBytes(grey, i), fromBytes(blurred, i),
+                    offset, true)).intoArray(blurred, i);
+         }
+      }
+      tail.stippleGrey(mode, clean, grey, blurred, i, to);
+   }
+
+   @Override
+   void convolve(double[] row, int rowOffset, double[] kernel, double[] out,
+                 int outOffset, int length)
+   {
+      int x = 0;
+      int bound = DOUBLES.loopBound(length);
+      for (; x < bound; x += DOUBLES.length())
+      {
+         // The sums of a vector of outputs, in the same order as the
+         // scalar loop adds them.
+         DoubleVector value = DoubleVector.zero(DOUBLES);
+         for (int kernelX = 0; kernelX < kernel.length; kernelX++)
+         {
+            value = DoubleVector.fromArray(DOUBLES, row,
+                    rowOffset + x + kernelX)
+                    .mul(kernel[kernelX]).add(value);
+         }
+         value.intoArray(out, outOffset + x);
+      }
+      tail.convolve(row, rowOffset + x, kernel, out, outOffset + x,
+              length - x);
+   }
+
+   @Override
+   void convolve(int[] row, int rowOffset, int[] kernel, int[] out,
+                 int outOffset, int length, int shift)
+   {
+      int half = 1 << (shift - 1);
+
+      int x = 0;
+      int bound = INTS.loopBound(length);
+      for (; x < bound; x += INTS.length())
+      {
+         IntVector value = IntVector.broadcast(INTS, half);
+         for (int kernelX = 0; kernelX < kernel.length; kernelX++)
+         {
+            value = IntVector.fromArray(INTS, row, rowOffset + x + kernelX)
+                    .mul(kernel[kernelX]).add(value);
+         }
+         value.lanewise(VectorOperators.ASHR, shift)
+                 .intoArray(out, outOffset + x);
+      }
+      tail.convolve(row, rowOffset + x, kernel, out, outOffset + x,
+              length - x, shift);
+   }
+
+   @Override
+   void accumulate(double[] sums, int sumOffset, double[] row, int rowOffset,
+                   double weight, int length)
+   {
+      int i = 0;
+      int bound = DOUBLES.loopBound(length);
+      for (; i < bound; i += DOUBLES.length())
+      {
+         DoubleVector.fromArray(DOUBLES, row, rowOffset + i).mul(weight)
+                 .add(DoubleVector.fromArray(DOUBLES, sums, sumOffset + i))
+                 .intoArray(sums, sumOffset + i);
+      }
+      tail.accumulate(sums, sumOffset + i, row, rowOffset + i, weight,
+              length - i);
+   }
+
+   @Override
+   void accumulate(int[] sums, int sumOffset, int[] row, int rowOffset,
+                   int weight, int length)
+   {
+      int i = 0;
+      int bound = INTS.loopBound(length);
+      for (; i < bound; i += INTS.length())
+      {
+         IntVector.fromArray(INTS, row, rowOffset + i).mul(weight)
+                 .add(IntVector.fromArray(INTS, sums, sumOffset + i))
+                 .intoArray(sums, sumOffset + i);
+      }
+      tail.accumulate(sums, sumOffset + i, row, rowOffset + i, weight,
+              length - i);
+   }
+
+   /**
+    * Subtracts each grey value from its blurred value and packs the
+    * difference into every channel, without clamping.
+    */
+   private static IntVector stipplePixel(IntVector grey, IntVector blurred,
+                                         int offset, boolean greyScale)
+   {
+      IntVector value = blurred.sub(grey).add(offset);
+      IntVector pixel = value.lanewise(VectorOperators.LSHL, 16)
+              .or(value.lanewise(VectorOperators.LSHL, 8))
+              .or(value)
+              .or(offset << 24);
+
+      if (greyScale)
+         pixel = opaqueGrey(greyAverage(pixel));
+      return pixel;
+   }
+
+   /**
+    * Reads a vector of unsigned bytes as ints.
+    */
+   private static IntVector fromBytes(byte[] values, int offset)
+   {
+      return ((IntVector) ByteVector.fromArray(BYTES, values, offset)
+              .castShape(INTS, 0)).and(0xFF);
+   }
+
+   /**
+    * Keeps the low byte of each int.
+    */
+   private static ByteVector toBytes(IntVector values)
+   {
+      return (ByteVector) values.castShape(BYTES, 0);
+   }
+
+   /**
+    * Finds the byte species with as many lanes as an int species.
+    */
+   private static VectorSpecies<Byte> bytesFor(VectorSpecies<Integer> ints)
+   {
+      int bits = ints.length() * Byte.SIZE;
+      for (VectorShape shape : VectorShape.values())
+      {
+         if (shape.vectorBitSize() == bits)
+            return VectorSpecies.of(byte.class, shape);
+      }
+      return null;
+   }
+
+   /**
+    * The average of the red, green and blue channels of each pixel.
+    */
+   private static IntVector greyAverage(IntVector pixel)
+   {
+      IntVector sum = pixel.lanewise(VectorOperators.LSHR, 16).and(0xFF)
+              .add(pixel.lanewise(VectorOperators.LSHR, 8).and(0xFF))
+              .add(pixel.and(0xFF));
+      return sum.mul(THIRD).lanewise(VectorOperators.LSHR, THIRD_SHIFT);
+   }
+
+   /**
+    * Packs each grey value into an opaque pixel.
+    */
+   private static IntVector opaqueGrey(IntVector grey)
+   {
+      return grey.mul(0x010101).or(0xFF000000);
+   }
+}
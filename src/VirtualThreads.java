@@ -0,0 +1,68 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A class of static methods. Creates the threads that block on disk and
+ * network I/O. They are virtual threads when the JVM has them (Java 21 and
+ * later) and daemon platform threads otherwise.
+ */
+final class VirtualThreads {
+
+   // Executors.newVirtualThreadPerTaskExecutor(), null before Java 21.
+   private final static Method NEW_EXECUTOR = findNewExecutor();
+
+   private VirtualThreads() {}
+
+   /**
+    * Whether the executors use virtual threads.
+    *
+    * @return           Returns true on Java 21 and later.
+    */
+   static boolean isSupported()
+   {
+      return NEW_EXECUTOR != null;
+   }
+
+   /**
+    * Creates an executor that starts a new thread for each task.
+    *
+    * @return           Returns the executor, shut it down when done.
+    */
+   static ExecutorService newThreadPerTaskExecutor()
+   {
+      if (NEW_EXECUTOR != null)
+      {
+         try
+         {
+            return (ExecutorService) NEW_EXECUTOR.invoke(null);
+         }
+         catch (ReflectiveOperationException e)
+         {
+            e.printStackTrace();
+         }
+      }
+
+      return Executors.newCachedThreadPool(task ->
+      {
+         Thread thread = new Thread(task);
+         thread.setDaemon(true);
+         return thread;
+      });
+   }
+
+   /**
+    * Looks up the virtual thread executor factory.
+    */
+   private static Method findNewExecutor()
+   {
+      try
+      {
+         return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      }
+      catch (NoSuchMethodException e)
+      {
+         return null;
+      }
+   }
+}
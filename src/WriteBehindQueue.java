@@ -0,0 +1,165 @@
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes images in the background, so the next image can be filtered while
+ * the last one is encoded. Only a few images are held waiting to be written,
+ * submitting another one blocks until a write finishes, so a slow disk or
+ * encoder slows the filtering down instead of filling the memory. The
+ * writes run on I/O threads (virtual threads when the JVM has them).
+ */
+public final class WriteBehindQueue implements AutoCloseable {
+
+   private final ImageOutput output;
+   private final Semaphore slots;
+   private final ExecutorService executor;
+
+   /**
+    * Creates a queue of images which each give their own output.
+    *
+    * @param capacity         How many images can be waiting or being written
+    *                         at once.
+    */
+   public WriteBehindQueue(int capacity)
+   {
+      this(null, capacity);
+   }
+
+   /**
+    * Creates a queue.
+    *
+    * @param output           Where and how the images are written.
+    * @param capacity         How many images can be waiting or being written
+    *                         at once.
+    */
+   public WriteBehindQueue(ImageOutput output, int capacity)
+   {
+      // Check if the capacity is valid.
+      if (capacity < 1)
+         throw new IllegalArgumentException("input value for capacity is " +
+                 "invalid, choose a value of 1 or more");
+
+      this.output = output;
+      this.slots = new Semaphore(capacity);
+      this.executor = VirtualThreads.newThreadPerTaskExecutor();
+   }
+
+   /**
+    * Queues an image to be written, waiting first if the queue is full. The
+    * image mustn't be changed until it's written.
+    *
+    * @param image            The image.
+    * @param source           The file the image was read from.
+    * @return                 Returns the file the image is written to once
+    *                         it's written, or the exception of the write.
+    * @throws InterruptedException If interrupted while waiting.
+    */
+   public CompletableFuture<File> submit(RenderedImage image, File source)
+           throws InterruptedException
+   {
+      // Check if the queue has an output.
+      if (output == null)
+         throw new IllegalStateException("the queue has no output, give " +
+                 "one with each image");
+
+      return submit(image, source, output);
+   }
+
+   /**
+    * Queues an image to be written to an output, waiting first if the queue
+    * is full. The image mustn't be changed until it's written.
+    *
+    * @param image            The image.
+    * @param source           The file the image was read from.
+    * @param output           Where and how the image is written.
+    * @return                 Returns the file the image is written to once
+    *                         it's written, or the exception of the write.
+    * @throws InterruptedException If interrupted while waiting.
+    */
+   public CompletableFuture<File> submit(RenderedImage image, File source,
+                                         ImageOutput output)
+           throws InterruptedException
+   {
+      return submit(() -> output.write(image, source));
+   }
+
+   /**
+    * Queues a write, waiting first if the queue is full. The write can make
+    * its image too, so several images made from the same data are made in
+    * parallel as well as written in parallel.
+    *
+    * @param write            Makes and writes the image.
+    * @return                 Returns the file the image is written to once
+    *                         it's written, or the exception of the write.
+    * @throws InterruptedException If interrupted while waiting.
+    */
+   public CompletableFuture<File> submit(Write write)
+           throws InterruptedException
+   {
+      slots.acquire();
+
+      CompletableFuture<File> written = new CompletableFuture<>();
+      try
+      {
+         executor.execute(() -> {
+            try
+            {
+               written.complete(write.write());
+            }
+            catch (IOException | RuntimeException | OutOfMemoryError e)
+            {
+               written.completeExceptionally(e);
+            }
+            finally
+            {
+               slots.release();
+            }
+         });
+      }
+      catch (RuntimeException e)
+      {
+         slots.release();
+         throw e;
+      }
+      return written;
+   }
+
+   /**
+    * Waits for the queued images to be written. If interrupted, the writes
+    * still running are interrupted too.
+    */
+   @Override
+   public void close()
+   {
+      executor.shutdown();
+      try
+      {
+         executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      }
+      catch (InterruptedException e)
+      {
+         executor.shutdownNow();
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * Writes an image.
+    */
+   @FunctionalInterface
+   public interface Write {
+
+      /**
+       * Writes the image.
+       *
+       * @return              Returns the file the image was written to.
+       * @throws IOException  If the image can't be written.
+       */
+      File write() throws IOException;
+   }
+}
@@ -0,0 +1,64 @@
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the stipple styles against the original ones built on the 2D
+ * kernel, see OldFilters. The original styles blurred the grey image in
+ * place, reading neighbours which were already blurred, which smeared the
+ * outlines towards the bottom right. The engine blurs the untouched grey
+ * values, so the styles are compared against the original combine with
+ * that blur.
+ */
+class ConvertToStippleTest {
+
+   @Test
+   void blackFigureOnWhiteMatchesTheOriginal()
+   {
+      for (int clean = 1; clean <= 10; clean++)
+      {
+         BufferedImage img = OldFilters.photo(83, 61, clean);
+         BufferedImage expected = OldFilters.stipple(img,
+                 StippleMode.BLACK_FIGURE_ON_WHITE, clean);
+         BufferedImage actual = ConvertToStipple.blackFigureOnWhite(
+                 OldFilters.copy(img), clean);
+
+         assertEquals(0, OldFilters.maxDifference(expected, actual),
+                 "clean " + clean);
+      }
+   }
+
+   @Test
+   void blackFigureOnYellowishWhiteMatchesTheOriginal()
+   {
+      for (int clean = 1; clean <= 10; clean++)
+      {
+         BufferedImage img = OldFilters.photo(83, 61, clean);
+         BufferedImage expected = OldFilters.stipple(img,
+                 StippleMode.BLACK_FIGURE_ON_YELLOWISH_WHITE, clean);
+         BufferedImage actual = ConvertToStipple.blackFigureOnYellowishWhite(
+                 OldFilters.copy(img), clean);
+
+         assertEquals(0, OldFilters.maxDifference(expected, actual),
+                 "clean " + clean);
+      }
+   }
+
+   @Test
+   void whiteFigureMatchesTheOriginal()
+   {
+      for (int clean = 3; clean <= 10; clean++)
+      {
+         BufferedImage img = OldFilters.photo(83, 61, clean);
+         BufferedImage expected = OldFilters.stipple(img,
+                 StippleMode.WHITE_FIGURE, clean);
+         BufferedImage actual = ConvertToStipple.whiteFigure(
+                 OldFilters.copy(img), clean);
+
+         assertEquals(0, OldFilters.maxDifference(expected, actual),
+                 "clean " + clean);
+      }
+   }
+}
@@ -0,0 +1,152 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the frames are written in order and converted as ConvertToStipple
+ * converts them, and that failing frames, even ones whose workers die,
+ * fail alone instead of stopping the sequence.
+ */
+class FrameSequenceTest {
+
+   private final static int FRAMES = 12;
+
+   @TempDir
+   File directory;
+
+   @Test
+   void framesAreWrittenInOrderAndMatchConvertToStipple() throws IOException
+   {
+      List<File> frames = frames(FRAMES, 67, 43);
+      File outputDirectory = new File(directory, "out");
+      FrameSequence sequence = new FrameSequence(
+              StippleMode.BLACK_FIGURE_ON_WHITE, 4, BlurMode.SEPARABLE,
+              new ImageOutput("png", outputDirectory), 4);
+      List<File> written = Collections.synchronizedList(new ArrayList<>());
+      sequence.setListener(written::add);
+
+      BatchSummary summary = sequence.run(frames);
+
+      assertEquals(FRAMES, summary.getProcessed());
+      assertEquals(frames, written);
+      for (File frame : frames)
+      {
+         File expected = copy(frame, "expected");
+         ConvertToStipple.blackFigureOnWhite(expected, "png", 4,
+                 BlurMode.SEPARABLE);
+
+         assertArrayEquals(pixels(expected),
+                 pixels(new File(outputDirectory, frame.getName())),
+                 frame.getName());
+      }
+   }
+
+   @Test
+   void aFrameOfAnotherSizeFailsAlone() throws IOException
+   {
+      List<File> frames = frames(FRAMES, 67, 43);
+      ImageIO.write(OldFilters.photo(43, 67, 99), "png", frames.get(5));
+      FrameSequence sequence = new FrameSequence(StippleMode.WHITE_FIGURE, 6,
+              BlurMode.BOX, new ImageOutput("png",
+              new File(directory, "out")), 3);
+
+      BatchSummary summary = sequence.run(frames);
+
+      assertEquals(FRAMES - 1, summary.getProcessed());
+      assertEquals(1, summary.getFailed());
+      assertTrue(summary.getFailures().get(0).contains(
+              frames.get(5).getName()), summary.getFailures().toString());
+   }
+
+   @Test
+   void framesFailInsteadOfHangingWhenTheWorkersDie() throws IOException
+   {
+      // A size whose pixel count doesn't fit in an int, so the planes of
+      // every worker can't be allocated.
+      List<File> frames = new ArrayList<>();
+      for (int i = 0; i < FRAMES; i++)
+         frames.add(header(new File(directory, "frame" + i + ".png"),
+                 50_000, 50_000));
+      FrameSequence sequence = new FrameSequence(StippleMode.WHITE_FIGURE, 6,
+              BlurMode.SEPARABLE, new ImageOutput("png",
+              new File(directory, "out")), 3);
+
+      BatchSummary summary = assertTimeoutPreemptively(
+              Duration.ofSeconds(30), () -> sequence.run(frames));
+
+      assertEquals(0, summary.getProcessed());
+      assertEquals(FRAMES, summary.getFailed());
+   }
+
+   private List<File> frames(int count, int width, int height)
+           throws IOException
+   {
+      List<File> frames = new ArrayList<>();
+      for (int i = 0; i < count; i++)
+      {
+         File frame = new File(directory, String.format("frame%02d.png", i));
+         ImageIO.write(OldFilters.photo(width, height, i), "png", frame);
+         frames.add(frame);
+      }
+      return frames;
+   }
+
+   private File copy(File file, String subdirectory) throws IOException
+   {
+      File copy = new File(new File(directory, subdirectory), file.getName());
+      Files.createDirectories(copy.getParentFile().toPath());
+      Files.copy(file.toPath(), copy.toPath());
+      return copy;
+   }
+
+   private static int[] pixels(File file) throws IOException
+   {
+      return PixelBuffer.of(ImageIO.read(file)).getPixels();
+   }
+
+   /**
+    * Writes a PNG file holding only a header, enough for its size to be
+    * read.
+    */
+   private static File header(File file, int width, int height)
+           throws IOException
+   {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeLong(0x89504E470D0A1A0AL);
+
+      ByteArrayOutputStream header = new ByteArrayOutputStream();
+      DataOutputStream headerData = new DataOutputStream(header);
+      headerData.writeBytes("IHDR");
+      headerData.writeInt(width);
+      headerData.writeInt(height);
+      headerData.write(new byte[] {8, 0, 0, 0, 0});
+      byte[] chunk = header.toByteArray();
+      CRC32 crc = new CRC32();
+      crc.update(chunk);
+
+      out.writeInt(chunk.length - 4);
+      out.write(chunk);
+      out.writeInt((int) crc.getValue());
+      out.write("IEND".getBytes(StandardCharsets.US_ASCII));
+      Files.write(file.toPath(), bytes.toByteArray());
+      return file;
+   }
+}
@@ -0,0 +1,190 @@
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the blur engine against the original 2D kernel, see OldFilters,
+ * and the fixed point mode against the double weights of SEPARABLE.
+ */
+class GaussianBlurTest {
+
+   // How far BOX may be from the 2D kernel on any channel, at the radii
+   // it's recommended for.
+   private final static int BOX_TOLERANCE = 5;
+
+   // The smallest radius BOX is recommended for, below it the truncated 2D
+   // kernel is too far from a Gaussian for boxes to follow.
+   private final static int BOX_MIN_RADIUS = 4;
+
+   @Test
+   void separableMatchesThe2DKernel()
+   {
+      for (int radius = 0; radius <= 40; radius++)
+      {
+         BufferedImage img = OldFilters.photo(97, 89, radius);
+         BufferedImage expected = OldFilters.gaussianBlur(radius, img);
+         BufferedImage actual = ImageFilters.gaussianBlur(radius,
+                 OldFilters.copy(img), BlurMode.SEPARABLE);
+
+         assertEquals(0, OldFilters.maxDifference(expected, actual),
+                 "radius " + radius);
+      }
+   }
+
+   @Test
+   void boxIsCloseToThe2DKernel()
+   {
+      for (int radius = BOX_MIN_RADIUS; radius <= 40; radius++)
+      {
+         BufferedImage img = OldFilters.photo(97, 89, radius);
+         BufferedImage expected = OldFilters.gaussianBlur(radius, img);
+         BufferedImage actual = ImageFilters.gaussianBlur(radius,
+                 OldFilters.copy(img), BlurMode.BOX);
+
+         int difference = OldFilters.maxDifference(expected, actual);
+         assertTrue(difference <= BOX_TOLERANCE, "radius " + radius +
+                 " is " + difference + " levels off");
+      }
+   }
+
+   @Test
+   void fixedPointIsWithinOneLevelOfSeparable()
+   {
+      for (int radius = 0; radius <= 40; radius++)
+      {
+         for (BufferedImage img : new BufferedImage[] {
+                 OldFilters.photo(97, 89, radius), extremes(97, 89, radius)})
+         {
+            BufferedImage expected = ImageFilters.gaussianBlur(radius,
+                    OldFilters.copy(img), BlurMode.SEPARABLE);
+            BufferedImage actual = ImageFilters.gaussianBlur(radius,
+                    OldFilters.copy(img), BlurMode.FIXED_POINT);
+
+            int difference = OldFilters.maxDifference(expected, actual);
+            assertTrue(difference <= 1, "radius " + radius + " is " +
+                    difference + " levels off");
+         }
+      }
+   }
+
+   @Test
+   void fixedPointPlaneIsWithinOneLevelOfSeparable()
+   {
+      for (int radius = 0; radius <= 40; radius++)
+      {
+         LumaPlane grey = LumaPlane.of(extremes(97, 89, radius));
+         LumaPlane expected = new LumaPlane(97, 89);
+         LumaPlane actual = new LumaPlane(97, 89);
+         GaussianBlur.blur(grey, expected, radius, BlurMode.SEPARABLE);
+         GaussianBlur.blur(grey, actual, radius, BlurMode.FIXED_POINT);
+
+         for (int i = 0; i < 97 * 89; i++)
+         {
+            int difference = Math.abs((expected.getValues()[i] & 0xFF) -
+                    (actual.getValues()[i] & 0xFF));
+            assertTrue(difference <= 1, "radius " + radius + " is " +
+                    difference + " levels off at " + i);
+         }
+      }
+   }
+
+   @Test
+   void fixedPointKeepsBlackAndWhiteExact()
+   {
+      for (int radius = 0; radius <= 40; radius++)
+      {
+         for (int rgb : new int[] {0x000000, 0xFFFFFF})
+         {
+            BufferedImage img = new BufferedImage(90, 90,
+                    BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < 90; y++)
+            {
+               for (int x = 0; x < 90; x++)
+                  img.setRGB(x, y, rgb);
+            }
+            BufferedImage actual = ImageFilters.gaussianBlur(radius,
+                    OldFilters.copy(img), BlurMode.FIXED_POINT);
+
+            assertEquals(0, OldFilters.maxDifference(img, actual),
+                    "radius " + radius);
+         }
+      }
+   }
+
+   @Test
+   void radiusZeroLeavesThePixelsUnchanged()
+   {
+      BufferedImage img = OldFilters.photo(40, 30, 1);
+      for (BlurMode mode : BlurMode.values())
+      {
+         BufferedImage actual = ImageFilters.gaussianBlur(0,
+                 OldFilters.copy(img), mode);
+
+         assertEquals(0, OldFilters.maxDifference(img, actual),
+                 mode.toString());
+      }
+   }
+
+   @Test
+   void bordersAreLeftUnchanged()
+   {
+      int radius = 6;
+      BufferedImage img = OldFilters.photo(50, 20, 2);
+      for (BlurMode mode : BlurMode.values())
+      {
+         BufferedImage actual = ImageFilters.gaussianBlur(radius,
+                 OldFilters.copy(img), mode);
+
+         for (int y = 0; y < img.getHeight(); y++)
+         {
+            for (int x = 0; x < img.getWidth(); x++)
+            {
+               if (x < radius || x >= img.getWidth() - radius ||
+                       y < radius || y >= img.getHeight() - radius)
+                  assertEquals(img.getRGB(x, y), actual.getRGB(x, y),
+                          mode + " at " + x + ", " + y);
+            }
+         }
+      }
+   }
+
+   @Test
+   void imagesNarrowerThanTheKernelAreLeftUnchanged()
+   {
+      BufferedImage img = OldFilters.photo(9, 30, 3);
+      for (BlurMode mode : BlurMode.values())
+      {
+         BufferedImage actual = ImageFilters.gaussianBlur(5,
+                 OldFilters.copy(img), mode);
+
+         assertEquals(0, OldFilters.maxDifference(img, actual),
+                 mode.toString());
+      }
+   }
+
+   /**
+    * An image of only black and white blocks and pixels, so the sums of
+    * the blur are at the ends of their range and rounding could push them
+    * past 0 or 255.
+    */
+   private static BufferedImage extremes(int width, int height, long seed)
+   {
+      Random random = new Random(seed);
+      BufferedImage img = new BufferedImage(width, height,
+              BufferedImage.TYPE_INT_RGB);
+      for (int y = 0; y < height; y++)
+      {
+         for (int x = 0; x < width; x++)
+         {
+            boolean white = ((x / 16 + y / 16) % 2 == 0) !=
+                    (random.nextInt(8) == 0);
+            img.setRGB(x, y, white ? 0xFFFFFF : 0x000000);
+         }
+      }
+      return img;
+   }
+}
@@ -0,0 +1,171 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Applies random edits, in the middle of the image, at its borders and
+ * across several tiles, and checks each incremental run gives exactly what
+ * filtering the whole image gives, recomputing only the tiles edited.
+ */
+class IncrementalFilterTest {
+
+   // Not a whole number of tiles, so the last row and column are cut off.
+   private final static int WIDTH = 301;
+   private final static int HEIGHT = 227;
+   private final static int STEPS = 12;
+
+   private final static int TILE = IncrementalFilter.TILE_SIZE;
+   private final static int TILES_ACROSS = (WIDTH + TILE - 1) / TILE;
+   private final static int TILES_DOWN = (HEIGHT + TILE - 1) / TILE;
+
+   @Test
+   void stippleMatchesAFullRun()
+   {
+      for (BlurMode mode : BlurMode.values())
+      {
+         for (StippleMode stippleMode : StippleMode.values())
+         {
+            int clean = stippleMode == StippleMode.WHITE_FIGURE ? 4 : 7;
+            check(IncrementalFilter.stipple(stippleMode, clean, mode),
+                    buffer -> ConvertToStipple.stipple(buffer, stippleMode,
+                            clean, mode),
+                    stippleMode + ", " + mode, mode.ordinal());
+         }
+      }
+   }
+
+   @Test
+   void blurMatchesAFullRun()
+   {
+      for (BlurMode mode : BlurMode.values())
+      {
+         for (int radius : new int[] {0, 3, 9})
+         {
+            check(IncrementalFilter.gaussianBlur(radius, mode),
+                    buffer -> ImageFilters.gaussianBlur(radius, buffer, mode),
+                    "gaussianBlur(" + radius + "), " + mode, radius);
+         }
+      }
+   }
+
+   @Test
+   void imageOfAnotherSizeIsFilteredWhole()
+   {
+      IncrementalFilter filter = IncrementalFilter.gaussianBlur(3,
+              BlurMode.SEPARABLE);
+      filter.apply(PixelBuffer.of(OldFilters.photo(WIDTH, HEIGHT, 1)));
+
+      PixelBuffer other = PixelBuffer.of(OldFilters.photo(HEIGHT, WIDTH, 2));
+      int[] expected = ImageFilters.gaussianBlur(3, copy(other),
+              BlurMode.SEPARABLE).getPixels();
+      assertArrayEquals(expected, filter.apply(other).getPixels());
+      assertEquals(filter.getTiles(), filter.getTilesRecomputed());
+   }
+
+   /**
+    * Runs a filter on a photo and on a number of edited versions of it,
+    * comparing each run with filtering the whole version.
+    */
+   private static void check(IncrementalFilter filter,
+                             UnaryOperator<PixelBuffer> fullRun,
+                             String name, long seed)
+   {
+      Random random = new Random(seed);
+      PixelBuffer image = PixelBuffer.of(OldFilters.photo(WIDTH, HEIGHT,
+              seed));
+
+      assertArrayEquals(fullRun.apply(copy(image)).getPixels(),
+              filter.apply(copy(image)).getPixels(), name);
+      assertEquals(TILES_ACROSS * TILES_DOWN, filter.getTiles(), name);
+      assertEquals(filter.getTiles(), filter.getTilesRecomputed(), name);
+
+      for (int step = 0; step < STEPS; step++)
+      {
+         // One to three edits, which may overlap.
+         boolean[] edited = new boolean[TILES_ACROSS * TILES_DOWN];
+         int edits = step == 0 ? 0 : 1 + random.nextInt(3);
+         for (int i = 0; i < edits; i++)
+            edit(image, random, edited);
+
+         String message = name + ", step " + step;
+         assertArrayEquals(fullRun.apply(copy(image)).getPixels(),
+                 filter.apply(copy(image)).getPixels(), message);
+         assertEquals(count(edited), filter.getTilesRecomputed(), message);
+      }
+   }
+
+   /**
+    * Changes every pixel of a random rectangle, which is as likely to touch
+    * a border or a corner of the image as to be inside it, and from one
+    * pixel up to several tiles in size. Marks the tiles it touches.
+    */
+   private static void edit(PixelBuffer image, Random random,
+                            boolean[] edited)
+   {
+      int width = 1 + random.nextInt(random.nextBoolean() ? 8 : 3 * TILE);
+      int height = 1 + random.nextInt(random.nextBoolean() ? 8 : 3 * TILE);
+      width = Math.min(width, WIDTH);
+      height = Math.min(height, HEIGHT);
+      int x = place(random, width, WIDTH);
+      int y = place(random, height, HEIGHT);
+
+      // Adding less than a quarter of the range to the colour changes it
+      // however many edits overlap.
+      int delta = 1 + random.nextInt((1 << 22) - 1);
+      int[] pixels = image.getPixels();
+      for (int row = y; row < y + height; row++)
+      {
+         for (int column = x; column < x + width; column++)
+         {
+            int pixel = pixels[row * WIDTH + column];
+            pixels[row * WIDTH + column] = (pixel & 0xFF000000) |
+                    ((pixel + delta) & 0xFFFFFF);
+         }
+      }
+
+      for (int tileY = y / TILE; tileY <= (y + height - 1) / TILE; tileY++)
+      {
+         for (int tileX = x / TILE; tileX <= (x + width - 1) / TILE; tileX++)
+            edited[tileY * TILES_ACROSS + tileX] = true;
+      }
+   }
+
+   /**
+    * The start of an edit against the first or the last pixel, or anywhere.
+    */
+   private static int place(Random random, int length, int size)
+   {
+      switch (random.nextInt(3))
+      {
+         case 0:
+            return 0;
+
+         case 1:
+            return size - length;
+
+         default:
+            return random.nextInt(size - length + 1);
+      }
+   }
+
+   private static int count(boolean[] edited)
+   {
+      int count = 0;
+      for (boolean tile : edited)
+      {
+         if (tile)
+            count++;
+      }
+      return count;
+   }
+
+   private static PixelBuffer copy(PixelBuffer buffer)
+   {
+      return new PixelBuffer(buffer.getWidth(), buffer.getHeight(),
+              buffer.getPixels().clone());
+   }
+}
@@ -0,0 +1,236 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * A class of static methods. The filters as they were before the blur
+ * engine, the full 2D Gaussian kernel and the stipple styles built on it,
+ * kept so the tests can compare the engine against them. The original
+ * stipple styles blurred the grey image in place, so pixels later in the
+ * scan read neighbours which were already blurred. The engine blurs the
+ * untouched grey values instead, so these stipple styles blur into a new
+ * image, the same as the original ImageFilters.gaussianBlur() did.
+ */
+final class OldFilters {
+
+   private OldFilters() {}
+
+   /**
+    * Applies the 2D Gaussian kernel, leaving the pixels within the radius
+    * of the border unchanged.
+    *
+    * @param radius        The radius of the gaussian kernel.
+    * @param img           The image, it's left unchanged.
+    * @return              Returns a new blurred image.
+    */
+   static BufferedImage gaussianBlur(int radius, BufferedImage img)
+   {
+      BufferedImage result = copy(img);
+
+      // Set the sigma value and kernel width based on the radius input.
+      double sigma = Math.max(radius / 2, 1);
+      int kernelWidth = (2 * radius) + 1;
+
+      // Populate the kernel with the respective Gaussian distribution values.
+      double[][] kernel = new double[kernelWidth][kernelWidth];
+      double sum = 0;
+      for (int y = -radius; y <= radius; y++)
+      {
+         for (int x = -radius; x <= radius; x++)
+         {
+            double exponentNumerator = -(x * x + y * y);
+            double exponentDenominator = (2 * sigma * sigma);
+
+            double eExpression =
+                    Math.pow(Math.E, exponentNumerator / exponentDenominator);
+            double kernelValue = (eExpression / (2 * Math.PI * sigma * sigma));
+
+            kernel[x + radius][y + radius] = kernelValue;
+            sum += kernelValue;
+         }
+      }
+
+      // Normalize the kernel, ensuring all values add up to one.
+      for (int y = 0; y < kernelWidth; y++)
+      {
+         for (int x = 0; x < kernelWidth; x++)
+            kernel[x][y] /= sum;
+      }
+
+      // Set the new pixel values, ignore the edges.
+      for (int y = radius; y < img.getHeight() - radius; y++)
+      {
+         for (int x = radius; x < img.getWidth() - radius; x++)
+         {
+            Color colorsOfPixel = new Color(img.getRGB(x, y));
+
+            double redValue = 0;
+            double greenValue = 0;
+            double blueValue = 0;
+            for (int kernelY = -radius; kernelY <= radius; kernelY++)
+            {
+               for (int kernelX = -radius; kernelX <= radius; kernelX++)
+               {
+                  double kernelValue =
+                          kernel[kernelX + radius][kernelY + radius];
+                  Color colors = new Color
+                          (img.getRGB(x - kernelX, y - kernelY));
+
+                  redValue += colors.getRed() * kernelValue;
+                  greenValue += colors.getGreen() * kernelValue;
+                  blueValue += colors.getBlue() * kernelValue;
+               }
+            }
+
+            int RGB = (colorsOfPixel.getAlpha() << 24) |
+                    ((int) redValue << 16) | ((int) greenValue << 8) |
+                    (int) blueValue;
+            result.setRGB(x, y, RGB);
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Converts an image into one of the stipple art styles, blurring with
+    * the 2D kernel at radius 10.
+    *
+    * @param img           The image, it's left unchanged.
+    * @param stippleMode   The stipple art style.
+    * @param clean         How much of the background is cleaned up.
+    * @return              Returns a new converted image.
+    */
+   static BufferedImage stipple(BufferedImage img, StippleMode stippleMode,
+                                int clean)
+   {
+      // convert the image data to greyScale, and create one that is G-blurred.
+      BufferedImage grey = convertToGreyScale(copy(img));
+      BufferedImage blurred = gaussianBlur(10, grey);
+
+      for (int y = 0; y < grey.getHeight(); y++)
+      {
+         for (int x = 0; x < grey.getWidth(); x++)
+         {
+            Color greyRGB = new Color(grey.getRGB(x, y));
+            Color blurredRGB = new Color(blurred.getRGB(x, y));
+
+            // The black figures subtract the clean value from the blurred
+            // side, the white figures add it.
+            int left = stippleMode == StippleMode.WHITE_FIGURE ? clean : 0;
+            int right = stippleMode == StippleMode.WHITE_FIGURE ? 0 : clean;
+            int alpha = (blurredRGB.getAlpha() + left) -
+                    (greyRGB.getAlpha() + right);
+            int red = (blurredRGB.getRed() + left) -
+                    (greyRGB.getRed() + right);
+            int green = (blurredRGB.getGreen() + left) -
+                    (greyRGB.getGreen() + right);
+            int blue = (blurredRGB.getBlue() + left) -
+                    (greyRGB.getBlue() + right);
+
+            int RGB = (alpha << 24) | (red << 16) | (green << 8) | blue;
+            grey.setRGB(x, y, RGB);
+         }
+      }
+
+      // Remove the Yellow in the image "clean"
+      if (stippleMode != StippleMode.BLACK_FIGURE_ON_YELLOWISH_WHITE)
+         convertToGreyScale(grey);
+      return grey;
+   }
+
+   /**
+    * Converts an image to GreyScale in place.
+    */
+   private static BufferedImage convertToGreyScale(BufferedImage image)
+   {
+      for (int y = 0; y < image.getHeight(); y++)
+      {
+         for (int x = 0; x < image.getWidth(); x++)
+         {
+            Color colors = new Color(image.getRGB(x, y));
+            int greyAverage = (colors.getRed() + colors.getBlue() +
+                    colors.getGreen()) / 3;
+
+            int RGB = (colors.getAlpha() << 24) | (greyAverage << 16) |
+                    (greyAverage << 8) | greyAverage;
+            image.setRGB(x, y, RGB);
+         }
+      }
+      return image;
+   }
+
+   /**
+    * Copies an image of type TYPE_INT_RGB.
+    *
+    * @param img           The image.
+    * @return              Returns the copy.
+    */
+   static BufferedImage copy(BufferedImage img)
+   {
+      BufferedImage copy = new BufferedImage(img.getWidth(), img.getHeight(),
+              BufferedImage.TYPE_INT_RGB);
+      copy.setRGB(0, 0, img.getWidth(), img.getHeight(),
+              img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0,
+                      img.getWidth()), 0, img.getWidth());
+      return copy;
+   }
+
+   /**
+    * Creates an opaque image of smooth gradients with noise on top, like a
+    * photo.
+    *
+    * @param width         The width of the image.
+    * @param height        The height of the image.
+    * @param seed          The seed of the noise.
+    * @return              Returns a new TYPE_INT_RGB image.
+    */
+   static BufferedImage photo(int width, int height, long seed)
+   {
+      Random random = new Random(seed);
+      BufferedImage img = new BufferedImage(width, height,
+              BufferedImage.TYPE_INT_RGB);
+      for (int y = 0; y < height; y++)
+      {
+         for (int x = 0; x < width; x++)
+         {
+            int red = clamp(255 * x / width + random.nextInt(41) - 20);
+            int green = clamp(255 * y / height + random.nextInt(41) - 20);
+            int blue = clamp((x * y) % 256 + random.nextInt(41) - 20);
+            img.setRGB(x, y, (red << 16) | (green << 8) | blue);
+         }
+      }
+      return img;
+   }
+
+   /**
+    * The largest difference between two images of the same size, on any
+    * channel of any pixel.
+    *
+    * @param expected      The first image.
+    * @param actual        The second image.
+    * @return              Returns the difference, 0 if they are the same.
+    */
+   static int maxDifference(BufferedImage expected, BufferedImage actual)
+   {
+      int max = 0;
+      for (int y = 0; y < expected.getHeight(); y++)
+      {
+         for (int x = 0; x < expected.getWidth(); x++)
+         {
+            int a = expected.getRGB(x, y);
+            int b = actual.getRGB(x, y);
+            for (int shift = 0; shift < 32; shift += 8)
+            {
+               max = Math.max(max, Math.abs(((a >> shift) & 0xFF) -
+                       ((b >> shift) & 0xFF)));
+            }
+         }
+      }
+      return max;
+   }
+
+   private static int clamp(int value)
+   {
+      return Math.max(0, Math.min(255, value));
+   }
+}
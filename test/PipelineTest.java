@@ -0,0 +1,142 @@
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Compares random chains of filters run by a Pipeline, with its per pixel
+ * operations fused into the blur and stipple passes, against the same
+ * filters of ImageFilters and ConvertToStipple run one after the other.
+ */
+class PipelineTest {
+
+   private final static int CHAINS = 60;
+
+   @Test
+   void bufferMatchesTheFiltersOneAfterTheOther()
+   {
+      for (BlurMode mode : BlurMode.values())
+      {
+         Random random = new Random(mode.ordinal());
+         for (int i = 0; i < CHAINS; i++)
+         {
+            Chain chain = Chain.random(random, mode);
+            PixelBuffer img = PixelBuffer.of(OldFilters.photo(
+                    1 + random.nextInt(90), 1 + random.nextInt(70), i));
+
+            int[] expected = chain.applyOneByOne(copy(img)).getPixels();
+            assertArrayEquals(expected, chain.pipeline.apply(img)
+                    .getPixels(), chain + ", " + img.getWidth() + "x" +
+                    img.getHeight());
+         }
+      }
+   }
+
+   @Test
+   void imageMatchesTheFiltersOneAfterTheOther()
+   {
+      for (BlurMode mode : BlurMode.values())
+      {
+         Random random = new Random(100 + mode.ordinal());
+         for (int i = 0; i < CHAINS; i++)
+         {
+            Chain chain = Chain.random(random, mode);
+            BufferedImage img = OldFilters.photo(1 + random.nextInt(90),
+                    1 + random.nextInt(70), i);
+
+            // The filters write their result into an image of the same
+            // type, as the pipeline does.
+            BufferedImage expected = OldFilters.copy(img);
+            chain.applyOneByOne(PixelBuffer.of(img)).writeTo(expected);
+            assertArrayEquals(PixelBuffer.of(expected).getPixels(),
+                    PixelBuffer.of(chain.pipeline.apply(img)).getPixels(),
+                    chain + ", " + img.getWidth() + "x" + img.getHeight());
+         }
+      }
+   }
+
+   private static PixelBuffer copy(PixelBuffer buffer)
+   {
+      return new PixelBuffer(buffer.getWidth(), buffer.getHeight(),
+              buffer.getPixels().clone());
+   }
+
+   /**
+    * A chain of filters, recorded in a Pipeline and as the filters which
+    * run it one after the other.
+    */
+   private static final class Chain {
+
+      private final Pipeline pipeline = new Pipeline();
+      private final List<UnaryOperator<PixelBuffer>> filters =
+              new ArrayList<>();
+      private final List<String> names = new ArrayList<>();
+
+      /**
+       * A chain of one to six filters, the blurs and stipples computed with
+       * the mode, runs of per pixel operations as likely as the others.
+       */
+      static Chain random(Random random, BlurMode mode)
+      {
+         Chain chain = new Chain();
+         int length = 1 + random.nextInt(6);
+         for (int i = 0; i < length; i++)
+         {
+            switch (random.nextInt(4))
+            {
+               case 0:
+                  chain.pipeline.invertColors();
+                  chain.filters.add(ImageFilters::invertColors);
+                  chain.names.add("invertColors");
+                  break;
+
+               case 1:
+                  chain.pipeline.convertToGreyScale();
+                  chain.filters.add(ImageFilters::convertToGreyScale);
+                  chain.names.add("convertToGreyScale");
+                  break;
+
+               case 2:
+                  // Mostly small radii, some larger than the image.
+                  int radius = random.nextInt(4) == 0 ?
+                          random.nextInt(Pipeline.MAX_RADIUS / 4) :
+                          random.nextInt(12);
+                  chain.pipeline.gaussianBlur(radius, mode);
+                  chain.filters.add(buffer ->
+                          ImageFilters.gaussianBlur(radius, buffer, mode));
+                  chain.names.add("gaussianBlur(" + radius + ")");
+                  break;
+
+               default:
+                  StippleMode stippleMode = StippleMode.values()[
+                          random.nextInt(StippleMode.values().length)];
+                  int clean = 3 + random.nextInt(8);
+                  chain.pipeline.stipple(stippleMode, clean, mode);
+                  chain.filters.add(buffer -> ConvertToStipple.stipple(
+                          buffer, stippleMode, clean, mode));
+                  chain.names.add(stippleMode + "(" + clean + ")");
+                  break;
+            }
+         }
+         return chain;
+      }
+
+      PixelBuffer applyOneByOne(PixelBuffer buffer)
+      {
+         for (UnaryOperator<PixelBuffer> filter : filters)
+            buffer = filter.apply(buffer);
+         return buffer;
+      }
+
+      @Override
+      public String toString()
+      {
+         return names + " as " + pipeline;
+      }
+   }
+}
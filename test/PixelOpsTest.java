@@ -0,0 +1,273 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Compares the vector loops against the scalar ones, over random pixels and
+ * ranges of every length up to several vectors, so every tail the vector
+ * loops leave to the scalar ones is covered whatever the lane count.
+ */
+class PixelOpsTest {
+
+   // Longer than four vectors of the widest shape, 16 ints or 8 doubles.
+   private final static int MAX_LENGTH = 67;
+
+   // The largest offset of the first value, so ranges start unaligned.
+   private final static int MAX_OFFSET = 7;
+
+   private final static int SIZE = MAX_OFFSET + MAX_LENGTH + 81;
+
+   private final PixelOps scalar = new ScalarPixelOps();
+   private final PixelOps vector = new VectorPixelOps();
+   private final Random random = new Random(42);
+
+   @Test
+   void invertMatches()
+   {
+      for (int length = 0; length <= MAX_LENGTH; length++)
+      {
+         int from = random.nextInt(MAX_OFFSET + 1);
+         int[] src = pixels();
+         int[] expected = pixels();
+         int[] actual = expected.clone();
+         scalar.invert(src, expected, from, from + length);
+         vector.invert(src, actual, from, from + length);
+
+         assertArrayEquals(expected, actual, "length " + length);
+      }
+   }
+
+   @Test
+   void greyMatches()
+   {
+      for (int length = 0; length <= MAX_LENGTH; length++)
+      {
+         int from = random.nextInt(MAX_OFFSET + 1);
+         int[] expected = pixels();
+         int[] actual = expected.clone();
+         scalar.grey(expected, expected, from, from + length);
+         vector.grey(actual, actual, from, from + length);
+
+         assertArrayEquals(expected, actual, "length " + length);
+      }
+   }
+
+   @Test
+   void lumaMatches()
+   {
+      for (int length = 0; length <= MAX_LENGTH; length++)
+      {
+         int from = random.nextInt(MAX_OFFSET + 1);
+         int[] src = pixels();
+         byte[] expected = values();
+         byte[] actual = expected.clone();
+         scalar.luma(src, expected, from, from + length);
+         vector.luma(src, actual, from, from + length);
+
+         assertArrayEquals(expected, actual, "length " + length);
+      }
+   }
+
+   @Test
+   void stippleMatches()
+   {
+      for (StippleMode mode : StippleMode.values())
+      {
+         for (int clean = 1; clean <= 10; clean++)
+         {
+            for (int length = 0; length <= MAX_LENGTH; length++)
+            {
+               int from = random.nextInt(MAX_OFFSET + 1);
+               int[] grey = greyPixels();
+               int[] expected = greyPixels();
+               int[] actual = expected.clone();
+               scalar.stipple(mode, clean, grey, expected, from,
+                       from + length);
+               vector.stipple(mode, clean, grey, actual, from, from + length);
+
+               assertArrayEquals(expected, actual, mode + ", clean " + clean +
+                       ", length " + length);
+            }
+         }
+      }
+   }
+
+   @Test
+   void stipplePlaneMatches()
+   {
+      for (StippleMode mode : StippleMode.values())
+      {
+         for (int clean = 1; clean <= 10; clean++)
+         {
+            for (int length = 0; length <= MAX_LENGTH; length++)
+            {
+               int from = random.nextInt(MAX_OFFSET + 1);
+               int dstFrom = random.nextInt(MAX_OFFSET + 1);
+               byte[] grey = values();
+               byte[] blurred = values();
+               int[] expected = pixels();
+               int[] actual = expected.clone();
+               scalar.stipple(mode, clean, grey, blurred, from, expected,
+                       dstFrom, length);
+               vector.stipple(mode, clean, grey, blurred, from, actual,
+                       dstFrom, length);
+
+               assertArrayEquals(expected, actual, mode + ", clean " + clean +
+                       ", length " + length);
+            }
+         }
+      }
+   }
+
+   @Test
+   void stippleGreyMatches()
+   {
+      for (StippleMode mode : StippleMode.values())
+      {
+         if (!mode.isGreyScale())
+            continue;
+
+         for (int clean = 1; clean <= 10; clean++)
+         {
+            for (int length = 0; length <= MAX_LENGTH; length++)
+            {
+               int from = random.nextInt(MAX_OFFSET + 1);
+               byte[] grey = values();
+               byte[] expected = values();
+               byte[] actual = expected.clone();
+               scalar.stippleGrey(mode, clean, grey, expected, from,
+                       from + length);
+               vector.stippleGrey(mode, clean, grey, actual, from,
+                       from + length);
+
+               assertArrayEquals(expected, actual, mode + ", clean " + clean +
+                       ", length " + length);
+            }
+         }
+      }
+   }
+
+   @Test
+   void convolveMatches()
+   {
+      for (int length = 0; length <= MAX_LENGTH; length++)
+      {
+         int rowOffset = random.nextInt(MAX_OFFSET + 1);
+         int outOffset = random.nextInt(MAX_OFFSET + 1);
+         double[] kernel = Kernel.of(random.nextInt(41)).weights;
+         double[] row = new double[SIZE];
+         for (int i = 0; i < SIZE; i++)
+            row[i] = random.nextInt(256);
+         double[] expected = new double[SIZE];
+         double[] actual = new double[SIZE];
+         scalar.convolve(row, rowOffset, kernel, expected, outOffset, length);
+         vector.convolve(row, rowOffset, kernel, actual, outOffset, length);
+
+         assertArrayEquals(expected, actual, "length " + length);
+      }
+   }
+
+   @Test
+   void fixedPointConvolveMatches()
+   {
+      for (int length = 0; length <= MAX_LENGTH; length++)
+      {
+         int rowOffset = random.nextInt(MAX_OFFSET + 1);
+         int outOffset = random.nextInt(MAX_OFFSET + 1);
+         int[] kernel = Kernel.of(random.nextInt(41)).fixedWeights;
+         int[] row = new int[SIZE];
+         for (int i = 0; i < SIZE; i++)
+            row[i] = random.nextInt(256);
+         int[] expected = new int[SIZE];
+         int[] actual = new int[SIZE];
+         scalar.convolve(row, rowOffset, kernel, expected, outOffset, length,
+                 Kernel.FIXED_SHIFT);
+         vector.convolve(row, rowOffset, kernel, actual, outOffset, length,
+                 Kernel.FIXED_SHIFT);
+
+         assertArrayEquals(expected, actual, "length " + length);
+      }
+   }
+
+   @Test
+   void accumulateMatches()
+   {
+      for (int length = 0; length <= MAX_LENGTH; length++)
+      {
+         int sumOffset = random.nextInt(MAX_OFFSET + 1);
+         int rowOffset = random.nextInt(MAX_OFFSET + 1);
+         double weight = random.nextDouble();
+         double[] row = new double[SIZE];
+         double[] expected = new double[SIZE];
+         for (int i = 0; i < SIZE; i++)
+         {
+            row[i] = random.nextInt(256);
+            expected[i] = random.nextDouble() * 255;
+         }
+         double[] actual = expected.clone();
+         scalar.accumulate(expected, sumOffset, row, rowOffset, weight,
+                 length);
+         vector.accumulate(actual, sumOffset, row, rowOffset, weight, length);
+
+         assertArrayEquals(expected, actual, "length " + length);
+      }
+   }
+
+   @Test
+   void fixedPointAccumulateMatches()
+   {
+      for (int length = 0; length <= MAX_LENGTH; length++)
+      {
+         int sumOffset = random.nextInt(MAX_OFFSET + 1);
+         int rowOffset = random.nextInt(MAX_OFFSET + 1);
+         int weight = random.nextInt(1 << 16);
+         int[] row = new int[SIZE];
+         int[] expected = new int[SIZE];
+         for (int i = 0; i < SIZE; i++)
+         {
+            row[i] = random.nextInt(256);
+            expected[i] = random.nextInt(1 << 24);
+         }
+         int[] actual = expected.clone();
+         scalar.accumulate(expected, sumOffset, row, rowOffset, weight,
+                 length);
+         vector.accumulate(actual, sumOffset, row, rowOffset, weight, length);
+
+         assertArrayEquals(expected, actual, "length " + length);
+      }
+   }
+
+   /**
+    * Random packed pixels, alpha included.
+    */
+   private int[] pixels()
+   {
+      int[] pixels = new int[SIZE];
+      for (int i = 0; i < SIZE; i++)
+         pixels[i] = random.nextInt();
+      return pixels;
+   }
+
+   /**
+    * Random opaque grey pixels.
+    */
+   private int[] greyPixels()
+   {
+      int[] pixels = new int[SIZE];
+      for (int i = 0; i < SIZE; i++)
+         pixels[i] = PixelBuffer.opaqueGrey(random.nextInt(256));
+      return pixels;
+   }
+
+   /**
+    * Random grey values, a byte each.
+    */
+   private byte[] values()
+   {
+      byte[] values = new byte[SIZE];
+      random.nextBytes(values);
+      return values;
+   }
+}
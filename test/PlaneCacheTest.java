@@ -0,0 +1,101 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the planes found in the cache are the ones computing them again
+ * gives, and that a changed image or BlurMode gets planes of its own.
+ */
+class PlaneCacheTest {
+
+   @TempDir
+   File directory;
+
+   @Test
+   void cachedPlanesMatchComputedPlanes() throws IOException
+   {
+      File image = image("photo.png", 1);
+      PlaneCache cache = new PlaneCache(new File(directory, "cache"));
+
+      for (BlurMode mode : BlurMode.values())
+      {
+         byte[] expected = bytes(StipplePlanes.of(read(image), mode));
+
+         // The first call stores the planes, the second maps them.
+         assertArrayEquals(expected, bytes(cache.planes(image, mode)),
+                 mode.toString());
+         assertArrayEquals(expected, bytes(cache.planes(image, mode)),
+                 mode.toString());
+      }
+      assertEquals(BlurMode.values().length, planesFiles());
+   }
+
+   @Test
+   void cachedStippleMatchesConvertToStipple() throws IOException
+   {
+      File image = image("photo.png", 2);
+      PlaneCache cache = new PlaneCache(new File(directory, "cache"));
+
+      for (BlurMode mode : BlurMode.values())
+      {
+         for (StippleMode stippleMode : StippleMode.values())
+         {
+            for (int clean = 3; clean <= 10; clean++)
+            {
+               assertArrayEquals(ConvertToStipple.stipple(read(image),
+                       stippleMode, clean, mode).getPixels(),
+                       cache.stipple(stippleMode, image, clean, mode)
+                               .getPixels(),
+                       stippleMode + ", clean " + clean + ", " + mode);
+            }
+         }
+      }
+   }
+
+   @Test
+   void changedImageGetsNewPlanes() throws IOException
+   {
+      File image = image("photo.png", 3);
+      PlaneCache cache = new PlaneCache(new File(directory, "cache"));
+      cache.planes(image, BlurMode.SEPARABLE);
+
+      // Replace the image with another one of the same name.
+      image("photo.png", 4);
+      assertArrayEquals(bytes(StipplePlanes.of(read(image),
+              BlurMode.SEPARABLE)),
+              bytes(cache.planes(image, BlurMode.SEPARABLE)));
+      assertEquals(2, planesFiles());
+   }
+
+   private File image(String name, long seed) throws IOException
+   {
+      File image = new File(directory, name);
+      ImageIO.write(OldFilters.photo(71, 53, seed), "png", image);
+      return image;
+   }
+
+   private static PixelBuffer read(File image) throws IOException
+   {
+      return PixelBuffer.of(ImageIO.read(image));
+   }
+
+   private static byte[] bytes(StipplePlanes planes) throws IOException
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      planes.write(out);
+      return out.toByteArray();
+   }
+
+   private int planesFiles()
+   {
+      return new File(directory, "cache").list((dir, name) ->
+              name.endsWith(".planes")).length;
+   }
+}
@@ -0,0 +1,174 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks a batch run again skips the images it already wrote over, whether
+ * or not the cache was closed, and that the least recently used results
+ * are deleted first.
+ */
+class ResultCacheTest {
+
+   private final static String OPERATION = "blackFigureOnWhite clean=4";
+
+   @TempDir
+   File directory;
+
+   @Test
+   void rerunSkipsImagesWrittenOverThemselves() throws IOException
+   {
+      List<File> images = images(3);
+      File cacheDirectory = new File(directory, "cache");
+
+      try (ResultCache cache = new ResultCache(cacheDirectory, 1 << 20))
+      {
+         assertEquals(3, run(cache).getProcessed());
+      }
+      List<byte[]> converted = contents(images);
+
+      try (ResultCache cache = new ResultCache(cacheDirectory, 1 << 20))
+      {
+         BatchSummary summary = run(cache);
+         assertEquals(0, summary.getProcessed());
+         assertEquals(3, summary.getUnchanged());
+      }
+      assertSameContents(converted, images);
+   }
+
+   @Test
+   void rerunAfterAKilledRunSkipsImagesWrittenOverThemselves()
+           throws IOException
+   {
+      List<File> images = images(3);
+      File cacheDirectory = new File(directory, "cache");
+
+      // The first run is never closed, like a run which was killed.
+      ResultCache killed = new ResultCache(cacheDirectory, 1 << 20);
+      assertEquals(3, run(killed).getProcessed());
+      List<byte[]> converted = contents(images);
+
+      try (ResultCache cache = new ResultCache(cacheDirectory, 1 << 20))
+      {
+         BatchSummary summary = run(cache);
+         assertEquals(0, summary.getProcessed());
+         assertEquals(3, summary.getUnchanged());
+      }
+      assertSameContents(converted, images);
+   }
+
+   @Test
+   void leastRecentlyUsedResultsAreDeletedFirst() throws IOException
+   {
+      String first = key("first");
+      String second = key("second");
+      String third = key("third");
+
+      try (ResultCache cache = new ResultCache(directory, 250))
+      {
+         cache.put(first, key("first result"), new byte[100]);
+         cache.put(second, key("second result"), new byte[100]);
+
+         // Use the first result, so the second is the oldest.
+         assertNotNull(cache.storedResult(first));
+         cache.put(third, key("third result"), new byte[100]);
+
+         assertNotNull(cache.storedResult(first));
+         assertNull(cache.storedResult(second));
+         assertNotNull(cache.storedResult(third));
+         assertEquals(200, cache.getStoredBytes());
+
+         // The deleted result is still known.
+         assertEquals(key("second result"), cache.resultOf(second));
+         assertTrue(cache.isResult(key("second result")));
+      }
+
+      // The order is kept by the next run.
+      try (ResultCache cache = new ResultCache(directory, 150))
+      {
+         assertNull(cache.storedResult(first));
+         assertNotNull(cache.storedResult(third));
+         assertEquals(100, cache.getStoredBytes());
+      }
+   }
+
+   @Test
+   void aLineCutOffByAKilledRunIsIgnored() throws IOException
+   {
+      ResultCache killed = new ResultCache(directory, 1 << 20);
+      killed.put(key("first"), key("first result"), new byte[10]);
+
+      // The run was killed while appending the next entry.
+      Files.write(new File(directory, "journal").toPath(),
+              (key("second") + " " + key("second result").substring(0, 20))
+                      .getBytes(StandardCharsets.US_ASCII),
+              StandardOpenOption.APPEND);
+
+      try (ResultCache cache = new ResultCache(directory, 1 << 20))
+      {
+         assertTrue(cache.isResult(key("first result")));
+         assertNull(cache.resultOf(key("second")));
+         assertFalse(cache.isResult(key("second result")));
+         assertEquals(10, cache.getStoredBytes());
+      }
+   }
+
+   /**
+    * Stipples the images in the directory, writing each over its source.
+    */
+   private BatchSummary run(ResultCache cache)
+   {
+      BatchProcessor batch = new BatchProcessor(img ->
+              ConvertToStipple.blackFigureOnWhite(img, 4), "png", 2);
+      batch.setCache(cache, OPERATION);
+      return batch.run(directory);
+   }
+
+   private List<File> images(int count) throws IOException
+   {
+      List<File> images = new ArrayList<>();
+      for (int i = 0; i < count; i++)
+      {
+         File image = new File(directory, "image" + i + ".png");
+         ImageIO.write(OldFilters.photo(64, 48, i), "png", image);
+         images.add(image);
+      }
+      return images;
+   }
+
+   private static List<byte[]> contents(List<File> files) throws IOException
+   {
+      List<byte[]> contents = new ArrayList<>();
+      for (File file : files)
+         contents.add(Files.readAllBytes(file.toPath()));
+      return contents;
+   }
+
+   private static void assertSameContents(List<byte[]> expected,
+                                          List<File> files) throws IOException
+   {
+      for (int i = 0; i < files.size(); i++)
+         assertArrayEquals(expected.get(i),
+                 Files.readAllBytes(files.get(i).toPath()),
+                 files.get(i).getName());
+   }
+
+   private static String key(String text)
+   {
+      return ResultCache.key(text.getBytes(StandardCharsets.UTF_8), "test");
+   }
+}
@@ -0,0 +1,204 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks the file filters taking a width: read at the width of the image
+ * they write what the full size filters write, read smaller they blur with
+ * the radius scaled to the width, and they never write over the image.
+ */
+class ScaledReadTest {
+
+   private final static int WIDTH = 240;
+   private final static int HEIGHT = 180;
+   private final static int RADIUS = 12;
+
+   @TempDir
+   File directory;
+
+   @Test
+   void sameWidthMatchesTheFullSizeFilters() throws IOException
+   {
+      File image = image();
+      for (int width : new int[] {WIDTH, 2 * WIDTH})
+      {
+         check(image, width, "invertColors", ImageFilters::invertColors,
+                 ImageFilters::invertColors);
+         check(image, width, "convertToGreyScale",
+                 ImageFilters::convertToGreyScale,
+                 ImageFilters::convertToGreyScale);
+         for (BlurMode mode : BlurMode.values())
+         {
+            check(image, width, "gaussianBlur " + mode,
+                    file -> ImageFilters.gaussianBlur(RADIUS, file, mode),
+                    (file, w, output) -> ImageFilters.gaussianBlur(RADIUS,
+                            file, mode, w, output));
+            check(image, width, "blackFigureOnWhite " + mode,
+                    file -> ConvertToStipple.blackFigureOnWhite(file, "png",
+                            4, mode),
+                    (file, w, output) -> ConvertToStipple
+                            .blackFigureOnWhite(file, 4, mode, w, output));
+            check(image, width, "blackFigureOnYellowishWhite " + mode,
+                    file -> ConvertToStipple.blackFigureOnYellowishWhite(
+                            file, "png", 7, mode),
+                    (file, w, output) -> ConvertToStipple
+                            .blackFigureOnYellowishWhite(file, 7, mode, w,
+                                    output));
+            check(image, width, "whiteFigure " + mode,
+                    file -> ConvertToStipple.whiteFigure(file, "png", 4,
+                            mode),
+                    (file, w, output) -> ConvertToStipple.whiteFigure(file,
+                            4, mode, w, output));
+         }
+      }
+   }
+
+   @Test
+   void radiusIsScaledToTheWidth() throws IOException
+   {
+      File image = image();
+
+      // A quarter of the width is every fourth pixel of every fourth row.
+      // Less than a third is every third pixel shrunk from 80x60 to 78x59.
+      checkScaled(image, WIDTH / 4, 4, WIDTH / 4, HEIGHT / 4, 3, 3);
+      checkScaled(image, 78, 3, 78, 59, 4, 3);
+   }
+
+   @Test
+   void imageIsNeverWrittenOver() throws IOException
+   {
+      File image = image();
+      byte[] contents = Files.readAllBytes(image.toPath());
+
+      assertThrows(IllegalArgumentException.class, () ->
+              ImageFilters.invertColors(image, 100, new ImageOutput("png")));
+      assertThrows(IllegalArgumentException.class, () ->
+              ConvertToStipple.whiteFigure(image, 4, BlurMode.SEPARABLE, 100,
+                      new ImageOutput("png", directory)));
+      assertThrows(IllegalArgumentException.class, () ->
+              new Pipeline().gaussianBlur(3).apply(image, 100,
+                      new ImageOutput("png", new File(directory, "."))));
+      assertArrayEquals(contents, Files.readAllBytes(image.toPath()));
+   }
+
+   /**
+    * Checks a filter read at a width gives what the filter of the full
+    * size file gives.
+    */
+   private void check(File image, int width, String name,
+                      FileFilter fullSize, ScaledFilter scaled)
+           throws IOException
+   {
+      File expected = new File(directory, "expected.png");
+      Files.copy(image.toPath(), expected.toPath(),
+              StandardCopyOption.REPLACE_EXISTING);
+      fullSize.apply(expected);
+
+      ImageOutput output = new ImageOutput("png",
+              new File(directory, "out"));
+      scaled.apply(image, width, output);
+
+      assertArrayEquals(pixels(expected), pixels(output.target(image)),
+              name + " at " + width);
+   }
+
+   /**
+    * Checks a blur and a stipple read at a width against the filters of the
+    * pixels the width keeps, blurred with the scaled radii.
+    */
+   private void checkScaled(File image, int width, int factor, int newWidth,
+                            int newHeight, int blurRadius, int stippleRadius)
+           throws IOException
+   {
+      BufferedImage source = ImageIO.read(image);
+      PixelBuffer kept = subsample(PixelBuffer.of(source), factor);
+      if (kept.getWidth() != newWidth || kept.getHeight() != newHeight)
+         kept = kept.scaleDown(newWidth, newHeight);
+
+      ImageOutput output = new ImageOutput("png",
+              new File(directory, "out"));
+      for (BlurMode mode : BlurMode.values())
+      {
+         ImageFilters.gaussianBlur(RADIUS, image, mode, width, output);
+         assertArrayEquals(ImageFilters.gaussianBlur(blurRadius, kept, mode)
+                         .getPixels(), pixels(output.target(image)),
+                 "gaussianBlur " + mode + " at " + width);
+
+         ConvertToStipple.whiteFigure(image, 4, mode, width, output);
+         assertArrayEquals(stipple(kept, StippleMode.WHITE_FIGURE, 4, mode,
+                 stippleRadius), pixels(output.target(image)),
+                 "whiteFigure " + mode + " at " + width);
+      }
+   }
+
+   private File image() throws IOException
+   {
+      File image = new File(directory, "photo.png");
+      ImageIO.write(OldFilters.photo(WIDTH, HEIGHT, 1), "png", image);
+      return image;
+   }
+
+   private static int[] pixels(File file) throws IOException
+   {
+      return PixelBuffer.of(ImageIO.read(file)).getPixels();
+   }
+
+   /**
+    * Every factor-th pixel of every factor-th row, starting at the first.
+    */
+   private static PixelBuffer subsample(PixelBuffer buffer, int factor)
+   {
+      int width = (buffer.getWidth() + factor - 1) / factor;
+      int height = (buffer.getHeight() + factor - 1) / factor;
+      PixelBuffer kept = new PixelBuffer(width, height);
+      for (int y = 0; y < height; y++)
+      {
+         for (int x = 0; x < width; x++)
+            kept.getPixels()[y * width + x] = buffer.getPixels()[
+                    y * factor * buffer.getWidth() + x * factor];
+      }
+      return kept;
+   }
+
+   /**
+    * The stipple of a buffer blurred with a radius, the grey plane blurred
+    * whole and then combined. The photo is opaque and so is its output.
+    */
+   private static int[] stipple(PixelBuffer buffer, StippleMode stippleMode,
+                                int clean, BlurMode mode, int radius)
+   {
+      LumaPlane grey = LumaPlane.of(buffer);
+      LumaPlane blurred = new LumaPlane(grey.getWidth(), grey.getHeight());
+      GaussianBlur.blur(grey, blurred, radius, mode);
+
+      int[] pixels = new int[grey.getValues().length];
+      PixelOps.get().stipple(stippleMode, clean, grey.getValues(),
+              blurred.getValues(), 0, pixels, 0, pixels.length);
+
+      // The file keeps no alpha.
+      for (int i = 0; i < pixels.length; i++)
+         pixels[i] |= 0xFF000000;
+      return pixels;
+   }
+
+   @FunctionalInterface
+   private interface FileFilter {
+
+      void apply(File imageFile);
+   }
+
+   @FunctionalInterface
+   private interface ScaledFilter {
+
+      void apply(File imageFile, int width, ImageOutput output);
+   }
+}
@@ -0,0 +1,81 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Checks each variant is what ConvertToStipple gives for its style, named
+ * after its image, and that a format without alpha still takes an image
+ * with alpha.
+ */
+class StippleFanOutTest {
+
+   @TempDir
+   File directory;
+
+   @Test
+   void variantsMatchConvertToStipple() throws IOException
+   {
+      File image = new File(directory, "photo.png");
+      ImageIO.write(OldFilters.photo(83, 61, 1), "png", image);
+      List<StippleVariant> variants = List.of(
+              StippleVariant.parse("whiteFigure:4"),
+              StippleVariant.parse("blackFigureOnWhite:7"),
+              StippleVariant.parse("blackFigureOnYellowishWhite:3"));
+
+      for (BlurMode mode : BlurMode.values())
+      {
+         File outputDirectory = new File(directory, mode.toString());
+         List<File> written = new StippleFanOut(variants, mode,
+                 outputDirectory).run(image);
+
+         assertEquals(variants.size(), written.size());
+         for (int i = 0; i < variants.size(); i++)
+         {
+            StippleVariant variant = variants.get(i);
+            assertEquals(new File(outputDirectory,
+                    variant.outputName("photo") + ".png").getAbsoluteFile(),
+                    written.get(i));
+
+            // The output has the type of the image, as ConvertToStipple
+            // writes it.
+            BufferedImage expected = ImageIO.read(image);
+            ConvertToStipple.stipple(PixelBuffer.of(expected),
+                    variant.getMode(), variant.getClean(), mode)
+                    .writeTo(expected);
+            assertArrayEquals(PixelBuffer.of(expected).getPixels(),
+                    PixelBuffer.of(ImageIO.read(written.get(i))).getPixels(),
+                    variant.outputName("photo") + ", " + mode);
+         }
+      }
+   }
+
+   @Test
+   void jpegVariantOfAnImageWithAlphaIsWritten() throws IOException
+   {
+      BufferedImage img = new BufferedImage(83, 61,
+              BufferedImage.TYPE_INT_ARGB);
+      PixelBuffer.of(OldFilters.photo(83, 61, 2)).writeTo(img);
+      File image = new File(directory, "photo.png");
+      ImageIO.write(img, "png", image);
+
+      List<File> written = new StippleFanOut(List.of(
+              StippleVariant.parse("whiteFigure:4:jpeg"),
+              StippleVariant.parse("blackFigureOnWhite:4")),
+              BlurMode.SEPARABLE).run(image);
+
+      assertEquals(new File(directory, "photo-whiteFigure-4.jpg")
+              .getAbsoluteFile(), written.get(0));
+      assertNotNull(ImageIO.read(written.get(0)));
+      assertEquals(new File(directory, "photo-blackFigureOnWhite-4.png")
+              .getAbsoluteFile(), written.get(1));
+   }
+}
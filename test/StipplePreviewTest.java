@@ -0,0 +1,111 @@
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the full size level is exactly what ConvertToStipple gives, that
+ * a refinement goes from the smallest level to the full size, and that a
+ * newer refinement stops the last one.
+ */
+class StipplePreviewTest {
+
+   @Test
+   void levelZeroMatchesConvertToStipple()
+   {
+      BufferedImage img = OldFilters.photo(131, 97, 1);
+      for (BlurMode mode : BlurMode.values())
+      {
+         try (StipplePreview preview = new StipplePreview(img, mode, 20))
+         {
+            for (StippleMode stippleMode : StippleMode.values())
+            {
+               for (int clean = 3; clean <= 10; clean++)
+               {
+                  assertArrayEquals(ConvertToStipple.stipple(
+                          PixelBuffer.of(img), stippleMode, clean, mode)
+                                  .getPixels(),
+                          preview.stipple(stippleMode, clean, 0).getPixels(),
+                          stippleMode + ", clean " + clean + ", " + mode);
+               }
+            }
+         }
+      }
+   }
+
+   @Test
+   void refinementGoesFromThePreviewToTheFullSize() throws Exception
+   {
+      BufferedImage img = OldFilters.photo(131, 97, 2);
+      try (StipplePreview preview = new StipplePreview(img,
+              BlurMode.SEPARABLE, 20))
+      {
+         List<Integer> levels = Collections.synchronizedList(
+                 new ArrayList<>());
+         PixelBuffer result = preview.refine(StippleMode.WHITE_FIGURE, 6,
+                 (pixels, level) -> levels.add(level))
+                 .get(30, TimeUnit.SECONDS);
+
+         List<Integer> expected = new ArrayList<>();
+         for (int level = preview.getPreviewLevel(); level >= 0; level--)
+            expected.add(level);
+         assertEquals(expected, levels);
+         assertArrayEquals(ConvertToStipple.stipple(PixelBuffer.of(img),
+                 StippleMode.WHITE_FIGURE, 6, BlurMode.SEPARABLE).getPixels(),
+                 result.getPixels());
+      }
+   }
+
+   @Test
+   void newerRefinementStopsTheLastOne() throws Exception
+   {
+      BufferedImage img = OldFilters.photo(257, 193, 3);
+      try (StipplePreview preview = new StipplePreview(img,
+              BlurMode.SEPARABLE, 20))
+      {
+         assertTrue(preview.getPreviewLevel() > 1);
+
+         // The first refinement waits in its first level until the second
+         // one is asked for.
+         CountDownLatch entered = new CountDownLatch(1);
+         CountDownLatch release = new CountDownLatch(1);
+         List<Integer> first = Collections.synchronizedList(
+                 new ArrayList<>());
+         CompletableFuture<PixelBuffer> firstResult = preview.refine(
+                 StippleMode.BLACK_FIGURE_ON_WHITE, 4, (pixels, level) -> {
+                    first.add(level);
+                    entered.countDown();
+                    try
+                    {
+                       release.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                       Thread.currentThread().interrupt();
+                    }
+                 });
+         assertTrue(entered.await(30, TimeUnit.SECONDS));
+
+         List<Integer> second = Collections.synchronizedList(
+                 new ArrayList<>());
+         CompletableFuture<PixelBuffer> secondResult = preview.refine(
+                 StippleMode.BLACK_FIGURE_ON_WHITE, 8,
+                 (pixels, level) -> second.add(level));
+         release.countDown();
+         secondResult.get(30, TimeUnit.SECONDS);
+
+         assertTrue(firstResult.isCancelled());
+         assertEquals(List.of(preview.getPreviewLevel()), first);
+         assertEquals(preview.getPreviewLevel() + 1, second.size());
+      }
+   }
+}
@@ -0,0 +1,392 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Compares the strip by strip filters against the file based filters of
+ * ImageFilters and ConvertToStipple, and the PNG rows PngStripReader
+ * decodes against the ones ImageIO does. The PNG files are written here
+ * sample by sample, so every color type and bit depth is covered, with
+ * every row filter and the pixel data split over many IDAT chunks.
+ */
+class StripProcessorTest {
+
+   private final static int WIDTH = 53;
+   private final static int HEIGHT = 41;
+
+   // The color types of PNG.
+   private final static int GREY = 0;
+   private final static int RGB = 2;
+   private final static int PALETTE = 3;
+   private final static int GREY_ALPHA = 4;
+   private final static int RGB_ALPHA = 6;
+
+   // The strip heights, down to a single row, far less than the halo of
+   // the stipple blur.
+   private final static int[] STRIP_HEIGHTS = {1, 4, 16, 64};
+
+   @TempDir
+   File directory;
+
+   @Test
+   void readerMatchesImageIO() throws IOException
+   {
+      for (Variant variant : variants())
+      {
+         File file = variant.write(directory);
+         int[] expected = PixelBuffer.of(ImageIO.read(file)).getPixels();
+
+         for (int rowsPerRead : new int[] {1, 5, HEIGHT})
+         {
+            int[] actual = new int[WIDTH * HEIGHT];
+            try (StripReader reader = StripReader.open(file))
+            {
+               for (int y = 0; y < HEIGHT; y += rowsPerRead)
+                  reader.read(actual, y * WIDTH,
+                          Math.min(rowsPerRead, HEIGHT - y));
+            }
+
+            assertArrayEquals(expected, actual, variant + ", " +
+                    rowsPerRead + " rows at a time");
+         }
+      }
+   }
+
+   @Test
+   void invertColorsMatchesImageFilters() throws IOException
+   {
+      for (Variant variant : variants())
+      {
+         for (int stripHeight : STRIP_HEIGHTS)
+         {
+            File expected = variant.write(directory);
+            ImageFilters.invertColors(expected);
+            File actual = variant.write(directory);
+            new StripProcessor(stripHeight).invertColors(actual, "png");
+
+            assertSamePixels(expected, actual, variant + ", strips of " +
+                    stripHeight);
+         }
+      }
+   }
+
+   @Test
+   void convertToGreyScaleMatchesImageFilters() throws IOException
+   {
+      for (Variant variant : variants())
+      {
+         for (int stripHeight : STRIP_HEIGHTS)
+         {
+            File expected = variant.write(directory);
+            ImageFilters.convertToGreyScale(expected);
+            File actual = variant.write(directory);
+            new StripProcessor(stripHeight).convertToGreyScale(actual, "png");
+
+            assertSamePixels(expected, actual, variant + ", strips of " +
+                    stripHeight);
+         }
+      }
+   }
+
+   @Test
+   void gaussianBlurMatchesImageFilters() throws IOException
+   {
+      for (Variant variant : variants())
+      {
+         for (BlurMode mode : BlurMode.values())
+         {
+            for (int stripHeight : STRIP_HEIGHTS)
+            {
+               File expected = variant.write(directory);
+               ImageFilters.gaussianBlur(6, expected, mode);
+               File actual = variant.write(directory);
+               new StripProcessor(stripHeight).gaussianBlur(6, actual, "png",
+                       mode);
+
+               assertSamePixels(expected, actual, variant + ", " + mode +
+                       ", strips of " + stripHeight);
+            }
+         }
+      }
+   }
+
+   @Test
+   void stippleMatchesConvertToStipple() throws IOException
+   {
+      for (Variant variant : variants())
+      {
+         for (BlurMode mode : BlurMode.values())
+         {
+            for (StippleMode stippleMode : StippleMode.values())
+            {
+               for (int stripHeight : STRIP_HEIGHTS)
+               {
+                  File expected = variant.write(directory);
+                  stipple(stippleMode, expected, mode);
+                  File actual = variant.write(directory);
+                  new StripProcessor(stripHeight).stipple(stippleMode, actual,
+                          "png", 6, mode);
+
+                  assertSamePixels(expected, actual, variant + ", " +
+                          stippleMode + ", " + mode + ", strips of " +
+                          stripHeight);
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * Runs the file based method of a stipple style.
+    */
+   private static void stipple(StippleMode stippleMode, File file,
+                               BlurMode mode)
+   {
+      switch (stippleMode)
+      {
+         case BLACK_FIGURE_ON_WHITE:
+            ConvertToStipple.blackFigureOnWhite(file, "png", 6, mode);
+            break;
+
+         case BLACK_FIGURE_ON_YELLOWISH_WHITE:
+            ConvertToStipple.blackFigureOnYellowishWhite(file, "png", 6,
+                    mode);
+            break;
+
+         default:
+            ConvertToStipple.whiteFigure(file, "png", 6, mode);
+            break;
+      }
+   }
+
+   private static void assertSamePixels(File expected, File actual,
+                                        String message) throws IOException
+   {
+      assertArrayEquals(PixelBuffer.of(ImageIO.read(expected)).getPixels(),
+              PixelBuffer.of(ImageIO.read(actual)).getPixels(), message);
+   }
+
+   /**
+    * Every color type at every bit depth it allows, palettes with and
+    * without transparent entries, and the grey and RGB files with a
+    * transparent color, which are read through ImageIO instead.
+    */
+   private static List<Variant> variants()
+   {
+      List<Variant> variants = new ArrayList<>();
+      for (int bitDepth : new int[] {1, 2, 4, 8, 16})
+         variants.add(new Variant(GREY, bitDepth, false));
+      for (int bitDepth : new int[] {1, 2, 4, 8})
+      {
+         variants.add(new Variant(PALETTE, bitDepth, false));
+         variants.add(new Variant(PALETTE, bitDepth, true));
+      }
+      for (int bitDepth : new int[] {8, 16})
+      {
+         variants.add(new Variant(RGB, bitDepth, false));
+         variants.add(new Variant(GREY_ALPHA, bitDepth, false));
+         variants.add(new Variant(RGB_ALPHA, bitDepth, false));
+      }
+      variants.add(new Variant(GREY, 8, true));
+      variants.add(new Variant(RGB, 8, true));
+      return variants;
+   }
+
+   /**
+    * A PNG file of random samples of one color type and bit depth.
+    */
+   private static final class Variant {
+
+      private final int colorType;
+      private final int bitDepth;
+      private final boolean transparency;
+      private int files;
+
+      Variant(int colorType, int bitDepth, boolean transparency)
+      {
+         this.colorType = colorType;
+         this.bitDepth = bitDepth;
+         this.transparency = transparency;
+      }
+
+      /**
+       * Writes the file, the same samples each time.
+       */
+      File write(File directory) throws IOException
+      {
+         Random random = new Random(31L * colorType + bitDepth);
+         int channels = colorType == RGB ? 3 : colorType == GREY_ALPHA ? 2 :
+                 colorType == RGB_ALPHA ? 4 : 1;
+         int rowBytes = (WIDTH * channels * bitDepth + 7) / 8;
+         int pixelBytes = Math.max(1, channels * bitDepth / 8);
+
+         ByteArrayOutputStream file = new ByteArrayOutputStream();
+         DataOutputStream out = new DataOutputStream(file);
+         out.writeLong(0x89504E470D0A1A0AL);
+
+         ByteArrayOutputStream header = new ByteArrayOutputStream();
+         DataOutputStream headerData = new DataOutputStream(header);
+         headerData.writeInt(WIDTH);
+         headerData.writeInt(HEIGHT);
+         headerData.write(new byte[] {(byte) bitDepth, (byte) colorType, 0,
+                 0, 0});
+         chunk(out, "IHDR", header.toByteArray());
+
+         if (colorType == PALETTE)
+         {
+            byte[] palette = new byte[3 << bitDepth];
+            random.nextBytes(palette);
+            chunk(out, "PLTE", palette);
+         }
+         if (transparency)
+         {
+            // Some palette entries are see through, or one grey or RGB
+            // color is.
+            byte[] transparent = new byte[colorType == PALETTE ?
+                    Math.min(5, 1 << bitDepth) : colorType == RGB ? 6 : 2];
+            random.nextBytes(transparent);
+            if (colorType != PALETTE)
+            {
+               for (int i = 0; i < transparent.length; i += 2)
+                  transparent[i] = 0;
+            }
+            chunk(out, "tRNS", transparent);
+         }
+
+         // Filter each row with the next of the five filters.
+         ByteArrayOutputStream pixels = new ByteArrayOutputStream();
+         try (DeflaterOutputStream deflater = new DeflaterOutputStream(
+                 pixels, new Deflater(Deflater.BEST_COMPRESSION)))
+         {
+            byte[] above = new byte[rowBytes];
+            for (int y = 0; y < HEIGHT; y++)
+            {
+               byte[] row = new byte[rowBytes];
+               random.nextBytes(row);
+
+               // Smooth the samples so the blur has something to blur.
+               for (int x = pixelBytes; x < rowBytes; x++)
+               {
+                  if (random.nextInt(4) != 0)
+                     row[x] = row[x - pixelBytes];
+               }
+
+               // The opaque color of a transparent grey or RGB color is the
+               // first sample, make some pixels use it.
+               if (transparency && colorType != PALETTE && y % 3 == 0)
+               {
+                  for (int x = 0; x < rowBytes; x++)
+                     row[x] = 0;
+               }
+
+               int filter = y % 5;
+               deflater.write(filter);
+               deflater.write(filter(filter, row, above, pixelBytes));
+               above = row;
+            }
+         }
+
+         // Split the pixel data over many chunks.
+         byte[] data = pixels.toByteArray();
+         for (int i = 0; i < data.length; i += 97)
+         {
+            chunk(out, "IDAT", Arrays.copyOfRange(data, i,
+                    Math.min(data.length, i + 97)));
+         }
+         chunk(out, "IEND", new byte[0]);
+
+         File written = new File(directory, this + "-" + files++ + ".png");
+         Files.write(written.toPath(), file.toByteArray());
+         return written;
+      }
+
+      @Override
+      public String toString()
+      {
+         String[] names = {"grey", "", "rgb", "palette", "greyAlpha", "",
+                 "rgbAlpha"};
+         return names[colorType] + bitDepth + (transparency ? "-trns" : "");
+      }
+
+      /**
+       * Applies one of the PNG row filters.
+       */
+      private static byte[] filter(int filter, byte[] row, byte[] above,
+                                   int pixelBytes)
+      {
+         byte[] filtered = new byte[row.length];
+         for (int x = 0; x < row.length; x++)
+         {
+            int left = x < pixelBytes ? 0 : row[x - pixelBytes] & 0xFF;
+            int up = above[x] & 0xFF;
+            int upLeft = x < pixelBytes ? 0 : above[x - pixelBytes] & 0xFF;
+            int predicted;
+            switch (filter)
+            {
+               case 1:
+                  predicted = left;
+                  break;
+
+               case 2:
+                  predicted = up;
+                  break;
+
+               case 3:
+                  predicted = (left + up) / 2;
+                  break;
+
+               case 4:
+                  predicted = paeth(left, up, upLeft);
+                  break;
+
+               default:
+                  predicted = 0;
+                  break;
+            }
+            filtered[x] = (byte) (row[x] - predicted);
+         }
+         return filtered;
+      }
+
+      private static int paeth(int left, int up, int upLeft)
+      {
+         int estimate = left + up - upLeft;
+         int toLeft = Math.abs(estimate - left);
+         int toUp = Math.abs(estimate - up);
+         int toUpLeft = Math.abs(estimate - upLeft);
+         if (toLeft <= toUp && toLeft <= toUpLeft)
+            return left;
+         return toUp <= toUpLeft ? up : upLeft;
+      }
+
+      private static void chunk(DataOutputStream out, String type,
+                                byte[] data) throws IOException
+      {
+         byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+         CRC32 crc = new CRC32();
+         crc.update(typeBytes);
+         crc.update(data);
+
+         out.writeInt(data.length);
+         out.write(typeBytes);
+         out.write(data);
+         out.writeInt((int) crc.getValue());
+      }
+   }
+}
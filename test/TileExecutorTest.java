@@ -0,0 +1,104 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Checks the filters give the same pixels at any parallelism, and that
+ * changing the parallelism doesn't break the filters already running.
+ */
+class TileExecutorTest {
+
+   // Large enough to be split into many bands.
+   private final static int WIDTH = 613;
+   private final static int HEIGHT = 487;
+
+   @AfterEach
+   void restoreParallelism()
+   {
+      TileExecutor.setParallelism(Runtime.getRuntime().availableProcessors());
+   }
+
+   @Test
+   void parallelOutputMatchesOneThread()
+   {
+      PixelBuffer buffer = PixelBuffer.of(OldFilters.photo(WIDTH, HEIGHT, 7));
+
+      TileExecutor.setParallelism(1);
+      List<int[]> expected = filterAll(buffer);
+
+      for (int parallelism : new int[] {2, 3, 8})
+      {
+         TileExecutor.setParallelism(parallelism);
+         List<int[]> actual = filterAll(buffer);
+         for (int i = 0; i < expected.size(); i++)
+            assertArrayEquals(expected.get(i), actual.get(i),
+                    "filter " + i + " at parallelism " + parallelism);
+      }
+   }
+
+   @Test
+   void changingParallelismDoesNotFailRunningFilters() throws Exception
+   {
+      PixelBuffer buffer = PixelBuffer.of(OldFilters.photo(WIDTH, HEIGHT, 8));
+      int[] expected = ImageFilters.gaussianBlur(5, buffer,
+              BlurMode.SEPARABLE).getPixels();
+
+      AtomicBoolean done = new AtomicBoolean();
+      ExecutorService callers = Executors.newFixedThreadPool(4);
+      try
+      {
+         List<Future<?>> runs = new ArrayList<>();
+         for (int i = 0; i < 4; i++)
+         {
+            runs.add(callers.submit(() -> {
+               while (!done.get())
+               {
+                  assertArrayEquals(expected, ImageFilters.gaussianBlur(5,
+                          buffer, BlurMode.SEPARABLE).getPixels());
+               }
+               return null;
+            }));
+         }
+
+         for (int i = 0; i < 200; i++)
+            TileExecutor.setParallelism(2 + i % 3);
+         done.set(true);
+
+         // Rethrows anything a filter threw.
+         for (Future<?> run : runs)
+            run.get();
+      }
+      finally
+      {
+         callers.shutdownNow();
+      }
+   }
+
+   /**
+    * Runs each kind of filter which splits its work into bands.
+    */
+   private static List<int[]> filterAll(PixelBuffer buffer)
+   {
+      List<int[]> outputs = new ArrayList<>();
+      outputs.add(ImageFilters.invertColors(buffer.copy()).getPixels());
+      outputs.add(ImageFilters.convertToGreyScale(buffer.copy()).getPixels());
+      for (BlurMode mode : BlurMode.values())
+      {
+         outputs.add(ImageFilters.gaussianBlur(7, buffer, mode).getPixels());
+         for (StippleMode stippleMode : StippleMode.values())
+         {
+            outputs.add(ConvertToStipple.stipple(buffer, stippleMode, 6,
+                    mode).getPixels());
+         }
+      }
+      return outputs;
+   }
+}